@@ -0,0 +1,85 @@
+package com.bank.appbank.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Collects the keys requested within {@code window} (or until {@code maxBatchSize} keys) and loads them
+ * with a single call to {@code batchFunction}, handing each caller only the values of its key. A key
+ * already waiting for a batch is not requested again; its callers share the pending result. Nothing is
+ * cached once the batch completes.
+ */
+public class BatchLoader<K, V> {
+    private static final Logger log = LoggerFactory.getLogger(BatchLoader.class);
+    private final Function<List<K>, Flux<V>> batchFunction;
+    private final Function<V, K> keyOf;
+    private final Map<K, Sinks.One<List<V>>> pending = new ConcurrentHashMap<>();
+    private final Sinks.Many<K> requestedKeys = Sinks.many().unicast().onBackpressureBuffer();
+
+    public BatchLoader(Function<List<K>, Flux<V>> batchFunction,
+                       Function<V, K> keyOf,
+                       int maxBatchSize,
+                       Duration window) {
+        this.batchFunction = batchFunction;
+        this.keyOf = keyOf;
+        requestedKeys.asFlux()
+                .bufferTimeout(maxBatchSize, window)
+                .flatMap(this::dispatch)
+                .subscribe();
+    }
+
+    public Flux<V> load(K key) {
+        return Mono.defer(() -> {
+            Sinks.One<List<V>> created = Sinks.one();
+            Sinks.One<List<V>> result = pending.putIfAbsent(key, created);
+            if (result == null) {
+                result = created;
+                synchronized (requestedKeys) {
+                    requestedKeys.tryEmitNext(key);
+                }
+            }
+            return result.asMono();
+        }).flatMapIterable(values -> values);
+    }
+
+    private Mono<Void> dispatch(List<K> keys) {
+        return Flux.defer(() -> batchFunction.apply(keys))
+                .collectList()
+                .doOnNext(values -> {
+                    Map<K, List<V>> valuesByKey = new HashMap<>();
+                    values.forEach(value -> valuesByKey.computeIfAbsent(keyOf.apply(value), k -> new ArrayList<>())
+                            .add(value));
+                    keys.forEach(key -> complete(key, valuesByKey.getOrDefault(key, Collections.emptyList())));
+                })
+                .onErrorResume(error -> {
+                    log.error("Batch load of " + keys.size() + " keys failed: " + error.getMessage());
+                    keys.forEach(key -> {
+                        Sinks.One<List<V>> sink = pending.remove(key);
+                        if (sink != null) {
+                            sink.tryEmitError(error);
+                        }
+                    });
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private void complete(K key, List<V> values) {
+        Sinks.One<List<V>> sink = pending.remove(key);
+        if (sink != null) {
+            sink.tryEmitValue(values);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.bank.appbank.client;
 
+import com.bank.appbank.dto.BillConsumptionsDto;
 import com.bank.appbank.dto.ConsumptionDto;
 import com.bank.appbank.exceptions.ServiceNotAvailableException;
 import com.bank.appbank.exceptions.UnsupportedMovementException;
@@ -22,16 +23,22 @@ public class ConsumptionServiceClient {
     private final WebClient webClient;
     private final static Logger log = LoggerFactory.getLogger(ConsumptionServiceClient.class);
     private final String serviceNotAvailableMessage = "The endpoint of consumptions is not available";
-    public ConsumptionServiceClient(WebClient.Builder webClient) {
+    private final HistoryCache historyCache;
+
+    public ConsumptionServiceClient(WebClient.Builder webClient, HistoryCache historyCache) {
         this.webClient = webClient.baseUrl("http://movementsmicroservice").build();
+        this.historyCache = historyCache;
     }
 
     @CircuitBreaker(name = "consumptionCircuitBreaker", fallbackMethod = "fallbackFindAllConsumption")
     @TimeLimiter(name = "consumptionCircuitBreaker")
     public Flux<ConsumptionDto> findAllConsumptionsByIdCreditCardAndSortByDate(String idCreditCard) {
-        return webClient.get().uri("/consumptions/getAllByIdCreditCard/{idCreditCard}", idCreditCard)
-                .retrieve()
-                .bodyToFlux(ConsumptionDto.class);
+        return historyCache.getOrLoad("consumptions", idCreditCard, ConsumptionDto.class,
+                consumption -> Boolean.TRUE.equals(consumption.getBilled())
+                        || historyCache.isBeforeCurrentMonth(consumption.getDateConsumption()),
+                () -> webClient.get().uri("/consumptions/getAllByIdCreditCard/{idCreditCard}", idCreditCard)
+                        .retrieve()
+                        .bodyToFlux(ConsumptionDto.class));
     }
 
     @CircuitBreaker(name = "consumptionCircuitBreaker", fallbackMethod = "fallbackNotBilledFalse")
@@ -42,6 +49,31 @@ public class ConsumptionServiceClient {
                 .bodyToFlux(ConsumptionDto.class);
     }
 
+    /**
+     * Unbilled consumptions of many cards in one request, streamed back as NDJSON so a large chunk is
+     * decoded as it arrives instead of being buffered as a single JSON array.
+     */
+    @CircuitBreaker(name = "consumptionCircuitBreaker", fallbackMethod = "fallbackUnbilledByIdCreditCards")
+    @TimeLimiter(name = "consumptionCircuitBreaker")
+    public Flux<ConsumptionDto> findUnbilledByIdCreditCards(List<String> idCreditCards) {
+        return webClient.post().uri("/consumptions/findByIdCreditCardInAndBilledFalse")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(idCreditCards)
+                .retrieve()
+                .bodyToFlux(ConsumptionDto.class);
+    }
+
+    @CircuitBreaker(name = "consumptionCircuitBreaker", fallbackMethod = "fallbackMarkBilled")
+    @TimeLimiter(name = "consumptionCircuitBreaker")
+    public Mono<Void> markBilled(BillConsumptionsDto billConsumptions) {
+        return webClient.post().uri("/consumptions/markBilled")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(billConsumptions)
+                .retrieve()
+                .bodyToMono(Void.class);
+    }
+
     @CircuitBreaker(name = "consumptionCircuitBreaker", fallbackMethod = "fallbackSaveAll")
     @TimeLimiter(name = "consumptionCircuitBreaker")
     public Flux<ConsumptionDto> saveAll(List<ConsumptionDto> consumptions) {
@@ -72,6 +104,12 @@ public class ConsumptionServiceClient {
     public Flux<String> fallbackSaveAll(List<ConsumptionDto> consumptions, Throwable error) {
         return Flux.error(new ServiceNotAvailableException(serviceNotAvailableMessage));
     }
+    public Flux<ConsumptionDto> fallbackUnbilledByIdCreditCards(List<String> idCreditCards, Throwable error) {
+        return Flux.error(new ServiceNotAvailableException(serviceNotAvailableMessage));
+    }
+    public Mono<Void> fallbackMarkBilled(BillConsumptionsDto billConsumptions, Throwable error) {
+        return Mono.error(new ServiceNotAvailableException(serviceNotAvailableMessage));
+    }
     public Mono<String> fallbackLastConsumptions(List<String> idConsumptions, Throwable error) {
         log.error("Tiene un error por ajuya" + idConsumptions);
         return Mono.error(new UnsupportedMovementException(serviceNotAvailableMessage));
@@ -0,0 +1,215 @@
+package com.bank.appbank.client;
+
+import com.bank.appbank.utils.BoundedMaps;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Two-tier cache of the payment and consumption histories fetched from the movements service: a bounded
+ * in-process map in front of Redis. A history made only of historical entries (billed or before the
+ * current month) is kept for {@code historicalTtl}; one that still has current-month activity only for
+ * {@code currentTtl}. New movements evict the product from both tiers (see the cache invalidation
+ * consumer), and a Redis failure falls back to the movements service. An eviction bumps a version of the
+ * product, the same way {@code ClientNearCache} does, so a load that started before it serves what it
+ * read but does not cache it.
+ */
+@Component
+public class HistoryCache {
+    public static final List<String> CACHED_HISTORIES = List.of("payments", "consumptions");
+    private static final Logger log = LoggerFactory.getLogger(HistoryCache.class);
+    private static final String redisPrefix = "history:";
+    private static final int versionStripes = 1024;
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Clock clock;
+    private final Map<String, LocalEntry> localEntries = new ConcurrentHashMap<>();
+    private final AtomicLongArray versions = new AtomicLongArray(versionStripes);
+
+    @Value("${appbank.cache.local.max-entries:10000}")
+    private int localMaxEntries;
+
+    @Value("${appbank.cache.local.ttl-seconds:60}")
+    private long localTtlSeconds;
+
+    @Value("${appbank.cache.historical-ttl-minutes:1440}")
+    private long historicalTtlMinutes;
+
+    @Value("${appbank.cache.current-ttl-seconds:60}")
+    private long currentTtlSeconds;
+
+    public HistoryCache(ReactiveStringRedisTemplate redisTemplate,
+                        ObjectMapper objectMapper,
+                        MeterRegistry meterRegistry,
+                        Clock clock) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+    }
+
+    public <T> Flux<T> getOrLoad(String history,
+                                 String idProduct,
+                                 Class<T> type,
+                                 Predicate<T> isHistorical,
+                                 Supplier<Flux<T>> loader) {
+        String key = history + ":" + idProduct;
+        JavaType listType = objectMapper.getTypeFactory().constructCollectionType(List.class, type);
+        return Mono.defer(() -> {
+            long version = version(idProduct);
+            LocalEntry localEntry = localEntries.get(key);
+            if (localEntry != null && localEntry.expiresAt.isAfter(clock.instant())) {
+                count(history, "local_hit");
+                return Mono.just(localEntry.json);
+            }
+            return redisTemplate.opsForValue().get(redisPrefix + key)
+                    .onErrorResume(error -> {
+                        log.error("Could not read " + key + " from redis: " + error.getMessage());
+                        return Mono.empty();
+                    })
+                    .doOnNext(json -> {
+                        count(history, "redis_hit");
+                        putLocalIfCurrent(idProduct, version, key, json, Duration.ofSeconds(localTtlSeconds));
+                    })
+                    .switchIfEmpty(Mono.defer(() -> {
+                        count(history, "miss");
+                        return loader.get().collectList()
+                                .flatMap(values -> store(idProduct, version, key, values,
+                                        ttlOf(values, isHistorical)));
+                    }));
+        }).flatMapIterable(json -> this.<T>read(json, listType));
+    }
+
+    public boolean isBeforeCurrentMonth(LocalDateTime date) {
+        return date != null && date.isBefore(LocalDate.now(clock).withDayOfMonth(1).atStartOfDay());
+    }
+
+    public Mono<Void> evict(String idProduct) {
+        List<String> keys = CACHED_HISTORIES.stream()
+                .map(history -> history + ":" + idProduct)
+                .collect(Collectors.toList());
+        versions.incrementAndGet(stripeOf(idProduct));
+        keys.forEach(localEntries::remove);
+        return redisTemplate.delete(Flux.fromIterable(keys).map(key -> redisPrefix + key))
+                .onErrorResume(error -> {
+                    log.error("Could not evict " + idProduct + " from redis: " + error.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    /**
+     * An empty history is kept for the current ttl, since the product can get its first movement at any
+     * time.
+     */
+    private <T> Duration ttlOf(List<T> values, Predicate<T> isHistorical) {
+        return !values.isEmpty() && values.stream().allMatch(isHistorical)
+                ? Duration.ofMinutes(historicalTtlMinutes)
+                : Duration.ofSeconds(currentTtlSeconds);
+    }
+
+    /**
+     * Caches a history loaded when the product was at {@code version}, unless it was evicted since. The
+     * version is checked again after each write, so an eviction racing with it still removes the entry.
+     */
+    private Mono<String> store(String idProduct, long version, String key, List<?> values, Duration ttl) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(values);
+        } catch (JsonProcessingException e) {
+            return Mono.error(new IllegalStateException("ERROR in serialized json: " + e.getMessage()));
+        }
+        if (!isCurrent(idProduct, version)) {
+            return Mono.just(json);
+        }
+        Duration localTtl = ttl.compareTo(Duration.ofSeconds(localTtlSeconds)) < 0
+                ? ttl : Duration.ofSeconds(localTtlSeconds);
+        putLocalIfCurrent(idProduct, version, key, json, localTtl);
+        return redisTemplate.opsForValue().set(redisPrefix + key, json, ttl)
+                .then(Mono.defer(() -> isCurrent(idProduct, version)
+                        ? Mono.<Void>empty()
+                        : redisTemplate.delete(redisPrefix + key).then()))
+                .onErrorResume(error -> {
+                    log.error("Could not write " + key + " to redis: " + error.getMessage());
+                    return Mono.empty();
+                })
+                .thenReturn(json);
+    }
+
+    private void putLocalIfCurrent(String idProduct, long version, String key, String json, Duration ttl) {
+        if (!isCurrent(idProduct, version)) {
+            return;
+        }
+        Instant now = clock.instant();
+        BoundedMaps.makeRoom(localEntries, localMaxEntries, entry -> !entry.expiresAt.isAfter(now));
+        localEntries.put(key, new LocalEntry(json, now.plus(ttl)));
+        if (!isCurrent(idProduct, version)) {
+            localEntries.remove(key);
+        }
+    }
+
+    /**
+     * Products share a version by hash stripe, so an eviction can also keep a concurrent load of another
+     * product from being cached.
+     */
+    private long version(String idProduct) {
+        return versions.get(stripeOf(idProduct));
+    }
+
+    private boolean isCurrent(String idProduct, long version) {
+        return version(idProduct) == version;
+    }
+
+    private static int stripeOf(String idProduct) {
+        return (idProduct.hashCode() & Integer.MAX_VALUE) % versionStripes;
+    }
+
+    private <T> List<T> read(String json, JavaType listType) {
+        try {
+            return objectMapper.readValue(json, listType);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("ERROR in deserialized json: " + e.getMessage());
+        }
+    }
+
+    private void count(String history, String result) {
+        Counter.builder("client.cache.requests")
+                .tag("method", history)
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static final class LocalEntry {
+        private final String json;
+        private final Instant expiresAt;
+
+        private LocalEntry(String json, Instant expiresAt) {
+            this.json = json;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
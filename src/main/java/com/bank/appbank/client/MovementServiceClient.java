@@ -7,6 +7,7 @@ import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.timelimiter.annotation.TimeLimiter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
@@ -16,6 +17,7 @@ import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.List;
 
 @Service
@@ -24,27 +26,53 @@ public class MovementServiceClient {
     private final WebClient webClient;
     private final static Logger log = LoggerFactory.getLogger(MovementServiceClient.class);
     private String errorMessage = "The backend for movements is not available";
-    public MovementServiceClient(WebClient.Builder webClient) {
+    private final BatchLoader<String, MovementDto> presentMonthLoader;
+    private final BatchLoader<String, MovementDto> allMovementsLoader;
+
+    public MovementServiceClient(WebClient.Builder webClient,
+                                 @Value("${appbank.movements.batch.max-size:50}") int maxBatchSize,
+                                 @Value("${appbank.movements.batch.window-ms:2}") long batchWindowMs) {
         this.webClient = webClient.baseUrl("http://movementsmicroservice").build();
+        Duration batchWindow = Duration.ofMillis(batchWindowMs);
+        this.presentMonthLoader = new BatchLoader<>(
+                idBankAccounts -> findMovementsByIdBankAccounts("/movements/getAllByIdBankAccountsInPresentMonth",
+                        idBankAccounts),
+                MovementDto::getIdBankAccount, maxBatchSize, batchWindow);
+        this.allMovementsLoader = new BatchLoader<>(
+                idBankAccounts -> findMovementsByIdBankAccounts("/movements/getAllByIdBankAccounts", idBankAccounts),
+                MovementDto::getIdBankAccount, maxBatchSize, batchWindow);
     }
+
     @CircuitBreaker(name = "movementsCircuitBreaker", fallbackMethod = "fallbackMovementsByBankAccount")
     @TimeLimiter(name = "movementsCircuitBreaker")
     public Flux<MovementDto> getMovementsByBankAccountIdInPresentMonth(String idBankAccount) {
-        return webClient.get()
-                .uri("/movements/getAllByIdBankAccountInPresentMonth/{idBankAccount}", idBankAccount)
-                .retrieve()
-                .bodyToFlux(MovementDto.class);
+        return presentMonthLoader.load(idBankAccount);
     }
 
     @CircuitBreaker(name = "movementsCircuitBreaker", fallbackMethod = "fallbackAllMovementsByBankAccount")
     @TimeLimiter(name = "movementsCircuitBreaker")
     public Flux<MovementDto> getAllMovementsByIdBankAccountAndSortByDate(String idBankAccount) {
-        return webClient.get()
-                .uri("/movements/getAllByIdBankAccount/{idBankAccount}", idBankAccount)
+        return allMovementsLoader.load(idBankAccount);
+    }
+
+    /**
+     * Movements of several accounts in one request, sorted by date and streamed as NDJSON; each one is
+     * handed back to the caller of its idBankAccount.
+     */
+    private Flux<MovementDto> findMovementsByIdBankAccounts(String uri, List<String> idBankAccounts) {
+        return webClient.post().uri(uri)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(idBankAccounts)
                 .retrieve()
                 .bodyToFlux(MovementDto.class);
     }
 
+
+    /**
+     * Asks for NDJSON so the movements of a long range are decoded one line at a time; a backend answering
+     * with a JSON array is still decoded element by element.
+     */
     @CircuitBreaker(name = "movementsCircuitBreaker", fallbackMethod = "fallbackAllMovementByRangeDate")
     @TimeLimiter(name = "movementsCircuitBreaker")
     public Flux<MovementDto> getAllMovementsByRangeDate(String from, String to) {
@@ -52,6 +80,7 @@ public class MovementServiceClient {
                 .uri(uriBuilder -> uriBuilder.path("/movements/getAllByRangeDate")
                         .queryParam("from", from)
                         .queryParam("to", to).build())
+                .accept(MediaType.APPLICATION_NDJSON, MediaType.APPLICATION_JSON)
                 .retrieve()
                 .bodyToFlux(MovementDto.class);
     }
@@ -1,6 +1,7 @@
 package com.bank.appbank.client;
 
 import com.bank.appbank.dto.PaymentDto;
+import com.bank.appbank.dto.PaymentsInMonthDto;
 import com.bank.appbank.exceptions.ServiceNotAvailableException;
 import com.bank.appbank.exceptions.UnsupportedMovementException;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
@@ -17,7 +18,9 @@ import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 @Service
 public class PaymentServiceClient {
@@ -25,17 +28,21 @@ public class PaymentServiceClient {
     private final String messageError = "The payment service is not available.";
     private final static Logger log = LoggerFactory.getLogger(PaymentServiceClient.class);
     private final WebClient webClient;
+    private final HistoryCache historyCache;
 
-    public PaymentServiceClient(WebClient.Builder webClient) {
+    public PaymentServiceClient(WebClient.Builder webClient, HistoryCache historyCache) {
         this.webClient = webClient.baseUrl("http://movementsmicroservice").build();
+        this.historyCache = historyCache;
     }
 
     @CircuitBreaker(name = "paymentsCircuitBreaker", fallbackMethod = "fallbackFindAllPaymentByIdProduct")
     @TimeLimiter(name = "paymentsCircuitBreaker")
     public Flux<PaymentDto> findAllPaymentByIdProductCreditAndSortByDate(String idProductCredit) {
-        return webClient.get().uri("/payments/getAllByIdProductCredit/{idProductCredit}", idProductCredit)
-                .retrieve()
-                .bodyToFlux(PaymentDto.class);
+        return historyCache.getOrLoad("payments", idProductCredit, PaymentDto.class,
+                payment -> historyCache.isBeforeCurrentMonth(payment.getDatePayment()),
+                () -> webClient.get().uri("/payments/getAllByIdProductCredit/{idProductCredit}", idProductCredit)
+                        .retrieve()
+                        .bodyToFlux(PaymentDto.class));
     }
     @CircuitBreaker(name = "paymentsCircuitBreaker", fallbackMethod = "fallbackLastTenPayments")
     @TimeLimiter(name = "paymentsCircuitBreaker")
@@ -52,10 +59,38 @@ public class PaymentServiceClient {
                 .bodyToMono(new ParameterizedTypeReference<List<PaymentDto>>() {});
     }
 
+    /**
+     * Emits the ids of the given credits that already have a payment for the month, without
+     * downloading their payment histories.
+     */
+    @CircuitBreaker(name = "paymentsCircuitBreaker", fallbackMethod = "fallbackFindCreditsPaidInMonth")
+    @TimeLimiter(name = "paymentsCircuitBreaker")
+    public Mono<Set<String>> findCreditsPaidInMonth(List<String> idProductCredits, int month, int year) {
+        PaymentsInMonthDto paymentsInMonth = PaymentsInMonthDto.builder()
+                .idProductCredits(idProductCredits)
+                .monthCorresponding(month)
+                .yearCorresponding(year)
+                .build();
+        return webClient.post().uri("/payments/idProductCreditsWithPaymentInMonth")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(paymentsInMonth)
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<List<String>>() {})
+                .<Set<String>>map(HashSet::new)
+                .defaultIfEmpty(Set.of());
+    }
+
     public Flux<String> fallbackFindAllPaymentByIdProduct(String idProductCredit, Throwable error) {
         return Flux.error(new ServiceNotAvailableException(messageError));
     }
 
+    public Mono<Set<String>> fallbackFindCreditsPaidInMonth(List<String> idProductCredits,
+                                                            int month,
+                                                            int year,
+                                                            Throwable error) {
+        return Mono.error(new ServiceNotAvailableException(messageError));
+    }
+
     public Mono<String> fallbackLastTenPayments(List<String> idCreditCards, Throwable error) {
         log.error("Error capturado: " + idCreditCards);
         return Mono.error(new ServiceNotAvailableException(messageError));
@@ -0,0 +1,151 @@
+package com.bank.appbank.config;
+
+import com.bank.appbank.model.Client;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Serializer of the cached clients. It writes either the JSON of {@link Jackson2JsonRedisSerializer} or a
+ * compact binary record, and reads both, so the write format can be switched while keys written in the
+ * other one are still alive.
+ *
+ * <p>A binary record is {@code MAGIC, VERSION, flags} followed by the fields of the client in a fixed
+ * order, each a presence byte and a UTF string, and the type of client as its ordinal (-1 for none).
+ * With the LZ4 flag the fields are compressed and preceded by their length. JSON always starts with
+ * {@code '{'}, never with {@code MAGIC}.
+ */
+public class ClientRedisCodec implements RedisSerializer<Client> {
+    public enum Format { JSON, BINARY }
+
+    static final byte MAGIC = (byte) 0xC1;
+    static final byte VERSION = 1;
+    private static final byte FLAG_LZ4 = 1;
+    private static final int HEADER_LENGTH = 3;
+    private static final Client.TypeClient[] TYPES = Client.TypeClient.values();
+
+    private final Jackson2JsonRedisSerializer<Client> jsonSerializer;
+    private final Format writeFormat;
+    private final int lz4MinBytes;
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+    private final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+    /**
+     * @param lz4MinBytes binary records whose fields take at least this many bytes are compressed;
+     *                    0 or less disables the compression
+     */
+    public ClientRedisCodec(ObjectMapper objectMapper, Format writeFormat, int lz4MinBytes) {
+        this.jsonSerializer = new Jackson2JsonRedisSerializer<>(Client.class);
+        this.jsonSerializer.setObjectMapper(objectMapper);
+        this.writeFormat = writeFormat;
+        this.lz4MinBytes = lz4MinBytes;
+    }
+
+    @Override
+    public byte[] serialize(Client client) throws SerializationException {
+        if (client == null) {
+            return new byte[0];
+        }
+        if (writeFormat == Format.JSON) {
+            return jsonSerializer.serialize(client);
+        }
+        byte[] fields = writeFields(client);
+        boolean compress = lz4MinBytes > 0 && fields.length >= lz4MinBytes;
+        ByteBuffer buffer;
+        if (compress) {
+            byte[] compressed = new byte[compressor.maxCompressedLength(fields.length)];
+            int compressedLength = compressor.compress(fields, compressed);
+            buffer = ByteBuffer.allocate(HEADER_LENGTH + Integer.BYTES + compressedLength)
+                    .put(MAGIC).put(VERSION).put(FLAG_LZ4)
+                    .putInt(fields.length)
+                    .put(compressed, 0, compressedLength);
+        } else {
+            buffer = ByteBuffer.allocate(HEADER_LENGTH + fields.length)
+                    .put(MAGIC).put(VERSION).put((byte) 0)
+                    .put(fields);
+        }
+        return buffer.array();
+    }
+
+    @Override
+    public Client deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != MAGIC) {
+            return jsonSerializer.deserialize(bytes);
+        }
+        if (bytes.length < HEADER_LENGTH || bytes[1] != VERSION) {
+            throw new SerializationException("Unsupported client record version: "
+                    + (bytes.length > 1 ? bytes[1] : "none"));
+        }
+        byte[] fields;
+        if ((bytes[2] & FLAG_LZ4) != 0) {
+            int length = ByteBuffer.wrap(bytes, HEADER_LENGTH, Integer.BYTES).getInt();
+            fields = decompressor.decompress(bytes, HEADER_LENGTH + Integer.BYTES, length);
+        } else {
+            fields = Arrays.copyOfRange(bytes, HEADER_LENGTH, bytes.length);
+        }
+        return readFields(fields);
+    }
+
+    private byte[] writeFields(Client client) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            writeString(output, client.getId());
+            writeString(output, client.getIdentity());
+            writeString(output, client.getFullName());
+            writeString(output, client.getTaxId());
+            writeString(output, client.getBusinessName());
+            writeString(output, client.getAddress());
+            writeString(output, client.getPhone());
+            writeString(output, client.getEmail());
+            output.writeByte(client.getTypeClient() == null ? -1 : client.getTypeClient().ordinal());
+        } catch (IOException e) {
+            throw new SerializationException("Could not write client " + client.getId(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private Client readFields(byte[] fields) {
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(fields))) {
+            Client client = new Client();
+            client.setId(readString(input));
+            client.setIdentity(readString(input));
+            client.setFullName(readString(input));
+            client.setTaxId(readString(input));
+            client.setBusinessName(readString(input));
+            client.setAddress(readString(input));
+            client.setPhone(readString(input));
+            client.setEmail(readString(input));
+            byte type = input.readByte();
+            client.setTypeClient(type < 0 ? null : TYPES[type]);
+            return client;
+        } catch (IOException | ArrayIndexOutOfBoundsException e) {
+            throw new SerializationException("Could not read client record", e);
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+}
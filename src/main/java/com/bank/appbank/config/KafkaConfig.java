@@ -4,35 +4,56 @@ import com.fasterxml.jackson.databind.JsonDeserializer;
 import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.*;
+import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
 import org.springframework.kafka.listener.DefaultErrorHandler;
-import org.springframework.util.backoff.FixedBackOff;
+import org.springframework.kafka.support.ExponentialBackOffWithMaxRetries;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
 
 @Configuration
 public class KafkaConfig {
 
+    /**
+     * Events leave through the outbox relay, which sends many at once, so with the {@code throughput}
+     * profile the producer waits {@code lingerMs} to fill batches of {@code batchSize} bytes, compresses
+     * them and is idempotent, keeping the order of each partition across retries. Values are sent as the
+     * JSON bytes so they are not copied into a String first.
+     */
     @Bean
-    public ProducerFactory<String, String> producerFactory() {
+    public ProducerFactory<String, byte[]> producerFactory(
+            @Value("${appbank.kafka.producer.profile:throughput}") String profile,
+            @Value("${appbank.kafka.producer.compression:lz4}") String compression,
+            @Value("${appbank.kafka.producer.linger-ms:10}") int lingerMs,
+            @Value("${appbank.kafka.producer.batch-size:65536}") int batchSize) {
         Map<String, Object> configProps = new HashMap<>();
         configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
         configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        if ("throughput".equals(profile)) {
+            configProps.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compression);
+            configProps.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+            configProps.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+            configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+            configProps.put(ProducerConfig.ACKS_CONFIG, "all");
+        }
         return new DefaultKafkaProducerFactory<>(configProps);
     }
 
     @Bean
-    public KafkaTemplate<String, String> template() {
-        return new KafkaTemplate<>(producerFactory());
+    public KafkaTemplate<String, byte[]> template(ProducerFactory<String, byte[]> producerFactory) {
+        return new KafkaTemplate<>(producerFactory);
     }
 
     @Bean
@@ -53,4 +74,55 @@ public class KafkaConfig {
         return factory;
     }
 
+    /**
+     * Failed polls are dead-lettered with the String values they were read with, so they get their own
+     * template instead of the byte[] one of the outbox.
+     */
+    @Bean
+    public KafkaTemplate<String, String> deadLetterTemplate() {
+        Map<String, Object> configProps = new HashMap<>();
+        configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
+        configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        return new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(configProps));
+    }
+
+    /**
+     * Hands the listener polls of up to {@code maxRecords} and commits their offsets only after the
+     * listener returns. A poll the listener throws back is retried whole, see {@link #batchErrorHandler}.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, String> batchKafkaListenerContainerFactory(
+            @Value("${appbank.payments.batch.max-records:500}") int maxRecords,
+            KafkaTemplate<String, String> deadLetterTemplate,
+            @Value("${appbank.payments.batch.retry.initial-interval-ms:1000}") long initialIntervalMs,
+            @Value("${appbank.payments.batch.retry.max-interval-ms:60000}") long maxIntervalMs,
+            @Value("${appbank.payments.batch.retry.max-retries:10}") int maxRetries) {
+        ConcurrentKafkaListenerContainerFactory<String, String> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        Properties consumerProperties = new Properties();
+        consumerProperties.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(maxRecords));
+        factory.getContainerProperties().setKafkaConsumerProperties(consumerProperties);
+        factory.setCommonErrorHandler(
+                batchErrorHandler(deadLetterTemplate, initialIntervalMs, maxIntervalMs, maxRetries));
+        return factory;
+    }
+
+    /**
+     * Retries a failed poll with an exponential backoff capped at {@code maxIntervalMs}, keeping the
+     * consumer paused meanwhile, and publishes each of its records to {@code <topic>.DLT} once the retries
+     * run out, so its offsets are only committed past records that are kept somewhere. The listeners of
+     * these polls apply them idempotently, which makes the retries safe.
+     */
+    DefaultErrorHandler batchErrorHandler(KafkaOperations<String, String> deadLetterTemplate,
+                                          long initialIntervalMs, long maxIntervalMs, int maxRetries) {
+        ExponentialBackOffWithMaxRetries backOff = new ExponentialBackOffWithMaxRetries(maxRetries);
+        backOff.setInitialInterval(initialIntervalMs);
+        backOff.setMaxInterval(maxIntervalMs);
+        return new DefaultErrorHandler(new DeadLetterPublishingRecoverer(deadLetterTemplate), backOff);
+    }
+
 }
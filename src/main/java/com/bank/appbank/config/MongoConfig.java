@@ -1,26 +1,48 @@
 package com.bank.appbank.config;
 
+import com.bank.appbank.model.CreditCard;
+import com.bank.appbank.model.DailyBalance;
+import com.bank.appbank.model.OutboxEvent;
+import com.bank.appbank.repository.DailyBalanceRepository;
 import com.bank.appbank.utils.Converters;
 import com.mongodb.reactivestreams.client.MongoClient;
 import com.mongodb.reactivestreams.client.MongoClients;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.config.AbstractReactiveMongoConfiguration;
 import org.springframework.data.mongodb.config.EnableReactiveMongoAuditing;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
 import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexField;
+import org.springframework.data.mongodb.core.index.ReactiveIndexOperations;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
 
 @Configuration
 @EnableReactiveMongoAuditing
 public class MongoConfig extends AbstractReactiveMongoConfiguration {
+    private static final Logger log = LoggerFactory.getLogger(MongoConfig.class);
+    private static final List<String> DAILY_BALANCE_COVERED_KEYS = List.of("idBankProduct", "date", "balance");
+    private static final List<String> DAILY_BALANCE_UNIQUE_KEYS = List.of("idBankProduct", "date");
+    private static final List<String> CREDIT_CARD_BILLING_KEYS = List.of("numberBillingDate");
+    private static final List<String> CREDIT_CARD_OVERDUE_KEYS = List.of("dueDate", "totalDebt");
+    private static final List<String> OUTBOX_ORDER_KEYS = List.of("createdAt", "_id");
 
     @Value("${spring.data.mongodb.uri}")
     private String mongoUri;
 
+    @Value("${appbank.mongo.create-indexes:true}")
+    private boolean createIndexes;
+
     @Override
     protected String getDatabaseName() {
         return "bank-products";
@@ -43,4 +65,83 @@ public class MongoConfig extends AbstractReactiveMongoConfiguration {
     public MongoClient reactiveMongoClient() {
         return MongoClients.create(mongoUri);
     }
+
+    /**
+     * Range reads of daily balances filter by product and date and only need the balance, so the
+     * compound index (idBankProduct, date, balance) serves them as covered queries. The unique
+     * (idBankProduct, date) index is the key of the snapshot upserts; before creating it the days repeated
+     * by older snapshots are reduced to their newest row. The application does not start while any of
+     * them is missing.
+     */
+    @Bean
+    public ApplicationRunner dailyBalanceIndexes(ReactiveMongoTemplate reactiveMongoTemplate,
+                                                 DailyBalanceRepository dailyBalanceRepository) {
+        return args -> {
+            ReactiveIndexOperations indexOperations = reactiveMongoTemplate.indexOps(DailyBalance.class);
+            ensureAndVerifyIndex(indexOperations, "daily_balances", "idBankProduct_date_balance",
+                    DAILY_BALANCE_COVERED_KEYS, false);
+            if (createIndexes && !indexExists(indexOperations, DAILY_BALANCE_UNIQUE_KEYS, true)) {
+                Long removed = dailyBalanceRepository.removeDuplicates().block();
+                if (removed != null && removed > 0) {
+                    log.warn("Removed {} repeated daily balances before creating the unique index", removed);
+                }
+            }
+            ensureAndVerifyIndex(indexOperations, "daily_balances", "idBankProduct_date_unique",
+                    DAILY_BALANCE_UNIQUE_KEYS, true);
+        };
+    }
+
+    /**
+     * The nightly billing looks up the cards that bill today or are overdue; each branch of that $or has
+     * its own index so the scan does not touch the rest of the cards.
+     */
+    @Bean
+    public ApplicationRunner creditCardBillingIndexes(ReactiveMongoTemplate reactiveMongoTemplate) {
+        return args -> {
+            ReactiveIndexOperations indexOperations = reactiveMongoTemplate.indexOps(CreditCard.class);
+            ensureAndVerifyIndex(indexOperations, "credit_cards", "numberBillingDate",
+                    CREDIT_CARD_BILLING_KEYS, false);
+            ensureAndVerifyIndex(indexOperations, "credit_cards", "dueDate_totalDebt",
+                    CREDIT_CARD_OVERDUE_KEYS, false);
+        };
+    }
+
+    /**
+     * The outbox relay reads the oldest events first.
+     */
+    @Bean
+    public ApplicationRunner outboxIndexes(ReactiveMongoTemplate reactiveMongoTemplate) {
+        return args -> ensureAndVerifyIndex(reactiveMongoTemplate.indexOps(OutboxEvent.class), "outbox_events",
+                "createdAt_id", OUTBOX_ORDER_KEYS, false);
+    }
+
+    private void ensureAndVerifyIndex(ReactiveIndexOperations indexOperations,
+                                      String collection,
+                                      String name,
+                                      List<String> keys,
+                                      boolean unique) {
+        if (createIndexes) {
+            Index index = new Index().named(name);
+            keys.forEach(key -> index.on(key, Sort.Direction.ASC));
+            if (unique) {
+                index.unique();
+            }
+            indexOperations.ensureIndex(index).block();
+        }
+        if (!indexExists(indexOperations, keys, unique)) {
+            String message = "Missing " + (unique ? "unique " : "") + "index " + keys + " in collection " + collection;
+            log.error(message);
+            throw new IllegalStateException(message);
+        }
+        log.info("Index {} verified in collection {}", name, collection);
+    }
+
+    private boolean indexExists(ReactiveIndexOperations indexOperations, List<String> keys, boolean unique) {
+        return Boolean.TRUE.equals(indexOperations.getIndexInfo()
+                .any(indexInfo -> indexInfo.isUnique() == unique && indexInfo.getIndexFields().stream()
+                        .map(IndexField::getKey)
+                        .collect(Collectors.toList())
+                        .equals(keys))
+                .block());
+    }
 }
@@ -0,0 +1,58 @@
+package com.bank.appbank.config;
+
+import com.mongodb.MongoException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.ReactiveMongoTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * Runs a unit of work in a multi-document transaction when {@code appbank.mongo.transactions} is
+ * enabled, which needs Mongo running as a replica set. Otherwise the work runs as it is, one write after
+ * the other.
+ */
+@Component
+public class MongoTransactions {
+    private final TransactionalOperator transactionalOperator;
+    private final long retries;
+
+    public MongoTransactions(ReactiveMongoDatabaseFactory databaseFactory,
+                             @Value("${appbank.mongo.transactions:false}") boolean enabled,
+                             @Value("${appbank.mongo.transaction-retries:3}") long retries) {
+        this.transactionalOperator = enabled
+                ? TransactionalOperator.create(new ReactiveMongoTransactionManager(databaseFactory))
+                : null;
+        this.retries = retries;
+    }
+
+    public boolean isEnabled() {
+        return transactionalOperator != null;
+    }
+
+    /**
+     * The work is subscribed again on a transient transaction error, so it has to be lazy.
+     */
+    public <T> Mono<T> execute(Mono<T> work) {
+        if (transactionalOperator == null) {
+            return work;
+        }
+        return transactionalOperator.transactional(work)
+                .retryWhen(Retry.max(retries).filter(this::isTransient));
+    }
+
+    /**
+     * The template wraps driver errors, so the label is looked up along the causes.
+     */
+    private boolean isTransient(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoException
+                    && ((MongoException) cause).hasErrorLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
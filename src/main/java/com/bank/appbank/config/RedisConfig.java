@@ -2,22 +2,28 @@ package com.bank.appbank.config;
 
 import com.bank.appbank.model.Client;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
-import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 @Configuration
 public class RedisConfig {
 
+    /**
+     * The cached clients are read in both formats; {@code appbank.client-cache.write-format} only chooses
+     * how they are written, so it can be changed with a rolling deploy.
+     */
     @Bean
-    public ReactiveRedisTemplate<String, Client> clientRedisTemplate(ReactiveRedisConnectionFactory factory,
-                                                                     ObjectMapper objectMapper) {
-        Jackson2JsonRedisSerializer<Client> serializer = new Jackson2JsonRedisSerializer<>(Client.class);
-        serializer.setObjectMapper(objectMapper);
+    public ReactiveRedisTemplate<String, Client> clientRedisTemplate(
+            ReactiveRedisConnectionFactory factory,
+            ObjectMapper objectMapper,
+            @Value("${appbank.client-cache.write-format:JSON}") ClientRedisCodec.Format writeFormat,
+            @Value("${appbank.client-cache.lz4-min-bytes:0}") int lz4MinBytes) {
+        ClientRedisCodec serializer = new ClientRedisCodec(objectMapper, writeFormat, lz4MinBytes);
 
         RedisSerializationContext<String, Client> serializationContext =
                 RedisSerializationContext.<String, Client>newSerializationContext(new StringRedisSerializer())
@@ -1,16 +1,137 @@
 package com.bank.appbank.config;
 
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.HttpClientRequest;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @Configuration
 public class WebClientConfig {
 
+    /**
+     * Pool shared by every client of the builder. A request waiting for a connection fails after
+     * {@code pending-acquire-timeout-ms} instead of the 45 seconds of the default pool, and idle
+     * connections are evicted in the background before the backends or a proxy close them.
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider connectionProvider(
+            @Value("${appbank.webclient.pool.max-connections:200}") int maxConnections,
+            @Value("${appbank.webclient.pool.pending-acquire-max-count:1000}") int pendingAcquireMaxCount,
+            @Value("${appbank.webclient.pool.pending-acquire-timeout-ms:2000}") long pendingAcquireTimeoutMs,
+            @Value("${appbank.webclient.pool.max-idle-time-ms:30000}") long maxIdleTimeMs,
+            @Value("${appbank.webclient.pool.max-life-time-ms:300000}") long maxLifeTimeMs,
+            @Value("${appbank.webclient.pool.evict-interval-ms:10000}") long evictIntervalMs) {
+        return ConnectionProvider.builder("appbank-webclient")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofMillis(maxIdleTimeMs))
+                .maxLifeTime(Duration.ofMillis(maxLifeTimeMs))
+                .evictInBackground(Duration.ofMillis(evictIntervalMs))
+                .metrics(true)
+                .build();
+    }
+
+    /**
+     * Protocols are a comma separated list of {@link HttpProtocol}, e.g. {@code H2C,HTTP11} to upgrade to
+     * cleartext HTTP/2 where the backend supports it.
+     */
+    @Bean
+    public HttpClient httpClient(
+            ConnectionProvider connectionProvider,
+            @Value("${appbank.webclient.protocols:HTTP11}") String protocols,
+            @Value("${appbank.webclient.connect-timeout-ms:2000}") int connectTimeoutMs) {
+        return HttpClient.create(connectionProvider)
+                .protocol(Arrays.stream(protocols.split(","))
+                        .map(String::trim)
+                        .map(HttpProtocol::valueOf)
+                        .toArray(HttpProtocol[]::new))
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .compress(true)
+                .metrics(true, WebClientConfig::routeOf);
+    }
+
+    /**
+     * Response timeouts are given per path prefix, as in {@code /consumptions=10000,/movements=5000}; the
+     * longest matching prefix wins over the default.
+     */
     @Bean
     @LoadBalanced
-    public WebClient.Builder webClientBuilder() {
-        return WebClient.builder();
+    public WebClient.Builder webClientBuilder(
+            HttpClient httpClient,
+            @Value("${appbank.webclient.response-timeout-ms:5000}") long responseTimeoutMs,
+            @Value("${appbank.webclient.route-response-timeouts:}") String routeResponseTimeouts) {
+        return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .filter(responseTimeouts(Duration.ofMillis(responseTimeoutMs),
+                        parseRouteTimeouts(routeResponseTimeouts)));
+    }
+
+    static ExchangeFilterFunction responseTimeouts(Duration defaultTimeout, Map<String, Duration> routeTimeouts) {
+        return (request, next) -> {
+            Duration timeout = timeoutOf(request.url().getPath(), defaultTimeout, routeTimeouts);
+            return next.exchange(ClientRequest.from(request)
+                    .httpRequest(httpRequest -> {
+                        Object nativeRequest = httpRequest.getNativeRequest();
+                        if (nativeRequest instanceof HttpClientRequest) {
+                            ((HttpClientRequest) nativeRequest).responseTimeout(timeout);
+                        }
+                    })
+                    .build());
+        };
+    }
+
+    static Map<String, Duration> parseRouteTimeouts(String routeTimeouts) {
+        Map<String, Duration> timeouts = new LinkedHashMap<>();
+        for (String route : routeTimeouts.split(",")) {
+            if (route.isBlank()) {
+                continue;
+            }
+            String[] prefixAndMillis = route.split("=");
+            if (prefixAndMillis.length != 2) {
+                throw new IllegalArgumentException("Route timeout must be <path prefix>=<millis>: " + route);
+            }
+            timeouts.put(prefixAndMillis[0].trim(), Duration.ofMillis(Long.parseLong(prefixAndMillis[1].trim())));
+        }
+        return timeouts;
+    }
+
+    private static Duration timeoutOf(String path, Duration defaultTimeout, Map<String, Duration> routeTimeouts) {
+        String matched = null;
+        for (String prefix : routeTimeouts.keySet()) {
+            if (path.startsWith(prefix) && (matched == null || prefix.length() > matched.length())) {
+                matched = prefix;
+            }
+        }
+        return matched == null ? defaultTimeout : routeTimeouts.get(matched);
+    }
+
+    /**
+     * Keeps the first path segment as the uri tag of the client metrics, so ids and query strings do not
+     * create a meter per request.
+     */
+    static String routeOf(String uri) {
+        String path = uri.split("\\?", 2)[0];
+        int scheme = path.indexOf("://");
+        if (scheme >= 0) {
+            int start = path.indexOf('/', scheme + 3);
+            path = start < 0 ? "/" : path.substring(start);
+        }
+        int second = path.indexOf('/', 1);
+        return second < 0 ? path : path.substring(0, second);
     }
 }
@@ -0,0 +1,18 @@
+package com.bank.appbank.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BillConsumptionsDto {
+    private List<String> idConsumptions;
+    private Integer billingMonth;
+    private Integer billingYear;
+}
@@ -0,0 +1,70 @@
+package com.bank.appbank.event.consumer;
+
+import com.bank.appbank.model.BankProduct;
+import com.bank.appbank.repository.CreditCardRepository;
+import com.bank.appbank.repository.CreditRepository;
+import com.bank.appbank.service.ClientStandingService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * Recomputes the standing of a client when a payment or consumption changes the debt of one of its
+ * credits or credit cards.
+ */
+@Service
+public class ClientStandingConsumer {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientStandingConsumer.class);
+    private final ClientStandingService clientStandingService;
+    private final CreditRepository creditRepository;
+    private final CreditCardRepository creditCardRepository;
+    private final ObjectMapper objectMapper;
+
+    public ClientStandingConsumer(ClientStandingService clientStandingService,
+                                  CreditRepository creditRepository,
+                                  CreditCardRepository creditCardRepository,
+                                  ObjectMapper objectMapper) {
+        this.clientStandingService = clientStandingService;
+        this.creditRepository = creditRepository;
+        this.creditCardRepository = creditCardRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Waits for the refresh before the offset is committed. If the standing can not be recomputed it is
+     * deleted instead, so the next validation of the client recomputes it rather than reading the old one;
+     * an error finding the product is left to the container to retry.
+     */
+    @KafkaListener(topics = "#{'${appbank.standing.topics:payment-created,consumption-created}'.split(',')}",
+            groupId = "appbank-group")
+    public void listenDebtChange(String message) {
+        try {
+            JsonNode json = objectMapper.readTree(message);
+            String idProduct = json.hasNonNull("idProductCredit")
+                    ? json.get("idProductCredit").asText()
+                    : json.path("idCreditCard").asText(null);
+            if (idProduct == null) {
+                return;
+            }
+            Mono.<BankProduct>from(creditRepository.findById(idProduct))
+                    .switchIfEmpty(Mono.defer(() -> creditCardRepository.findById(idProduct)))
+                    .map(BankProduct::getIdClient)
+                    .flatMap(idClient -> clientStandingService.refresh(idClient)
+                            .then()
+                            .onErrorResume(error -> {
+                                log.error("Error refreshing the standing for product {}: {}",
+                                        idProduct, error.getMessage());
+                                return clientStandingService.invalidate(idClient);
+                            }))
+                    .block();
+        } catch (JsonProcessingException e) {
+            log.error("Error deserializing message in client standing: {}", e.getMessage(), e);
+        }
+    }
+}
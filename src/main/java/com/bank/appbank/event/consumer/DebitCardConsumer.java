@@ -2,87 +2,132 @@ package com.bank.appbank.event.consumer;
 
 import com.bank.appbank.model.MovementWallet;
 import com.bank.appbank.dto.ResponseAssociationWalletDto;
+import com.bank.appbank.event.producer.DebitCardProducer;
+import com.bank.appbank.event.schema.EventSchemas;
+import com.bank.appbank.event.schema.WalletAssociationRequested;
 import com.bank.appbank.service.DebitCardService;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 @Service
 public class DebitCardConsumer {
 
     private static final Logger log = LoggerFactory.getLogger(DebitCardConsumer.class);
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    private static final Duration publishBackoff = Duration.ofMillis(200);
+    private final DebitCardProducer debitCardProducer;
     private final DebitCardService debitCardService;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final EventSchemas eventSchemas;
 
-    public DebitCardConsumer(KafkaTemplate<String, String> kafkaTemplate,
-                             DebitCardService debitCardService) {
-        this.kafkaTemplate = kafkaTemplate;
+    private final KeyedLanes<WalletPayment> paymentLanes;
+    private final boolean netting;
+    private final long publishRetries;
+
+    public DebitCardConsumer(DebitCardProducer debitCardProducer,
+                             DebitCardService debitCardService,
+                             EventSchemas eventSchemas,
+                             @Value("${appbank.payments.lanes:16}") int lanes,
+                             @Value("${appbank.payments.netting:true}") boolean netting,
+                             @Value("${appbank.payments.association-publish-retries:5}") long publishRetries) {
+        this.debitCardProducer = debitCardProducer;
         this.debitCardService = debitCardService;
+        this.eventSchemas = eventSchemas;
+        this.paymentLanes = new KeyedLanes<>(WalletPayment::getKey, lanes);
+        this.netting = netting;
+        this.publishRetries = publishRetries;
     }
 
-    @KafkaListener(topics = "wallet-debit-card-association", groupId = "appbank-group")
+    /**
+     * Waits on the listener thread until the response is acknowledged. A failed send is retried here with
+     * the same response, so the request is validated once; only when those retries run out is the error
+     * thrown back to the container, and the validation run again answers the same for the same wallet.
+     */
+    @KafkaListener(topics = WalletAssociationRequested.TOPIC, groupId = "appbank-group")
     public void listenAssociationRequest(String message) {
-        try {
-            JsonNode json = objectMapper.readTree(message);
-            String idWallet = json.get("idWallet").asText();
-            String idDebitCard = json.get("idDebitCard").asText();
-
-            log.info("Association received: " + message);
-            debitCardService.validAssociationWalletToDebitCard(idWallet, idDebitCard)
-                    .doOnError(error -> {
-                        ResponseAssociationWalletDto response = ResponseAssociationWalletDto.builder()
-                                .idWallet(idWallet)
-                                .idDebitCard(idDebitCard)
-                                .state("REJECTED")
-                                .balance(0.0)
-                                .idMessage(UUID.randomUUID().toString())
-                                .observation(error.getMessage()).build();
-                        kafkaTemplate.send("wallet-debit-card-response", serializeMessage(response));
-
-                    })
-                    .doOnSuccess(response -> {
-                        response.setIdMessage(UUID.randomUUID().toString());
-                        log.info("Valid association: " + idWallet + "-" + idDebitCard);
-                        kafkaTemplate.send("wallet-debit-card-response", serializeMessage(response));
-                    })
-                    .subscribe();
+        WalletAssociationRequested request = eventSchemas.read(WalletAssociationRequested.TOPIC, message);
+        String idWallet = request.getIdWallet();
+        String idDebitCard = request.getIdDebitCard();
 
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        log.info("Association received: " + message);
+        debitCardService.validAssociationWalletToDebitCard(idWallet, idDebitCard)
+                .doOnNext(response -> log.info("Valid association: " + idWallet + "-" + idDebitCard))
+                .onErrorResume(error -> Mono.just(ResponseAssociationWalletDto.builder()
+                        .idWallet(idWallet)
+                        .idDebitCard(idDebitCard)
+                        .state("REJECTED")
+                        .balance(0.0)
+                        .observation(error.getMessage()).build()))
+                .flatMap(response -> {
+                    response.setIdMessage(UUID.randomUUID().toString());
+                    return Mono.defer(() -> debitCardProducer.publishAssociationResponse(response))
+                            .retryWhen(Retry.backoff(publishRetries, publishBackoff));
+                })
+                .block();
     }
 
-    @KafkaListener(topics = "payment-with-debit-card", groupId = "appbank-group")
-    public void listenerPaymentWithDebitCard(String message) {
-        try {
-            List<MovementWallet> movements = objectMapper.readValue(
-                    message, new TypeReference<List<MovementWallet>>() {});
-            debitCardService.paymentWalletWithDebitCard(movements)
-                    .subscribe();
-        } catch (Exception e) {
-            log.error("Error deserializing message in Payment wallet with debit card: {}", e.getMessage(), e);
+    /**
+     * Receives the whole poll and the container commits its offsets once every write has finished. With
+     * netting the poll is applied as one batch of balance changes, and a batch that did not finish is
+     * thrown back to the container so the poll is delivered and applied again; otherwise the payments of a
+     * debit card are applied one by one in order, those of different cards in parallel.
+     */
+    @KafkaListener(topics = EventSchemas.PAYMENT_WITH_DEBIT_CARD, groupId = "appbank-group",
+            containerFactory = "batchKafkaListenerContainerFactory")
+    public void listenerPaymentWithDebitCard(List<ConsumerRecord<String, String>> records) {
+        List<WalletPayment> payments = new ArrayList<>();
+        for (ConsumerRecord<String, String> record : records) {
+            try {
+                List<MovementWallet> movements = eventSchemas.read(record.topic(), record.value());
+                String key = record.key() != null ? record.key() : movements.get(0).getIdDebitCard();
+                payments.add(new WalletPayment(key, movements));
+            } catch (Exception e) {
+                log.error("Error deserializing message in Payment wallet with debit card: {}", e.getMessage(), e);
+            }
+        }
+        if (netting) {
+            debitCardService.paymentsWalletWithDebitCard(payments.stream()
+                            .map(WalletPayment::getMovements)
+                            .collect(Collectors.toList()))
+                    .doOnError(error -> log.error("Error processing a batch of wallet payments: {}",
+                            error.getMessage()))
+                    .block();
+            return;
         }
+        paymentLanes.run(payments, payment -> debitCardService.paymentWalletWithDebitCard(payment.getMovements())
+                .onErrorResume(error -> {
+                    log.error("Error processing the wallet payment of {}: {}", payment.getKey(), error.getMessage());
+                    return Mono.empty();
+                }))
+                .block();
     }
 
 
-    public String serializeMessage(Object message) {
-        try {
-            return objectMapper.writeValueAsString(message);
-        } catch (JsonProcessingException e) {
-            log.error("ERROR in serialized json: " + e.getMessage());
-            throw new RuntimeException("ERROR in serialized json: " + e.getMessage());
+    private static final class WalletPayment {
+        private final String key;
+        private final List<MovementWallet> movements;
+
+        private WalletPayment(String key, List<MovementWallet> movements) {
+            this.key = key;
+            this.movements = movements;
         }
-    }
 
+        private String getKey() {
+            return key;
+        }
 
+        private List<MovementWallet> getMovements() {
+            return movements;
+        }
+    }
 }
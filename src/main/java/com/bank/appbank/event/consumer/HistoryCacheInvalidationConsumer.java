@@ -0,0 +1,65 @@
+package com.bank.appbank.event.consumer;
+
+import com.bank.appbank.client.HistoryCache;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Evicts the cached histories of the products touched by a new movement, payment or consumption. Each
+ * instance holds its own in-process cache, so every instance must read every message: the group id has
+ * to be distinct per instance. It is random by default; a deployment with stable instance names can set
+ * {@code appbank.cache.invalidation-group} (e.g. {@code appbank-cache-${HOSTNAME}}) so a restart does not
+ * leave an orphan group behind. A new group starts at the latest offset, since an instance that just
+ * started has nothing local to evict.
+ */
+@Service
+public class HistoryCacheInvalidationConsumer {
+
+    private static final Logger log = LoggerFactory.getLogger(HistoryCacheInvalidationConsumer.class);
+    private static final List<String> PRODUCT_FIELDS =
+            List.of("idProductCredit", "idCreditCard", "idBankAccount", "idBankAccountTransfer");
+    private final HistoryCache historyCache;
+    private final ObjectMapper objectMapper;
+
+    public HistoryCacheInvalidationConsumer(HistoryCache historyCache, ObjectMapper objectMapper) {
+        this.historyCache = historyCache;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Waits for the eviction before the offset is committed, so a message is not acknowledged while the
+     * stale history can still be served.
+     */
+    @KafkaListener(topics = "#{'${appbank.cache.invalidation-topics:movement-created,payment-created,"
+            + "consumption-created}'.split(',')}",
+            groupId = "${appbank.cache.invalidation-group:appbank-cache-${random.uuid}}",
+            properties = "auto.offset.reset=latest")
+    public void listenNewMovement(String message) {
+        try {
+            JsonNode json = objectMapper.readTree(message);
+            List<String> idProducts = PRODUCT_FIELDS.stream()
+                    .map(json::get)
+                    .filter(Objects::nonNull)
+                    .filter(node -> !node.isNull())
+                    .map(JsonNode::asText)
+                    .distinct()
+                    .collect(Collectors.toList());
+            Flux.fromIterable(idProducts)
+                    .concatMap(historyCache::evict)
+                    .then()
+                    .block();
+        } catch (JsonProcessingException e) {
+            log.error("Error deserializing message in history cache invalidation: {}", e.getMessage(), e);
+        }
+    }
+}
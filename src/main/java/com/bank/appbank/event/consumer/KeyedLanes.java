@@ -0,0 +1,47 @@
+package com.bank.appbank.event.consumer;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Runs the records of a polled batch in one lane per key: the records of a key one after the other and in
+ * arrival order, different keys in parallel up to {@code concurrency} lanes. A record without key gets a
+ * lane of its own.
+ */
+public class KeyedLanes<T> {
+    private final Function<T, String> keyOf;
+    private final int concurrency;
+
+    public KeyedLanes(Function<T, String> keyOf, int concurrency) {
+        this.keyOf = keyOf;
+        this.concurrency = concurrency;
+    }
+
+    public Mono<Void> run(List<T> records, Function<T, Mono<Void>> work) {
+        return Flux.fromIterable(lanesOf(records))
+                .flatMap(lane -> Flux.fromIterable(lane).concatMap(work), concurrency)
+                .then();
+    }
+
+    private List<List<T>> lanesOf(List<T> records) {
+        Map<String, List<T>> lanes = new LinkedHashMap<>();
+        List<List<T>> withoutKey = new ArrayList<>();
+        for (T record : records) {
+            String key = keyOf.apply(record);
+            if (key == null) {
+                withoutKey.add(List.of(record));
+            } else {
+                lanes.computeIfAbsent(key, k -> new ArrayList<>()).add(record);
+            }
+        }
+        List<List<T>> result = new ArrayList<>(lanes.values());
+        result.addAll(withoutKey);
+        return result;
+    }
+}
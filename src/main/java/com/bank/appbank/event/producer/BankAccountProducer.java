@@ -1,36 +1,23 @@
 package com.bank.appbank.event.producer;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.extern.slf4j.Slf4j;
-import org.springframework.kafka.core.KafkaTemplate;
+import com.bank.appbank.event.schema.BankAccountBalanceUpdated;
 import org.springframework.stereotype.Service;
-
-import java.util.Map;
+import reactor.core.publisher.Mono;
 
 @Service
-@Slf4j
 public class BankAccountProducer {
-    private final KafkaTemplate<String, String> kafkaTemplate;
-    private final ObjectMapper objectMapper;
+    private final Outbox outbox;
 
-    public BankAccountProducer(KafkaTemplate<String, String> kafkaTemplate,
-                               ObjectMapper objectMapper) {
-        this.kafkaTemplate = kafkaTemplate;
-        this.objectMapper = objectMapper;
+    public BankAccountProducer(Outbox outbox) {
+        this.outbox = outbox;
     }
 
-    public void publishBalanceUpdate(String idDebitCard, double newBalance) {
-        try {
-            Map<String, Object> message = Map.of(
-                    "idDebitCard", idDebitCard,
-                    "newBalance", newBalance
-            );
-            String jsonMessage = objectMapper.writeValueAsString(message);
-            kafkaTemplate.send("bank-account-balance-updated", jsonMessage);
-            log.info("Balance update event sent: {}", jsonMessage);
-        } catch (Exception e) {
-            log.error("Error serializing balance update event", e);
-        }
+    public Mono<Void> publishBalanceUpdate(String idDebitCard, double newBalance) {
+        BankAccountBalanceUpdated event = BankAccountBalanceUpdated.builder()
+                .idDebitCard(idDebitCard)
+                .newBalance(newBalance)
+                .build();
+        return outbox.add(BankAccountBalanceUpdated.TOPIC, idDebitCard, event);
     }
 
 }
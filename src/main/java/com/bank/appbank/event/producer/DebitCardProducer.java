@@ -1,36 +1,43 @@
 package com.bank.appbank.event.producer;
 
 
+import com.bank.appbank.dto.ResponseAssociationWalletDto;
 import com.bank.appbank.model.MovementWallet;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.extern.slf4j.Slf4j;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
-import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
-@Slf4j
 public class DebitCardProducer {
 
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    private static final String CONFIRMATION_TOPIC = "payment-with-debit-card-confirmation";
+    private final Outbox outbox;
+    private final EventSender eventSender;
 
-    private final ObjectMapper objectMapper;
+    public DebitCardProducer(Outbox outbox,
+                             EventSender eventSender) {
+        this.outbox = outbox;
+        this.eventSender = eventSender;
+    }
+
+    public Mono<Void> publishConfirmationPaymentDebit(List<MovementWallet> movementsWallet) {
+        return outbox.add(CONFIRMATION_TOPIC, keyOf(movementsWallet), movementsWallet);
+    }
+
+    public Mono<Void> publishConfirmationsPaymentDebit(List<List<MovementWallet>> payments) {
+        return Mono.fromCallable(() -> payments.stream()
+                        .map(movements -> outbox.toOutboxEvent(CONFIRMATION_TOPIC, keyOf(movements), movements))
+                        .collect(Collectors.toList()))
+                .flatMap(outbox::addAll);
+    }
 
-    public DebitCardProducer(KafkaTemplate<String, String> kafkaTemplate,
-                               ObjectMapper objectMapper) {
-        this.kafkaTemplate = kafkaTemplate;
-        this.objectMapper = objectMapper;
+    public Mono<Void> publishAssociationResponse(ResponseAssociationWalletDto response) {
+        return eventSender.send("wallet-debit-card-response", response.getIdDebitCard(), response);
     }
 
-    public void publishConfirmationPaymentDebit(List<MovementWallet> movementsWallet) {
-        try {
-            String jsonMessage = objectMapper.writeValueAsString(movementsWallet);
-            kafkaTemplate.send("payment-with-debit-card-confirmation", jsonMessage);
-            log.info("Movement with debit card confirmation: {}", jsonMessage);
-        } catch (Exception e) {
-            log.error("Error serializing confirmation payment debit with card", e);
-        }
+    private String keyOf(List<MovementWallet> movementsWallet) {
+        return movementsWallet.isEmpty() ? null : movementsWallet.get(0).getIdDebitCard();
     }
 }
@@ -0,0 +1,40 @@
+package com.bank.appbank.event.producer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Sends an event as JSON and completes only once the broker has acknowledged it, so a failed send
+ * reaches the caller instead of being lost in an ignored future.
+ */
+@Component
+@Slf4j
+public class EventSender {
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final ObjectWriter objectWriter;
+
+    public EventSender(KafkaTemplate<String, byte[]> kafkaTemplate,
+                       ObjectMapper objectMapper) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.objectWriter = objectMapper.writer();
+    }
+
+    public Mono<Void> send(String topic, String key, Object event) {
+        return Mono.fromCallable(() -> objectWriter.writeValueAsBytes(event))
+                .onErrorMap(JsonProcessingException.class,
+                        error -> new IllegalStateException("ERROR in serialized json: " + error.getMessage()))
+                .flatMap(json -> sendJson(topic, key, json));
+    }
+
+    public Mono<Void> sendJson(String topic, String key, byte[] json) {
+        return Mono.fromFuture(() -> kafkaTemplate.send(topic, key, json).completable())
+                .doOnSuccess(result -> log.debug("Event sent to {} with key {}", topic, key))
+                .doOnError(error -> log.error("Could not send event to {}: {}", topic, error.getMessage()))
+                .then();
+    }
+}
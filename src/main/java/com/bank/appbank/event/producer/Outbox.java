@@ -0,0 +1,54 @@
+package com.bank.appbank.event.producer;
+
+import com.bank.appbank.model.OutboxEvent;
+import com.bank.appbank.repository.OutboxEventRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.util.List;
+
+/**
+ * Writes events to the outbox collection instead of sending them, so they can be saved together with the
+ * change that raised them and reach Kafka later through {@link OutboxRelay}.
+ */
+@Component
+public class Outbox {
+    private final OutboxEventRepository outboxEventRepository;
+    private final ObjectWriter objectWriter;
+    private final Clock clock;
+
+    public Outbox(OutboxEventRepository outboxEventRepository,
+                  ObjectMapper objectMapper,
+                  Clock clock) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.objectWriter = objectMapper.writer();
+        this.clock = clock;
+    }
+
+    public Mono<Void> add(String topic, String key, Object event) {
+        return Mono.fromCallable(() -> toOutboxEvent(topic, key, event))
+                .flatMap(outboxEventRepository::insert)
+                .then();
+    }
+
+    public Mono<Void> addAll(List<OutboxEvent> events) {
+        return events.isEmpty() ? Mono.empty() : outboxEventRepository.insert(events).then();
+    }
+
+    public OutboxEvent toOutboxEvent(String topic, String key, Object event) {
+        try {
+            return OutboxEvent.builder()
+                    .topic(topic)
+                    .key(key)
+                    .payload(objectWriter.writeValueAsBytes(event))
+                    .createdAt(clock.instant())
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("ERROR in serialized json: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.bank.appbank.event.producer;
+
+import com.bank.appbank.event.consumer.KeyedLanes;
+import com.bank.appbank.model.OutboxEvent;
+import com.bank.appbank.repository.OutboxEventRepository;
+import com.bank.appbank.service.scheduler.JobCoordinator;
+import org.apache.kafka.common.errors.InvalidTopicException;
+import org.apache.kafka.common.errors.RecordBatchTooLargeException;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.errors.SerializationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Drains the outbox to Kafka in batches, oldest first. The events of a key are sent one after the other
+ * and a failed one stops its key, so a key never overtakes itself; different keys are sent in parallel.
+ * A failed key is left out of the following reads for a backoff that doubles with the attempts of its
+ * event, up to {@code appbank.outbox.max-backoff-ms}, so it neither holds back the other keys nor is
+ * retried on every tick. A transient failure, such as a broker that is down, is retried for as long as it
+ * lasts, since the events after it on the key must wait for it. Only an event the broker can never take,
+ * one that does not serialize or is too large, is parked for a manual resend and lets the events after it
+ * on its key go on. An event is removed only after its ack, which makes the delivery at least once. Only
+ * the instance holding the relay lease drains.
+ */
+@Component
+public class OutboxRelay {
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+    private static final String JOB = "outbox-relay";
+    private static final List<Class<? extends Throwable>> POISON_ERRORS = List.of(
+            SerializationException.class,
+            RecordTooLargeException.class,
+            RecordBatchTooLargeException.class,
+            InvalidTopicException.class);
+    private final OutboxEventRepository outboxEventRepository;
+    private final EventSender eventSender;
+    private final JobCoordinator jobCoordinator;
+    private final Clock clock;
+    private final KeyedLanes<OutboxEvent> lanes;
+    private final Map<String, Instant> backedOffKeys = new ConcurrentHashMap<>();
+    private final Map<String, Instant> backedOffIds = new ConcurrentHashMap<>(); // failed events without key
+    private Disposable relay;
+
+    @Value("${appbank.outbox.batch-size:500}")
+    private int batchSize;
+
+    @Value("${appbank.outbox.relay-interval-ms:200}")
+    private long relayIntervalMs;
+
+    @Value("${appbank.outbox.max-backoff-ms:60000}")
+    private long maxBackoffMs;
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository,
+                       EventSender eventSender,
+                       JobCoordinator jobCoordinator,
+                       Clock clock,
+                       @Value("${appbank.outbox.lanes:16}") int lanes) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.eventSender = eventSender;
+        this.jobCoordinator = jobCoordinator;
+        this.clock = clock;
+        this.lanes = new KeyedLanes<>(OutboxEvent::getKey, lanes);
+    }
+
+    @PostConstruct
+    public void startRelay() {
+        relay = Flux.interval(Duration.ofMillis(relayIntervalMs))
+                .onBackpressureDrop()
+                .concatMap(tick -> jobCoordinator.runWhileLeader(JOB, Mono.defer(this::drain))
+                        .onErrorResume(error -> {
+                            log.error("The outbox relay stopped: " + error.getMessage());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stopRelay() {
+        if (relay != null) {
+            relay.dispose();
+        }
+    }
+
+    /**
+     * Relays batches while they come full. Every full batch sends, backs off or parks each event it read,
+     * so the next one reads new events.
+     */
+    public Mono<Void> drain() {
+        return relayBatch()
+                .expand(read -> read == batchSize ? relayBatch() : Mono.empty())
+                .then();
+    }
+
+    private Mono<Integer> relayBatch() {
+        return Mono.defer(() -> outboxEventRepository.findAllByParkedAtIsNullAndKeyNotInAndIdNotIn(
+                        backedOff(backedOffKeys), backedOff(backedOffIds),
+                        PageRequest.of(0, batchSize, Sort.by("createdAt", "id")))
+                .collectList()
+                .flatMap(events -> relay(events).thenReturn(events.size())));
+    }
+
+    private Set<String> backedOff(Map<String, Instant> backoffs) {
+        Instant now = clock.instant();
+        backoffs.values().removeIf(until -> !until.isAfter(now));
+        return Set.copyOf(backoffs.keySet());
+    }
+
+    private Mono<Void> relay(List<OutboxEvent> events) {
+        if (events.isEmpty()) {
+            return Mono.empty();
+        }
+        List<String> sent = new CopyOnWriteArrayList<>();
+        return lanes.run(events, event -> {
+                    if (event.getKey() != null && backedOffKeys.containsKey(event.getKey())) {
+                        return Mono.empty();
+                    }
+                    return eventSender.sendJson(event.getTopic(), event.getKey(), event.getPayload())
+                            .doOnSuccess(ignored -> sent.add(event.getId()))
+                            .onErrorResume(error -> recordFailedSend(event, error));
+                })
+                .then(Mono.defer(() -> outboxEventRepository.deleteAllById(sent)));
+    }
+
+    private Mono<Void> recordFailedSend(OutboxEvent event, Throwable error) {
+        int attempts = event.getAttempts() + 1;
+        Instant now = clock.instant();
+        Instant parkedAt = null;
+        if (isPoison(error)) {
+            // Left out of the reads from now on, so the events after it on its key go on at once
+            parkedAt = now;
+            log.error("Parked outbox event " + event.getId() + " of key " + event.getKey()
+                    + ", the broker can not take it, send it again by hand: " + error.getMessage());
+        } else {
+            long backoffMs = Math.min(relayIntervalMs << Math.min(attempts - 1, 30), maxBackoffMs);
+            if (event.getKey() != null) {
+                backedOffKeys.put(event.getKey(), now.plusMillis(backoffMs));
+            } else {
+                backedOffIds.put(event.getId(), now.plusMillis(backoffMs));
+            }
+        }
+        return outboxEventRepository.recordFailedSend(event.getId(), attempts, parkedAt)
+                .onErrorResume(failed -> {
+                    log.error("Could not record the failed send of outbox event " + event.getId() + ": "
+                            + failed.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Whether the send failed for the event itself, anywhere in the cause chain, and would fail again on
+     * every retry.
+     */
+    static boolean isPoison(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            Throwable current = cause;
+            if (POISON_ERRORS.stream().anyMatch(type -> type.isInstance(current))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
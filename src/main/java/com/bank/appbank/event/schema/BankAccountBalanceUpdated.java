@@ -0,0 +1,20 @@
+package com.bank.appbank.event.schema;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class BankAccountBalanceUpdated implements VersionedEvent {
+    public static final String TOPIC = "bank-account-balance-updated";
+    public static final int VERSION = 1;
+
+    @Builder.Default
+    private int version = VERSION;
+    private String idDebitCard;
+    private Double newBalance;
+}
@@ -0,0 +1,72 @@
+package com.bank.appbank.event.schema;
+
+import com.bank.appbank.model.MovementWallet;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local registry of the payload type of each topic. Messages are bound straight to their class by a reader
+ * built once per topic. Unknown fields are ignored so a producer may add fields before the consumers know
+ * them, and a message with a newer version than the registered one is rejected instead of half read.
+ */
+@Component
+public class EventSchemas {
+    public static final String PAYMENT_WITH_DEBIT_CARD = "payment-with-debit-card";
+    private final ObjectMapper objectMapper;
+    private final Map<String, Schema> schemas = new ConcurrentHashMap<>();
+
+    public EventSchemas(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper.copy().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        register(WalletAssociationRequested.TOPIC, WalletAssociationRequested.class,
+                WalletAssociationRequested.VERSION);
+        register(BankAccountBalanceUpdated.TOPIC, BankAccountBalanceUpdated.class,
+                BankAccountBalanceUpdated.VERSION);
+        register(PAYMENT_WITH_DEBIT_CARD,
+                this.objectMapper.getTypeFactory().constructCollectionType(List.class, MovementWallet.class), 1);
+    }
+
+    public void register(String topic, Class<?> type, int version) {
+        register(topic, objectMapper.constructType(type), version);
+    }
+
+    public void register(String topic, JavaType type, int version) {
+        schemas.put(topic, new Schema(objectMapper.readerFor(type), version));
+    }
+
+    public <T> T read(String topic, String message) {
+        Schema schema = schemas.get(topic);
+        if (schema == null) {
+            throw new IllegalArgumentException("No schema registered for topic " + topic);
+        }
+        T event;
+        try {
+            event = schema.reader.readValue(message);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Message of " + topic + " does not match its schema: "
+                    + e.getMessage(), e);
+        }
+        if (event instanceof VersionedEvent && ((VersionedEvent) event).getVersion() > schema.version) {
+            throw new IllegalArgumentException("Unsupported version " + ((VersionedEvent) event).getVersion()
+                    + " of " + topic + ", supported up to " + schema.version);
+        }
+        return event;
+    }
+
+    private static final class Schema {
+        private final ObjectReader reader;
+        private final int version;
+
+        private Schema(ObjectReader reader, int version) {
+            this.reader = reader;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.bank.appbank.event.schema;
+
+/**
+ * An event whose payload carries the version of its schema. The version only changes on an incompatible
+ * change; adding an optional field keeps it.
+ */
+public interface VersionedEvent {
+    int getVersion();
+}
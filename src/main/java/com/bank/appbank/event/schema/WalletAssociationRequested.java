@@ -0,0 +1,20 @@
+package com.bank.appbank.event.schema;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class WalletAssociationRequested implements VersionedEvent {
+    public static final String TOPIC = "wallet-debit-card-association";
+    public static final int VERSION = 1;
+
+    @Builder.Default
+    private int version = VERSION;
+    private String idWallet;
+    private String idDebitCard;
+}
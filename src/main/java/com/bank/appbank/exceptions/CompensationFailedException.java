@@ -0,0 +1,11 @@
+package com.bank.appbank.exceptions;
+
+/**
+ * A transfer failed half way and the amount could not be given back, so the balances need to be
+ * reconciled by hand.
+ */
+public class CompensationFailedException extends RuntimeException {
+    public CompensationFailedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -1,7 +1,10 @@
 package com.bank.appbank.model;
 
 import com.bank.appbank.dto.MovementDto;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Transient;
@@ -54,6 +57,8 @@ public class BankAccount extends BankProduct {
     private List<String> accountHolders;
     @Transient
     private List<MovementDto> movements;
+    @JsonIgnore
+    private List<AppliedPayment> appliedPayments; // last payments applied to the balance
 
     public BankAccount() {
         createdAt = LocalDateTime.now();
@@ -88,4 +93,13 @@ public class BankAccount extends BankProduct {
     public enum TypeBankAccount {
         SAVING_ACCOUNT, CURRENT_ACCOUNT, FIXED_TERM_ACCOUNT
     }
+
+    @Setter
+    @Getter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class AppliedPayment {
+        private String payment;
+        private Double amount;
+    }
 }
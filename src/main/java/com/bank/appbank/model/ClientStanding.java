@@ -0,0 +1,38 @@
+package com.bank.appbank.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Whether a client has overdue debt, kept up to date so that opening a product does not have to load
+ * every card, credit and payment of the client. The id is the id of the client.
+ */
+@Builder
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "client_standings")
+public class ClientStanding {
+    @Id
+    private String id;
+    private Boolean hasOverdueCard;
+    private Boolean hasOverdueCredit;
+    private LocalDate nextDueDate;
+    private LocalDate computedAt;
+    /**
+     * Bound on the life of the standing, so one that missed a refresh (a lost debt event, a failed
+     * recompute) is not trusted until its next due date.
+     */
+    private Instant expiresAt;
+
+    public boolean hasOverdueDebt() {
+        return Boolean.TRUE.equals(hasOverdueCard) || Boolean.TRUE.equals(hasOverdueCredit);
+    }
+}
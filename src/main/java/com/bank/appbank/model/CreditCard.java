@@ -2,7 +2,10 @@ package com.bank.appbank.model;
 
 import com.bank.appbank.dto.ConsumptionDto;
 import com.bank.appbank.dto.PaymentDto;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Transient;
@@ -44,6 +47,19 @@ public class CreditCard extends BankProduct {
 
     private LocalDate dueDate;
 
+    /**
+     * Date of the last nightly billing that wrote a statement or a penalty to the card; a billing run
+     * repeated for that date leaves the card alone.
+     */
+    private LocalDate lastBilledDate;
+
+    /**
+     * Consumptions added to the debt by the last statement that the movements service has not marked
+     * billed yet; saved with the statement and cleared once they are marked.
+     */
+    @JsonIgnore
+    private PendingBilling pendingBilling;
+
     @CreatedDate
     private LocalDateTime createdAt;
 
@@ -62,4 +78,14 @@ public class CreditCard extends BankProduct {
         this.consumptions = new ArrayList<>();
         this.payments = new ArrayList<>();
     }
+
+    @Setter
+    @Getter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PendingBilling {
+        private List<String> idConsumptions;
+        private Integer billingMonth;
+        private Integer billingYear;
+    }
 }
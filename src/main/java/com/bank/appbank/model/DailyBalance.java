@@ -3,7 +3,6 @@ package com.bank.appbank.model;
 import lombok.Builder;
 import lombok.Data;
 import org.springframework.data.annotation.Id;
-import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDate;
@@ -14,9 +13,12 @@ import java.time.LocalDate;
 public class DailyBalance {
     @Id
     private String id;
-    @Indexed
     private String idBankProduct;
-    @Indexed
     private LocalDate date;
     private Double balance;
+    /**
+     * Set when the snapshot was taken after its day ended (a catch-up or a day resumed late), so the
+     * balance is the one of the moment it was taken, carried back to the day, and not the closing one.
+     */
+    private Boolean carriedForward;
 }
@@ -31,6 +31,7 @@ public class DebitCard {
     @Size(min = 8)
     private String numberCard;
     private Boolean hasWallet;
+    private String idWallet;
 
     @Transient
     private List<BankAccount> bankAccounts;
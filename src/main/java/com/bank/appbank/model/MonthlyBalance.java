@@ -0,0 +1,35 @@
+package com.bank.appbank.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+
+@Builder
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "monthly_balances")
+public class MonthlyBalance {
+    @Id
+    private String id;
+    private String idBankProduct;
+    private Integer year;
+    private Integer month;
+    private Double sumBalance;
+    private Integer countDays;
+    private LocalDate lastDate;
+
+    /**
+     * The id is derived from the product and the period, so the accumulator of a month
+     * is always read by primary key.
+     */
+    public static String idOf(String idBankProduct, YearMonth period) {
+        return idBankProduct + ":" + period;
+    }
+}
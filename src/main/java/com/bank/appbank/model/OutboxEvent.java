@@ -0,0 +1,31 @@
+package com.bank.appbank.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Event waiting to be sent to Kafka. It is written with the change that raised it and removed by the
+ * outbox relay once the broker has acknowledged it. An event the relay could not send after
+ * {@code appbank.outbox.max-attempts} stays parked in the collection until it is sent by hand.
+ */
+@Builder
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "outbox_events")
+public class OutboxEvent {
+    @Id
+    private String id;
+    private String topic;
+    private String key;
+    private byte[] payload;
+    private Instant createdAt;
+    private int attempts; // failed sends
+    private Instant parkedAt; // set when the relay gave up on it
+}
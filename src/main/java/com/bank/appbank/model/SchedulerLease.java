@@ -0,0 +1,28 @@
+package com.bank.appbank.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Lease of a scheduled job. Only the owner can run the job until the lease expires, and a job is not run
+ * again for a date it already completed.
+ */
+@Builder
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "scheduler_leases")
+public class SchedulerLease {
+    @Id
+    private String id;
+    private String owner;
+    private Instant expiresAt;
+    private LocalDate completedDate;
+}
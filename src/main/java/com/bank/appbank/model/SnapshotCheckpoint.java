@@ -0,0 +1,27 @@
+package com.bank.appbank.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDate;
+
+/**
+ * Progress of the daily balance snapshot of one collection: the date being recorded and the last
+ * product _id whose batch was fully written.
+ */
+@Builder
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "snapshot_checkpoints")
+public class SnapshotCheckpoint {
+    @Id
+    private String id;
+    private LocalDate date;
+    private String lastId;
+    private Boolean completed;
+}
@@ -6,7 +6,7 @@ import reactor.core.publisher.Flux;
 import java.time.Instant;
 import java.util.List;
 
-public interface BankAccountRepository extends RepositoryT<BankAccount, String> {
+public interface BankAccountRepository extends RepositoryT<BankAccount, String>, BankAccountRepositoryCustom {
     Flux<BankAccount> findAllByIdClient(String idClient);
     Flux<BankAccount> findAllByCreatedAtBetween(Instant from, Instant to);
     Flux<BankAccount> findByIdIn(List<String> idsBankAccount);
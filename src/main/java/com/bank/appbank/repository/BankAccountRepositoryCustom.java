@@ -0,0 +1,38 @@
+package com.bank.appbank.repository;
+
+import com.bank.appbank.model.BankAccount;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.Set;
+
+public interface BankAccountRepositoryCustom {
+    /**
+     * Adds {@code amount} to the balance of the account in a single conditional update and returns the
+     * updated account. A debit only applies while the balance covers it, so the result is empty when the
+     * account does not exist or has not enough funds.
+     */
+    Mono<BankAccount> addToBalance(String idBankAccount, double amount);
+
+    /**
+     * Adds the payments of each account to its balance in one unordered bulk write, one update per account
+     * with the net of its payments and the same condition on debits as {@link #addToBalance}, and records
+     * each payment and its amount in {@link BankAccount#getAppliedPayments()}. An account that already
+     * recorded any of its payments is left unchanged, so payments delivered again, alone or with other
+     * ones, are never added twice. Returns the accounts that were left without their payments; when the
+     * bulk write fails they are looked up, and the error is only propagated if that lookup fails too.
+     */
+    Mono<Set<String>> addToBalances(Map<String, Map<String, Double>> paymentsByAccount);
+
+    /**
+     * Takes back the amount of a payment recorded on the account and forgets the payment. Returns false
+     * when the account did not record it.
+     */
+    Mono<Boolean> revertPayment(String idBankAccount, String payment);
+
+    /**
+     * Ids of the accounts after {@code lastId} in _id order, or from the first one when it is null.
+     */
+    Flux<BankAccount> findIdsAfter(String lastId);
+}
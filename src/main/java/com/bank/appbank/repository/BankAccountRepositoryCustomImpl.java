@@ -0,0 +1,131 @@
+package com.bank.appbank.repository;
+
+import com.bank.appbank.model.BankAccount;
+import com.bank.appbank.utils.Numbers;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class BankAccountRepositoryCustomImpl implements BankAccountRepositoryCustom {
+    private static final String appliedPaymentsField = "appliedPayments";
+    private static final int keptAppliedPayments = 256;
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public BankAccountRepositoryCustomImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Mono<BankAccount> addToBalance(String idBankAccount, double amount) {
+        Criteria criteria = Criteria.where("_id").is(idBankAccount);
+        if (amount < 0) {
+            criteria = criteria.and("balance").gte(-amount);
+        }
+        // Same as an $inc, rounded on the server to the two decimals the services keep in the balance
+        AggregationUpdate update = AggregationUpdate.update()
+                .set("balance")
+                .toValue(ArithmeticOperators.Round.roundValueOf(
+                        ArithmeticOperators.Add.valueOf("balance").add(amount)).place(2));
+        return mongoTemplate.findAndModify(new Query(criteria), update,
+                FindAndModifyOptions.options().returnNew(true), BankAccount.class);
+    }
+
+    @Override
+    public Mono<Set<String>> addToBalances(Map<String, Map<String, Double>> paymentsByAccount) {
+        if (paymentsByAccount.isEmpty()) {
+            return Mono.just(Set.of());
+        }
+        List<UpdateOneModel<Document>> updates = paymentsByAccount.entrySet().stream()
+                .map(entry -> toAddModel(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(BankAccount.class))
+                .flatMap(collection -> Mono.from(collection.bulkWrite(updates, new BulkWriteOptions().ordered(false))))
+                .map(result -> result.getMatchedCount() == updates.size())
+                // Part of an unordered bulk may have been applied, the payments recorded on the accounts tell
+                .onErrorResume(error -> Mono.just(false))
+                .flatMap(allMatched -> allMatched
+                        ? Mono.just(Set.<String>of())
+                        : findWithoutPayments(paymentsByAccount));
+    }
+
+    @Override
+    public Mono<Boolean> revertPayment(String idBankAccount, String payment) {
+        Bson filter = Filters.and(
+                Filters.eq("_id", mongoTemplate.getConverter().convertId(idBankAccount, ObjectId.class)),
+                Filters.eq(appliedPaymentsField + ".payment", payment));
+        Document applied = new Document("$arrayElemAt", List.of(new Document("$filter",
+                new Document("input", "$" + appliedPaymentsField)
+                        .append("cond", new Document("$eq", List.of("$$this.payment", payment)))), 0));
+        Document balance = new Document("$let", new Document("vars", new Document("applied", applied))
+                .append("in", new Document("$round",
+                        List.of(new Document("$subtract", List.of("$balance", "$$applied.amount")), 2))));
+        Document appliedPayments = new Document("$filter", new Document("input", "$" + appliedPaymentsField)
+                .append("cond", new Document("$ne", List.of("$$this.payment", payment))));
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(BankAccount.class))
+                .flatMap(collection -> Mono.from(collection.updateOne(filter, List.of(new Document("$set",
+                        new Document("balance", balance).append(appliedPaymentsField, appliedPayments))))))
+                .map(result -> result.getModifiedCount() > 0);
+    }
+
+    /**
+     * Every applied update records its payments on its account, so the accounts still missing any of them
+     * are those whose condition did not match or whose write failed.
+     */
+    private Mono<Set<String>> findWithoutPayments(Map<String, Map<String, Double>> paymentsByAccount) {
+        Query query = new Query(Criteria.where("_id").in(paymentsByAccount.keySet()));
+        query.fields().include(appliedPaymentsField);
+        return mongoTemplate.find(query, BankAccount.class)
+                .filter(account -> account.getAppliedPayments() != null && account.getAppliedPayments().stream()
+                        .map(BankAccount.AppliedPayment::getPayment)
+                        .collect(Collectors.toSet())
+                        .containsAll(paymentsByAccount.get(account.getId()).keySet()))
+                .map(BankAccount::getId)
+                .collect(Collectors.toSet())
+                .map(applied -> paymentsByAccount.keySet().stream()
+                        .filter(id -> !applied.contains(id))
+                        .collect(Collectors.toSet()));
+    }
+
+    private UpdateOneModel<Document> toAddModel(String idBankAccount, Map<String, Double> payments) {
+        double amount = Numbers.round(payments.values().stream().mapToDouble(Double::doubleValue).sum());
+        Bson filter = Filters.and(
+                Filters.eq("_id", mongoTemplate.getConverter().convertId(idBankAccount, ObjectId.class)),
+                Filters.nin(appliedPaymentsField + ".payment", payments.keySet()));
+        if (amount < 0) {
+            filter = Filters.and(filter, Filters.gte("balance", -amount));
+        }
+        Document balance = new Document("$round", List.of(new Document("$add", List.of("$balance", amount)), 2));
+        List<Document> applied = payments.entrySet().stream()
+                .map(payment -> new Document("payment", payment.getKey()).append("amount", payment.getValue()))
+                .collect(Collectors.toList());
+        // Only the last payments are kept, a redelivery comes long before a payment is pushed out
+        Document appliedPayments = new Document("$slice", List.of(
+                new Document("$concatArrays", List.of(
+                        new Document("$ifNull", List.of("$" + appliedPaymentsField, List.of())),
+                        applied)),
+                -Math.max(keptAppliedPayments, applied.size())));
+        return new UpdateOneModel<>(filter, List.of(new Document("$set",
+                new Document("balance", balance).append(appliedPaymentsField, appliedPayments))));
+    }
+
+    @Override
+    public Flux<BankAccount> findIdsAfter(String lastId) {
+        return ProductIdCursor.findIdsAfter(mongoTemplate, BankAccount.class, lastId);
+    }
+}
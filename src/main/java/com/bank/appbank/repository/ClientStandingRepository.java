@@ -0,0 +1,7 @@
+package com.bank.appbank.repository;
+
+import com.bank.appbank.model.ClientStanding;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+public interface ClientStandingRepository extends ReactiveMongoRepository<ClientStanding, String> {
+}
@@ -6,7 +6,7 @@ import reactor.core.publisher.Flux;
 
 import java.time.Instant;
 
-public interface CreditCardRepository extends RepositoryT<CreditCard, String> {
+public interface CreditCardRepository extends RepositoryT<CreditCard, String>, CreditCardRepositoryCustom {
     Flux<CreditCard> findAllByIdClient(String idClient);
     public Flux<CreditCard> findAllByCreatedAtBetween(Instant from, Instant to);
 }
@@ -0,0 +1,20 @@
+package com.bank.appbank.repository;
+
+import com.bank.appbank.model.CreditCard;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDate;
+
+public interface CreditCardRepositoryCustom {
+    /**
+     * Ids of the cards that bill on {@code numberBillingDate}, are overdue with debt on {@code today} or
+     * have consumptions pending to be marked billed, leaving out the cards the billing of {@code today}
+     * already wrote.
+     */
+    Flux<CreditCard> findIdsDueForBilling(String numberBillingDate, LocalDate today);
+
+    /**
+     * Ids of the cards after {@code lastId} in _id order, or from the first one when it is null.
+     */
+    Flux<CreditCard> findIdsAfter(String lastId);
+}
@@ -0,0 +1,33 @@
+package com.bank.appbank.repository;
+
+import com.bank.appbank.model.CreditCard;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDate;
+
+public class CreditCardRepositoryCustomImpl implements CreditCardRepositoryCustom {
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public CreditCardRepositoryCustomImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Flux<CreditCard> findIdsDueForBilling(String numberBillingDate, LocalDate today) {
+        Query query = Query.query(Criteria.where("lastBilledDate").ne(today)
+                .orOperator(
+                        Criteria.where("numberBillingDate").is(numberBillingDate),
+                        Criteria.where("dueDate").lt(today).and("totalDebt").gt(0),
+                        Criteria.where("pendingBilling").ne(null)));
+        query.fields().include("_id");
+        return mongoTemplate.find(query, CreditCard.class);
+    }
+
+    @Override
+    public Flux<CreditCard> findIdsAfter(String lastId) {
+        return ProductIdCursor.findIdsAfter(mongoTemplate, CreditCard.class, lastId);
+    }
+}
@@ -5,8 +5,7 @@ import reactor.core.publisher.Flux;
 
 import java.time.Instant;
 
-public interface CreditRepository extends RepositoryT<Credit, String> {
+public interface CreditRepository extends RepositoryT<Credit, String>, CreditRepositoryCustom {
     public Flux<Credit> findAllByIdClient(String idClient);
     public Flux<Credit> findAllByCreatedAtBetween(Instant from, Instant to);
-
 }
@@ -0,0 +1,11 @@
+package com.bank.appbank.repository;
+
+import com.bank.appbank.model.Credit;
+import reactor.core.publisher.Flux;
+
+public interface CreditRepositoryCustom {
+    /**
+     * Ids of the credits after {@code lastId} in _id order, or from the first one when it is null.
+     */
+    Flux<Credit> findIdsAfter(String lastId);
+}
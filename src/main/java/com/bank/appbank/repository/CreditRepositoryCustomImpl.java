@@ -0,0 +1,18 @@
+package com.bank.appbank.repository;
+
+import com.bank.appbank.model.Credit;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Flux;
+
+public class CreditRepositoryCustomImpl implements CreditRepositoryCustom {
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public CreditRepositoryCustomImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Flux<Credit> findIdsAfter(String lastId) {
+        return ProductIdCursor.findIdsAfter(mongoTemplate, Credit.class, lastId);
+    }
+}
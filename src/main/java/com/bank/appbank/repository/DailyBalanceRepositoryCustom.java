@@ -0,0 +1,33 @@
+package com.bank.appbank.repository;
+
+import com.bank.appbank.model.DailyBalance;
+import com.bank.appbank.model.MonthlyBalance;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+public interface DailyBalanceRepositoryCustom {
+    /**
+     * Groups the daily balances of several products in one round trip, returning per product the sum,
+     * the number of days and the last date registered in the range.
+     */
+    Flux<MonthlyBalance> sumBalancesByIdBankProductInAndDateBetween(Collection<String> idsBankProduct,
+                                                                     LocalDate from,
+                                                                     LocalDate to);
+
+    /**
+     * Writes the snapshots in a single bulk of upserts keyed on (idBankProduct, date), so writing the
+     * same day twice replaces the balance instead of duplicating the row.
+     */
+    Mono<Void> upsertAll(List<DailyBalance> dailyBalances);
+
+    /**
+     * Deletes all but the newest row of each repeated (idBankProduct, date) and emits how many rows were
+     * deleted. Rows written before the snapshots became upserts can repeat a day, which would keep the
+     * unique index of the upserts from being created.
+     */
+    Mono<Long> removeDuplicates();
+}
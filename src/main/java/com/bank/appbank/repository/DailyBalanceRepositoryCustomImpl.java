@@ -0,0 +1,89 @@
+package com.bank.appbank.repository;
+
+import com.bank.appbank.model.DailyBalance;
+import com.bank.appbank.model.MonthlyBalance;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.result.DeleteResult;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+public class DailyBalanceRepositoryCustomImpl implements DailyBalanceRepositoryCustom {
+    private static final int DUPLICATES_DELETE_BATCH = 500;
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public DailyBalanceRepositoryCustomImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Flux<MonthlyBalance> sumBalancesByIdBankProductInAndDateBetween(Collection<String> idsBankProduct,
+                                                                            LocalDate from,
+                                                                            LocalDate to) {
+        Aggregation aggregation = newAggregation(
+                match(where("idBankProduct").in(idsBankProduct).and("date").gte(from).lte(to)),
+                project("idBankProduct", "date", "balance").andExclude("_id"),
+                group("idBankProduct")
+                        .sum("balance").as("sumBalance")
+                        .count().as("countDays")
+                        .max("date").as("lastDate"),
+                project("sumBalance", "countDays", "lastDate").and("idBankProduct").previousOperation());
+        return mongoTemplate.aggregate(aggregation, DailyBalance.class, MonthlyBalance.class);
+    }
+
+    @Override
+    public Mono<Void> upsertAll(List<DailyBalance> dailyBalances) {
+        if (dailyBalances.isEmpty()) {
+            return Mono.empty();
+        }
+        List<UpdateOneModel<Document>> upserts = dailyBalances.stream()
+                .map(dailyBalance -> new UpdateOneModel<Document>(
+                        Filters.and(
+                                Filters.eq("idBankProduct", dailyBalance.getIdBankProduct()),
+                                Filters.eq("date",
+                                        mongoTemplate.getConverter().convertToMongoType(dailyBalance.getDate()))),
+                        Updates.combine(
+                                Updates.set("balance", dailyBalance.getBalance()),
+                                Updates.set("carriedForward", dailyBalance.getCarriedForward())),
+                        new UpdateOptions().upsert(true)))
+                .collect(Collectors.toList());
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(DailyBalance.class))
+                .flatMap(collection -> Mono.from(collection.bulkWrite(upserts, new BulkWriteOptions().ordered(false))))
+                .then();
+    }
+
+    @Override
+    public Mono<Long> removeDuplicates() {
+        Aggregation aggregation = newAggregation(
+                sort(Sort.Direction.ASC, "_id"),
+                group("idBankProduct", "date").push("_id").as("ids").count().as("count"),
+                match(where("count").gt(1)))
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+        return mongoTemplate.aggregate(aggregation, DailyBalance.class, Document.class)
+                .flatMapIterable(duplicates -> {
+                    List<Object> ids = duplicates.getList("ids", Object.class);
+                    return ids.subList(0, ids.size() - 1);
+                })
+                .buffer(DUPLICATES_DELETE_BATCH)
+                .concatMap(ids -> mongoTemplate.remove(Query.query(where("_id").in(ids)), DailyBalance.class))
+                .map(DeleteResult::getDeletedCount)
+                .reduce(0L, Long::sum);
+    }
+}
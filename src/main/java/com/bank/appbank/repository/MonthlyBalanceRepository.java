@@ -0,0 +1,8 @@
+package com.bank.appbank.repository;
+
+import com.bank.appbank.model.MonthlyBalance;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+public interface MonthlyBalanceRepository extends ReactiveMongoRepository<MonthlyBalance, String>,
+        MonthlyBalanceRepositoryCustom {
+}
@@ -0,0 +1,14 @@
+package com.bank.appbank.repository;
+
+import com.bank.appbank.model.MonthlyBalance;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public interface MonthlyBalanceRepositoryCustom {
+    /**
+     * Writes the accumulators by _id in a single bulk of upserts, replacing their sum, number of days and
+     * last date with the given ones.
+     */
+    Mono<Void> upsertAll(List<MonthlyBalance> monthlyBalances);
+}
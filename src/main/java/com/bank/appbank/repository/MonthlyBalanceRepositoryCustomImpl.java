@@ -0,0 +1,71 @@
+package com.bank.appbank.repository;
+
+import com.bank.appbank.model.MonthlyBalance;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class MonthlyBalanceRepositoryCustomImpl implements MonthlyBalanceRepositoryCustom {
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public MonthlyBalanceRepositoryCustomImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Mono<Void> upsertAll(List<MonthlyBalance> monthlyBalances) {
+        if (monthlyBalances.isEmpty()) {
+            return Mono.empty();
+        }
+        List<UpdateOneModel<Document>> upserts = monthlyBalances.stream()
+                .map(this::toUpsertModel)
+                .collect(Collectors.toList());
+        return bulkWrite(upserts)
+                .onErrorResume(MongoBulkWriteException.class, ex -> onlyDuplicateKeys(ex)
+                        ? bulkWrite(ex.getWriteErrors().stream()
+                                .map(error -> upserts.get(error.getIndex()))
+                                .collect(Collectors.toList()))
+                        : Mono.error(ex));
+    }
+
+    private Mono<Void> bulkWrite(List<UpdateOneModel<Document>> upserts) {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(MonthlyBalance.class))
+                .flatMap(collection -> Mono.from(collection.bulkWrite(upserts, new BulkWriteOptions().ordered(false))))
+                .then();
+    }
+
+    private UpdateOneModel<Document> toUpsertModel(MonthlyBalance monthlyBalance) {
+        return new UpdateOneModel<>(
+                Filters.eq("_id", monthlyBalance.getId()),
+                Updates.combine(
+                        Updates.set("idBankProduct", monthlyBalance.getIdBankProduct()),
+                        Updates.set("year", monthlyBalance.getYear()),
+                        Updates.set("month", monthlyBalance.getMonth()),
+                        Updates.set("sumBalance", monthlyBalance.getSumBalance()),
+                        Updates.set("countDays", monthlyBalance.getCountDays()),
+                        Updates.set("lastDate",
+                                mongoTemplate.getConverter().convertToMongoType(monthlyBalance.getLastDate()))),
+                new UpdateOptions().upsert(true));
+    }
+
+    /**
+     * Two upserts of a new accumulator at the same time can collide on its _id; the one that lost is
+     * written again once, now as an update of the existing document.
+     */
+    private boolean onlyDuplicateKeys(MongoBulkWriteException exception) {
+        return exception.getWriteConcernError() == null && exception.getWriteErrors().stream()
+                .map(BulkWriteError::getCode)
+                .allMatch(code -> ErrorCategory.fromErrorCode(code) == ErrorCategory.DUPLICATE_KEY);
+    }
+}
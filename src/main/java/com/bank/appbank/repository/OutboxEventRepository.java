@@ -0,0 +1,15 @@
+package com.bank.appbank.repository;
+
+import com.bank.appbank.model.OutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+
+import java.util.Collection;
+
+public interface OutboxEventRepository extends ReactiveMongoRepository<OutboxEvent, String>,
+        OutboxEventRepositoryCustom {
+    Flux<OutboxEvent> findAllByParkedAtIsNullAndKeyNotInAndIdNotIn(Collection<String> keys,
+                                                                   Collection<String> ids,
+                                                                   Pageable pageable);
+}
@@ -0,0 +1,13 @@
+package com.bank.appbank.repository;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+public interface OutboxEventRepositoryCustom {
+    /**
+     * Stores the failed sends of an event and parks it when {@code parkedAt} is not null. An event already
+     * removed is left removed.
+     */
+    Mono<Void> recordFailedSend(String id, int attempts, Instant parkedAt);
+}
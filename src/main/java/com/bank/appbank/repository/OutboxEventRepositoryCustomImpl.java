@@ -0,0 +1,28 @@
+package com.bank.appbank.repository;
+
+import com.bank.appbank.model.OutboxEvent;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+public class OutboxEventRepositoryCustomImpl implements OutboxEventRepositoryCustom {
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public OutboxEventRepositoryCustomImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Mono<Void> recordFailedSend(String id, int attempts, Instant parkedAt) {
+        Update update = new Update().set("attempts", attempts);
+        if (parkedAt != null) {
+            update.set("parkedAt", parkedAt);
+        }
+        return mongoTemplate.updateFirst(Query.query(Criteria.where("id").is(id)), update, OutboxEvent.class)
+                .then();
+    }
+}
@@ -0,0 +1,30 @@
+package com.bank.appbank.repository;
+
+import com.bank.appbank.model.BankProduct;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+
+/**
+ * Pages the ids of a product collection in _id order. The ids are ObjectIds in Mongo and Strings in the
+ * models, and Mongo compares values of different BSON types by type, so the cursor is turned back into
+ * an ObjectId before it is compared.
+ */
+final class ProductIdCursor {
+
+    private ProductIdCursor() {
+    }
+
+    static <T extends BankProduct> Flux<T> findIdsAfter(ReactiveMongoTemplate mongoTemplate, Class<T> productClass,
+                                                        String lastId) {
+        Query query = lastId == null
+                ? new Query()
+                : Query.query(Criteria.where("_id").gt(ObjectId.isValid(lastId) ? new ObjectId(lastId) : lastId));
+        query.fields().include("_id");
+        query.with(Sort.by("_id"));
+        return mongoTemplate.find(query, productClass);
+    }
+}
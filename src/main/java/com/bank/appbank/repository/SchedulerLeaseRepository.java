@@ -0,0 +1,8 @@
+package com.bank.appbank.repository;
+
+import com.bank.appbank.model.SchedulerLease;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+public interface SchedulerLeaseRepository extends ReactiveMongoRepository<SchedulerLease, String>,
+        SchedulerLeaseRepositoryCustom {
+}
@@ -0,0 +1,22 @@
+package com.bank.appbank.repository;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+public interface SchedulerLeaseRepositoryCustom {
+    /**
+     * Takes the lease of a job for {@code runDate} when it is free, expired or already held by
+     * {@code owner}. Emits false when another instance holds it or the date was already completed; a null
+     * {@code runDate} ignores the completed date, for jobs that run continuously.
+     */
+    Mono<Boolean> tryAcquire(String job, String owner, LocalDate runDate, Instant now, Instant expiresAt);
+
+    Mono<Boolean> renew(String job, String owner, Instant expiresAt);
+
+    /**
+     * Frees the lease, marking {@code completedDate} as done when it is not null.
+     */
+    Mono<Void> release(String job, String owner, LocalDate completedDate, Instant now);
+}
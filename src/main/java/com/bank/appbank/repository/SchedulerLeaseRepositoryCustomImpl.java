@@ -0,0 +1,58 @@
+package com.bank.appbank.repository;
+
+import com.bank.appbank.model.SchedulerLease;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+public class SchedulerLeaseRepositoryCustomImpl implements SchedulerLeaseRepositoryCustom {
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public SchedulerLeaseRepositoryCustomImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * The upsert only matches a free lease, so when another instance holds it the insert collides with
+     * the existing _id and the lease is reported as taken.
+     */
+    @Override
+    public Mono<Boolean> tryAcquire(String job, String owner, LocalDate runDate, Instant now, Instant expiresAt) {
+        Criteria criteria = Criteria.where("id").is(job);
+        if (runDate != null) {
+            criteria = criteria.and("completedDate").ne(runDate);
+        }
+        Query query = Query.query(criteria
+                .orOperator(Criteria.where("expiresAt").lt(now), Criteria.where("owner").is(owner)));
+        Update update = new Update().set("owner", owner).set("expiresAt", expiresAt);
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().upsert(true).returnNew(true),
+                        SchedulerLease.class)
+                .map(lease -> true)
+                .onErrorResume(DuplicateKeyException.class, ex -> Mono.just(false))
+                .defaultIfEmpty(false);
+    }
+
+    @Override
+    public Mono<Boolean> renew(String job, String owner, Instant expiresAt) {
+        Query query = Query.query(Criteria.where("id").is(job).and("owner").is(owner));
+        return mongoTemplate.updateFirst(query, new Update().set("expiresAt", expiresAt), SchedulerLease.class)
+                .map(result -> result.getMatchedCount() > 0);
+    }
+
+    @Override
+    public Mono<Void> release(String job, String owner, LocalDate completedDate, Instant now) {
+        Query query = Query.query(Criteria.where("id").is(job).and("owner").is(owner));
+        Update update = new Update().set("expiresAt", now);
+        if (completedDate != null) {
+            update.set("completedDate", completedDate);
+        }
+        return mongoTemplate.updateFirst(query, update, SchedulerLease.class).then();
+    }
+}
@@ -0,0 +1,7 @@
+package com.bank.appbank.repository;
+
+import com.bank.appbank.model.SnapshotCheckpoint;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+public interface SnapshotCheckpointRepository extends ReactiveMongoRepository<SnapshotCheckpoint, String> {
+}
@@ -0,0 +1,13 @@
+package com.bank.appbank.service;
+
+import com.bank.appbank.model.ClientStanding;
+import reactor.core.publisher.Mono;
+
+public interface ClientStandingService {
+    /**
+     * Emits true when the client has no overdue debt and fails with IneligibleClientException otherwise.
+     */
+    Mono<Boolean> validateIfClientHasOverDueCredit(String idClient);
+    Mono<ClientStanding> refresh(String idClient);
+    Mono<Void> invalidate(String idClient);
+}
@@ -1,12 +1,11 @@
 package com.bank.appbank.service;
 
-import com.bank.appbank.model.BankAccount;
-import com.bank.appbank.model.Credit;
-import com.bank.appbank.model.CreditCard;
+import com.bank.appbank.model.BankProduct;
 import reactor.core.publisher.Mono;
 
+import java.time.LocalDate;
+import java.util.List;
+
 public interface DailyBalanceService {
-    Mono<Void> registerDailyBalanceByBankAccount(BankAccount bankAccount);
-    Mono<Void> registerDailyBalanceByCreditCard(CreditCard creditCard);
-    Mono<Void> registerDailyBalanceByCredit(Credit credit);
+    Mono<Void> registerDailyBalances(List<? extends BankProduct> bankProducts, LocalDate date, boolean carriedForward);
 }
@@ -21,4 +21,6 @@ public interface DebitCardService extends ServiceT<DebitCard, String> {
     Mono<ResponseAssociationWalletDto> validAssociationWalletToDebitCard(String idWallet, String idDebitCard);
 
     Mono<Void> paymentWalletWithDebitCard(List<MovementWallet> movementsWallet);
+
+    Mono<Void> paymentsWalletWithDebitCard(List<List<MovementWallet>> payments);
 }
@@ -0,0 +1,306 @@
+package com.bank.appbank.service.impl;
+
+import com.bank.appbank.config.MongoTransactions;
+import com.bank.appbank.exceptions.CompensationFailedException;
+import com.bank.appbank.exceptions.ResourceNotFoundException;
+import com.bank.appbank.exceptions.UnsupportedMovementException;
+import com.bank.appbank.model.BankAccount;
+import com.bank.appbank.repository.BankAccountRepository;
+import com.bank.appbank.utils.Numbers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Moves money between bank accounts with conditional updates on each balance instead of reading,
+ * changing and saving the accounts, so concurrent payments on the same account never lose an update
+ * nor overdraw it. Debit and credit run in one transaction when {@link MongoTransactions} are enabled;
+ * otherwise a failed credit is compensated on the origin, and a failed compensation is surfaced as a
+ * {@link CompensationFailedException} carrying the original error as suppressed.
+ */
+@Component
+public class BalanceMutationService {
+    private static final Logger log = LoggerFactory.getLogger(BalanceMutationService.class);
+    private final BankAccountRepository bankAccountRepository;
+    private final MongoTransactions mongoTransactions;
+
+    public BalanceMutationService(BankAccountRepository bankAccountRepository,
+                                  MongoTransactions mongoTransactions) {
+        this.bankAccountRepository = bankAccountRepository;
+        this.mongoTransactions = mongoTransactions;
+    }
+
+    /**
+     * Debits {@code amount} from the origin and credits it to the destination. Either account may be
+     * null when it is outside the bank.
+     */
+    public Mono<Void> transfer(String idOrigin, String idDestin, double amount) {
+        if (!mongoTransactions.isEnabled()) {
+            return debit(idOrigin, amount)
+                    .then(credit(idDestin, amount)
+                            .onErrorResume(error -> undo(idOrigin, amount, error)));
+        }
+        return mongoTransactions.execute(debit(idOrigin, amount).then(credit(idDestin, amount)));
+    }
+
+    /**
+     * Applies many transfers with one read of the accounts and one bulk write of the net amount of each
+     * account, which records on the account the payment of every transfer it applies. The transfers are
+     * checked in order against the balances read, and the rejected ones get their error set. A side of a
+     * transfer whose account already recorded its payment is not applied again, so transfers delivered
+     * again, alone or with other ones, move each amount once. The transfers of an account whose net debit
+     * no longer fits, because the balance changed since the read, or whose write failed, are applied again
+     * one at a time.
+     * <p>
+     * When the accounts can not be read nothing is applied and every transfer is rejected. The error is
+     * only propagated when the outcome of the bulk write is unknown, and calling again with the same
+     * transfers applies only the sides it did not reach.
+     */
+    public Mono<List<Transfer>> transferAll(List<Transfer> transfers) {
+        List<String> idBankAccounts = transfers.stream()
+                .flatMap(transfer -> Stream.of(transfer.getIdOrigin(), transfer.getIdDestin()))
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+        return bankAccountRepository.findByIdIn(idBankAccounts)
+                .collectMap(BankAccount::getId, Function.identity())
+                .onErrorResume(error -> {
+                    log.error("Could not read the accounts of " + transfers.size() + " transfers: "
+                            + error.getMessage());
+                    transfers.forEach(transfer -> transfer.reject(error));
+                    return Mono.empty();
+                })
+                .flatMap(accounts -> bankAccountRepository.addToBalances(net(transfers, accounts)))
+                .flatMap(unchanged -> Flux.fromIterable(transfers)
+                        .filter(transfer -> transfer.duplicateOf == null)
+                        .concatMap(transfer -> transfer.getError() == null
+                                ? reapply(transfer, unchanged)
+                                : revertApplied(transfer))
+                        .then())
+                .then(Mono.fromCallable(() -> {
+                    transfers.stream()
+                            .filter(transfer -> transfer.duplicateOf != null)
+                            .forEach(transfer -> transfer.reject(transfer.duplicateOf.getError()));
+                    return transfers;
+                }));
+    }
+
+    private static boolean isApplied(BankAccount account, String payment) {
+        return account != null && account.getAppliedPayments() != null && account.getAppliedPayments().stream()
+                .anyMatch(appliedPayment -> payment.equals(appliedPayment.getPayment()));
+    }
+
+    /**
+     * Groups by account the sides of the transfers still to apply. A payment repeated in the same call
+     * only counts once and takes the outcome of its first transfer.
+     */
+    private Map<String, Map<String, Double>> net(List<Transfer> transfers, Map<String, BankAccount> accounts) {
+        Map<String, Double> balances = new HashMap<>();
+        accounts.forEach((id, account) -> balances.put(id, account.getBalance()));
+        Map<String, Transfer> netted = new HashMap<>();
+        Map<String, Map<String, Double>> payments = new HashMap<>();
+        for (Transfer transfer : transfers) {
+            String idOrigin = transfer.getIdOrigin();
+            String idDestin = transfer.getIdDestin();
+            double amount = transfer.getAmount();
+            transfer.duplicateOf = netted.putIfAbsent(transfer.getPayment(), transfer);
+            if (transfer.duplicateOf != null) {
+                continue;
+            }
+            transfer.originApplied = idOrigin != null && isApplied(accounts.get(idOrigin), transfer.getPayment());
+            transfer.destinApplied = idDestin != null && isApplied(accounts.get(idDestin), transfer.getPayment());
+            boolean debitPending = idOrigin != null && !transfer.originApplied;
+            boolean creditPending = idDestin != null && !transfer.destinApplied;
+            if (debitPending && (!balances.containsKey(idOrigin) || balances.get(idOrigin) < amount)) {
+                transfer.reject(new UnsupportedMovementException("Balance is not supported"));
+            } else if (creditPending && !balances.containsKey(idDestin)) {
+                transfer.reject(new ResourceNotFoundException("Bank account not exist with id: " + idDestin));
+            } else {
+                if (debitPending) {
+                    balances.merge(idOrigin, -amount, (balance, delta) -> Numbers.round(balance + delta));
+                    payments.computeIfAbsent(idOrigin, id -> new HashMap<>())
+                            .merge(transfer.getPayment(), -amount, (total, delta) -> Numbers.round(total + delta));
+                }
+                if (creditPending) {
+                    balances.merge(idDestin, amount, (balance, delta) -> Numbers.round(balance + delta));
+                    payments.computeIfAbsent(idDestin, id -> new HashMap<>())
+                            .merge(transfer.getPayment(), amount, (total, delta) -> Numbers.round(total + delta));
+                }
+            }
+        }
+        return payments;
+    }
+
+    /**
+     * Applies the sides of the transfer that belong to an unchanged account, each one recorded with the
+     * payment; the other side is already applied and is reverted if this one fails.
+     */
+    private Mono<Void> reapply(Transfer transfer, Set<String> unchanged) {
+        String idOrigin = transfer.getIdOrigin();
+        String idDestin = transfer.getIdDestin();
+        String payment = transfer.getPayment();
+        double amount = transfer.getAmount();
+        boolean debitPending = idOrigin != null && !transfer.originApplied && unchanged.contains(idOrigin);
+        boolean creditPending = idDestin != null && !transfer.destinApplied && unchanged.contains(idDestin);
+        Mono<Void> debit = debitPending
+                ? apply(idOrigin, payment, -amount, new UnsupportedMovementException("Balance is not supported"))
+                : Mono.empty();
+        Mono<Void> credit = creditPending
+                ? apply(idDestin, payment, amount,
+                        new ResourceNotFoundException("Bank account not exist with id: " + idDestin))
+                : Mono.empty();
+        return debit
+                .onErrorResume(error -> creditPending ? Mono.error(error) : revert(idDestin, payment, error))
+                .then(credit.onErrorResume(error -> revert(idOrigin, payment, error)))
+                .onErrorResume(error -> {
+                    transfer.reject(error);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Reverts the sides a rejected transfer got in an earlier call whose outcome was unknown.
+     */
+    private Mono<Void> revertApplied(Transfer transfer) {
+        Mono<Void> origin = transfer.originApplied
+                ? revertPayment(transfer.getIdOrigin(), transfer.getPayment())
+                : Mono.empty();
+        Mono<Void> destin = transfer.destinApplied
+                ? revertPayment(transfer.getIdDestin(), transfer.getPayment())
+                : Mono.empty();
+        return origin.then(destin)
+                .onErrorResume(failed -> {
+                    failed.addSuppressed(transfer.getError());
+                    transfer.reject(failed);
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> apply(String idBankAccount, String payment, double amount, Throwable notApplied) {
+        return bankAccountRepository.addToBalances(Map.of(idBankAccount, Map.of(payment, amount)))
+                .flatMap(unchanged -> unchanged.isEmpty() ? Mono.empty() : Mono.error(notApplied));
+    }
+
+    private Mono<Void> debit(String idBankAccount, double amount) {
+        if (idBankAccount == null) {
+            return Mono.empty();
+        }
+        return bankAccountRepository.addToBalance(idBankAccount, -amount)
+                .switchIfEmpty(Mono.error(new UnsupportedMovementException("Balance is not supported")))
+                .then();
+    }
+
+    private Mono<Void> credit(String idBankAccount, double amount) {
+        if (idBankAccount == null) {
+            return Mono.empty();
+        }
+        return bankAccountRepository.addToBalance(idBankAccount, amount)
+                .switchIfEmpty(Mono.error(
+                        new ResourceNotFoundException("Bank account not exist with id: " + idBankAccount)))
+                .then();
+    }
+
+    /**
+     * Gives {@code amount} back to the account and fails with {@code cause}, or with the failure of the
+     * compensation when the amount could not be given back.
+     */
+    private Mono<Void> undo(String idBankAccount, double amount, Throwable cause) {
+        return compensate(idBankAccount, amount)
+                .onErrorMap(failed -> {
+                    failed.addSuppressed(cause);
+                    return failed;
+                })
+                .then(Mono.error(cause));
+    }
+
+    /**
+     * Same as {@link #undo} for a side recorded with its payment.
+     */
+    private Mono<Void> revert(String idBankAccount, String payment, Throwable cause) {
+        return revertPayment(idBankAccount, payment)
+                .onErrorMap(failed -> {
+                    failed.addSuppressed(cause);
+                    return failed;
+                })
+                .then(Mono.error(cause));
+    }
+
+    private Mono<Void> revertPayment(String idBankAccount, String payment) {
+        if (idBankAccount == null) {
+            return Mono.empty();
+        }
+        return bankAccountRepository.revertPayment(idBankAccount, payment)
+                .then()
+                .onErrorMap(error -> {
+                    String message = "Could not revert payment " + payment + " on " + idBankAccount;
+                    log.error(message + ", reconcile it by hand: " + error.getMessage());
+                    return new CompensationFailedException(message, error);
+                });
+    }
+
+    private Mono<Void> compensate(String idBankAccount, double amount) {
+        if (idBankAccount == null) {
+            return Mono.empty();
+        }
+        return bankAccountRepository.addToBalance(idBankAccount, amount)
+                .then()
+                .onErrorMap(error -> {
+                    String message = "Could not give back " + amount + " to " + idBankAccount;
+                    log.error(message + ", reconcile it by hand: " + error.getMessage());
+                    return new CompensationFailedException(message, error);
+                });
+    }
+
+    public static final class Transfer {
+        private final String payment;
+        private final String idOrigin;
+        private final String idDestin;
+        private final double amount;
+        private Throwable error;
+        private boolean originApplied;
+        private boolean destinApplied;
+        private Transfer duplicateOf;
+
+        public Transfer(String payment, String idOrigin, String idDestin, double amount) {
+            this.payment = payment;
+            this.idOrigin = idOrigin;
+            this.idDestin = idDestin;
+            this.amount = amount;
+        }
+
+        public String getPayment() {
+            return payment;
+        }
+
+        public String getIdOrigin() {
+            return idOrigin;
+        }
+
+        public String getIdDestin() {
+            return idDestin;
+        }
+
+        public double getAmount() {
+            return amount;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        void reject(Throwable error) {
+            this.error = error;
+        }
+    }
+}
@@ -1,21 +1,22 @@
 package com.bank.appbank.service.impl;
 
 import com.bank.appbank.client.MovementServiceClient;
+import com.bank.appbank.config.MongoTransactions;
 import com.bank.appbank.event.producer.BankAccountProducer;
 import com.bank.appbank.exceptions.*;
 import com.bank.appbank.factory.RepositoryFactory;
 import com.bank.appbank.model.BankAccount;
 import com.bank.appbank.model.Client;
 import com.bank.appbank.dto.MovementDto;
-import com.bank.appbank.model.Credit;
 import com.bank.appbank.model.CreditCard;
+import com.bank.appbank.model.DebitCard;
 import com.bank.appbank.repository.BankAccountRepository;
 import com.bank.appbank.repository.CreditCardRepository;
 import com.bank.appbank.repository.CreditRepository;
 import com.bank.appbank.repository.DebitCardRepository;
 import com.bank.appbank.service.BankAccountService;
 import com.bank.appbank.service.ClientService;
-import com.bank.appbank.service.CreditService;
+import com.bank.appbank.service.ClientStandingService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -38,9 +39,10 @@ public class BankAccountServiceImp extends ServiceGenImp<BankAccount, String> im
     private final ClientService clientService;
     private final MovementServiceClient movementServiceClient;
     private final CreditCardRepository creditCardRepository;
-    private final CreditService creditService;
+    private final ClientStandingService clientStandingService;
     private final BankAccountProducer bankAccountProducer;
     private final DebitCardRepository debitCardRepository;
+    private final MongoTransactions mongoTransactions;
     private Clock clock;
 
     public BankAccountServiceImp(RepositoryFactory repositoryFactory,
@@ -48,16 +50,18 @@ public class BankAccountServiceImp extends ServiceGenImp<BankAccount, String> im
                                  MovementServiceClient movementServiceClient,
                                  CreditCardRepository creditCardRepository,
                                  Clock clock,
-                                 CreditService creditService,
+                                 ClientStandingService clientStandingService,
                                  BankAccountProducer bankAccountProducer,
-                                 DebitCardRepository debitCardRepository) {
+                                 DebitCardRepository debitCardRepository,
+                                 MongoTransactions mongoTransactions) {
         super(repositoryFactory);
         this.clientService = clientService;
         this.movementServiceClient = movementServiceClient;
         this.creditCardRepository = creditCardRepository;
-        this.creditService = creditService;
+        this.clientStandingService = clientStandingService;
         this.bankAccountProducer = bankAccountProducer;
         this.debitCardRepository = debitCardRepository;
+        this.mongoTransactions = mongoTransactions;
         this.clock = clock;
     }
 
@@ -95,7 +99,7 @@ public class BankAccountServiceImp extends ServiceGenImp<BankAccount, String> im
     public Mono<BankAccount> create(BankAccount bankAccount) {
 
         Mono<Client> clientFound = clientService.findById(bankAccount.getIdClient())
-                .flatMap(client -> validateIfClientHasOverDueCredit(client.getId())
+                .flatMap(client -> clientStandingService.validateIfClientHasOverDueCredit(client.getId())
                                         .flatMap(isValid -> validateClientAndBankAccount(bankAccount, client)))
                 .onErrorResume(ResourceNotFoundException.class, e ->
                         Mono.error(new ResourceNotFoundException(
@@ -123,68 +127,6 @@ public class BankAccountServiceImp extends ServiceGenImp<BankAccount, String> im
                 });
     }
 
-    private Mono<Boolean> validateIfClientHasOverDueCredit(String idClient) {
-        return Mono.zip(
-                findAllCreditCardsByIdClient(idClient).onErrorResume(ex -> Mono.just(Collections.emptyList())),
-                findAllCreditsByIdClient(idClient).onErrorResume(ex -> Mono.just(Collections.emptyList()))
-                )
-                .flatMap(tuple -> {
-                    List<CreditCard> creditCards = tuple.getT1();
-                    List<Credit> credits = tuple.getT2();
-
-                    boolean hasOverDueCreditCard = creditCards.stream()
-                            .anyMatch(this::isOverdueCreditCard);
-                    boolean hasOverDueCredit = credits.stream()
-                            .anyMatch(this::isOverdueCreditOnly);
-
-                    if (hasOverDueCredit || hasOverDueCreditCard) {
-                        String message = "The client has an overdue debt";
-                        log.error(message);
-                        return Mono.error(new IneligibleClientException(message));
-                    }
-                    return Mono.just(true);
-                });
-    }
-
-    private Mono<List<CreditCard>> findAllCreditCardsByIdClient(String idClient) {
-        return creditCardRepository.findAllByIdClient(idClient)
-                .collectList()
-                .defaultIfEmpty(Collections.emptyList());
-    }
-
-    private Mono<List<Credit>> findAllCreditsByIdClient(String idClient) {
-        return creditService.allCreditsByIdClientWithAllPaymentsSortedByDatePayment(idClient)
-                .collectList()
-                .defaultIfEmpty(Collections.emptyList());
-    }
-
-    private boolean isOverdueCreditCard(CreditCard creditCard) {
-        return creditCard.getDueDate() != null &&
-                LocalDate.now(clock).isAfter(creditCard.getDueDate()) && creditCard.getTotalDebt() > 0;
-    }
-
-    private boolean isOverdueCreditOnly(Credit credit) {
-        LocalDate today = LocalDate.now(clock);
-        int numberMonth = today.getMonthValue();
-        int numberYear = today.getYear();
-
-        boolean hasPaymentInPresentMonth = credit.getPayments().stream()
-                .anyMatch(payment -> payment.getMonthCorresponding() == numberMonth
-                        && payment.getYearCorresponding() == numberYear);
-
-        LocalDate dueDate = getDateLimitExpected(credit, numberMonth, numberYear);
-
-        return today.isAfter(dueDate) && !hasPaymentInPresentMonth;
-    }
-
-    private LocalDate getDateLimitExpected(Credit credit, int month, int year) {
-        LocalDate today = LocalDate.now(clock);
-        if (credit.getFirstDatePay().isAfter(today)) {
-            return credit.getFirstDatePay();
-        }
-        LocalDate firstPaymentDate = credit.getFirstDatePay();
-        return LocalDate.of(year, month, firstPaymentDate.getDayOfMonth());
-    }
 
     private Mono<Client> validateClientAndBankAccount(BankAccount bankAccount, Client client) {
         if (isPersonalVipClientWithSavingAccount(bankAccount, client) ||
@@ -296,6 +238,11 @@ public class BankAccountServiceImp extends ServiceGenImp<BankAccount, String> im
 
     @Override
     public Mono<BankAccount> update(String id, BankAccount bankAccount) {
+        // The balance events go to the outbox in the same transaction as the account
+        return mongoTransactions.execute(Mono.defer(() -> updateWithBalanceEvents(id, bankAccount)));
+    }
+
+    private Mono<BankAccount> updateWithBalanceEvents(String id, BankAccount bankAccount) {
         return getRepository().findById(id)
                 .switchIfEmpty(Mono.error(
                         new ResourceNotFoundException("The count with id: " + id + " doesn't exist!")))
@@ -312,13 +259,9 @@ public class BankAccountServiceImp extends ServiceGenImp<BankAccount, String> im
                 })
                 .flatMap(savedAccount ->
                     debitCardRepository.findAllByIdPrincipalAccount(bankAccount.getId())
-                            .map(debitCard -> {
-                                if (debitCard.getHasWallet()) {
-                                    bankAccountProducer
-                                            .publishBalanceUpdate(debitCard.getId(), savedAccount.getBalance());
-                                }
-                                return Mono.empty();
-                            })
+                            .filter(DebitCard::getHasWallet)
+                            .flatMap(debitCard -> bankAccountProducer
+                                    .publishBalanceUpdate(debitCard.getId(), savedAccount.getBalance()))
                             .then(Mono.just(savedAccount))
                 );
     }
@@ -0,0 +1,204 @@
+package com.bank.appbank.service.impl;
+
+import com.bank.appbank.model.Client;
+import com.bank.appbank.utils.BoundedMaps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded in-process cache of clients in front of {@link ClientRedisService}. Entries are fresh for
+ * {@code ttlSeconds} and may still be served, while they are reloaded, for {@code staleSeconds} more. An
+ * updated client is dropped from every instance through a Redis pub/sub channel, and bumps a version
+ * that a load started before the update compares to avoid caching what it read.
+ */
+@Component
+public class ClientNearCache {
+    private static final Logger log = LoggerFactory.getLogger(ClientNearCache.class);
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final Clock clock;
+    private static final int versionStripes = 1024;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLongArray versions = new AtomicLongArray(versionStripes);
+    private Disposable invalidations;
+
+    @Value("${appbank.client-cache.near.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${appbank.client-cache.near.ttl-seconds:30}")
+    private long ttlSeconds;
+
+    @Value("${appbank.client-cache.near.stale-seconds:30}")
+    private long staleSeconds;
+
+    @Value("${appbank.client-cache.near.early-refresh-beta:1.0}")
+    private double earlyRefreshBeta;
+
+    @Value("${appbank.client-cache.invalidation-channel:client-invalidations}")
+    private String invalidationChannel;
+
+    public ClientNearCache(ReactiveStringRedisTemplate redisTemplate, Clock clock) {
+        this.redisTemplate = redisTemplate;
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    public void subscribeInvalidations() {
+        invalidations = redisTemplate.listenToChannel(invalidationChannel)
+                .map(ReactiveSubscription.Message::getMessage)
+                .doOnNext(this::drop)
+                .doOnError(error -> log.error("Client invalidation channel failed: " + error.getMessage()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofMinutes(1)))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void unsubscribeInvalidations() {
+        if (invalidations != null) {
+            invalidations.dispose();
+        }
+    }
+
+    /**
+     * Returns the client only while it is fresh.
+     */
+    public Client get(String id) {
+        Entry entry = entries.get(id);
+        return entry != null && entry.expiresAt.isAfter(clock.instant()) ? entry.client : null;
+    }
+
+    /**
+     * Returns the client while it is fresh or stale, telling whether it should be reloaded: always once
+     * stale, and while fresh with a probability that grows as the expiry nears and with the time the
+     * last load took (probabilistic early expiration), so that hot keys are reloaded by a single caller
+     * before they expire.
+     */
+    public Lookup lookup(String id) {
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            return null;
+        }
+        Instant now = clock.instant();
+        if (!entry.staleUntil.isAfter(now)) {
+            entries.remove(id, entry);
+            return null;
+        }
+        if (!entry.expiresAt.isAfter(now)) {
+            return new Lookup(entry.client, true);
+        }
+        double gapNanos = entry.loadTime.toNanos() * earlyRefreshBeta
+                * -Math.log(1.0 - ThreadLocalRandom.current().nextDouble());
+        boolean refreshEarly = !now.plusNanos((long) gapNanos).isBefore(entry.expiresAt);
+        return new Lookup(entry.client, refreshEarly);
+    }
+
+    public void put(String id, Client client) {
+        put(id, client, Duration.ZERO);
+    }
+
+    public void put(String id, Client client, Duration loadTime) {
+        Instant now = clock.instant();
+        BoundedMaps.makeRoom(entries, maxEntries, entry -> !entry.staleUntil.isAfter(now));
+        Instant expiresAt = now.plusSeconds(ttlSeconds);
+        entries.put(id, new Entry(client, expiresAt, expiresAt.plusSeconds(staleSeconds), loadTime));
+    }
+
+    /**
+     * Version of the client, bumped on each invalidation. Clients share a version by hash stripe, so an
+     * invalidation can also discard a concurrent load of another client, which is then only not cached.
+     */
+    public long version(String id) {
+        return versions.get(stripeOf(id));
+    }
+
+    public boolean isCurrent(String id, long version) {
+        return version(id) == version;
+    }
+
+    /**
+     * Caches a client read when the version was {@code version}, unless it was invalidated since. The
+     * version is checked again after the put, so an invalidation racing with it still removes the entry.
+     */
+    public boolean putIfCurrent(String id, Client client, Duration loadTime, long version) {
+        if (!isCurrent(id, version)) {
+            return false;
+        }
+        put(id, client, loadTime);
+        if (!isCurrent(id, version)) {
+            entries.remove(id);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Drops the client here and asks the other instances to drop it too. A failed publish is only
+     * logged; their copies then expire with the ttl.
+     */
+    public Mono<Void> invalidate(String id) {
+        drop(id);
+        return redisTemplate.convertAndSend(invalidationChannel, id)
+                .onErrorResume(error -> {
+                    log.error("Could not publish the invalidation of client " + id + ": " + error.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private void drop(String id) {
+        versions.incrementAndGet(stripeOf(id));
+        entries.remove(id);
+    }
+
+    private static int stripeOf(String id) {
+        return (id.hashCode() & Integer.MAX_VALUE) % versionStripes;
+    }
+
+    public static final class Lookup {
+        private final Client client;
+        private final boolean refresh;
+
+        Lookup(Client client, boolean refresh) {
+            this.client = client;
+            this.refresh = refresh;
+        }
+
+        public Client getClient() {
+            return client;
+        }
+
+        public boolean isRefresh() {
+            return refresh;
+        }
+    }
+
+    private static final class Entry {
+        private final Client client;
+        private final Instant expiresAt;
+        private final Instant staleUntil;
+        private final Duration loadTime;
+
+        private Entry(Client client, Instant expiresAt, Instant staleUntil, Duration loadTime) {
+            this.client = client;
+            this.expiresAt = expiresAt;
+            this.staleUntil = staleUntil;
+            this.loadTime = loadTime;
+        }
+    }
+}
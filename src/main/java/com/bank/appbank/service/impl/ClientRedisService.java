@@ -3,9 +3,13 @@ package com.bank.appbank.service.impl;
 import com.bank.appbank.model.Client;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 public class ClientRedisService {
@@ -20,10 +24,37 @@ public class ClientRedisService {
         return redisTemplate.opsForValue().set(redisPrefix + key, value, duration).then();
     }
 
+    /**
+     * Writes the value only if the key is missing, so a value loaded before an update does not replace the
+     * one the update wrote.
+     */
+    public Mono<Void> saveIfAbsent(String key, Client value, Duration duration) {
+        return redisTemplate.opsForValue().setIfAbsent(redisPrefix + key, value, duration).then();
+    }
+
     public Mono<Client> get(String key) {
         return redisTemplate.opsForValue().get(redisPrefix + key);
     }
 
+    /**
+     * Reads many keys with one MGET. The list keeps the order of the keys, with null for the misses.
+     */
+    public Mono<List<Client>> multiGet(List<String> keys) {
+        return redisTemplate.opsForValue()
+                .multiGet(keys.stream().map(key -> redisPrefix + key).collect(Collectors.toList()));
+    }
+
+    /**
+     * Writes every entry missing from Redis with its ttl. The commands are sent together over the shared
+     * connection instead of waiting for each reply.
+     */
+    public Mono<Void> saveAllIfAbsent(Map<String, Client> values, Duration duration) {
+        return Flux.fromIterable(values.entrySet())
+                .flatMap(entry -> redisTemplate.opsForValue().setIfAbsent(redisPrefix + entry.getKey(),
+                        entry.getValue(), duration))
+                .then();
+    }
+
     public Mono<Boolean> delete(String key) {
         return redisTemplate.opsForValue().delete(redisPrefix + key);
     }
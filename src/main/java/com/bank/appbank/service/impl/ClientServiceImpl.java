@@ -7,18 +7,39 @@ import com.bank.appbank.factory.RepositoryFactory;
 import com.bank.appbank.model.Client;
 import com.bank.appbank.repository.ClientRepository;
 import com.bank.appbank.service.ClientService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 import static com.bank.appbank.model.Client.TypeClient.*;
 
 @Service
 public class ClientServiceImpl extends ServiceGenImp<Client, String> implements ClientService {
 
     private final ClientRedisService redisTemplate;
+    private static final Logger log = LoggerFactory.getLogger(ClientServiceImpl.class);
+    private final ClientNearCache clientNearCache;
+    private final Timer cacheServedTimer;
+    private final Timer databaseServedTimer;
+    private final Counter collapsedLoads;
+    private final Counter backgroundRefreshes;
+    private final Map<String, Mono<Client>> loadsInFlight = new ConcurrentHashMap<>();
     private final String clientKeyPrefix = "client:";
 
     @Override
@@ -27,20 +48,85 @@ public class ClientServiceImpl extends ServiceGenImp<Client, String> implements
     }
 
     public ClientServiceImpl(RepositoryFactory repositoryFactory,
-                             ClientRedisService redisTemplate) {
+                             ClientRedisService redisTemplate,
+                             ClientNearCache clientNearCache,
+                             MeterRegistry meterRegistry) {
         super(repositoryFactory);
         this.redisTemplate = redisTemplate;
+        this.clientNearCache = clientNearCache;
+        this.cacheServedTimer = lookupTimer(meterRegistry, "cache");
+        this.databaseServedTimer = lookupTimer(meterRegistry, "db");
+        this.collapsedLoads = meterRegistry.counter("client.cache.loads", "result", "collapsed");
+        this.backgroundRefreshes = meterRegistry.counter("client.cache.loads", "result", "background_refresh");
     }
 
+    private static Timer lookupTimer(MeterRegistry meterRegistry, String source) {
+        return Timer.builder("client.bulk.lookup")
+                .tag("source", source)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Reads the client from the near cache, then Redis, then Mongo. Only a client loaded from Mongo is
+     * written back to Redis, and only if Redis has no newer copy and the client was not invalidated while
+     * it loaded; it is still returned to the caller either way. A stale or soon to expire cached client is
+     * returned at once and reloaded in the background, and concurrent loads of the same client share a
+     * single one.
+     */
     @Override
     public Mono<Client> findById(String id) {
+        return Mono.defer(() -> {
+            ClientNearCache.Lookup cached = clientNearCache.lookup(id);
+            if (cached == null) {
+                return load(id);
+            }
+            if (cached.isRefresh()) {
+                backgroundRefreshes.increment();
+                load(id).subscribe(client -> { }, error ->
+                        log.error("Could not refresh client " + id + ": " + error.getMessage()));
+            }
+            return Mono.just(cached.getClient());
+        });
+    }
+
+    private Mono<Client> load(String id) {
+        AtomicBoolean started = new AtomicBoolean();
+        Mono<Client> loading = loadsInFlight.computeIfAbsent(id, key -> {
+            started.set(true);
+            return loadFromRedisOrDatabase(key)
+                    .doFinally(signal -> loadsInFlight.remove(key))
+                    .cache();
+        });
+        if (!started.get()) {
+            collapsedLoads.increment();
+        }
+        return loading;
+    }
+
+    private Mono<Client> loadFromRedisOrDatabase(String id) {
         String redisKey = clientKeyPrefix + id;
-        return redisTemplate.get(redisKey)
-                .switchIfEmpty(super.findById(id))
-                .flatMap(client -> redisTemplate.save(redisKey, client, Duration.ofHours(1))
-                        .thenReturn(client));
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            long version = clientNearCache.version(id);
+            return redisTemplate.get(redisKey)
+                    .switchIfEmpty(Mono.defer(() -> super.findById(id)
+                            .flatMap(client -> writeBack(redisKey, client, id, version).thenReturn(client))))
+                    .doOnNext(client -> clientNearCache.putIfCurrent(id, client,
+                            Duration.ofNanos(System.nanoTime() - start), version));
+        });
     }
 
+    private Mono<Void> writeBack(String redisKey, Client client, String id, long version) {
+        return clientNearCache.isCurrent(id, version)
+                ? redisTemplate.saveIfAbsent(redisKey, client, Duration.ofHours(1))
+                : Mono.empty();
+    }
+
+    /**
+     * Writes the updated client to Redis rather than deleting it, so a load that read the old client
+     * from Mongo can not put it back there.
+     */
     @Override
     public Mono<Client> updateClient(String id, Client client) {
         return getRepository().findById(id)
@@ -52,9 +138,10 @@ public class ClientServiceImpl extends ServiceGenImp<Client, String> implements
                     clientFound.setAddress(client.getAddress());
                     clientFound.setPhone(client.getPhone());
                     return getRepository().save(clientFound)
-                            .doOnSuccess(updatedClient ->
-                                    redisTemplate.delete(clientKeyPrefix +id)
-                                            .thenReturn(updatedClient));
+                            .flatMap(updatedClient -> redisTemplate.save(clientKeyPrefix + id, updatedClient,
+                                            Duration.ofHours(1))
+                                    .then(clientNearCache.invalidate(id))
+                                    .thenReturn(updatedClient));
                 })
                 .switchIfEmpty(Mono.error(new ResourceNotFoundException("Client not found")));
     }
@@ -117,9 +204,78 @@ public class ClientServiceImpl extends ServiceGenImp<Client, String> implements
                 .defaultIfEmpty("NOT_EXISTS");
     }
 
+    /**
+     * Resolves the clients from the near cache and one Redis MGET, and loads only the misses from Mongo
+     * with a single query, writing them back to Redis. If Redis fails every client is read from Mongo.
+     * The latency is recorded apart for lookups served fully by the caches and for those that hit Mongo.
+     */
     @Override
     public Flux<Client> findAllClientsById(List<String> ids) {
-        return getRepository().findAllById(ids);
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            List<String> distinctIds = ids.stream().distinct().collect(Collectors.toList());
+            Map<String, Client> found = new LinkedHashMap<>();
+            List<String> notInNearCache = new ArrayList<>();
+            distinctIds.forEach(id -> {
+                Client client = clientNearCache.get(id);
+                if (client != null) {
+                    found.put(id, client);
+                } else {
+                    notInNearCache.add(id);
+                }
+            });
+            if (notInNearCache.isEmpty()) {
+                return Mono.just(orderedAndTimed(distinctIds, found, cacheServedTimer, start));
+            }
+            Map<String, Long> versions = notInNearCache.stream()
+                    .collect(Collectors.toMap(id -> id, clientNearCache::version));
+            List<String> keys = notInNearCache.stream().map(id -> clientKeyPrefix + id).collect(Collectors.toList());
+            return redisTemplate.multiGet(keys)
+                    .onErrorResume(error -> {
+                        log.error("Could not read clients from redis: " + error.getMessage());
+                        return Mono.just(Collections.nCopies(keys.size(), null));
+                    })
+                    .flatMap(cached -> {
+                        List<String> misses = new ArrayList<>();
+                        for (int i = 0; i < notInNearCache.size(); i++) {
+                            Client client = i < cached.size() ? cached.get(i) : null;
+                            if (client != null) {
+                                String id = notInNearCache.get(i);
+                                found.put(id, client);
+                                clientNearCache.putIfCurrent(id, client, Duration.ZERO, versions.get(id));
+                            } else {
+                                misses.add(notInNearCache.get(i));
+                            }
+                        }
+                        if (misses.isEmpty()) {
+                            return Mono.just(orderedAndTimed(distinctIds, found, cacheServedTimer, start));
+                        }
+                        return getRepository().findAllById(misses)
+                                .collectMap(Client::getId)
+                                .flatMap(loaded -> backFill(loaded, versions)
+                                        .then(Mono.fromCallable(() -> {
+                                            found.putAll(loaded);
+                                            return orderedAndTimed(distinctIds, found, databaseServedTimer, start);
+                                        })));
+                    });
+        }).flatMapIterable(clients -> clients);
+    }
+
+    private Mono<Void> backFill(Map<String, Client> loaded, Map<String, Long> versions) {
+        Map<String, Client> byKey = loaded.values().stream()
+                .filter(client -> clientNearCache.putIfCurrent(client.getId(), client, Duration.ZERO,
+                        versions.get(client.getId())))
+                .collect(Collectors.toMap(client -> clientKeyPrefix + client.getId(), client -> client));
+        return redisTemplate.saveAllIfAbsent(byKey, Duration.ofHours(1))
+                .onErrorResume(error -> {
+                    log.error("Could not write clients to redis: " + error.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private List<Client> orderedAndTimed(List<String> ids, Map<String, Client> found, Timer timer, long start) {
+        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return ids.stream().map(found::get).filter(Objects::nonNull).collect(Collectors.toList());
     }
 
 }
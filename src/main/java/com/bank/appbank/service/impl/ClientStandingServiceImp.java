@@ -0,0 +1,171 @@
+package com.bank.appbank.service.impl;
+
+import com.bank.appbank.client.PaymentServiceClient;
+import com.bank.appbank.exceptions.IneligibleClientException;
+import com.bank.appbank.model.ClientStanding;
+import com.bank.appbank.model.Credit;
+import com.bank.appbank.model.CreditCard;
+import com.bank.appbank.repository.ClientStandingRepository;
+import com.bank.appbank.repository.CreditCardRepository;
+import com.bank.appbank.repository.CreditRepository;
+import com.bank.appbank.service.ClientStandingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Service
+public class ClientStandingServiceImp implements ClientStandingService {
+    private static final Logger log = LoggerFactory.getLogger(ClientStandingServiceImp.class);
+    private final ClientStandingRepository clientStandingRepository;
+    private final CreditCardRepository creditCardRepository;
+    private final CreditRepository creditRepository;
+    private final PaymentServiceClient paymentServiceClient;
+    private final Clock clock;
+    private final Duration ttl;
+
+    public ClientStandingServiceImp(ClientStandingRepository clientStandingRepository,
+                                    CreditCardRepository creditCardRepository,
+                                    CreditRepository creditRepository,
+                                    PaymentServiceClient paymentServiceClient,
+                                    Clock clock,
+                                    @Value("${appbank.standing.ttl-minutes:360}") long ttlMinutes) {
+        this.clientStandingRepository = clientStandingRepository;
+        this.creditCardRepository = creditCardRepository;
+        this.creditRepository = creditRepository;
+        this.paymentServiceClient = paymentServiceClient;
+        this.clock = clock;
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+    }
+
+    /**
+     * Reads the stored standing and only recomputes it when it is missing or stale. If it can not be
+     * computed the client is accepted, as when the products of the client could not be loaded before.
+     */
+    @Override
+    public Mono<Boolean> validateIfClientHasOverDueCredit(String idClient) {
+        return clientStandingRepository.findById(idClient)
+                .filter(this::isCurrent)
+                .switchIfEmpty(Mono.defer(() -> refresh(idClient)))
+                .map(ClientStanding::hasOverdueDebt)
+                .onErrorResume(error -> {
+                    log.error("Could not compute the standing of client " + idClient + ": " + error.getMessage());
+                    return Mono.just(false);
+                })
+                .flatMap(hasOverdueDebt -> {
+                    if (hasOverdueDebt) {
+                        String message = "The client has an overdue debt";
+                        log.error(message);
+                        return Mono.error(new IneligibleClientException(message));
+                    }
+                    return Mono.just(true);
+                });
+    }
+
+    @Override
+    public Mono<ClientStanding> refresh(String idClient) {
+        LocalDate today = LocalDate.now(clock);
+        return Mono.zip(
+                        creditCardRepository.findAllByIdClient(idClient).collectList(),
+                        creditRepository.findAllByIdClient(idClient).collectList())
+                .flatMap(tuple -> findCreditsPaidInMonth(tuple.getT2(), today)
+                        .map(paidCredits -> computeStanding(idClient, tuple.getT1(), tuple.getT2(), paidCredits)))
+                .flatMap(clientStandingRepository::save);
+    }
+
+    private Mono<Set<String>> findCreditsPaidInMonth(List<Credit> credits, LocalDate today) {
+        if (credits.isEmpty()) {
+            return Mono.just(Set.of());
+        }
+        List<String> idCredits = credits.stream().map(Credit::getId).collect(Collectors.toList());
+        return paymentServiceClient.findCreditsPaidInMonth(idCredits, today.getMonthValue(), today.getYear());
+    }
+
+    @Override
+    public Mono<Void> invalidate(String idClient) {
+        return clientStandingRepository.deleteById(idClient);
+    }
+
+    /**
+     * A standing stays valid until its next due date passes or the month changes, the two moments when a
+     * client can become overdue (or stop being so) without any write to its products, and at most for
+     * {@code appbank.standing.ttl-minutes} in case a refresh after a write was missed.
+     */
+    private boolean isCurrent(ClientStanding standing) {
+        LocalDate today = LocalDate.now(clock);
+        return standing.getComputedAt() != null
+                && standing.getExpiresAt() != null && clock.instant().isBefore(standing.getExpiresAt())
+                && YearMonth.from(standing.getComputedAt()).equals(YearMonth.from(today))
+                && (standing.getNextDueDate() == null || !today.isAfter(standing.getNextDueDate()));
+    }
+
+    private ClientStanding computeStanding(String idClient,
+                                           List<CreditCard> creditCards,
+                                           List<Credit> credits,
+                                           Set<String> paidCredits) {
+        LocalDate today = LocalDate.now(clock);
+        LocalDate nextDueDate = Stream.concat(
+                        creditCards.stream().map(this::nextDueDateOfCreditCard),
+                        credits.stream().map(credit -> nextDueDateOfCredit(credit, paidCredits)))
+                .filter(Objects::nonNull)
+                .filter(dueDate -> !dueDate.isBefore(today))
+                .min(LocalDate::compareTo)
+                .orElse(null);
+        return ClientStanding.builder()
+                .id(idClient)
+                .hasOverdueCard(creditCards.stream().anyMatch(this::isOverdueCreditCard))
+                .hasOverdueCredit(credits.stream().anyMatch(credit -> isOverdueCreditOnly(credit, paidCredits)))
+                .nextDueDate(nextDueDate)
+                .computedAt(today)
+                .expiresAt(clock.instant().plus(ttl))
+                .build();
+    }
+
+    private boolean isOverdueCreditCard(CreditCard creditCard) {
+        return creditCard.getDueDate() != null &&
+                LocalDate.now(clock).isAfter(creditCard.getDueDate()) && creditCard.getTotalDebt() > 0;
+    }
+
+    private LocalDate nextDueDateOfCreditCard(CreditCard creditCard) {
+        return creditCard.getTotalDebt() != null && creditCard.getTotalDebt() > 0 ? creditCard.getDueDate() : null;
+    }
+
+    private boolean isOverdueCreditOnly(Credit credit, Set<String> paidCredits) {
+        LocalDate today = LocalDate.now(clock);
+        return today.isAfter(getDateLimitExpected(credit, YearMonth.from(today)))
+                && !paidCredits.contains(credit.getId());
+    }
+
+    private LocalDate nextDueDateOfCredit(Credit credit, Set<String> paidCredits) {
+        LocalDate today = LocalDate.now(clock);
+        LocalDate dueDate = getDateLimitExpected(credit, YearMonth.from(today));
+        if (paidCredits.contains(credit.getId()) || today.isAfter(dueDate)) {
+            return getDateLimitExpected(credit, YearMonth.from(today).plusMonths(1));
+        }
+        return dueDate;
+    }
+
+    /**
+     * The due date of the credit in {@code month}: the day of its first payment, moved to the last day of
+     * shorter months, or the first payment itself while it is after the month. The copies this replaced
+     * compared the first payment with today instead and failed on days missing from the month.
+     */
+    private LocalDate getDateLimitExpected(Credit credit, YearMonth month) {
+        LocalDate firstPaymentDate = credit.getFirstDatePay();
+        if (firstPaymentDate.isAfter(month.atEndOfMonth())) {
+            return firstPaymentDate;
+        }
+        return month.atDay(Math.min(firstPaymentDate.getDayOfMonth(), month.lengthOfMonth()));
+    }
+}
@@ -3,17 +3,15 @@ package com.bank.appbank.service.impl;
 import com.bank.appbank.client.ConsumptionServiceClient;
 import com.bank.appbank.client.PaymentServiceClient;
 import com.bank.appbank.exceptions.CreditInvalid;
-import com.bank.appbank.exceptions.IneligibleClientException;
 import com.bank.appbank.exceptions.ResourceNotFoundException;
 import com.bank.appbank.factory.RepositoryFactory;
 import com.bank.appbank.dto.ConsumptionDto;
-import com.bank.appbank.model.Credit;
 import com.bank.appbank.model.CreditCard;
 import com.bank.appbank.dto.PaymentDto;
 import com.bank.appbank.repository.ClientRepository;
 import com.bank.appbank.repository.CreditCardRepository;
+import com.bank.appbank.service.ClientStandingService;
 import com.bank.appbank.service.CreditCardService;
-import com.bank.appbank.service.CreditService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.cglib.core.Local;
@@ -38,7 +36,7 @@ public class CreditCardServiceImp extends ServiceGenImp<CreditCard, String> impl
     private final PaymentServiceClient paymentClientService;
     private final ConsumptionServiceClient consumptionServiceClient;
     private final ClientRepository clientRepository;
-    private final CreditService creditService;
+    private final ClientStandingService clientStandingService;
     private final Clock clock;
     private static final Logger log = LoggerFactory.getLogger(CreditCardServiceImp.class);
 
@@ -46,13 +44,13 @@ public class CreditCardServiceImp extends ServiceGenImp<CreditCard, String> impl
                                 PaymentServiceClient paymentClientService,
                                 ClientRepository clientRepository,
                                 ConsumptionServiceClient consumptionServiceClient,
-                                CreditService creditService,
+                                ClientStandingService clientStandingService,
                                 Clock clock) {
         super(repositoryFactory);
         this.paymentClientService = paymentClientService;
         this.clientRepository = clientRepository;
         this.consumptionServiceClient = consumptionServiceClient;
-        this.creditService = creditService;
+        this.clientStandingService = clientStandingService;
         this.clock = clock;
     }
 
@@ -68,9 +66,14 @@ public class CreditCardServiceImp extends ServiceGenImp<CreditCard, String> impl
                 .switchIfEmpty(Mono.error(
                         new ResourceNotFoundException(
                                 "The client with id: "+ creditCard.getIdClient() +" does not exit.")))
-                .flatMap(client -> validateIfClientHasOverDueCredit(client.getId())
+                .flatMap(client -> clientStandingService.validateIfClientHasOverDueCredit(client.getId())
                             .flatMap(isValidClient -> setNumbersBillingAndDueDate(creditCard)))
-                .flatMap(creditCard1 ->  super.create(creditCard));
+                .flatMap(creditCard1 ->  super.create(creditCard))
+                .flatMap(this::invalidateStanding);
+    }
+
+    private Mono<CreditCard> invalidateStanding(CreditCard creditCard) {
+        return clientStandingService.invalidate(creditCard.getIdClient()).thenReturn(creditCard);
     }
 
     private Mono<CreditCard> loadPaymentAndConsumption(CreditCard creditCard) {
@@ -100,8 +103,11 @@ public class CreditCardServiceImp extends ServiceGenImp<CreditCard, String> impl
                             creditCard1.setLimitCredit(creditCard.getLimitCredit());
                             creditCard1.setAvailableBalance(creditCard.getAvailableBalance());
                             creditCard1.setTotalDebt(creditCard.getTotalDebt());
+                            creditCard1.setLastBilledDate(creditCardFound.getLastBilledDate());
+                            creditCard1.setPendingBilling(creditCardFound.getPendingBilling());
                             return getRepository().save(creditCard1);
-                        }));
+                        }))
+                .flatMap(this::invalidateStanding);
     }
     private Mono<CreditCard> setNumbersBillingAndDueDate(CreditCard creditCard) {
         if (!Objects.equals(creditCard.getNumberBillingDate(), "20")
@@ -117,63 +123,6 @@ public class CreditCardServiceImp extends ServiceGenImp<CreditCard, String> impl
         return Mono.just(creditCard);
     }
 
-    public Mono<Boolean> validateIfClientHasOverDueCredit(String idClient) {
-        return Mono.zip(
-                        findAllCreditCardsByIdClient(idClient).onErrorResume(ex -> Mono.just(Collections.emptyList())),
-                        findAllCreditsByIdClient(idClient).onErrorResume(ex -> Mono.just(Collections.emptyList()))
-                )
-                .flatMap(tuple -> {
-                    List<CreditCard> creditCards = tuple.getT1();
-                    List<Credit> credits = tuple.getT2();
-
-                    boolean hasOverDueCreditCard = creditCards.stream()
-                            .anyMatch(this::isOverdueCreditCard);
-                    boolean hasOverDueCredit = credits.stream()
-                            .anyMatch(this::isOverdueCreditOnly);
-
-                    if (hasOverDueCredit || hasOverDueCreditCard) {
-                        String message = "The client has an overdue debt";
-                        log.error(message);
-                        return Mono.error(new IneligibleClientException(message));
-                    }
-                    return Mono.just(true);
-                });
-    }
-
-    private Mono<List<CreditCard>> findAllCreditCardsByIdClient(String idClient) {
-        return ((CreditCardRepository)getRepository()).findAllByIdClient(idClient)
-                .collectList()
-                .defaultIfEmpty(Collections.emptyList());
-    }
-
-    private Mono<List<Credit>> findAllCreditsByIdClient(String idClient) {
-        return creditService.allCreditsByIdClientWithAllPaymentsSortedByDatePayment(idClient)
-                .collectList()
-                .defaultIfEmpty(Collections.emptyList());
-    }
-
-    private boolean isOverdueCreditCard(CreditCard creditCard) {
-        return creditCard.getDueDate() != null &&
-                LocalDate.now(clock).isAfter(creditCard.getDueDate()) && creditCard.getTotalDebt() > 0;
-    }
-
-    private boolean isOverdueCreditOnly(Credit credit) {
-        LocalDate today = LocalDate.now(clock);
-        int numberMonth = today.getMonthValue();
-        int numberYear = today.getYear();
-
-        boolean hasPaymentInPresentMonth = credit.getPayments().stream()
-                .anyMatch(payment -> payment.getMonthCorresponding() == numberMonth
-                        && payment.getYearCorresponding() == numberYear);
-
-        LocalDate dueDate = getDateLimitExpected(credit, numberMonth, numberYear);
-
-        return today.isAfter(dueDate) && !hasPaymentInPresentMonth;
-    }
-    private LocalDate getDateLimitExpected(Credit credit, int month, int year) {
-        LocalDate firstPaymentDate = credit.getFirstDatePay();
-        return LocalDate.of(year, month, firstPaymentDate.getDayOfMonth());
-    }
 
     @Override
     public Flux<CreditCard> allCreditCardsByIdClientWithPaymentAndConsumption(String idClient) {
@@ -3,15 +3,13 @@ package com.bank.appbank.service.impl;
 import com.bank.appbank.client.PaymentServiceClient;
 import com.bank.appbank.exceptions.CanNotDeleteEntity;
 import com.bank.appbank.exceptions.CreditInvalid;
-import com.bank.appbank.exceptions.IneligibleClientException;
 import com.bank.appbank.exceptions.ResourceNotFoundException;
 import com.bank.appbank.factory.RepositoryFactory;
 import com.bank.appbank.model.Client;
 import com.bank.appbank.model.Credit;
-import com.bank.appbank.model.CreditCard;
-import com.bank.appbank.repository.CreditCardRepository;
 import com.bank.appbank.repository.CreditRepository;
 import com.bank.appbank.service.ClientService;
+import com.bank.appbank.service.ClientStandingService;
 import com.bank.appbank.service.CreditService;
 import com.bank.appbank.utils.Numbers;
 import org.slf4j.Logger;
@@ -22,8 +20,6 @@ import reactor.core.publisher.Mono;
 
 import java.time.Clock;
 import java.time.LocalDate;
-import java.util.Collections;
-import java.util.List;
 
 @Service
 public class CreditServiceImp extends ServiceGenImp<Credit, String> implements CreditService {
@@ -31,18 +27,18 @@ public class CreditServiceImp extends ServiceGenImp<Credit, String> implements C
     public final ClientService clientService;
     public final PaymentServiceClient paymentServiceClient;
     private final Clock clock;
-    private final CreditCardRepository creditCardRepository;
+    private final ClientStandingService clientStandingService;
     private static final Logger log = LoggerFactory.getLogger(CreditServiceImp.class);
 
     public CreditServiceImp(RepositoryFactory repositoryFactory,
                             ClientService clientService,
                             PaymentServiceClient paymentServiceClient,
-                            CreditCardRepository creditCardRepository,
+                            ClientStandingService clientStandingService,
                             Clock clock) {
         super(repositoryFactory);
         this.clientService = clientService;
         this.paymentServiceClient = paymentServiceClient;
-        this.creditCardRepository = creditCardRepository;
+        this.clientStandingService = clientStandingService;
         this.clock = clock;
     }
 
@@ -70,7 +66,8 @@ public class CreditServiceImp extends ServiceGenImp<Credit, String> implements C
                     creditFound.setFirstDatePay(credit.getFirstDatePay());
                     creditFound.setDisbursementDate(credit.getDisbursementDate());
                     return getRepository().save(creditFound);
-                });
+                })
+                .flatMap(this::invalidateStanding);
     }
 
     @Override
@@ -93,7 +90,7 @@ public class CreditServiceImp extends ServiceGenImp<Credit, String> implements C
     @Override
     public Mono<Credit> create(Credit credit) {
         Mono<Client> clientFound = clientService.findById(credit.getIdClient())
-                .flatMap(client -> validateIfClientHasOverDueCredit(client.getId())
+                .flatMap(client -> clientStandingService.validateIfClientHasOverDueCredit(client.getId())
                         .flatMap(isValidClient -> Mono.just(client)))
                 .onErrorResume(ResourceNotFoundException.class, exception ->
                         Mono.error(new ResourceNotFoundException(
@@ -114,10 +111,15 @@ public class CreditServiceImp extends ServiceGenImp<Credit, String> implements C
                     .flatMap(credit1 -> {
                         putPendingAmountAndGenerateMonthlyFee(credit1);
                         return super.create(credit);
-                    });
+                    })
+                    .flatMap(this::invalidateStanding);
         });
     }
 
+    private Mono<Credit> invalidateStanding(Credit credit) {
+        return clientStandingService.invalidate(credit.getIdClient()).thenReturn(credit);
+    }
+
     private void putPendingAmountAndGenerateMonthlyFee(Credit credit) {
         credit.setMonthlyFee(generateMonthlyFee(credit.getTotalAmount(),
                 credit.getInterestRate(), credit.getTotalMonths()));
@@ -140,64 +142,6 @@ public class CreditServiceImp extends ServiceGenImp<Credit, String> implements C
         }
         return Mono.just(credit);
     }
-    public Mono<Boolean> validateIfClientHasOverDueCredit(String idClient) {
-        return Mono.zip(
-                        findAllCreditCardsByIdClient(idClient).onErrorResume(ex -> Mono.just(Collections.emptyList())),
-                        findAllCreditsByIdClientWithPayments(idClient)
-                                .onErrorResume(ex -> Mono.just(Collections.emptyList()))
-                )
-                .flatMap(tuple -> {
-                    List<CreditCard> creditCards = tuple.getT1();
-                    List<Credit> credits = tuple.getT2();
-
-                    boolean hasOverDueCreditCard = creditCards.stream()
-                            .anyMatch(this::isOverdueCreditCard);
-                    boolean hasOverDueCredit = credits.stream()
-                            .anyMatch(this::isOverdueCreditOnly);
-
-                    if (hasOverDueCredit || hasOverDueCreditCard) {
-                        String message = "The client has an overdue debt";
-                        log.error(message);
-                        return Mono.error(new IneligibleClientException(message));
-                    }
-                    return Mono.just(true);
-                });
-    }
-
-    private Mono<List<CreditCard>> findAllCreditCardsByIdClient(String idClient) {
-        return creditCardRepository.findAllByIdClient(idClient)
-                .collectList()
-                .defaultIfEmpty(Collections.emptyList());
-    }
-
-    private Mono<List<Credit>> findAllCreditsByIdClientWithPayments(String idClient) {
-        return allCreditsByIdClientWithAllPaymentsSortedByDatePayment(idClient)
-                .collectList()
-                .defaultIfEmpty(Collections.emptyList());
-    }
-
-    private boolean isOverdueCreditCard(CreditCard creditCard) {
-        return creditCard.getDueDate() != null &&
-                LocalDate.now(clock).isAfter(creditCard.getDueDate()) && creditCard.getTotalDebt() > 0;
-    }
-
-    private boolean isOverdueCreditOnly(Credit credit) {
-        LocalDate today = LocalDate.now(clock);
-        int numberMonth = today.getMonthValue();
-        int numberYear = today.getYear();
-
-        boolean hasPaymentInPresentMonth = credit.getPayments().stream()
-                .anyMatch(payment -> payment.getMonthCorresponding() == numberMonth
-                        && payment.getYearCorresponding() == numberYear);
-
-        LocalDate dueDate = getDateLimitExpected(credit, numberMonth, numberYear);
-
-        return today.isAfter(dueDate) && !hasPaymentInPresentMonth;
-    }
-    private LocalDate getDateLimitExpected(Credit credit, int month, int year) {
-        LocalDate firstPaymentDate = credit.getFirstDatePay();
-        return LocalDate.of(year, month, firstPaymentDate.getDayOfMonth());
-    }
 
     @Override
     public Mono<Void> deleteById(String id) {
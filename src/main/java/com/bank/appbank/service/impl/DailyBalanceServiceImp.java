@@ -1,54 +1,82 @@
 package com.bank.appbank.service.impl;
 
 import com.bank.appbank.model.BankAccount;
+import com.bank.appbank.model.BankProduct;
 import com.bank.appbank.model.Credit;
 import com.bank.appbank.model.CreditCard;
 import com.bank.appbank.model.DailyBalance;
+import com.bank.appbank.model.MonthlyBalance;
 import com.bank.appbank.repository.DailyBalanceRepository;
+import com.bank.appbank.repository.MonthlyBalanceRepository;
 import com.bank.appbank.service.DailyBalanceService;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.stream.Collectors;
 
 @Service
 public class DailyBalanceServiceImp implements DailyBalanceService {
     private final DailyBalanceRepository dailyBalanceRepository;
+    private final MonthlyBalanceRepository monthlyBalanceRepository;
 
-    public DailyBalanceServiceImp(DailyBalanceRepository dailyBalanceRepository) {
+    public DailyBalanceServiceImp(DailyBalanceRepository dailyBalanceRepository,
+                                  MonthlyBalanceRepository monthlyBalanceRepository) {
         this.dailyBalanceRepository = dailyBalanceRepository;
+        this.monthlyBalanceRepository = monthlyBalanceRepository;
     }
 
+    /**
+     * Writes the snapshots of a batch of products with one bulk upsert, instead of a round trip per
+     * product, and then recomputes their monthly accumulators from the daily balances of the month. Being
+     * recomputed rather than incremented, an accumulator also counts the days recorded before it existed
+     * and the days caught up out of order, and follows a day written again with a new balance. The days
+     * written after they ended are marked {@code carriedForward}, their balance being the current one.
+     */
     @Override
-    public Mono<Void> registerDailyBalanceByBankAccount(BankAccount bankAccount) {
-        DailyBalance dailyBalance = DailyBalance.builder()
-                .idBankProduct(bankAccount.getId())
-                .balance(bankAccount.getBalance())
-                .date(LocalDate.now())
-                .build();
-        return dailyBalanceRepository.save(dailyBalance)
-                .then();
+    public Mono<Void> registerDailyBalances(List<? extends BankProduct> bankProducts, LocalDate date,
+                                            boolean carriedForward) {
+        if (bankProducts.isEmpty()) {
+            return Mono.empty();
+        }
+        List<DailyBalance> dailyBalances = bankProducts.stream()
+                .map(bankProduct -> DailyBalance.builder()
+                        .idBankProduct(bankProduct.getId())
+                        .balance(getBalance(bankProduct))
+                        .date(date)
+                        .carriedForward(carriedForward)
+                        .build())
+                .collect(Collectors.toList());
+        return dailyBalanceRepository.upsertAll(dailyBalances)
+                .then(refreshMonthlyBalances(dailyBalances.stream()
+                        .map(DailyBalance::getIdBankProduct)
+                        .collect(Collectors.toList()), YearMonth.from(date)));
     }
 
-    @Override
-    public Mono<Void> registerDailyBalanceByCreditCard(CreditCard creditCard) {
-        DailyBalance dailyBalance = DailyBalance.builder()
-                .idBankProduct(creditCard.getId())
-                .balance(creditCard.getAvailableBalance())
-                .date(LocalDate.now())
-                .build();
-        return dailyBalanceRepository.save(dailyBalance)
-                .then();
+    private Mono<Void> refreshMonthlyBalances(List<String> idsBankProduct, YearMonth period) {
+        return dailyBalanceRepository
+                .sumBalancesByIdBankProductInAndDateBetween(idsBankProduct, period.atDay(1), period.atEndOfMonth())
+                .map(monthlyBalance -> {
+                    monthlyBalance.setId(MonthlyBalance.idOf(monthlyBalance.getIdBankProduct(), period));
+                    monthlyBalance.setYear(period.getYear());
+                    monthlyBalance.setMonth(period.getMonthValue());
+                    return monthlyBalance;
+                })
+                .collectList()
+                .flatMap(monthlyBalanceRepository::upsertAll);
     }
 
-    @Override
-    public Mono<Void> registerDailyBalanceByCredit(Credit credit) {
-        DailyBalance dailyBalance = DailyBalance.builder()
-                .idBankProduct(credit.getId())
-                .balance(credit.getPendingBalance())
-                .date(LocalDate.now())
-                .build();
-        return dailyBalanceRepository.save(dailyBalance)
-                .then();
+    private Double getBalance(BankProduct bankProduct) {
+        Double balance = 0.0;
+        if (bankProduct instanceof BankAccount) {
+            balance = ((BankAccount) bankProduct).getBalance();
+        } else if (bankProduct instanceof CreditCard) {
+            balance = ((CreditCard) bankProduct).getAvailableBalance();
+        } else if (bankProduct instanceof Credit) {
+            balance = ((Credit) bankProduct).getPendingBalance();
+        }
+        return balance;
     }
 }
@@ -1,6 +1,7 @@
 package com.bank.appbank.service.impl;
 
 import com.bank.appbank.client.MovementServiceClient;
+import com.bank.appbank.config.MongoTransactions;
 import com.bank.appbank.dto.MovementDto;
 import com.bank.appbank.dto.PaymentDto;
 import com.bank.appbank.dto.ResponseAssociationWalletDto;
@@ -14,7 +15,6 @@ import com.bank.appbank.model.DebitCard;
 import com.bank.appbank.model.MovementWallet;
 import com.bank.appbank.repository.*;
 import com.bank.appbank.service.DebitCardService;
-import com.bank.appbank.utils.Numbers;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
@@ -31,6 +31,8 @@ public class DebitCardServiceImp extends ServiceGenImp<DebitCard, String> implem
     private final ClientRepository clientRepository;
     private final MovementWalletRepository movementWalletRepository;
     private final DebitCardProducer debitCardProducer;
+    private final BalanceMutationService balanceMutationService;
+    private final MongoTransactions mongoTransactions;
 
     public DebitCardServiceImp(RepositoryFactory repositoryFactory,
                                BankAccountDebitCardRepository bankAccountDebitCardRepository,
@@ -38,7 +40,9 @@ public class DebitCardServiceImp extends ServiceGenImp<DebitCard, String> implem
                                BankAccountRepository bankAccountRepository,
                                ClientRepository clientRepository,
                                MovementWalletRepository movementWalletRepository,
-                               DebitCardProducer debitCardProducer) {
+                               DebitCardProducer debitCardProducer,
+                               BalanceMutationService balanceMutationService,
+                               MongoTransactions mongoTransactions) {
         super(repositoryFactory);
         this.bankAccountDebitCardRepository = bankAccountDebitCardRepository;
         this.movementServiceClient = movementServiceClient;
@@ -46,6 +50,8 @@ public class DebitCardServiceImp extends ServiceGenImp<DebitCard, String> implem
         this.clientRepository = clientRepository;
         this.movementWalletRepository = movementWalletRepository;
         this.debitCardProducer = debitCardProducer;
+        this.balanceMutationService = balanceMutationService;
+        this.mongoTransactions = mongoTransactions;
     }
 
     @Override
@@ -225,19 +231,25 @@ public class DebitCardServiceImp extends ServiceGenImp<DebitCard, String> implem
         return getRepository().findById(idDebitCard)
                 .switchIfEmpty(Mono.error(new ResourceNotFoundException("The debit card not exist")))
                 .flatMap(debitCard -> {
-                    if (debitCard.getHasWallet()) {
+                    // A request delivered again for the wallet already associated gets the same approval
+                    boolean associated = debitCard.getHasWallet() && idWallet.equals(debitCard.getIdWallet());
+                    if (debitCard.getHasWallet() && !associated) {
                         return Mono.error(new ClientAlreadyExist("The debit card already has an associated wallet"));
                     }
                     return bankAccountRepository.findById(debitCard.getIdPrincipalAccount())
                             .switchIfEmpty(Mono.error(new ResourceNotFoundException("Bank account not exist")))
                             .flatMap(bankAccount -> {
                                 debitCard.setHasWallet(true);
+                                debitCard.setIdWallet(idWallet);
                                 ResponseAssociationWalletDto response = ResponseAssociationWalletDto.builder()
                                         .idWallet(idWallet)
                                         .idDebitCard(idDebitCard)
                                         .state("APPROVE")
                                         .balance(bankAccount.getBalance())
                                         .observation("Association Approved").build();
+                                if (associated) {
+                                    return Mono.just(response);
+                                }
                                 return getRepository().save(debitCard)
                                         .then(Mono.just(response));
                             });
@@ -262,81 +274,111 @@ public class DebitCardServiceImp extends ServiceGenImp<DebitCard, String> implem
                             .filter(d -> d.getId().equals(movementDestin.getIdDebitCard()))
                             .findFirst();
 
-                    List<String> idsPrincipalBankAccount = new ArrayList<>();
-                    if (debitCardOriginOpt.isPresent()) {
-                        movementOrigin.setStateMovement(MovementWallet.StateMovement.APPROVE);
-                        idsPrincipalBankAccount.add(debitCardOriginOpt.get().getIdPrincipalAccount());
-                    }
+                    String idBankAccountOrigin = debitCardOriginOpt.map(DebitCard::getIdPrincipalAccount).orElse(null);
+                    String idBankAccountDestin = debitCardDestinOpt.map(DebitCard::getIdPrincipalAccount).orElse(null);
+                    debitCardOriginOpt.ifPresent(dc -> movementOrigin.setStateMovement(
+                            MovementWallet.StateMovement.APPROVE));
+                    debitCardDestinOpt.ifPresent(dc -> movementDestin.setStateMovement(
+                            MovementWallet.StateMovement.APPROVE));
 
-                    if (debitCardDestinOpt.isPresent()) {
-                        movementDestin.setStateMovement(MovementWallet.StateMovement.APPROVE);
-                        idsPrincipalBankAccount.add(debitCardDestinOpt.get().getIdPrincipalAccount());
-                    }
-                    return bankAccountRepository.findByIdIn(idsPrincipalBankAccount)
-                            .collectList()
-                            .flatMap(bankAccounts -> {
-                                Optional<BankAccount> bankAccountOriginOpt = debitCardOriginOpt.flatMap(dc ->
-                                        bankAccounts.stream()
-                                                .filter(ba -> ba.getId().equals(dc.getIdPrincipalAccount()))
-                                                .findFirst()
-                                );
-
-                                Optional<BankAccount> bankAccountDestinOpt = debitCardDestinOpt.flatMap(dc ->
-                                        bankAccounts.stream()
-                                                .filter(ba -> ba.getId().equals(dc.getIdPrincipalAccount()))
-                                                .findFirst()
-                                );
-
-                                Mono<BankAccount> bankAccountOriginMono = Mono.justOrEmpty(bankAccountOriginOpt)
-                                        .flatMap(bankAccount -> {
-                                            double newBalance = Numbers.round(bankAccount.getBalance() - amount);
-                                            if (newBalance < 0)
-                                                return Mono.error(
-                                                    new UnsupportedMovementException("Balance is not supported"));
-                                            bankAccount.setBalance(newBalance);
-                                            return bankAccountRepository.save(bankAccount);
-                                        });
-
-                                Mono<BankAccount> bankAccountDestinMono = bankAccountDestinOpt.map(bankAccount -> {
-                                    bankAccount.setBalance(Numbers.round(bankAccount.getBalance() + amount));
-                                    return bankAccountRepository.save(bankAccount);
-                                }).orElse(Mono.empty());
-
-                                return Mono.when(
-                                        bankAccountOriginMono,bankAccountDestinMono)
-                                        .doOnSuccess(ignored -> log.info("Bank accounts processed"))
-                                        .doOnError(error -> log.error("Error in Mono.when(): ", error))
-                                        .then(Mono.zip(
-                                                    movementWalletRepository.save(movementOrigin),
-                                                    movementWalletRepository.save(movementDestin)
-                                            ).flatMap(tuple -> {
-                                                MovementWallet movementOri = tuple.getT1();
-                                                MovementWallet movementDes = tuple.getT2();
-                                                movementOri.setStateMovement(MovementWallet.StateMovement.APPROVE);
-                                                movementDes.setStateMovement(MovementWallet.StateMovement.APPROVE);
-                                                List<MovementWallet> movements = List.of(movementOri, movementDes);
-                                                debitCardProducer.publishConfirmationPaymentDebit(movements);
-                                                return Mono.just(movements);
-                                            }).then()
-                                        );
-                            });
+                    return balanceMutationService.transfer(idBankAccountOrigin, idBankAccountDestin, amount)
+                            .doOnSuccess(ignored -> log.info("Bank accounts processed"))
+                            .doOnError(error -> log.error("Error in the balance transfer: ", error));
                 })
+                .thenReturn(true)
                 .onErrorResume(error -> {
                     movementOrigin.setStateMovement(MovementWallet.StateMovement.REJECTED);
                     movementOrigin.setDescription(error.getMessage());
                     movementDestin.setStateMovement(MovementWallet.StateMovement.REJECTED);
                     movementDestin.setDescription(error.getMessage());
-                    List<MovementWallet> errorMovements = List.of(movementOrigin, movementDestin);
-
-                    return Mono.when(
-                            movementWalletRepository.save(movementOrigin),
-                            movementWalletRepository.save(movementDestin)
-                    ).then(Mono.fromRunnable(() ->
-                                    debitCardProducer.publishConfirmationPaymentDebit(errorMovements)))
-                            .then();
+                    return Mono.just(false);
+                })
+                // Once the balances are settled a failure to save or confirm must not turn into a rejection
+                .flatMap(applied -> mongoTransactions.execute(Mono.defer(() -> Mono.zip(
+                                movementWalletRepository.save(movementOrigin),
+                                movementWalletRepository.save(movementDestin))
+                        .flatMap(tuple -> {
+                            MovementWallet movementOri = tuple.getT1();
+                            MovementWallet movementDes = tuple.getT2();
+                            if (applied) {
+                                movementOri.setStateMovement(MovementWallet.StateMovement.APPROVE);
+                                movementDes.setStateMovement(MovementWallet.StateMovement.APPROVE);
+                            }
+                            return debitCardProducer.publishConfirmationPaymentDebit(List.of(movementOri, movementDes));
+                        }))));
+    }
+
+    /**
+     * Applies a whole batch of wallet payments with one read of the debit cards, one read of their
+     * accounts and one bulk write of the net balance of each account, then confirms them together.
+     * <p>
+     * With {@link MongoTransactions} enabled the balances, the movements and the confirmations are
+     * written in one transaction, and the batch is rejected as a whole if it can not commit. Otherwise a
+     * payment is only rejected when its transfer is known not to be applied; when the outcome is unknown
+     * the error is propagated and the payments can be applied again, in the same poll or in other ones,
+     * since each balance records the id of the payment movements it already took.
+     */
+    @Override
+    public Mono<Void> paymentsWalletWithDebitCard(List<List<MovementWallet>> payments) {
+        Mono<Void> settle = Mono.defer(() -> transferAll(payments)
+                .doOnNext(transfers -> {
+                    for (int i = 0; i < payments.size(); i++) {
+                        Throwable error = transfers.get(i).getError();
+                        if (error == null) {
+                            setState(payments.get(i), MovementWallet.StateMovement.APPROVE, null);
+                        } else {
+                            setState(payments.get(i), MovementWallet.StateMovement.REJECTED, error.getMessage());
+                        }
+                    }
+                })
+                .then(Mono.defer(() -> confirm(payments))));
+        if (!mongoTransactions.isEnabled()) {
+            return settle.doOnError(error -> log.error("Balance transfer of " + payments.size()
+                    + " payments did not finish, they have to be applied again: ", error));
+        }
+        return mongoTransactions.execute(settle)
+                .onErrorResume(error -> {
+                    log.error("Error in the balance transfer of the batch: ", error);
+                    payments.forEach(movements ->
+                            setState(movements, MovementWallet.StateMovement.REJECTED, error.getMessage()));
+                    return mongoTransactions.execute(Mono.defer(() -> confirm(payments)));
                 });
     }
 
+    private Mono<List<BalanceMutationService.Transfer>> transferAll(List<List<MovementWallet>> payments) {
+        List<String> idsDebitCard = payments.stream()
+                .flatMap(List::stream)
+                .map(MovementWallet::getIdDebitCard)
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+        return ((DebitCardRepository) getRepository()).findAllByIdIn(idsDebitCard)
+                .collectMap(DebitCard::getId, DebitCard::getIdPrincipalAccount)
+                .flatMap(principalAccounts -> balanceMutationService.transferAll(payments.stream()
+                        .map(movements -> new BalanceMutationService.Transfer(
+                                movements.get(0).getId(),
+                                principalAccounts.get(movements.get(0).getIdDebitCard()),
+                                principalAccounts.get(movements.get(1).getIdDebitCard()),
+                                movements.get(0).getAmount()))
+                        .collect(Collectors.toList())));
+    }
+
+    private Mono<Void> confirm(List<List<MovementWallet>> payments) {
+        return movementWalletRepository.saveAll(payments.stream()
+                        .flatMap(List::stream)
+                        .collect(Collectors.toList()))
+                .then(debitCardProducer.publishConfirmationsPaymentDebit(payments));
+    }
+
+    private static void setState(List<MovementWallet> movements, MovementWallet.StateMovement state,
+                                 String description) {
+        movements.forEach(movement -> {
+            movement.setStateMovement(state);
+            if (description != null) {
+                movement.setDescription(description);
+            }
+        });
+    }
 
     @Override
     protected Class<DebitCard> getEntityClass() {
@@ -19,19 +19,23 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuples;
 
 import java.time.*;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class ReportServiceImp implements ReportService {
 
     private static final Logger log = LoggerFactory.getLogger(ReportService.class);
+    private static final int COMMISSION_ACCOUNTS_CHUNK = 500;
     private final BankAccountRepository bankAccountRepository;
     private final CreditCardRepository creditCardRepository;
     private final CreditRepository creditRepository;
     private final DailyBalanceRepository dailyBalanceRepository;
+    private final MonthlyBalanceRepository monthlyBalanceRepository;
     private final ClientRepository clientRepository;
     private final MovementServiceClient movementServiceClient;
     private final CreditCardService creditCardService;
@@ -42,6 +46,7 @@ public class ReportServiceImp implements ReportService {
                             CreditCardRepository creditCardRepository,
                             CreditRepository creditRepository,
                             DailyBalanceRepository dailyBalanceRepository,
+                            MonthlyBalanceRepository monthlyBalanceRepository,
                             ClientRepository clientRepository,
                             MovementServiceClient movementServiceClient,
                             CreditCardService creditCardService,
@@ -51,6 +56,7 @@ public class ReportServiceImp implements ReportService {
         this.creditCardRepository = creditCardRepository;
         this.creditRepository = creditRepository;
         this.dailyBalanceRepository = dailyBalanceRepository;
+        this.monthlyBalanceRepository = monthlyBalanceRepository;
         this.clientRepository = clientRepository;
         this.movementServiceClient = movementServiceClient;
         this.debitCardService = debitCardService;
@@ -63,61 +69,29 @@ public class ReportServiceImp implements ReportService {
     public Mono<Map<String, Object>> generateReportAverageBalanceDailyInPresentMonth(String idClient) {
         log.info("REPORT GENERATE generateReportAverageBalanceDailyInPresentMonth" );
         log.info("idClient: "+idClient);
-        Mono<List<Map<String, Object>>> bankAccountFlux = bankAccountRepository.findAllByIdClient(idClient)
-                .flatMap(bankAccount -> groupDailyBalanceByBankAccountInPresentMonth(bankAccount.getId())
-                        .map(dailyBalances -> {
-                            int countActiveDays = dailyBalances.size();
-                            if(!todayExistInBalanceDaily(dailyBalances)) {
-                                addBalanceActualToDailyBalances(dailyBalances, bankAccount);
-                                countActiveDays++;
-                            }
-                            double sumDailyBalance = sumDailyBalance(dailyBalances);
-                            Map<String, Object> bankAccountResponse = new HashMap<>();
-                            bankAccountResponse.put("bankAccountId", bankAccount.getId());
-                            bankAccountResponse.put("typeBankAccount", bankAccount.getTypeBankAccount());
-                            bankAccountResponse.put("currentBalance", bankAccount.getBalance());
-                            bankAccountResponse.put("averageDailyBalance", countActiveDays != 0 ?
-                                    sumDailyBalance/countActiveDays : 0);
-                            return bankAccountResponse;
-                        }))
-                .collectList();
-        Mono<List<Map<String, Object>>> creditCardFlux = creditCardRepository.findAllByIdClient(idClient)
-                .flatMap(creditCard -> groupDailyBalanceByBankAccountInPresentMonth(creditCard.getId())
-                        .map(dailyBalances -> {
-                            int countActiveDays = dailyBalances.size();
-                            if(!todayExistInBalanceDaily(dailyBalances)) {
-                                addBalanceActualToDailyBalances(dailyBalances, creditCard);
-                                countActiveDays++;
-                            }
-                            double sumDailyBalance = sumDailyBalance(dailyBalances);
-                            Map<String, Object> bankAccountResponse = new HashMap<>();
-                            bankAccountResponse.put("bankAccountId", creditCard.getId());
-                            bankAccountResponse.put("currentBalance", creditCard.getAvailableBalance());
-                            bankAccountResponse.put("averageDailyBalance", countActiveDays != 0 ?
-                                    sumDailyBalance/countActiveDays : 0);
-                            return bankAccountResponse;
-                        }))
-                .collectList();
-        Mono<List<Map<String, Object>>> creditFlux = creditRepository.findAllByIdClient(idClient)
-                .flatMap(credit -> groupDailyBalanceByBankAccountInPresentMonth(credit.getId())
-                        .map(dailyBalances -> {
-                            int countActiveDays = dailyBalances.size();
-                            if(!todayExistInBalanceDaily(dailyBalances)) {
-                                addBalanceActualToDailyBalances(dailyBalances, credit);
-                                countActiveDays++;
-                            }
-                            double sumDailyBalance = sumDailyBalance(dailyBalances);
-                            Map<String, Object> bankAccountResponse = new HashMap<>();
-                            bankAccountResponse.put("bankAccountId", credit.getId());
-                            bankAccountResponse.put("currentBalance", credit.getPendingBalance());
-                            bankAccountResponse.put("averageDailyBalance", countActiveDays != 0 ?
-                                    sumDailyBalance/countActiveDays : 0);
-                            return bankAccountResponse;
-                        }))
-                .collectList();
-
+        Mono<List<BankAccount>> bankAccountsMono = bankAccountRepository.findAllByIdClient(idClient).collectList();
+        Mono<List<CreditCard>> creditCardsMono = creditCardRepository.findAllByIdClient(idClient).collectList();
+        Mono<List<Credit>> creditsMono = creditRepository.findAllByIdClient(idClient).collectList();
 
-        return Mono.zip(bankAccountFlux, creditCardFlux, creditFlux)
+        return Mono.zip(bankAccountsMono, creditCardsMono, creditsMono)
+                .flatMap(products -> {
+                    List<String> idsBankProduct = Stream.<List<? extends BankProduct>>of(
+                                    products.getT1(), products.getT2(), products.getT3())
+                            .flatMap(List::stream)
+                            .map(BankProduct::getId)
+                            .collect(Collectors.toList());
+                    return findMonthlyBalancesInPresentMonth(idsBankProduct)
+                            .map(monthlyBalances -> Tuples.of(
+                                    products.getT1().stream()
+                                            .map(bankAccount -> bankAccountResponse(bankAccount, monthlyBalances))
+                                            .collect(Collectors.toList()),
+                                    products.getT2().stream()
+                                            .map(creditCard -> creditCardResponse(creditCard, monthlyBalances))
+                                            .collect(Collectors.toList()),
+                                    products.getT3().stream()
+                                            .map(credit -> creditResponse(credit, monthlyBalances))
+                                            .collect(Collectors.toList())));
+                })
                 .flatMap(dataCombine -> {
                     List<Map<String, Object>> bankAccounts = dataCombine.getT1();
                     List<Map<String, Object>> creditCards = dataCombine.getT2();
@@ -135,24 +109,85 @@ public class ReportServiceImp implements ReportService {
                 });
     }
 
-    private Mono<List<DailyBalance>> groupDailyBalanceByBankAccountInPresentMonth(String bankAccountId) {
-        LocalDateTime to = LocalDateTime.now(clock);
-        LocalDateTime from = to.withDayOfMonth(1).toLocalDate().atStartOfDay();
+    private Map<String, Object> bankAccountResponse(BankAccount bankAccount,
+                                                    Map<String, MonthlyBalance> monthlyBalances) {
+        Map<String, Object> bankAccountResponse = new HashMap<>();
+        bankAccountResponse.put("bankAccountId", bankAccount.getId());
+        bankAccountResponse.put("typeBankAccount", bankAccount.getTypeBankAccount());
+        bankAccountResponse.put("currentBalance", bankAccount.getBalance());
+        bankAccountResponse.put("averageDailyBalance", averageDailyBalance(bankAccount, monthlyBalances));
+        return bankAccountResponse;
+    }
 
-        log.info("from: "+from);
-        log.info("to: "+to);
-        return dailyBalanceRepository.findAllByIdBankProductAndDateBetween(bankAccountId, from, to)
-                .collectList();
+    private Map<String, Object> creditCardResponse(CreditCard creditCard,
+                                                   Map<String, MonthlyBalance> monthlyBalances) {
+        Map<String, Object> bankAccountResponse = new HashMap<>();
+        bankAccountResponse.put("bankAccountId", creditCard.getId());
+        bankAccountResponse.put("currentBalance", creditCard.getAvailableBalance());
+        bankAccountResponse.put("averageDailyBalance", averageDailyBalance(creditCard, monthlyBalances));
+        return bankAccountResponse;
     }
 
-    private boolean todayExistInBalanceDaily(List<DailyBalance> dailyBalances) {
+    private Map<String, Object> creditResponse(Credit credit, Map<String, MonthlyBalance> monthlyBalances) {
+        Map<String, Object> bankAccountResponse = new HashMap<>();
+        bankAccountResponse.put("bankAccountId", credit.getId());
+        bankAccountResponse.put("currentBalance", credit.getPendingBalance());
+        bankAccountResponse.put("averageDailyBalance", averageDailyBalance(credit, monthlyBalances));
+        return bankAccountResponse;
+    }
+
+    /**
+     * Resolves the accumulators of all the products of a client in one query. Every snapshot recomputes
+     * the accumulator of its month from all the daily balances of that month, so an accumulator is never
+     * missing days; the products without one (no snapshot since the accumulators were deployed) are
+     * grouped from the daily balances in a second single query.
+     */
+    private Mono<Map<String, MonthlyBalance>> findMonthlyBalancesInPresentMonth(List<String> idsBankProduct) {
+        if (idsBankProduct.isEmpty()) {
+            return Mono.just(Collections.emptyMap());
+        }
         LocalDate today = LocalDate.now(clock);
-        log.warn("Reference time: " +today);
-        return dailyBalances.stream()
-                .map(DailyBalance::getDate)
-                .anyMatch(date -> date.equals(today));
+        YearMonth period = YearMonth.from(today);
+        List<String> idsMonthlyBalance = idsBankProduct.stream()
+                .map(idBankProduct -> MonthlyBalance.idOf(idBankProduct, period))
+                .collect(Collectors.toList());
+
+        return monthlyBalanceRepository.findAllById(idsMonthlyBalance)
+                .collectMap(MonthlyBalance::getIdBankProduct)
+                .flatMap(monthlyBalances -> {
+                    List<String> idsWithoutAccumulator = idsBankProduct.stream()
+                            .filter(idBankProduct -> !monthlyBalances.containsKey(idBankProduct))
+                            .collect(Collectors.toList());
+                    if (idsWithoutAccumulator.isEmpty()) {
+                        return Mono.just(monthlyBalances);
+                    }
+                    log.info("from: " + period.atDay(1));
+                    log.info("to: " + today);
+                    return dailyBalanceRepository
+                            .sumBalancesByIdBankProductInAndDateBetween(idsWithoutAccumulator, period.atDay(1), today)
+                            .collectList()
+                            .map(groupedBalances -> {
+                                Map<String, MonthlyBalance> allMonthlyBalances = new HashMap<>(monthlyBalances);
+                                groupedBalances.forEach(monthlyBalance ->
+                                        allMonthlyBalances.put(monthlyBalance.getIdBankProduct(), monthlyBalance));
+                                return allMonthlyBalances;
+                            });
+                });
     }
-    private void addBalanceActualToDailyBalances(List<DailyBalance> dailyBalances, BankProduct bankProduct) {
+
+    private double averageDailyBalance(BankProduct bankProduct, Map<String, MonthlyBalance> monthlyBalances) {
+        LocalDate today = LocalDate.now(clock);
+        MonthlyBalance monthlyBalance = monthlyBalances.get(bankProduct.getId());
+        double sumDailyBalance = monthlyBalance != null ? monthlyBalance.getSumBalance() : 0.0;
+        int countActiveDays = monthlyBalance != null ? monthlyBalance.getCountDays() : 0;
+        if (monthlyBalance == null || !today.equals(monthlyBalance.getLastDate())) {
+            sumDailyBalance += getCurrentBalance(bankProduct);
+            countActiveDays++;
+        }
+        return sumDailyBalance / countActiveDays;
+    }
+
+    private double getCurrentBalance(BankProduct bankProduct) {
         double balance = 0.0;
         if (bankProduct instanceof BankAccount) {
             balance = ((BankAccount) bankProduct).getBalance();
@@ -161,59 +196,48 @@ public class ReportServiceImp implements ReportService {
         } else if (bankProduct instanceof Credit) {
             balance = ((Credit) bankProduct).getPendingBalance();
         }
-        DailyBalance dailyBalance = DailyBalance.builder()
-                .idBankProduct(bankProduct.getId())
-                .date(LocalDate.now())
-                .balance(balance)
-                .build();
-        dailyBalances.add(dailyBalance);
-    }
-
-    private double sumDailyBalance(List<DailyBalance> dailyBalances) {
-        return dailyBalances.stream()
-                .mapToDouble(DailyBalance::getBalance)
-                .sum();
+        return balance;
     }
 
+    /**
+     * Folds the movements of the range as they are decoded into a running commission per bank account, so
+     * only one total per account is held instead of every movement. The account types are then read in
+     * chunks and the totals folded again per type.
+     */
     @Override
     public Mono<Map<String, Object>> generateReportAllCommissionsByProductInRangeDate(String from, String to) {
         log.info("REPORT GENERATE generateReportAllCommissionsByProductInRangeDate" );
         log.info("from: "+from);
         log.info("to: "+to);
         return movementServiceClient.getAllMovementsByRangeDate(from, to)
-//                .onErrorResume(err -> {
-//                    log.error("An error has occurred" + err);
-//                    return Mono.error(new RuntimeException("Service not available"));
-//                })
-                .filter(movement -> {
-                    log.info(String.valueOf(movement));
-
-                    return movement.getCommissionAmount() > 0 && movement.getTypeMovement() != TRANSFER;
+                .filter(movement -> movement.getCommissionAmount() != null
+                        && movement.getCommissionAmount() > 0
+                        && movement.getTypeMovement() != TRANSFER)
+                .reduceWith(HashMap<String, Double>::new, (commissionsByAccount, movement) -> {
+                    commissionsByAccount.merge(movement.getIdBankAccount(), movement.getCommissionAmount(),
+                            Double::sum);
+                    return commissionsByAccount;
                 })
-                .collectList()
-                .flatMap(this::getBankAccountsAndGenerateReport);
+                .flatMap(this::totalCommissionsByTypeOfAccount);
     }
-    private Mono<Map<String, Object>> getBankAccountsAndGenerateReport(List<MovementDto> movements) {
-        Set<String> bankAccountIds = movements.stream()
-                .map(MovementDto::getIdBankAccount)
-                .collect(Collectors.toSet());
 
-        return bankAccountRepository.findAllById(bankAccountIds)
-                .collectList()
-                .map(bankAccounts -> Map.of(
-                        "savingAccount", calculateTotalCommission(bankAccounts, movements, SAVING_ACCOUNT),
-                        "currentAccount", calculateTotalCommission(bankAccounts, movements, CURRENT_ACCOUNT),
-                        "fixedTermAccount", calculateTotalCommission(bankAccounts, movements, FIXED_TERM_ACCOUNT)));
-    }
-    private double calculateTotalCommission(List<BankAccount> bankAccounts,
-                                            List<MovementDto> movements,
-                                            BankAccount.TypeBankAccount typeBankAccount) {
-        return bankAccounts.stream()
-                .filter(bankAccount -> bankAccount.getTypeBankAccount() == typeBankAccount)
-                .flatMap(bankAccount -> movements.stream()
-                        .filter(movement -> movement.getIdBankAccount().equals(bankAccount.getId())))
-                .mapToDouble(MovementDto::getCommissionAmount)
-                .sum();
+    private Mono<Map<String, Object>> totalCommissionsByTypeOfAccount(Map<String, Double> commissionsByAccount) {
+        return Flux.fromIterable(commissionsByAccount.keySet())
+                .buffer(COMMISSION_ACCOUNTS_CHUNK)
+                .concatMap(idBankAccounts -> bankAccountRepository.findAllById(new LinkedHashSet<>(idBankAccounts)))
+                .reduceWith(() -> new EnumMap<BankAccount.TypeBankAccount, Double>(BankAccount.TypeBankAccount.class),
+                        (commissionsByType, bankAccount) -> {
+                            // An account without type is left out of the report, as it is of no bucket
+                            if (bankAccount.getTypeBankAccount() != null) {
+                                commissionsByType.merge(bankAccount.getTypeBankAccount(),
+                                        commissionsByAccount.get(bankAccount.getId()), Double::sum);
+                            }
+                            return commissionsByType;
+                        })
+                .map(commissionsByType -> Map.of(
+                        "savingAccount", commissionsByType.getOrDefault(SAVING_ACCOUNT, 0.0),
+                        "currentAccount", commissionsByType.getOrDefault(CURRENT_ACCOUNT, 0.0),
+                        "fixedTermAccount", commissionsByType.getOrDefault(FIXED_TERM_ACCOUNT, 0.0)));
     }
 
     @Override
@@ -1,64 +1,254 @@
 package com.bank.appbank.service.scheduler;
 
+import com.bank.appbank.model.BankProduct;
+import com.bank.appbank.model.SnapshotCheckpoint;
 import com.bank.appbank.repository.BankAccountRepository;
 import com.bank.appbank.repository.CreditCardRepository;
 import com.bank.appbank.repository.CreditRepository;
+import com.bank.appbank.repository.SnapshotCheckpointRepository;
 import com.bank.appbank.service.DailyBalanceService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 
 import javax.annotation.PostConstruct;
+import java.time.Clock;
 import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.stream.Collectors;
 
 @Component
 public class BalanceScheduler {
     private static final Logger log = LoggerFactory.getLogger(BalanceScheduler.class);
+    private static final LocalTime EXECUTION_TIME = LocalTime.of(23, 30);
+    private static final List<String> SNAPSHOT_COLLECTIONS = List.of("bank_accounts", "credit_cards", "credits");
     private final DailyBalanceService dailyBalanceService;
     private final BankAccountRepository bankAccountRepository;
     private final CreditCardRepository creditCardRepository;
     private final CreditRepository creditRepository;
+    private final SnapshotCheckpointRepository checkpointRepository;
+    private final JobCoordinator jobCoordinator;
+    private final Clock clock;
+    private final Timer batchTimer;
+    private final Timer runTimer;
+    private final DistributionSummary batchSizeSummary;
+    private final Counter recordedCounter;
+    private final Counter failedCounter;
+
+    @Value("${appbank.balance-snapshot.batch-size:500}")
+    private int batchSize;
+
+    @Value("${appbank.balance-snapshot.concurrency:4}")
+    private int concurrency;
+
+    @Value("${appbank.balance-snapshot.catch-up:true}")
+    private boolean catchUp;
+
+    @Value("${appbank.balance-snapshot.catch-up-days:7}")
+    private int catchUpDays;
 
     public BalanceScheduler(DailyBalanceService dailyBalanceService,
                             BankAccountRepository bankAccountRepository,
                             CreditCardRepository creditCardRepository,
-                            CreditRepository creditRepository) {
+                            CreditRepository creditRepository,
+                            SnapshotCheckpointRepository checkpointRepository,
+                            JobCoordinator jobCoordinator,
+                            Clock clock,
+                            MeterRegistry meterRegistry) {
         this.dailyBalanceService = dailyBalanceService;
         this.bankAccountRepository = bankAccountRepository;
         this.creditCardRepository = creditCardRepository;
         this.creditRepository = creditRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.jobCoordinator = jobCoordinator;
+        this.clock = clock;
+        this.batchTimer = meterRegistry.timer("balance.snapshot.batch.duration");
+        this.runTimer = meterRegistry.timer("balance.snapshot.run.duration");
+        this.batchSizeSummary = meterRegistry.summary("balance.snapshot.batch.size");
+        this.recordedCounter = meterRegistry.counter("balance.snapshot.records", "result", "recorded");
+        this.failedCounter = meterRegistry.counter("balance.snapshot.records", "result", "failed");
     }
 
     @PostConstruct
     public void startRecordDailyBalance() {
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime hourExecution = now.withHour(23).withMinute(30).withSecond(0);
+        recordDailyBalance().subscribe();
+    }
+
+    /**
+     * Catches up the pending days and then records each day at {@link #EXECUTION_TIME}. The wait for a run
+     * is measured when the previous step ends, so neither a long catch-up nor a long run moves the later
+     * runs off that time.
+     */
+    Flux<Void> recordDailyBalance() {
+        Mono<Void> catchUpOnStartup = catchUp
+                ? Mono.defer(() -> recordPendingDays(lastDueDate(LocalDateTime.now(clock))))
+                : Mono.empty();
+        return catchUpOnStartup
+                .thenMany(Mono.defer(() -> Mono.delay(untilNextExecution(LocalDateTime.now(clock))))
+                        .then(Mono.defer(() -> recordPendingDays(LocalDate.now(clock))))
+                        .repeat());
+    }
+
+    private static LocalDate lastDueDate(LocalDateTime now) {
+        LocalDate today = now.toLocalDate();
+        return now.isAfter(today.atTime(EXECUTION_TIME)) ? today : today.minusDays(1);
+    }
+
+    private static Duration untilNextExecution(LocalDateTime now) {
+        LocalDateTime hourExecution = now.toLocalDate().atTime(EXECUTION_TIME);
         if (now.isAfter(hourExecution)) {
             log.info("The execution of record daily balance pass for next day");
             hourExecution = hourExecution.plusDays(1);
         }
+        return Duration.between(now, hourExecution);
+    }
 
-        long initialDelay = Duration.between(now, hourExecution).toMillis();
-        long period = Duration.ofDays(1).toMillis();
+    /**
+     * Records every collection up to {@code lastDueDate}, one partition of a collection at a time and only
+     * for the partitions whose lease this instance gets. A day interrupted by a restart resumes after the
+     * last checkpointed _id, and days skipped while the service was down (at most {@code catchUpDays}) are
+     * filled in with the balances available at the time of the catch-up. Their movements are not replayed,
+     * so every day recorded after it ended is stored as carried forward.
+     */
+    Mono<Void> recordPendingDays(LocalDate lastDueDate) {
+        List<Tuple2<String, HashPartition>> units = jobCoordinator.partitions().stream()
+                .flatMap(partition -> SNAPSHOT_COLLECTIONS.stream()
+                        .map(collection -> Tuples.of(collection, partition)))
+                .collect(Collectors.toList());
+        return Flux.fromIterable(units)
+                .concatMap(unit -> {
+                    String key = unit.getT2().key(unit.getT1());
+                    return jobCoordinator.runOnce("balance-snapshot:" + key, lastDueDate,
+                                    recordPendingDays(key, unit.getT1(), unit.getT2(), lastDueDate))
+                            .onErrorResume(error -> {
+                                log.error("The record of daily balance in " + key + " stopped at its checkpoint: "
+                                        + error.getMessage());
+                                return Mono.empty();
+                            });
+                })
+                .then();
+    }
 
-        Flux.interval(Duration.ofMillis(initialDelay), Duration.ofMillis(period))
-                .flatMap(hour -> {
-                    log.info("Start to save daily balance");
-                    Flux<Void> bankAccountRegister =  bankAccountRepository.findAll()
-                            .flatMap(dailyBalanceService::registerDailyBalanceByBankAccount);
-                    Flux<Void> creditCardRegister = creditCardRepository.findAll()
-                            .flatMap(dailyBalanceService::registerDailyBalanceByCreditCard);
-                    Flux<Void> creditRegister = creditRepository.findAll()
-                            .flatMap(dailyBalanceService::registerDailyBalanceByCredit);
+    private Mono<Void> recordPendingDays(String key, String collection, HashPartition partition,
+                                         LocalDate lastDueDate) {
+        return checkpointRepository.findById(key)
+                .map(checkpoint -> Boolean.TRUE.equals(checkpoint.getCompleted())
+                        ? checkpoint.getDate().plusDays(1)
+                        : checkpoint.getDate())
+                .defaultIfEmpty(lastDueDate)
+                .flatMapMany(firstPendingDate -> {
+                    LocalDate oldestAllowed = lastDueDate.minusDays(catchUpDays - 1L);
+                    LocalDate from = firstPendingDate.isBefore(oldestAllowed) ? oldestAllowed : firstPendingDate;
+                    return Flux.fromStream(from.datesUntil(lastDueDate.plusDays(1)));
+                })
+                .concatMap(date -> recordPartition(key, collection, partition, date))
+                .then();
+    }
 
-                    return Flux.merge(bankAccountRegister, creditCardRegister, creditRegister);
+    /**
+     * Streams the ids of a partition ordered by _id and loads and snapshots them in batches of
+     * {@code batchSize}. At most {@code concurrency} batches are written at the same time, the cursor is
+     * only read as fast as the batches are written, and the checkpoint advances in order once each batch
+     * is stored.
+     */
+    private Mono<Void> recordPartition(String key, String collection, HashPartition partition, LocalDate date) {
+        return checkpointRepository.findById(key)
+                .filter(checkpoint -> date.equals(checkpoint.getDate()))
+                .defaultIfEmpty(SnapshotCheckpoint.builder().id(key).date(date).completed(false).build())
+                .flatMap(checkpoint -> {
+                    if (Boolean.TRUE.equals(checkpoint.getCompleted())) {
+                        return Mono.empty();
+                    }
+                    if (checkpoint.getLastId() != null) {
+                        log.info("Resume daily balance of {} for {} after {}", key, date, checkpoint.getLastId());
+                    } else {
+                        log.info("Start to save daily balance of {} for {}", key, date);
+                    }
+                    Timer.Sample sample = Timer.start();
+                    return findIdsAfter(collection, checkpoint.getLastId())
+                            .filter(partition::contains)
+                            .buffer(batchSize)
+                            .flatMapSequential(ids -> registerBatch(collection, ids, date), concurrency)
+                            .concatMap(ids -> {
+                                checkpoint.setLastId(ids.get(ids.size() - 1));
+                                return checkpointRepository.save(checkpoint).thenReturn((long) ids.size());
+                            })
+                            .reduce(0L, (sum, size) -> sum + size)
+                            .flatMap(total -> {
+                                checkpoint.setCompleted(true);
+                                long nanos = sample.stop(runTimer);
+                                log.info("Daily balance of {} for {} saved for {} products in {} ms",
+                                        key, date, total, Duration.ofNanos(nanos).toMillis());
+                                return checkpointRepository.save(checkpoint);
+                            });
                 })
-                .onErrorContinue((error, element) ->
-                        log.error("An error occur when saving balance error: "+ element + "->" + error.getMessage()))
-                .subscribe();
+                .then();
     }
 
+    private Flux<String> findIdsAfter(String collection, String lastId) {
+        switch (collection) {
+            case "bank_accounts":
+                return bankAccountRepository.findIdsAfter(lastId).map(BankProduct::getId);
+            case "credit_cards":
+                return creditCardRepository.findIdsAfter(lastId).map(BankProduct::getId);
+            case "credits":
+                return creditRepository.findIdsAfter(lastId).map(BankProduct::getId);
+            default:
+                return Flux.error(new IllegalArgumentException("Unknown collection: " + collection));
+        }
+    }
 
+    private Flux<? extends BankProduct> findAllById(String collection, List<String> ids) {
+        switch (collection) {
+            case "bank_accounts":
+                return bankAccountRepository.findAllById(ids);
+            case "credit_cards":
+                return creditCardRepository.findAllById(ids);
+            case "credits":
+                return creditRepository.findAllById(ids);
+            default:
+                return Flux.error(new IllegalArgumentException("Unknown collection: " + collection));
+        }
+    }
+
+    private Mono<List<String>> registerBatch(String collection, List<String> ids, LocalDate date) {
+        return findAllById(collection, ids)
+                .collectList()
+                .flatMap(products -> registerBatch(products, date))
+                .thenReturn(ids);
+    }
+
+    /**
+     * A failed batch stops the collection instead of being skipped, so the checkpoint never passes
+     * products whose balance was not stored.
+     */
+    private Mono<List<? extends BankProduct>> registerBatch(List<? extends BankProduct> batch, LocalDate date) {
+        return Mono.<List<? extends BankProduct>>defer(() -> {
+            Timer.Sample sample = Timer.start();
+            boolean carriedForward = date.isBefore(LocalDate.now(clock));
+            return dailyBalanceService.registerDailyBalances(batch, date, carriedForward)
+                    .then(Mono.fromCallable(() -> {
+                        sample.stop(batchTimer);
+                        batchSizeSummary.record(batch.size());
+                        recordedCounter.increment(batch.size());
+                        return batch;
+                    }));
+        })
+        .doOnError(error -> {
+            failedCounter.increment(batch.size());
+            log.error("An error occur when saving balance of " + batch.size() + " products -> " + error.getMessage());
+        });
+    }
 }
@@ -1,21 +1,36 @@
 package com.bank.appbank.service.scheduler;
 
 import com.bank.appbank.client.ConsumptionServiceClient;
+import com.bank.appbank.dto.BillConsumptionsDto;
 import com.bank.appbank.dto.ConsumptionDto;
+import com.bank.appbank.model.BankProduct;
 import com.bank.appbank.model.CreditCard;
 import com.bank.appbank.repository.CreditCardRepository;
+import com.bank.appbank.service.ClientStandingService;
 import com.bank.appbank.utils.Numbers;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.reactor.ratelimiter.operator.RateLimiterOperator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
 
 import javax.annotation.PostConstruct;
+import java.time.Clock;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 
 @Component
@@ -23,17 +38,51 @@ public class CreditCardBillingScheduler {
     private static final Logger log = LoggerFactory.getLogger(CreditCardBillingScheduler.class);
     private final CreditCardRepository creditCardRepository;
     private final ConsumptionServiceClient consumptionServiceClient;
+    private final JobCoordinator jobCoordinator;
+    private final ClientStandingService clientStandingService;
+    private final Clock clock;
+    private final RateLimiter consumptionRateLimiter;
+    private final Counter billedCounter;
+    private final Counter penalizedCounter;
+    private final Counter failedCounter;
 
+    @Value("${appbank.billing.batch-size:200}")
+    private int batchSize;
+
+    @Value("${appbank.billing.parallelism:8}")
+    private int parallelism;
+
+    @Value("${appbank.billing.progress-interval:500}")
+    private int progressInterval;
+
+    @Value("${appbank.billing.mark-billed-retries:3}")
+    private int markBilledRetries;
 
     public CreditCardBillingScheduler(CreditCardRepository creditCardRepository,
-                                      ConsumptionServiceClient consumptionServiceClient) {
+                                      ConsumptionServiceClient consumptionServiceClient,
+                                      JobCoordinator jobCoordinator,
+                                      ClientStandingService clientStandingService,
+                                      Clock clock,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${appbank.billing.consumption-calls-per-second:50}") int callsPerSecond) {
         this.creditCardRepository = creditCardRepository;
         this.consumptionServiceClient = consumptionServiceClient;
+        this.jobCoordinator = jobCoordinator;
+        this.clientStandingService = clientStandingService;
+        this.clock = clock;
+        this.consumptionRateLimiter = RateLimiter.of("billingConsumptions", RateLimiterConfig.custom()
+                .limitForPeriod(callsPerSecond)
+                .limitRefreshPeriod(Duration.ofSeconds(1))
+                .timeoutDuration(Duration.ofMinutes(5))
+                .build());
+        this.billedCounter = meterRegistry.counter("billing.cards", "result", "billed");
+        this.penalizedCounter = meterRegistry.counter("billing.cards", "result", "penalized");
+        this.failedCounter = meterRegistry.counter("billing.cards", "result", "failed");
     }
 
     @PostConstruct
     public void init() {
-        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime now = LocalDateTime.now(clock);
         LocalDateTime executionHour = now.withHour(23).withMinute(0);
         log.info("Configuring scheduler billing credit cards");
         if (now.isAfter(executionHour)) {
@@ -43,66 +92,238 @@ public class CreditCardBillingScheduler {
         long period = Duration.ofDays(1).toMillis();
 
         Flux.interval(Duration.ofMillis(initialDelay), Duration.ofMillis(period))
-                .flatMap(tick -> processDaily())
+                .concatMap(tick -> runBilling(LocalDate.now(clock)))
                 .subscribeOn(Schedulers.boundedElastic())
                 .subscribe();
     }
 
-    private Flux<CreditCard> processDaily() {
-        log.info("Init scheduler billing credit cards: " + LocalDateTime.now());
-        return creditCardRepository.findAll()
-                .flatMap(creditCard -> {
-                    LocalDate today = LocalDate.now();
-                    int numberDay = today.getDayOfMonth();
+    /**
+     * Bills each partition of the cards at most once per day across all the replicas, so penalties are
+     * not applied twice when the service is scaled out.
+     */
+    Mono<Void> runBilling(LocalDate today) {
+        return Flux.fromIterable(jobCoordinator.partitions())
+                .concatMap(partition -> {
+                    String job = partition.key("credit-card-billing");
+                    return jobCoordinator.runOnce(job, today, processDaily(job, partition, today))
+                            .onErrorResume(error -> {
+                                log.error("Error in daily processing of " + job + ": ", error);
+                                return Mono.empty();
+                            });
+                })
+                .then();
+    }
 
-                    if (numberDay == Integer.parseInt(creditCard.getNumberBillingDate())) {
-                        return generateBillingStatement(creditCard);
-                    }
+    /**
+     * Bills the cards of a partition that bill today or are overdue and were not billed yet today, in
+     * chunks of {@code batchSize} cards. Up to {@code parallelism} chunks are processed at once and the
+     * calls to the movements service are throttled by {@code consumptionRateLimiter}. A failing chunk or
+     * card is logged and counted without stopping the rest of the partition.
+     */
+    private Mono<Void> processDaily(String job, HashPartition partition, LocalDate today) {
+        return creditCardRepository.findIdsDueForBilling(String.valueOf(today.getDayOfMonth()), today)
+                .map(BankProduct::getId)
+                .filter(partition::contains)
+                .collectList()
+                .flatMap(ids -> {
+                    log.info("Init billing of {} credit cards in {} for {}", ids.size(), job, today);
+                    AtomicLong processed = new AtomicLong();
+                    AtomicLong failed = new AtomicLong();
+                    return Flux.fromIterable(ids)
+                            .buffer(batchSize)
+                            .flatMap(chunk -> creditCardRepository.findAllById(chunk)
+                                    .collectList()
+                                    .flatMap(creditCards -> processChunk(creditCards, today))
+                                    .onErrorResume(error -> {
+                                        failedCounter.increment(chunk.size());
+                                        log.error("Error in billing of a chunk of " + chunk.size() + " cards: "
+                                                + error.getMessage());
+                                        return Mono.just((long) chunk.size());
+                                    })
+                                    .doOnNext(failures -> {
+                                        failed.addAndGet(failures);
+                                        long done = processed.addAndGet(chunk.size());
+                                        reportProgress(job, done, chunk.size(), ids.size());
+                                    }), parallelism)
+                            .then(Mono.fromRunnable(() -> log.info("Billing of {} finished: {} cards, {} failed",
+                                    job, ids.size(), failed.get())));
+                });
+    }
 
-                    else if (creditCard.getDueDate()!=null &&
-                            today.isAfter(creditCard.getDueDate()) &&
-                            creditCard.getTotalDebt() > 0) {
-                        return applyOverduePenalty(creditCard);
-                    }
+    /**
+     * Emits the number of cards of the chunk that could not be processed. A card whose earlier consumptions
+     * are still not marked billed is not billed again, since they would come back as unbilled.
+     */
+    private Mono<Long> processChunk(List<CreditCard> creditCards, LocalDate today) {
+        return markPendingBillings(creditCards).then(Mono.defer(() -> billChunk(creditCards, today)));
+    }
 
-                    return Mono.just(creditCard);
-                })
-                .doOnNext(card -> log.info("Processed card: {}", card.getId()))
-                .doOnError(error -> log.error("Error in daily processing: ", error));
+    private Mono<Long> billChunk(List<CreditCard> creditCards, LocalDate today) {
+        Map<Boolean, List<CreditCard>> byBillingDay = creditCards.stream()
+                .filter(creditCard -> !today.equals(creditCard.getLastBilledDate()))
+                .collect(Collectors.partitioningBy(creditCard ->
+                        today.getDayOfMonth() == Integer.parseInt(creditCard.getNumberBillingDate())));
+        List<CreditCard> billingCards = byBillingDay.get(true).stream()
+                .filter(creditCard -> creditCard.getPendingBilling() == null)
+                .collect(Collectors.toList());
+        long unmarkedCards = byBillingDay.get(true).size() - billingCards.size();
+        if (unmarkedCards > 0) {
+            failedCounter.increment(unmarkedCards);
+            log.error("Billing statements of {} cards skipped, their last consumptions are not marked billed",
+                    unmarkedCards);
+        }
+        Mono<Long> billingFailures = generateBillingStatements(billingCards, today)
+                .doOnSuccess(ignored -> billedCounter.increment(billingCards.size()))
+                .thenReturn(0L)
+                .onErrorResume(error -> {
+                    failedCounter.increment(billingCards.size());
+                    log.error("Error in billing statements of " + billingCards.size() + " cards: "
+                            + error.getMessage());
+                    return Mono.just((long) billingCards.size());
+                });
+        Mono<Long> penaltyFailures = Flux.fromIterable(byBillingDay.get(false))
+                .filter(creditCard -> creditCard.getDueDate() != null &&
+                        today.isAfter(creditCard.getDueDate()) &&
+                        creditCard.getTotalDebt() > 0)
+                .concatMap(creditCard -> applyOverduePenalty(creditCard, today)
+                        .doOnNext(card -> penalizedCounter.increment())
+                        .thenReturn(0L)
+                        .onErrorResume(error -> {
+                            failedCounter.increment();
+                            log.error("Error in penalty of card " + creditCard.getId() + ": " + error.getMessage());
+                            return Mono.just(1L);
+                        }))
+                .reduce(0L, (sum, failure) -> sum + failure);
+        return billingFailures.zipWith(penaltyFailures, (billing, penalty) -> billing + penalty + unmarkedCards)
+                .flatMap(failures -> refreshStandings(creditCards).thenReturn(failures));
+    }
+
+    /**
+     * Billing moves the due date and debt of the cards, so the standing of their clients is recomputed
+     * here instead of on the next product opening.
+     */
+    private Mono<Void> refreshStandings(List<CreditCard> creditCards) {
+        return Flux.fromIterable(creditCards)
+                .map(CreditCard::getIdClient)
+                .distinct()
+                .flatMap(idClient -> clientStandingService.refresh(idClient)
+                        .onErrorResume(error -> {
+                            log.error("Error refreshing the standing of client " + idClient + ": "
+                                    + error.getMessage());
+                            return Mono.empty();
+                        }), parallelism)
+                .then();
+    }
+
+    private void reportProgress(String job, long processed, int chunkSize, int total) {
+        if (isProgressReported(processed, chunkSize, total, progressInterval)) {
+            log.info("Billing of {}: {} of {} cards processed", job, processed, total);
+        }
     }
 
-    private Mono<CreditCard> generateBillingStatement(CreditCard creditCard) {
-        LocalDate today = LocalDate.now();
-        int billingMonth = today.getMonthValue();
-        int billingYear = today.getYear();
+    /**
+     * Chunks finish in any order, so progress is reported when a chunk crosses a multiple of
+     * {@code interval} rather than when the count lands on one.
+     */
+    static boolean isProgressReported(long processed, int chunkSize, int total, int interval) {
+        boolean crossedInterval = (processed - chunkSize) / interval != processed / interval;
+        return crossedInterval || processed == total;
+    }
 
-        return consumptionServiceClient.findByIdCreditCardAndBilledFalse(creditCard.getId())
+    /**
+     * Generates the statements of a chunk of cards with one request for their unbilled consumptions and
+     * one request to mark them billed, instead of two requests per card.
+     */
+    private Mono<Void> generateBillingStatements(List<CreditCard> creditCards, LocalDate today) {
+        if (creditCards.isEmpty()) {
+            return Mono.empty();
+        }
+        List<String> idCreditCards = creditCards.stream().map(CreditCard::getId).collect(Collectors.toList());
+        return consumptionServiceClient.findUnbilledByIdCreditCards(idCreditCards)
+                .transformDeferred(RateLimiterOperator.of(consumptionRateLimiter))
                 .collectList()
                 .flatMap(consumptions -> {
-                    double newDebt = consumptions.stream()
-                            .mapToDouble(ConsumptionDto::getAmount)
-                            .sum();
-
-                    consumptions.forEach(consumption -> {
-                        consumption.setBilled(true);
-                        consumption.setBillingMonth(billingMonth);
-                        consumption.setBillingYear(billingYear);
+                    Map<String, Double> newDebtByCard = consumptions.stream()
+                            .collect(Collectors.groupingBy(ConsumptionDto::getIdCreditCard,
+                                    Collectors.summingDouble(ConsumptionDto::getAmount)));
+                    Map<String, List<String>> idConsumptionsByCard = consumptions.stream()
+                            .collect(Collectors.groupingBy(ConsumptionDto::getIdCreditCard,
+                                    Collectors.mapping(ConsumptionDto::getId, Collectors.toList())));
+
+                    creditCards.forEach(creditCard -> {
+                        double newDebt = newDebtByCard.getOrDefault(creditCard.getId(), 0.0);
+                        creditCard.setTotalDebt(creditCard.getTotalDebt() + newDebt);
+                        LocalDate newDueDate = today.plusMonths(1)
+                                .withDayOfMonth(Integer.parseInt(creditCard.getNumberDueDate()));
+                        creditCard.setDueDate(newDueDate);
+                        creditCard.setLastBilledDate(today);
+                        List<String> idConsumptions = idConsumptionsByCard.get(creditCard.getId());
+                        creditCard.setPendingBilling(idConsumptions == null ? null
+                                : new CreditCard.PendingBilling(idConsumptions, today.getMonthValue(),
+                                today.getYear()));
                     });
 
-                    creditCard.setTotalDebt(creditCard.getTotalDebt() + newDebt);
+                    log.info("Billing statements generated for {} cards", creditCards.size());
 
-                    LocalDate newDueDate = today.plusMonths(1)
-                            .withDayOfMonth(Integer.parseInt(creditCard.getNumberDueDate()));
-                    creditCard.setDueDate(newDueDate);
+                    if (consumptions.isEmpty()) {
+                        return creditCardRepository.saveAll(creditCards).then();
+                    }
+                    List<String> idConsumptions = consumptions.stream()
+                            .map(ConsumptionDto::getId)
+                            .collect(Collectors.toList());
+                    return creditCardRepository.saveAll(creditCards)
+                            .then(markBilled(new CreditCard.PendingBilling(idConsumptions, today.getMonthValue(),
+                                    today.getYear())))
+                            .doOnError(error -> log.error("Consumptions billed on {} but not marked, they stay "
+                                    + "pending on their cards: {}", today, idConsumptions))
+                            .then(Mono.defer(() -> clearPendingBillings(creditCards)));
+                });
+    }
 
-                    log.info("Billing statement generated for card: {}", creditCard.getId());
+    /**
+     * Runs after the cards are saved with their consumptions pending: a card saved with today's billing
+     * is not billed again, and marking the consumptions is idempotent, so a mark that still fails after
+     * the retries is taken up again from the card by a later run.
+     */
+    private Mono<Void> markBilled(CreditCard.PendingBilling pendingBilling) {
+        return Mono.defer(() -> consumptionServiceClient.markBilled(BillConsumptionsDto.builder()
+                                .idConsumptions(pendingBilling.getIdConsumptions())
+                                .billingMonth(pendingBilling.getBillingMonth())
+                                .billingYear(pendingBilling.getBillingYear())
+                                .build()))
+                .transformDeferred(RateLimiterOperator.of(consumptionRateLimiter))
+                .retryWhen(Retry.backoff(markBilledRetries, Duration.ofSeconds(1)));
+    }
 
-                    return consumptionServiceClient.saveAll(consumptions)
-                            .then(creditCardRepository.save(creditCard));
-                });
+    /**
+     * Marks the consumptions that an earlier statement added to the debt of the cards but could not mark
+     * billed. A card whose consumptions still cannot be marked keeps them pending for the next run.
+     */
+    private Mono<Void> markPendingBillings(List<CreditCard> creditCards) {
+        return Flux.fromIterable(creditCards)
+                .filter(creditCard -> creditCard.getPendingBilling() != null)
+                .concatMap(creditCard -> markBilled(creditCard.getPendingBilling())
+                        .then(Mono.defer(() -> clearPendingBillings(List.of(creditCard))))
+                        .onErrorResume(error -> {
+                            log.error("Consumptions of card " + creditCard.getId() + " still not marked billed: "
+                                    + error.getMessage());
+                            return Mono.empty();
+                        }))
+                .then();
+    }
+
+    private Mono<Void> clearPendingBillings(List<CreditCard> creditCards) {
+        List<CreditCard> pendingCards = creditCards.stream()
+                .filter(creditCard -> creditCard.getPendingBilling() != null)
+                .collect(Collectors.toList());
+        if (pendingCards.isEmpty()) {
+            return Mono.empty();
+        }
+        pendingCards.forEach(creditCard -> creditCard.setPendingBilling(null));
+        return creditCardRepository.saveAll(pendingCards).then();
     }
 
-    private Mono<CreditCard> applyOverduePenalty(CreditCard creditCard) {
+    private Mono<CreditCard> applyOverduePenalty(CreditCard creditCard, LocalDate today) {
         double interestPenalty = 0.15;
         double dailyInterest = interestPenalty / 30;
         double penalty = Numbers.round(creditCard.getTotalDebt() * dailyInterest);
@@ -110,6 +331,7 @@ public class CreditCardBillingScheduler {
         creditCard.setTotalDebt(creditCard.getTotalDebt() + penalty);
 
         creditCard.setAvailableBalance(creditCard.getLimitCredit() - creditCard.getTotalDebt());
+        creditCard.setLastBilledDate(today);
 
         log.info("Applied penalty of {} to card {}", penalty, creditCard.getId());
 
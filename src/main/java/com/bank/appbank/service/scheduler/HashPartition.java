@@ -0,0 +1,35 @@
+package com.bank.appbank.service.scheduler;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Slice of the product keyspace made of the ids whose hash falls in {@code index} out of {@code count}.
+ */
+public final class HashPartition {
+    private final int index;
+    private final int count;
+
+    private HashPartition(int index, int count) {
+        this.index = index;
+        this.count = count;
+    }
+
+    public static List<HashPartition> all(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(index -> new HashPartition(index, count))
+                .collect(Collectors.toList());
+    }
+
+    public boolean contains(String id) {
+        return count == 1 || Math.floorMod(id.hashCode(), count) == index;
+    }
+
+    /**
+     * Name of the work of {@code job} restricted to this partition; a single partition keeps the plain name.
+     */
+    public String key(String job) {
+        return count == 1 ? job : job + "#" + index + "/" + count;
+    }
+}
@@ -0,0 +1,116 @@
+package com.bank.appbank.service.scheduler;
+
+import com.bank.appbank.repository.SchedulerLeaseRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Makes the schedulers safe to run on several replicas. Each unit of work is guarded by a Mongo lease so
+ * only one instance runs it per date, and with {@code appbank.scheduler.partitions} greater than one the
+ * products are split by hash so that the instances share a run.
+ */
+@Component
+public class JobCoordinator {
+    private static final Logger log = LoggerFactory.getLogger(JobCoordinator.class);
+    private final SchedulerLeaseRepository leaseRepository;
+    private final Clock clock;
+    private final String owner;
+    private final Duration leaseTtl;
+    private final Duration renewInterval;
+    private final int partitions;
+    private final Map<String, Instant> leaseRenewedAt = new ConcurrentHashMap<>();
+
+    public JobCoordinator(SchedulerLeaseRepository leaseRepository,
+                          Clock clock,
+                          @Value("${appbank.scheduler.instance-id:}") String instanceId,
+                          @Value("${appbank.scheduler.lease-ttl-seconds:120}") long leaseTtlSeconds,
+                          @Value("${appbank.scheduler.partitions:1}") int partitions) {
+        this.leaseRepository = leaseRepository;
+        this.clock = clock;
+        this.owner = instanceId.isBlank() ? UUID.randomUUID().toString() : instanceId;
+        this.leaseTtl = Duration.ofSeconds(leaseTtlSeconds);
+        this.renewInterval = leaseTtl.dividedBy(3);
+        this.partitions = Math.max(partitions, 1);
+    }
+
+    /**
+     * All the partitions, starting at a random one so that instances ticking together begin on
+     * different leases.
+     */
+    public List<HashPartition> partitions() {
+        List<HashPartition> all = new ArrayList<>(HashPartition.all(partitions));
+        Collections.rotate(all, ThreadLocalRandom.current().nextInt(partitions));
+        return all;
+    }
+
+    /**
+     * Runs {@code task} only if this instance gets the lease of {@code job} and the job was not completed
+     * for {@code runDate}. The lease is renewed while the task runs; if it is lost the task is cancelled
+     * with an error so the date is not marked as completed. The next holder runs the task again for the same
+     * date, so a task must skip what it already wrote: the snapshot resumes at its checkpoint and the
+     * billing leaves out the cards billed that date.
+     */
+    public Mono<Void> runOnce(String job, LocalDate runDate, Mono<Void> task) {
+        return leaseRepository.tryAcquire(job, owner, runDate, clock.instant(), clock.instant().plus(leaseTtl))
+                .flatMap(acquired -> {
+                    if (!acquired) {
+                        log.info("Skip {} for {}: done or held by another instance", job, runDate);
+                        return Mono.empty();
+                    }
+                    return Mono.firstWithSignal(task.thenReturn(true), leaseLost(job))
+                            .then(Mono.defer(() -> leaseRepository.release(job, owner, runDate, clock.instant())))
+                            .onErrorResume(error -> leaseRepository.release(job, owner, null, clock.instant())
+                                    .then(Mono.error(error)));
+                });
+    }
+
+    /**
+     * Runs {@code task} if this instance gets or already holds the lease of {@code job}, a job that runs
+     * continuously. The lease is kept between runs, so one instance does the job until it stops ticking
+     * and the lease expires. It is taken or extended at most once per renew interval, a third of its ttl,
+     * however often the job ticks; the runs in between rely on the lease taken last.
+     */
+    public Mono<Void> runWhileLeader(String job, Mono<Void> task) {
+        return Mono.defer(() -> {
+            Instant now = clock.instant();
+            Instant renewed = leaseRenewedAt.get(job);
+            if (renewed != null && now.isBefore(renewed.plus(renewInterval))) {
+                return task;
+            }
+            return leaseRepository.tryAcquire(job, owner, null, now, now.plus(leaseTtl))
+                    .doOnNext(acquired -> {
+                        if (acquired) {
+                            leaseRenewedAt.put(job, now);
+                        } else {
+                            leaseRenewedAt.remove(job);
+                        }
+                    })
+                    .doOnError(error -> leaseRenewedAt.remove(job))
+                    .flatMap(acquired -> acquired ? task : Mono.empty());
+        });
+    }
+
+    private Mono<Boolean> leaseLost(String job) {
+        return Flux.interval(renewInterval)
+                .concatMap(tick -> leaseRepository.renew(job, owner, clock.instant().plus(leaseTtl)))
+                .filter(renewed -> !renewed)
+                .next()
+                .flatMap(lost -> Mono.error(new IllegalStateException("Lease of " + job + " was lost")));
+    }
+}
@@ -0,0 +1,34 @@
+package com.bank.appbank.utils;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Size bound shared by the in-process caches, which keep their entries in a concurrent map.
+ */
+public final class BoundedMaps {
+
+    private BoundedMaps() {
+    }
+
+    /**
+     * Called before a put into a map holding at most {@code maxEntries}: drops the expired entries and,
+     * if the map is still full, an arbitrary tenth of it.
+     */
+    public static <K, V> void makeRoom(Map<K, V> entries, int maxEntries, Predicate<V> isExpired) {
+        if (entries.size() < maxEntries) {
+            return;
+        }
+        entries.values().removeIf(isExpired);
+        if (entries.size() < maxEntries) {
+            return;
+        }
+        Iterator<K> keys = entries.keySet().iterator();
+        int toRemove = Math.max(maxEntries / 10, 1);
+        while (toRemove-- > 0 && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+}
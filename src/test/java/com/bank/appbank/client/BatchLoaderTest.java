@@ -0,0 +1,86 @@
+package com.bank.appbank.client;
+
+import com.bank.appbank.dto.MovementDto;
+import com.bank.appbank.exceptions.ServiceNotAvailableException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.*;
+
+class BatchLoaderTest {
+
+    private final List<List<String>> requestedBatches = new CopyOnWriteArrayList<>();
+
+    private Flux<MovementDto> findMovements(List<String> idBankAccounts) {
+        requestedBatches.add(idBankAccounts);
+        return Flux.fromIterable(idBankAccounts)
+                .flatMap(idBankAccount -> Flux.just(movement(idBankAccount, 10.0), movement(idBankAccount, 20.0)));
+    }
+
+    private MovementDto movement(String idBankAccount, Double amount) {
+        MovementDto movement = new MovementDto();
+        movement.setIdBankAccount(idBankAccount);
+        movement.setAmount(amount);
+        return movement;
+    }
+
+    @Test
+    @DisplayName("Load concurrent keys in one batch and coalesce the duplicated key")
+    void loadInOneBatch() {
+        BatchLoader<String, MovementDto> loader = new BatchLoader<>(this::findMovements,
+                MovementDto::getIdBankAccount, 50, Duration.ofMillis(20));
+        // When
+        Mono<List<List<MovementDto>>> result = Flux.just("ACC001", "ACC002", "ACC001", "ACC003")
+                .flatMapSequential(idBankAccount -> loader.load(idBankAccount).collectList())
+                .collectList();
+        // Then
+        StepVerifier.create(result)
+                .assertNext(movementsByCaller -> {
+                    assertThat(movementsByCaller).hasSize(4);
+                    assertThat(movementsByCaller.get(0))
+                            .extracting(MovementDto::getIdBankAccount, MovementDto::getAmount)
+                            .containsExactly(tuple("ACC001", 10.0), tuple("ACC001", 20.0));
+                    assertThat(movementsByCaller.get(2)).isEqualTo(movementsByCaller.get(0));
+                    assertThat(movementsByCaller.get(3)).extracting(MovementDto::getIdBankAccount)
+                            .containsOnly("ACC003");
+                })
+                .verifyComplete();
+        assertThat(requestedBatches).containsExactly(List.of("ACC001", "ACC002", "ACC003"));
+    }
+
+    @Test
+    @DisplayName("Split the keys in batches of the max size")
+    void splitByMaxBatchSize() {
+        BatchLoader<String, MovementDto> loader = new BatchLoader<>(this::findMovements,
+                MovementDto::getIdBankAccount, 2, Duration.ofMillis(20));
+        // When
+        Mono<Long> result = Flux.just("ACC001", "ACC002", "ACC003")
+                .flatMap(loader::load)
+                .count();
+        // Then
+        StepVerifier.create(result).expectNext(6L).verifyComplete();
+        assertThat(requestedBatches).containsExactly(List.of("ACC001", "ACC002"), List.of("ACC003"));
+    }
+
+    @Test
+    @DisplayName("Propagate the error of a batch to every caller")
+    void propagateBatchError() {
+        BatchLoader<String, MovementDto> loader = new BatchLoader<>(
+                idBankAccounts -> Flux.error(new ServiceNotAvailableException("Not available")),
+                MovementDto::getIdBankAccount, 50, Duration.ofMillis(20));
+        // When
+        Flux<MovementDto> first = loader.load("ACC001");
+        Flux<MovementDto> second = loader.load("ACC002");
+        // Then
+        StepVerifier.create(Flux.merge(first, second))
+                .expectError(ServiceNotAvailableException.class)
+                .verify(Duration.ofSeconds(5));
+    }
+}
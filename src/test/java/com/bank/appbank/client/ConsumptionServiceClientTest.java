@@ -0,0 +1,86 @@
+package com.bank.appbank.client;
+
+import com.bank.appbank.dto.BillConsumptionsDto;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ConsumptionServiceClientTest {
+    private static final String UNBILLED_NDJSON =
+            "{\"id\":\"C001\",\"idCreditCard\":\"CARD001\",\"amount\":50.0}\n"
+            + "{\"id\":\"C002\",\"idCreditCard\":\"CARD002\",\"amount\":20.5}\n";
+
+    private StubBackend stubBackend;
+    private ConsumptionServiceClient consumptionServiceClient;
+    private final AtomicReference<String> receivedBody = new AtomicReference<>();
+    private final AtomicReference<String> receivedAccept = new AtomicReference<>();
+
+    @BeforeEach
+    void setUp() {
+        stubBackend = StubBackend.start(routes -> routes
+                .post("/consumptions/findByIdCreditCardInAndBilledFalse", (request, response) -> {
+                    receivedAccept.set(request.requestHeaders().get(HttpHeaders.ACCEPT));
+                    return response.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_NDJSON_VALUE)
+                            .sendString(request.receive().aggregate().asString()
+                                    .doOnNext(receivedBody::set)
+                                    .thenReturn(UNBILLED_NDJSON));
+                })
+                .post("/consumptions/markBilled", (request, response) ->
+                        request.receive().aggregate().asString()
+                                .doOnNext(receivedBody::set)
+                                .then(response.status(HttpResponseStatus.NO_CONTENT).send())));
+        consumptionServiceClient = new ConsumptionServiceClient(stubBackend.webClientBuilder(),
+                mock(HistoryCache.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        stubBackend.close();
+    }
+
+    @Test
+    @DisplayName("Find the unbilled consumptions of many cards in one NDJSON request")
+    void findUnbilledByIdCreditCards() {
+        // When
+        StepVerifier.create(consumptionServiceClient.findUnbilledByIdCreditCards(List.of("CARD001", "CARD002")))
+                .assertNext(consumption -> {
+                    assertThat(consumption.getIdCreditCard()).isEqualTo("CARD001");
+                    assertThat(consumption.getAmount()).isEqualTo(50.0);
+                })
+                .assertNext(consumption -> assertThat(consumption.getId()).isEqualTo("C002"))
+                .verifyComplete();
+        // Then
+        assertThat(receivedBody.get()).isEqualTo("[\"CARD001\",\"CARD002\"]");
+        assertThat(receivedAccept.get()).isEqualTo(MediaType.APPLICATION_NDJSON_VALUE);
+    }
+
+    @Test
+    @DisplayName("Mark the consumptions of a chunk as billed in one request")
+    void markBilled() {
+        BillConsumptionsDto billConsumptions = BillConsumptionsDto.builder()
+                .idConsumptions(List.of("C001", "C002"))
+                .billingMonth(2)
+                .billingYear(2025)
+                .build();
+        // When
+        Mono<Void> result = consumptionServiceClient.markBilled(billConsumptions);
+        // Then
+        StepVerifier.create(result).verifyComplete();
+        assertThat(receivedBody.get())
+                .contains("\"idConsumptions\":[\"C001\",\"C002\"]")
+                .contains("\"billingMonth\":2")
+                .contains("\"billingYear\":2025");
+    }
+}
@@ -0,0 +1,196 @@
+package com.bank.appbank.client;
+
+import com.bank.appbank.dto.PaymentDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@SuppressWarnings("unchecked")
+class HistoryCacheTest {
+
+    @Mock
+    private ReactiveStringRedisTemplate redisTemplate;
+    @Mock
+    private ReactiveValueOperations<String, String> valueOperations;
+
+    private HistoryCache historyCache;
+    private SimpleMeterRegistry meterRegistry;
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        ObjectMapper objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        Clock clock = Clock.fixed(Instant.parse("2025-02-20T10:00:00Z"), ZoneId.of("UTC"));
+        historyCache = new HistoryCache(redisTemplate, objectMapper, meterRegistry, clock);
+        ReflectionTestUtils.setField(historyCache, "localMaxEntries", 100);
+        ReflectionTestUtils.setField(historyCache, "localTtlSeconds", 60L);
+        ReflectionTestUtils.setField(historyCache, "historicalTtlMinutes", 1440L);
+        ReflectionTestUtils.setField(historyCache, "currentTtlSeconds", 30L);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    }
+
+    private Flux<PaymentDto> loadPayments(LocalDateTime datePayment) {
+        loads.incrementAndGet();
+        PaymentDto payment = new PaymentDto();
+        payment.setId("PAY001");
+        payment.setAmount(100.0);
+        payment.setDatePayment(datePayment);
+        return Flux.just(payment);
+    }
+
+    private Flux<PaymentDto> getPayments(LocalDateTime datePayment) {
+        return historyCache.getOrLoad("payments", "CREDIT001", PaymentDto.class,
+                payment -> historyCache.isBeforeCurrentMonth(payment.getDatePayment()),
+                () -> loadPayments(datePayment));
+    }
+
+    @Test
+    @DisplayName("Load a historical history once, keep it long in redis and serve it locally after")
+    void cacheHistoricalHistory() {
+        when(valueOperations.get("history:payments:CREDIT001")).thenReturn(Mono.empty());
+        when(valueOperations.set(eq("history:payments:CREDIT001"), anyString(), any(Duration.class)))
+                .thenReturn(Mono.just(true));
+        LocalDateTime lastMonth = LocalDateTime.of(2025, 1, 15, 9, 0);
+        // When
+        StepVerifier.create(getPayments(lastMonth))
+                .assertNext(payment -> assertThat(payment.getId()).isEqualTo("PAY001"))
+                .verifyComplete();
+        StepVerifier.create(getPayments(lastMonth))
+                .assertNext(payment -> assertThat(payment.getDatePayment()).isEqualTo(lastMonth))
+                .verifyComplete();
+        // Then
+        assertThat(loads.get()).isEqualTo(1);
+        verify(valueOperations).set(eq("history:payments:CREDIT001"), anyString(), eq(Duration.ofMinutes(1440)));
+        verify(valueOperations, times(1)).get(anyString());
+        assertThat(meterRegistry.counter("client.cache.requests", "method", "payments", "result", "miss").count())
+                .isEqualTo(1.0);
+        assertThat(meterRegistry.counter("client.cache.requests", "method", "payments", "result", "local_hit")
+                .count()).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("Keep a history with current month activity for a short time")
+    void cacheCurrentHistoryShortly() {
+        when(valueOperations.get("history:payments:CREDIT001")).thenReturn(Mono.empty());
+        when(valueOperations.set(eq("history:payments:CREDIT001"), anyString(), any(Duration.class)))
+                .thenReturn(Mono.just(true));
+        // When
+        StepVerifier.create(getPayments(LocalDateTime.of(2025, 2, 3, 9, 0)))
+                .expectNextCount(1)
+                .verifyComplete();
+        // Then
+        verify(valueOperations).set(eq("history:payments:CREDIT001"), anyString(), eq(Duration.ofSeconds(30)));
+    }
+
+    @Test
+    @DisplayName("Keep an empty history for a short time")
+    void cacheEmptyHistoryShortly() {
+        when(valueOperations.get("history:payments:CREDIT001")).thenReturn(Mono.empty());
+        when(valueOperations.set(eq("history:payments:CREDIT001"), anyString(), any(Duration.class)))
+                .thenReturn(Mono.just(true));
+        // When
+        StepVerifier.create(historyCache.getOrLoad("payments", "CREDIT001", PaymentDto.class,
+                        payment -> historyCache.isBeforeCurrentMonth(payment.getDatePayment()), Flux::empty))
+                .verifyComplete();
+        // Then
+        verify(valueOperations).set("history:payments:CREDIT001", "[]", Duration.ofSeconds(30));
+    }
+
+    @Test
+    @DisplayName("Serve the history from redis and load it again after an eviction")
+    void redisHitAndEvict() {
+        when(valueOperations.get("history:payments:CREDIT001"))
+                .thenReturn(Mono.just("[{\"id\":\"PAY001\",\"amount\":100.0}]"))
+                .thenReturn(Mono.empty());
+        when(valueOperations.set(eq("history:payments:CREDIT001"), anyString(), any(Duration.class)))
+                .thenReturn(Mono.just(true));
+        when(redisTemplate.delete(any(Flux.class))).thenReturn(Mono.just(2L));
+        // When
+        StepVerifier.create(getPayments(LocalDateTime.of(2025, 1, 15, 9, 0)))
+                .assertNext(payment -> assertThat(payment.getAmount()).isEqualTo(100.0))
+                .verifyComplete();
+        StepVerifier.create(historyCache.evict("CREDIT001")).verifyComplete();
+        StepVerifier.create(getPayments(LocalDateTime.of(2025, 1, 15, 9, 0)))
+                .expectNextCount(1)
+                .verifyComplete();
+        // Then
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(meterRegistry.counter("client.cache.requests", "method", "payments", "result", "redis_hit")
+                .count()).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("Serve but do not cache a history whose load was overtaken by an eviction")
+    void evictDuringLoad() {
+        when(valueOperations.get("history:payments:CREDIT001")).thenReturn(Mono.empty());
+        when(valueOperations.set(eq("history:payments:CREDIT001"), anyString(), any(Duration.class)))
+                .thenReturn(Mono.just(true));
+        when(redisTemplate.delete(any(Flux.class))).thenReturn(Mono.just(0L));
+        Sinks.Many<PaymentDto> pendingLoad = Sinks.many().unicast().onBackpressureBuffer();
+        PaymentDto payment = new PaymentDto();
+        payment.setId("PAY001");
+        payment.setDatePayment(LocalDateTime.of(2025, 1, 15, 9, 0));
+        // When, a new payment evicts the product while its history is being loaded
+        StepVerifier.create(historyCache.getOrLoad("payments", "CREDIT001", PaymentDto.class,
+                        loaded -> historyCache.isBeforeCurrentMonth(loaded.getDatePayment()),
+                        pendingLoad::asFlux))
+                .then(() -> {
+                    historyCache.evict("CREDIT001").block();
+                    pendingLoad.tryEmitNext(payment);
+                    pendingLoad.tryEmitComplete();
+                })
+                .assertNext(loaded -> assertThat(loaded.getId()).isEqualTo("PAY001"))
+                .verifyComplete();
+        StepVerifier.create(getPayments(LocalDateTime.of(2025, 1, 15, 9, 0)))
+                .expectNextCount(1)
+                .verifyComplete();
+        // Then, only the load that started after the eviction is cached
+        assertThat(loads.get()).isEqualTo(1);
+        verify(valueOperations, times(1)).set(anyString(), anyString(), any(Duration.class));
+    }
+
+    @Test
+    @DisplayName("Delete again from redis a history stored while an eviction ran")
+    void evictDuringStore() {
+        when(valueOperations.get("history:payments:CREDIT001")).thenReturn(Mono.empty());
+        when(redisTemplate.delete(any(Flux.class))).thenReturn(Mono.just(0L));
+        when(redisTemplate.delete("history:payments:CREDIT001")).thenReturn(Mono.just(1L));
+        // Given, the eviction lands between the version check and the write to redis
+        when(valueOperations.set(eq("history:payments:CREDIT001"), anyString(), any(Duration.class)))
+                .thenAnswer(invocation -> historyCache.evict("CREDIT001").thenReturn(true));
+        // When
+        StepVerifier.create(getPayments(LocalDateTime.of(2025, 1, 15, 9, 0)))
+                .expectNextCount(1)
+                .verifyComplete();
+        // Then
+        verify(redisTemplate).delete("history:payments:CREDIT001");
+    }
+}
@@ -0,0 +1,52 @@
+package com.bank.appbank.client;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class PaymentServiceClientTest {
+
+    private StubBackend stubBackend;
+    private PaymentServiceClient paymentServiceClient;
+    private final AtomicReference<String> receivedBody = new AtomicReference<>();
+
+    @BeforeEach
+    void setUp() {
+        stubBackend = StubBackend.start(routes -> routes
+                .post("/payments/idProductCreditsWithPaymentInMonth", (request, response) ->
+                        response.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                                .sendString(request.receive().aggregate().asString()
+                                        .doOnNext(receivedBody::set)
+                                        .thenReturn("[\"CREDIT002\"]"))));
+        paymentServiceClient = new PaymentServiceClient(stubBackend.webClientBuilder(), mock(HistoryCache.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        stubBackend.close();
+    }
+
+    @Test
+    @DisplayName("Ask in one request which credits have a payment in the month")
+    void findCreditsPaidInMonth() {
+        // When
+        StepVerifier.create(paymentServiceClient.findCreditsPaidInMonth(List.of("CREDIT001", "CREDIT002"), 2, 2025))
+                .assertNext(paidCredits -> assertThat(paidCredits).containsExactly("CREDIT002"))
+                .verifyComplete();
+        // Then
+        assertThat(receivedBody.get())
+                .contains("\"idProductCredits\":[\"CREDIT001\",\"CREDIT002\"]")
+                .contains("\"monthCorresponding\":2")
+                .contains("\"yearCorresponding\":2025");
+    }
+}
@@ -0,0 +1,50 @@
+package com.bank.appbank.client;
+
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRoutes;
+
+import java.util.function.Consumer;
+
+/**
+ * Local HTTP server standing in for a backend in the client tests. Its builder sends every request to
+ * the server whatever service host the client names, so the clients run unchanged against it.
+ */
+public final class StubBackend implements AutoCloseable {
+    private final DisposableServer server;
+
+    private StubBackend(DisposableServer server) {
+        this.server = server;
+    }
+
+    public static StubBackend start(Consumer<? super HttpServerRoutes> routes) {
+        return new StubBackend(HttpServer.create()
+                .host("localhost")
+                .port(0)
+                .route(routes)
+                .bindNow());
+    }
+
+    public WebClient.Builder webClientBuilder() {
+        return WebClient.builder()
+                .filter((request, next) -> next.exchange(ClientRequest.from(request)
+                        .url(UriComponentsBuilder.fromUri(request.url())
+                                .host(server.host())
+                                .port(server.port())
+                                .build()
+                                .toUri())
+                        .build()));
+    }
+
+    public String baseUrl() {
+        return "http://" + server.host() + ":" + server.port();
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+}
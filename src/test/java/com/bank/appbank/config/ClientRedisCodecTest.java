@@ -0,0 +1,75 @@
+package com.bank.appbank.config;
+
+import com.bank.appbank.model.Client;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import static org.assertj.core.api.Assertions.*;
+
+class ClientRedisCodecTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Client client;
+
+    @BeforeEach
+    void setUp() {
+        client = new Client();
+        client.setId("67a1f0c2e4b0a1b2c3d4e5f6");
+        client.setIdentity("75690210");
+        client.setFullName("Lucas Juan");
+        client.setTaxId("");
+        client.setBusinessName("");
+        client.setAddress("Jr. avenida");
+        client.setEmail("ejemplo@ejemplo.com");
+        client.setTypeClient(Client.TypeClient.PERSONAL_VIP_CLIENT);
+    }
+
+    @Test
+    @DisplayName("Write a binary record smaller than the json and read it back")
+    void binaryRoundTrip() {
+        ClientRedisCodec binary = new ClientRedisCodec(objectMapper, ClientRedisCodec.Format.BINARY, 0);
+        ClientRedisCodec json = new ClientRedisCodec(objectMapper, ClientRedisCodec.Format.JSON, 0);
+        // When
+        byte[] record = binary.serialize(client);
+        // Then
+        assertThat(record[0]).isEqualTo(ClientRedisCodec.MAGIC);
+        assertThat(record.length).isLessThan(json.serialize(client).length / 2);
+        assertThat(binary.deserialize(record)).isEqualTo(client);
+    }
+
+    @Test
+    @DisplayName("Compress the records over the lz4 threshold")
+    void lz4RoundTrip() {
+        ClientRedisCodec codec = new ClientRedisCodec(objectMapper, ClientRedisCodec.Format.BINARY, 16);
+        client.setAddress("Jr. avenida ".repeat(20));
+        // When
+        byte[] record = codec.serialize(client);
+        // Then
+        assertThat(record[2]).isEqualTo((byte) 1);
+        assertThat(record.length).isLessThan(client.getAddress().length());
+        assertThat(codec.deserialize(record)).isEqualTo(client);
+    }
+
+    @Test
+    @DisplayName("Read the clients written in json by the binary codec and the other way round")
+    void readBothFormats() {
+        ClientRedisCodec binary = new ClientRedisCodec(objectMapper, ClientRedisCodec.Format.BINARY, 0);
+        ClientRedisCodec json = new ClientRedisCodec(objectMapper, ClientRedisCodec.Format.JSON, 0);
+        // Then
+        assertThat(binary.deserialize(json.serialize(client))).isEqualTo(client);
+        assertThat(json.deserialize(binary.serialize(client))).isEqualTo(client);
+    }
+
+    @Test
+    @DisplayName("Reject a record of an unknown version")
+    void rejectUnknownVersion() {
+        ClientRedisCodec codec = new ClientRedisCodec(objectMapper, ClientRedisCodec.Format.BINARY, 0);
+        byte[] record = codec.serialize(client);
+        record[1] = 9;
+        // Then
+        assertThatThrownBy(() -> codec.deserialize(record)).isInstanceOf(SerializationException.class);
+    }
+}
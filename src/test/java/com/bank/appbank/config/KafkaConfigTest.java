@@ -0,0 +1,85 @@
+package com.bank.appbank.config;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@SuppressWarnings("unchecked")
+class KafkaConfigTest {
+    private static final String TOPIC = "payment-with-debit-card";
+
+    private final KafkaConfig kafkaConfig = new KafkaConfig();
+    @Mock
+    private KafkaOperations<String, String> deadLetterTemplate;
+    @Mock
+    private Consumer<String, String> consumer;
+    @Mock
+    private MessageListenerContainer container;
+
+    @Test
+    @DisplayName("Retry a failed poll whole and dead-letter each of its records when the retries run out")
+    void deadLetterFailedPoll() {
+        TopicPartition partition = new TopicPartition(TOPIC, 0);
+        List<ConsumerRecord<String, String>> records = List.of(
+                new ConsumerRecord<>(TOPIC, 0, 10, "CARD001", "[]"),
+                new ConsumerRecord<>(TOPIC, 0, 11, "CARD002", "[]"));
+        ConsumerRecords<String, String> poll = new ConsumerRecords<>(Map.of(partition, records));
+        AtomicInteger deliveries = new AtomicInteger();
+        when(container.isRunning()).thenReturn(true);
+        when(consumer.poll(any())).thenReturn(ConsumerRecords.empty());
+        when(deadLetterTemplate.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+            SettableListenableFuture<SendResult<String, String>> sent = new SettableListenableFuture<>();
+            sent.set(new SendResult<>(invocation.getArgument(0), null));
+            return sent;
+        });
+        DefaultErrorHandler errorHandler = kafkaConfig.batchErrorHandler(deadLetterTemplate, 1, 4, 3);
+        // When
+        errorHandler.handleBatch(new IllegalStateException("Connection reset"), poll, consumer, container, () -> {
+            deliveries.incrementAndGet();
+            throw new IllegalStateException("Connection reset");
+        });
+        // Then
+        assertThat(deliveries.get()).isEqualTo(3);
+        ArgumentCaptor<ProducerRecord<String, String>> deadLetters = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(deadLetterTemplate, times(2)).send(deadLetters.capture());
+        assertThat(deadLetters.getAllValues())
+                .extracting(ProducerRecord::topic, ProducerRecord::key)
+                .containsExactly(tuple(TOPIC + ".DLT", "CARD001"), tuple(TOPIC + ".DLT", "CARD002"));
+    }
+
+    @Test
+    @DisplayName("Give the batch listeners the dead-lettering error handler")
+    void batchFactoryErrorHandler() {
+        // When
+        ConcurrentKafkaListenerContainerFactory<String, String> factory = kafkaConfig
+                .batchKafkaListenerContainerFactory(500, mock(KafkaTemplate.class), 1000, 60000, 10);
+        // Then
+        assertThat(ReflectionTestUtils.getField(factory, "commonErrorHandler"))
+                .isInstanceOf(DefaultErrorHandler.class);
+        assertThat(factory.isBatchListener()).isTrue();
+    }
+}
@@ -0,0 +1,115 @@
+package com.bank.appbank.config;
+
+import com.bank.appbank.model.DailyBalance;
+import com.bank.appbank.repository.DailyBalanceRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexField;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.ReactiveIndexOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MongoConfigTest {
+
+    @Mock
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+    @Mock
+    private ReactiveIndexOperations indexOperations;
+    @Mock
+    private ApplicationArguments args;
+    @Mock
+    private DailyBalanceRepository dailyBalanceRepository;
+
+    private final MongoConfig mongoConfig = new MongoConfig();
+
+    @BeforeEach
+    void setUp() {
+        when(reactiveMongoTemplate.indexOps(DailyBalance.class)).thenReturn(indexOperations);
+    }
+
+    private IndexInfo indexInfo(String name, boolean unique, String... keys) {
+        List<IndexField> fields = List.of(keys).stream()
+                .map(key -> IndexField.create(key, Sort.Direction.ASC))
+                .collect(Collectors.toList());
+        return new IndexInfo(fields, name, unique, false, null);
+    }
+
+    @Test
+    @DisplayName("Create the daily balance indexes and start once both are verified")
+    void createAndVerifyIndexes() throws Exception {
+        ReflectionTestUtils.setField(mongoConfig, "createIndexes", true);
+        when(indexOperations.ensureIndex(any())).thenReturn(Mono.just("created"));
+        when(indexOperations.getIndexInfo()).thenReturn(Flux.just(
+                indexInfo("idBankProduct_date_balance", false, "idBankProduct", "date", "balance"),
+                indexInfo("idBankProduct_date_unique", true, "idBankProduct", "date")));
+        // When
+        mongoConfig.dailyBalanceIndexes(reactiveMongoTemplate, dailyBalanceRepository).run(args);
+        // Then
+        verify(dailyBalanceRepository, never()).removeDuplicates();
+        ArgumentCaptor<IndexDefinition> captor = ArgumentCaptor.forClass(IndexDefinition.class);
+        verify(indexOperations, times(2)).ensureIndex(captor.capture());
+        assertThat(captor.getAllValues())
+                .extracting(index -> index.getIndexKeys().keySet(), index -> index.getIndexOptions().get("unique"))
+                .containsExactly(
+                        tuple(Set.of("idBankProduct", "date", "balance"), null),
+                        tuple(Set.of("idBankProduct", "date"), true));
+    }
+
+    @Test
+    @DisplayName("Remove the repeated days before creating a missing unique index")
+    void removeDuplicatesBeforeUniqueIndex() throws Exception {
+        ReflectionTestUtils.setField(mongoConfig, "createIndexes", true);
+        when(indexOperations.ensureIndex(any())).thenReturn(Mono.just("created"));
+        when(indexOperations.getIndexInfo())
+                .thenReturn(Flux.just(
+                        indexInfo("idBankProduct_date_balance", false, "idBankProduct", "date", "balance")))
+                .thenReturn(Flux.just(
+                        indexInfo("idBankProduct_date_balance", false, "idBankProduct", "date", "balance")))
+                .thenReturn(Flux.just(
+                        indexInfo("idBankProduct_date_balance", false, "idBankProduct", "date", "balance"),
+                        indexInfo("idBankProduct_date_unique", true, "idBankProduct", "date")));
+        when(dailyBalanceRepository.removeDuplicates()).thenReturn(Mono.just(3L));
+        // When
+        mongoConfig.dailyBalanceIndexes(reactiveMongoTemplate, dailyBalanceRepository).run(args);
+        // Then
+        InOrder inOrder = inOrder(dailyBalanceRepository, indexOperations);
+        inOrder.verify(dailyBalanceRepository).removeDuplicates();
+        inOrder.verify(indexOperations).ensureIndex(argThat(index ->
+                index.getIndexKeys().keySet().equals(Set.of("idBankProduct", "date"))));
+    }
+
+    @Test
+    @DisplayName("Fail the startup when an index is missing and creation is disabled")
+    void failWhenIndexIsMissing() {
+        ReflectionTestUtils.setField(mongoConfig, "createIndexes", false);
+        when(indexOperations.getIndexInfo()).thenReturn(Flux.just(
+                indexInfo("idBankProduct_date_balance", false, "idBankProduct", "date", "balance"),
+                indexInfo("idBankProduct_date", false, "idBankProduct", "date")));
+        // When - Then
+        assertThatThrownBy(() -> mongoConfig.dailyBalanceIndexes(reactiveMongoTemplate, dailyBalanceRepository)
+                        .run(args))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Missing unique index [idBankProduct, date] in collection daily_balances");
+        verify(indexOperations, never()).ensureIndex(any());
+    }
+}
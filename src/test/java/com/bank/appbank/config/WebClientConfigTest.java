@@ -0,0 +1,91 @@
+package com.bank.appbank.config;
+
+import com.bank.appbank.client.StubBackend;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Mono;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.*;
+
+class WebClientConfigTest {
+    private final WebClientConfig webClientConfig = new WebClientConfig();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private StubBackend stubBackend;
+    private ConnectionProvider connectionProvider;
+    private WebClient webClient;
+
+    @BeforeEach
+    void setUp() {
+        Metrics.addRegistry(meterRegistry);
+        stubBackend = StubBackend.start(routes -> routes
+                .get("/consumptions/slow", (request, response) -> response.sendString(
+                        Mono.just("late").delayElement(Duration.ofMillis(300))))
+                .get("/movements/slow", (request, response) -> response.sendString(
+                        Mono.just("late").delayElement(Duration.ofMillis(300)))));
+        connectionProvider = webClientConfig.connectionProvider(10, 100, 2000, 30000, 300000, 10000);
+        webClient = webClientConfig.webClientBuilder(
+                        webClientConfig.httpClient(connectionProvider, "HTTP11", 2000),
+                        100, "/consumptions=1000")
+                .baseUrl(stubBackend.baseUrl())
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stubBackend.close();
+        connectionProvider.dispose();
+        Metrics.removeRegistry(meterRegistry);
+    }
+
+    private Mono<String> get(String uri) {
+        return webClient.get().uri(uri).retrieve().bodyToMono(String.class);
+    }
+
+    @Test
+    @DisplayName("Wait longer on a route with its own response timeout than the default")
+    void routeResponseTimeout() {
+        // When - Then
+        StepVerifier.create(get("/consumptions/slow")).expectNext("late").verifyComplete();
+        StepVerifier.create(get("/movements/slow"))
+                .expectError(WebClientRequestException.class)
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    @DisplayName("Publish the metrics of the connection pool")
+    void poolMetrics() {
+        // When
+        StepVerifier.create(get("/consumptions/slow")).expectNextCount(1).verifyComplete();
+        // Then
+        assertThat(meterRegistry.find("reactor.netty.connection.provider.total.connections")
+                .tag("name", "appbank-webclient").gauge()).isNotNull();
+        assertThat(meterRegistry.find("reactor.netty.http.client.response.time")
+                .tag("uri", "/consumptions").timer()).isNotNull();
+    }
+
+    @Test
+    @DisplayName("Parse the route timeouts and tag the metrics by the first path segment")
+    void parseRoutesAndTags() {
+        // When - Then
+        assertThat(WebClientConfig.parseRouteTimeouts(" /movements=5000, /consumptions=10000"))
+                .containsEntry("/movements", Duration.ofSeconds(5))
+                .containsEntry("/consumptions", Duration.ofSeconds(10));
+        assertThat(WebClientConfig.parseRouteTimeouts("")).isEmpty();
+        assertThatThrownBy(() -> WebClientConfig.parseRouteTimeouts("/movements"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(WebClientConfig.routeOf("/movements/getAllByRangeDate?from=2025-01-01"))
+                .isEqualTo("/movements");
+        assertThat(WebClientConfig.routeOf("http://movementsmicroservice/payments/CREDIT001"))
+                .isEqualTo("/payments");
+    }
+}
@@ -0,0 +1,70 @@
+package com.bank.appbank.event.consumer;
+
+import com.bank.appbank.model.ClientStanding;
+import com.bank.appbank.model.CreditCard;
+import com.bank.appbank.repository.CreditCardRepository;
+import com.bank.appbank.repository.CreditRepository;
+import com.bank.appbank.service.ClientStandingService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ClientStandingConsumerTest {
+
+    @Mock
+    private ClientStandingService clientStandingService;
+    @Mock
+    private CreditRepository creditRepository;
+    @Mock
+    private CreditCardRepository creditCardRepository;
+
+    private ClientStandingConsumer consumer;
+    private final String message = "{\"id\":\"CON001\",\"idCreditCard\":\"CREDIT_CARD001\",\"amount\":50.0}";
+
+    @BeforeEach
+    void setUp() {
+        consumer = new ClientStandingConsumer(clientStandingService, creditRepository, creditCardRepository,
+                new ObjectMapper());
+        CreditCard creditCard = new CreditCard("clientN001");
+        creditCard.setId("CREDIT_CARD001");
+        when(creditRepository.findById("CREDIT_CARD001")).thenReturn(Mono.empty());
+        when(creditCardRepository.findById("CREDIT_CARD001")).thenReturn(Mono.just(creditCard));
+    }
+
+    @Test
+    @DisplayName("Refresh the standing of the client before acknowledging the message")
+    void refreshBeforeAcknowledging() {
+        AtomicBoolean refreshed = new AtomicBoolean();
+        when(clientStandingService.refresh("clientN001")).thenReturn(Mono.delay(Duration.ofMillis(50))
+                .doOnNext(tick -> refreshed.set(true))
+                .thenReturn(ClientStanding.builder().id("clientN001").build()));
+        // When
+        consumer.listenDebtChange(message);
+        // Then
+        assertThat(refreshed).isTrue();
+        verify(clientStandingService, never()).invalidate(anyString());
+    }
+
+    @Test
+    @DisplayName("Delete the standing when it can not be refreshed")
+    void invalidateWhenRefreshFails() {
+        when(clientStandingService.refresh("clientN001")).thenReturn(Mono.error(new RuntimeException("down")));
+        when(clientStandingService.invalidate("clientN001")).thenReturn(Mono.empty());
+        // When
+        consumer.listenDebtChange(message);
+        // Then
+        verify(clientStandingService).invalidate("clientN001");
+    }
+}
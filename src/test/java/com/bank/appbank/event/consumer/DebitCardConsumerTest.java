@@ -0,0 +1,326 @@
+package com.bank.appbank.event.consumer;
+
+import com.bank.appbank.client.MovementServiceClient;
+import com.bank.appbank.config.MongoTransactions;
+import com.bank.appbank.dto.ResponseAssociationWalletDto;
+import com.bank.appbank.event.producer.DebitCardProducer;
+import com.bank.appbank.event.schema.EventSchemas;
+import com.bank.appbank.factory.RepositoryFactory;
+import com.bank.appbank.model.BankAccount;
+import com.bank.appbank.model.DebitCard;
+import com.bank.appbank.model.MovementWallet;
+import com.bank.appbank.repository.BankAccountDebitCardRepository;
+import com.bank.appbank.repository.BankAccountRepository;
+import com.bank.appbank.repository.ClientRepository;
+import com.bank.appbank.repository.DebitCardRepository;
+import com.bank.appbank.repository.MovementWalletRepository;
+import com.bank.appbank.service.DebitCardService;
+import com.bank.appbank.service.impl.BalanceMutationService;
+import com.bank.appbank.service.impl.DebitCardServiceImp;
+import com.bank.appbank.utils.Numbers;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs the listener applying each wallet payment on its own and the one netting the whole poll against an
+ * in-memory stand-in of the repositories where every call costs a round trip. The stand-in records the
+ * payments on each balance it changes and skips the balances that already have any of them, as the bulk
+ * write does.
+ */
+@SuppressWarnings("unchecked")
+class DebitCardConsumerTest {
+    private static final Duration roundTrip = Duration.ofMillis(2);
+    private static final int cards = 10;
+    private static final int records = 100;
+
+    private final Map<String, Double> balances = new ConcurrentHashMap<>();
+    private final Map<String, List<BankAccount.AppliedPayment>> appliedPayments = new ConcurrentHashMap<>();
+    private final AtomicBoolean cutBulkWrite = new AtomicBoolean();
+    private final AtomicInteger savedMovements = new AtomicInteger();
+    private final AtomicInteger confirmations = new AtomicInteger();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final EventSchemas eventSchemas = new EventSchemas(objectMapper);
+    private DebitCardServiceImp debitCardService;
+    private BankAccountRepository bankAccountRepository;
+
+    @BeforeEach
+    void setUp() {
+        balances.clear();
+        appliedPayments.clear();
+        balances.put("MERCHANT_ACCOUNT", 0.0);
+        for (int i = 0; i < cards; i++) {
+            balances.put("ACCOUNT" + i, 100.0);
+        }
+        DebitCardRepository debitCardRepository = mock(DebitCardRepository.class);
+        when(debitCardRepository.findAllByIdIn(anyList())).thenAnswer(invocation -> {
+            List<String> ids = invocation.getArgument(0);
+            return Flux.fromIterable(ids).map(this::debitCard).delaySubscription(roundTrip);
+        });
+        RepositoryFactory repositoryFactory = mock(RepositoryFactory.class);
+        when(repositoryFactory.getRepository(any())).thenReturn(debitCardRepository);
+
+        bankAccountRepository = mock(BankAccountRepository.class);
+        when(bankAccountRepository.findByIdIn(anyList())).thenAnswer(invocation -> {
+            List<String> ids = invocation.getArgument(0);
+            return Flux.fromIterable(ids).map(this::bankAccount).delaySubscription(roundTrip);
+        });
+        when(bankAccountRepository.addToBalance(anyString(), anyDouble())).thenAnswer(invocation -> {
+            String id = invocation.getArgument(0);
+            double amount = invocation.getArgument(1);
+            return Mono.fromCallable(() -> add(id, amount))
+                    .map(balance -> bankAccount(id))
+                    .delaySubscription(roundTrip);
+        });
+        when(bankAccountRepository.addToBalances(anyMap())).thenAnswer(invocation -> {
+            Map<String, Map<String, Double>> paymentsByAccount = invocation.getArgument(0);
+            return Mono.fromCallable(() -> {
+                Set<String> unchanged = new HashSet<>();
+                for (Map.Entry<String, Map<String, Double>> payments : paymentsByAccount.entrySet()) {
+                    if (!addPayments(payments.getKey(), payments.getValue())) {
+                        unchanged.add(payments.getKey());
+                    }
+                    if (cutBulkWrite.getAndSet(false)) {
+                        // The connection drops after the first write, so neither its result nor a lookup arrives
+                        throw new IllegalStateException("Connection reset");
+                    }
+                }
+                return unchanged;
+            }).delaySubscription(roundTrip);
+        });
+
+        MovementWalletRepository movementWalletRepository = mock(MovementWalletRepository.class);
+        when(movementWalletRepository.save(any(MovementWallet.class))).thenAnswer(invocation -> {
+            savedMovements.incrementAndGet();
+            return Mono.just(invocation.getArgument(0)).delaySubscription(roundTrip);
+        });
+        when(movementWalletRepository.saveAll(anyIterable())).thenAnswer(invocation -> {
+            List<MovementWallet> movements = new ArrayList<>();
+            ((Iterable<MovementWallet>) invocation.getArgument(0)).forEach(movements::add);
+            savedMovements.addAndGet(movements.size());
+            return Flux.fromIterable(movements).delaySubscription(roundTrip);
+        });
+
+        DebitCardProducer debitCardProducer = mock(DebitCardProducer.class);
+        when(debitCardProducer.publishConfirmationPaymentDebit(anyList())).thenAnswer(invocation ->
+                Mono.fromRunnable(confirmations::incrementAndGet).delaySubscription(roundTrip));
+        when(debitCardProducer.publishConfirmationsPaymentDebit(anyList())).thenAnswer(invocation ->
+                Mono.fromRunnable(() -> confirmations.addAndGet(((List<?>) invocation.getArgument(0)).size()))
+                        .delaySubscription(roundTrip));
+
+        MongoTransactions mongoTransactions = new MongoTransactions(mock(ReactiveMongoDatabaseFactory.class), false, 3);
+        debitCardService = new DebitCardServiceImp(repositoryFactory,
+                mock(BankAccountDebitCardRepository.class),
+                mock(MovementServiceClient.class),
+                bankAccountRepository,
+                mock(ClientRepository.class),
+                movementWalletRepository,
+                debitCardProducer,
+                new BalanceMutationService(bankAccountRepository, mongoTransactions),
+                mongoTransactions);
+    }
+
+    private synchronized Double add(String id, double amount) {
+        Double balance = balances.get(id);
+        if (balance == null || (amount < 0 && balance < -amount)) {
+            return null;
+        }
+        balances.put(id, Numbers.round(balance + amount));
+        return balances.get(id);
+    }
+
+    private synchronized boolean addPayments(String id, Map<String, Double> payments) {
+        List<BankAccount.AppliedPayment> applied = appliedPayments.computeIfAbsent(id, key -> new ArrayList<>());
+        Set<String> recorded = applied.stream()
+                .map(BankAccount.AppliedPayment::getPayment)
+                .collect(Collectors.toSet());
+        if (!Collections.disjoint(recorded, payments.keySet())) {
+            return recorded.containsAll(payments.keySet());
+        }
+        if (add(id, payments.values().stream().mapToDouble(Double::doubleValue).sum()) == null) {
+            return false;
+        }
+        payments.forEach((payment, amount) -> applied.add(new BankAccount.AppliedPayment(payment, amount)));
+        return true;
+    }
+
+    private DebitCard debitCard(String id) {
+        DebitCard debitCard = new DebitCard();
+        debitCard.setId(id);
+        debitCard.setIdPrincipalAccount(id.replace("CARD", "ACCOUNT"));
+        return debitCard;
+    }
+
+    private BankAccount bankAccount(String id) {
+        BankAccount bankAccount = new BankAccount();
+        bankAccount.setId(id);
+        bankAccount.setBalance(balances.get(id));
+        bankAccount.setAppliedPayments(appliedPayments.get(id));
+        return bankAccount;
+    }
+
+    private List<ConsumerRecord<String, String>> paymentRecords() throws Exception {
+        return paymentRecords(0, records);
+    }
+
+    private List<ConsumerRecord<String, String>> paymentRecords(int from, int to) throws Exception {
+        List<ConsumerRecord<String, String>> paymentRecords = new ArrayList<>();
+        for (int offset = from; offset < to; offset++) {
+            String idDebitCard = "CARD" + (offset % cards);
+            List<MovementWallet> movements = List.of(
+                    MovementWallet.builder().id("OUT" + offset).amount(1.0).idDebitCard(idDebitCard)
+                            .type(MovementWallet.TypeMovementWallet.MAKE_PAYMENT)
+                            .stateMovement(MovementWallet.StateMovement.PENDING).build(),
+                    MovementWallet.builder().id("IN" + offset).amount(1.0).idDebitCard("MERCHANT_CARD")
+                            .type(MovementWallet.TypeMovementWallet.RECEIPT_PAYMENT)
+                            .stateMovement(MovementWallet.StateMovement.PENDING).build());
+            paymentRecords.add(new ConsumerRecord<>("payment-with-debit-card", 0, offset, idDebitCard,
+                    objectMapper.writeValueAsString(movements)));
+        }
+        return paymentRecords;
+    }
+
+    private double recordsPerSecond(boolean netting) throws Exception {
+        DebitCardConsumer consumer =
+                new DebitCardConsumer(mock(DebitCardProducer.class), debitCardService, eventSchemas, 1, netting, 0);
+        List<ConsumerRecord<String, String>> paymentRecords = paymentRecords();
+        long start = System.nanoTime();
+        consumer.listenerPaymentWithDebitCard(paymentRecords);
+        return records / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private void assertPaymentsApplied() {
+        assertThat(balances.get("MERCHANT_ACCOUNT")).isEqualTo((double) records);
+        Map<String, Double> accounts = balances.entrySet().stream()
+                .filter(entry -> !entry.getKey().startsWith("MERCHANT"))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        assertThat(accounts.values()).containsOnly(100.0 - records / cards);
+        assertThat(savedMovements.get()).isEqualTo(records * 2);
+        assertThat(confirmations.get()).isEqualTo(records);
+    }
+
+    @Test
+    @DisplayName("Apply the whole poll with one netted bulk update")
+    void nettingMode() throws Exception {
+        // When
+        new DebitCardConsumer(mock(DebitCardProducer.class), debitCardService, eventSchemas, 1, true, 0)
+                .listenerPaymentWithDebitCard(paymentRecords());
+        // Then
+        assertPaymentsApplied();
+        verify(bankAccountRepository, times(1)).addToBalances(anyMap());
+        verify(bankAccountRepository, never()).addToBalance(anyString(), anyDouble());
+    }
+
+    @Test
+    @DisplayName("Apply each payment on its own without netting")
+    void singleMode() throws Exception {
+        // When
+        new DebitCardConsumer(mock(DebitCardProducer.class), debitCardService, eventSchemas, 4, false, 0)
+                .listenerPaymentWithDebitCard(paymentRecords());
+        // Then
+        assertPaymentsApplied();
+        verify(bankAccountRepository, never()).addToBalances(anyMap());
+    }
+
+    @Test
+    @DisplayName("Throw back a poll whose bulk update was cut and apply it once when it is delivered again")
+    void nettingModeReplay() throws Exception {
+        DebitCardConsumer consumer =
+                new DebitCardConsumer(mock(DebitCardProducer.class), debitCardService, eventSchemas, 1, true, 0);
+        List<ConsumerRecord<String, String>> paymentRecords = paymentRecords();
+        cutBulkWrite.set(true);
+        // When
+        Throwable error = catchThrowable(() -> consumer.listenerPaymentWithDebitCard(paymentRecords));
+        consumer.listenerPaymentWithDebitCard(paymentRecords);
+        // Then
+        assertThat(error).hasMessageContaining("Connection reset");
+        assertPaymentsApplied();
+    }
+
+    @Test
+    @DisplayName("Apply once the payments of a cut poll delivered again inside a larger poll")
+    void nettingModeRedeliveredDifferently() throws Exception {
+        DebitCardConsumer consumer =
+                new DebitCardConsumer(mock(DebitCardProducer.class), debitCardService, eventSchemas, 1, true, 0);
+        List<ConsumerRecord<String, String>> firstPoll = paymentRecords(0, records / 2);
+        cutBulkWrite.set(true);
+        // When
+        Throwable error = catchThrowable(() -> consumer.listenerPaymentWithDebitCard(firstPoll));
+        consumer.listenerPaymentWithDebitCard(paymentRecords());
+        // Then
+        assertThat(error).hasMessageContaining("Connection reset");
+        assertPaymentsApplied();
+    }
+
+    @Test
+    @DisplayName("Retry only the publish of an association response, with the same message")
+    void retryAssociationPublish() {
+        DebitCardService validator = mock(DebitCardService.class);
+        DebitCardProducer producer = mock(DebitCardProducer.class);
+        when(validator.validAssociationWalletToDebitCard("WALLET001", "CARD001"))
+                .thenReturn(Mono.just(ResponseAssociationWalletDto.builder()
+                        .idWallet("WALLET001").idDebitCard("CARD001").state("APPROVE").build()));
+        when(producer.publishAssociationResponse(any()))
+                .thenReturn(Mono.error(new IllegalStateException("Broker not available")))
+                .thenReturn(Mono.empty());
+        // When
+        new DebitCardConsumer(producer, validator, eventSchemas, 1, true, 3)
+                .listenAssociationRequest("{\"idWallet\":\"WALLET001\",\"idDebitCard\":\"CARD001\"}");
+        // Then
+        ArgumentCaptor<ResponseAssociationWalletDto> responses =
+                ArgumentCaptor.forClass(ResponseAssociationWalletDto.class);
+        verify(producer, times(2)).publishAssociationResponse(responses.capture());
+        assertThat(responses.getAllValues()).extracting(ResponseAssociationWalletDto::getState)
+                .containsOnly("APPROVE");
+        assertThat(responses.getAllValues()).extracting(ResponseAssociationWalletDto::getIdMessage)
+                .doesNotContainNull()
+                .containsOnly(responses.getAllValues().get(0).getIdMessage());
+        verify(validator, times(1)).validAssociationWalletToDebitCard("WALLET001", "CARD001");
+    }
+
+    @Test
+    @Tag("benchmark")
+    @DisplayName("Apply the whole poll netted faster than one by one")
+    void nettingModeThroughput() throws Exception {
+        // Given, both paths run once before they are measured
+        recordsPerSecond(true);
+        recordsPerSecond(false);
+        // When
+        reset();
+        double nettingRate = recordsPerSecond(true);
+        assertPaymentsApplied();
+        reset();
+        double singleRate = recordsPerSecond(false);
+        // Then
+        assertPaymentsApplied();
+        assertThat(nettingRate).isGreaterThan(singleRate * 5);
+    }
+
+    private void reset() {
+        setUp();
+        savedMovements.set(0);
+        confirmations.set(0);
+    }
+}
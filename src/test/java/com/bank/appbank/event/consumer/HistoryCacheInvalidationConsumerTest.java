@@ -0,0 +1,55 @@
+package com.bank.appbank.event.consumer;
+
+import com.bank.appbank.client.HistoryCache;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class HistoryCacheInvalidationConsumerTest {
+
+    @Mock
+    private HistoryCache historyCache;
+
+    private HistoryCacheInvalidationConsumer consumer;
+    private final List<String> evicted = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        consumer = new HistoryCacheInvalidationConsumer(historyCache, new ObjectMapper());
+    }
+
+    @Test
+    @DisplayName("Evict every product of the movement before acknowledging the message")
+    void evictBeforeAcknowledging() {
+        when(historyCache.evict(anyString())).thenAnswer(invocation -> Mono.delay(Duration.ofMillis(50))
+                .doOnNext(tick -> evicted.add(invocation.getArgument(0)))
+                .then());
+        // When
+        consumer.listenNewMovement("{\"id\":\"MOV001\",\"idBankAccount\":\"ACC001\","
+                + "\"idBankAccountTransfer\":\"ACC002\",\"idCreditCard\":null}");
+        // Then
+        assertThat(evicted).containsExactly("ACC001", "ACC002");
+    }
+
+    @Test
+    @DisplayName("Skip a message that is not json")
+    void skipInvalidMessage() {
+        // When
+        consumer.listenNewMovement("not json");
+        // Then
+        verifyNoInteractions(historyCache);
+    }
+}
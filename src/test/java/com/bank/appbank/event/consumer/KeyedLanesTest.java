@@ -0,0 +1,76 @@
+package com.bank.appbank.event.consumer;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+class KeyedLanesTest {
+
+    private final Map<String, List<Integer>> processedByKey = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> runningByKey = new ConcurrentHashMap<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private final AtomicInteger maxRunningSameKey = new AtomicInteger();
+
+    private Mono<Void> process(String record) {
+        String key = record.split(":")[0];
+        int sequence = Integer.parseInt(record.split(":")[1]);
+        return Mono.fromRunnable(() -> {
+                    AtomicInteger sameKey = runningByKey.computeIfAbsent(key, k -> new AtomicInteger());
+                    maxRunningSameKey.accumulateAndGet(sameKey.incrementAndGet(), Math::max);
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                })
+                .then(Mono.delay(Duration.ofMillis(5)))
+                .doOnNext(ignored -> {
+                    processedByKey.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(sequence);
+                    runningByKey.get(key).decrementAndGet();
+                    running.decrementAndGet();
+                })
+                .subscribeOn(Schedulers.parallel())
+                .then();
+    }
+
+    @Test
+    @DisplayName("Process each key serially and in order while different keys run in parallel")
+    void serialPerKeyParallelAcrossKeys() {
+        List<String> records = new ArrayList<>();
+        for (int sequence = 0; sequence < 20; sequence++) {
+            for (int card = 0; card < 8; card++) {
+                records.add("CARD" + card + ":" + sequence);
+            }
+        }
+        KeyedLanes<String> lanes = new KeyedLanes<>(record -> record.split(":")[0], 4);
+        // When
+        Mono<Void> result = lanes.run(records, this::process);
+        // Then
+        StepVerifier.create(result).expectComplete().verify(Duration.ofSeconds(10));
+        assertThat(processedByKey).hasSize(8);
+        processedByKey.values().forEach(sequences -> assertThat(sequences).isSorted().hasSize(20));
+        assertThat(maxRunningSameKey.get()).isEqualTo(1);
+        assertThat(maxRunning.get()).isBetween(2, 4);
+    }
+
+    @Test
+    @DisplayName("Give each record without key a lane of its own")
+    void recordsWithoutKey() {
+        KeyedLanes<String> lanes = new KeyedLanes<>(record -> null, 2);
+        List<String> seen = new CopyOnWriteArrayList<>();
+        // When
+        Mono<Void> result = lanes.run(List.of("A", "B", "C"), record -> Mono.fromRunnable(() -> seen.add(record)));
+        // Then
+        StepVerifier.create(result).verifyComplete();
+        assertThat(seen).containsExactlyInAnyOrder("A", "B", "C");
+    }
+}
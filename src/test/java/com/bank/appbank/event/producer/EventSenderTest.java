@@ -0,0 +1,60 @@
+package com.bank.appbank.event.producer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.SettableListenableFuture;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EventSenderTest {
+
+    @Mock
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+    private EventSender eventSender;
+    private final SettableListenableFuture<SendResult<String, byte[]>> sendResult = new SettableListenableFuture<>();
+
+    @BeforeEach
+    void setUp() {
+        eventSender = new EventSender(kafkaTemplate, new ObjectMapper());
+        when(kafkaTemplate.send("bank-account-balance-updated", "CARD001",
+                "{\"newBalance\":10.0}".getBytes(StandardCharsets.UTF_8)))
+                .thenReturn(sendResult);
+    }
+
+    @Test
+    @DisplayName("Complete the send only after the broker acknowledges it")
+    void completeOnAck() {
+        // When
+        StepVerifier.create(eventSender.send("bank-account-balance-updated", "CARD001", Map.of("newBalance", 10.0)))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(50))
+                .then(() -> sendResult.set(null))
+                // Then
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Propagate a failed send to the caller")
+    void propagateFailure() {
+        sendResult.setException(new TimeoutException("Expiring 1 record(s)"));
+        // When
+        StepVerifier.create(eventSender.send("bank-account-balance-updated", "CARD001", Map.of("newBalance", 10.0)))
+                // Then
+                .expectError(TimeoutException.class)
+                .verify();
+    }
+}
@@ -0,0 +1,126 @@
+package com.bank.appbank.event.producer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Sends events through {@link EventSender} to an in-memory producer. The tests tagged as benchmark, run
+ * with {@code -Pbenchmark}, also measure the events per second and the bytes allocated per event when
+ * serializing to bytes with a shared writer, compared with a String per event.
+ */
+@SuppressWarnings("unchecked")
+class EventSenderThroughputTest {
+    private static final int events = 20_000;
+    private static final int checkedEvents = 1_000;
+    private static final int warmUpEvents = 20_000;
+    private static final StringSerializer stringSerializer = new StringSerializer();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectWriter objectWriter = objectMapper.writer();
+
+    private Map<String, Object> balanceUpdate(int i) {
+        return Map.of("idDebitCard", "CARD" + (i % 100), "newBalance", 1500.25 + i);
+    }
+
+    private MockProducer<String, byte[]> producer() {
+        // the template closes its producer after each send, as it would a shared producer's proxy
+        return new MockProducer<>(true, new StringSerializer(), new ByteArraySerializer()) {
+            @Override
+            public void close(Duration timeout) {
+            }
+        };
+    }
+
+    private void send(EventSender eventSender, int count) {
+        StepVerifier.create(Flux.range(0, count)
+                        .flatMap(i -> eventSender.send("bank-account-balance-updated", "CARD" + (i % 100),
+                                balanceUpdate(i)), 256))
+                .verifyComplete();
+    }
+
+    private long allocatedBytesPerEvent(Consumer<Integer> serialize) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (int i = 0; i < warmUpEvents; i++) {
+            serialize.accept(i);
+        }
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < events; i++) {
+            serialize.accept(i);
+        }
+        return (threads.getThreadAllocatedBytes(thread) - before) / events;
+    }
+
+    @Test
+    @DisplayName("Send every event with its key and its JSON bytes")
+    void sendEvents() throws Exception {
+        MockProducer<String, byte[]> producer = producer();
+        EventSender eventSender = new EventSender(new KafkaTemplate<>(() -> producer), objectMapper);
+        // When
+        send(eventSender, checkedEvents);
+        // Then
+        assertThat(producer.history()).hasSize(checkedEvents);
+        for (ProducerRecord<String, byte[]> record : producer.history()) {
+            Map<String, Object> event = objectMapper.readValue(record.value(), Map.class);
+            int i = (int) Math.round((Double) event.get("newBalance") - 1500.25);
+            assertThat(record.key()).isEqualTo("CARD" + (i % 100));
+            assertThat(record.value()).isEqualTo(objectWriter.writeValueAsBytes(balanceUpdate(i)));
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    @DisplayName("Serialize events to bytes with less allocation than through a String")
+    void allocationPerEvent() {
+        // When
+        long asString = allocatedBytesPerEvent(i -> {
+            try {
+                stringSerializer.serialize("topic", objectMapper.writeValueAsString(balanceUpdate(i)));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        long asBytes = allocatedBytesPerEvent(i -> {
+            try {
+                objectWriter.writeValueAsBytes(balanceUpdate(i));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        // Then
+        assertThat(asBytes).isPositive().isLessThan(asString);
+    }
+
+    @Test
+    @Tag("benchmark")
+    @DisplayName("Send thousands of events per second through the sender")
+    void eventsPerSecond() {
+        MockProducer<String, byte[]> producer = producer();
+        EventSender eventSender = new EventSender(new KafkaTemplate<>(() -> producer), objectMapper);
+        // When
+        long start = System.nanoTime();
+        send(eventSender, events);
+        double eventsPerSecond = events / ((System.nanoTime() - start) / 1e9);
+        // Then
+        assertThat(producer.history()).hasSize(events);
+        assertThat(eventsPerSecond).isGreaterThan(1000);
+    }
+}
@@ -0,0 +1,210 @@
+package com.bank.appbank.event.producer;
+
+import com.bank.appbank.model.OutboxEvent;
+import com.bank.appbank.repository.OutboxEventRepository;
+import com.bank.appbank.service.scheduler.JobCoordinator;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.OngoingStubbing;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@SuppressWarnings("unchecked")
+class OutboxRelayTest {
+
+    @Mock
+    private OutboxEventRepository outboxEventRepository;
+    @Mock
+    private EventSender eventSender;
+    @Mock
+    private JobCoordinator jobCoordinator;
+    @Mock
+    private Clock clock;
+
+    private OutboxRelay outboxRelay;
+    private final List<String> sentPayloads = new CopyOnWriteArrayList<>();
+    private final AtomicReference<Instant> now = new AtomicReference<>(Instant.parse("2025-02-20T10:00:00Z"));
+
+    @BeforeEach
+    void setUp() {
+        outboxRelay = new OutboxRelay(outboxEventRepository, eventSender, jobCoordinator, clock, 4);
+        ReflectionTestUtils.setField(outboxRelay, "batchSize", 3);
+        ReflectionTestUtils.setField(outboxRelay, "relayIntervalMs", 200L);
+        ReflectionTestUtils.setField(outboxRelay, "maxBackoffMs", 60000L);
+        lenient().when(clock.instant()).thenAnswer(invocation -> now.get());
+        when(outboxEventRepository.deleteAllById(anyIterable())).thenReturn(Mono.empty());
+    }
+
+    private OutboxEvent event(String id, String key, String payload) {
+        return OutboxEvent.builder()
+                .id(id)
+                .topic("payment-with-debit-card-confirmation")
+                .key(key)
+                .payload(bytes(payload))
+                .createdAt(now.get())
+                .build();
+    }
+
+    private void givenBatches(Flux<OutboxEvent>... batches) {
+        OngoingStubbing<Flux<OutboxEvent>> stubbing = when(outboxEventRepository
+                .findAllByParkedAtIsNullAndKeyNotInAndIdNotIn(anyCollection(), anyCollection(), any(Pageable.class)));
+        for (Flux<OutboxEvent> batch : batches) {
+            stubbing = stubbing.thenReturn(batch);
+        }
+        stubbing.thenReturn(Flux.empty());
+    }
+
+    private List<Collection<String>> excludedKeys() {
+        ArgumentCaptor<Collection<String>> keys = ArgumentCaptor.forClass(Collection.class);
+        verify(outboxEventRepository, atLeastOnce()).findAllByParkedAtIsNullAndKeyNotInAndIdNotIn(
+                keys.capture(), anyCollection(), any(Pageable.class));
+        return keys.getAllValues();
+    }
+
+    private void givenRecordedFailures() {
+        when(outboxEventRepository.recordFailedSend(anyString(), anyInt(), any())).thenReturn(Mono.empty());
+    }
+
+    private byte[] bytes(String payload) {
+        return payload.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void sendSucceeds() {
+        when(eventSender.sendJson(anyString(), any(), any(byte[].class))).thenAnswer(invocation -> {
+            sentPayloads.add(new String((byte[]) invocation.getArgument(2), StandardCharsets.UTF_8));
+            return Mono.empty();
+        });
+    }
+
+    @Test
+    @DisplayName("Send the events of a key in order, delete them and keep draining while batches come full")
+    void drainInOrder() {
+        sendSucceeds();
+        givenBatches(Flux.just(event("E1", "CARD001", "1"), event("E2", "CARD002", "2"),
+                        event("E3", "CARD001", "3")),
+                Flux.just(event("E4", "CARD001", "4")));
+        // When
+        StepVerifier.create(outboxRelay.drain()).verifyComplete();
+        // Then
+        assertThat(sentPayloads.stream().filter(payload -> !payload.equals("2")))
+                .containsExactly("1", "3", "4");
+        ArgumentCaptor<Iterable<String>> deleted = ArgumentCaptor.forClass(Iterable.class);
+        verify(outboxEventRepository, times(2)).deleteAllById(deleted.capture());
+        assertThat(deleted.getAllValues().get(0)).containsExactlyInAnyOrder("E1", "E2", "E3");
+        assertThat(deleted.getAllValues().get(1)).containsExactly("E4");
+    }
+
+    @Test
+    @DisplayName("Stop a key at its failed event and keep it in the outbox with the ones after it")
+    void stopKeyOnFailure() {
+        givenRecordedFailures();
+        givenBatches(Flux.just(event("E1", "CARD001", "1"), event("E2", "CARD002", "2"),
+                event("E3", "CARD001", "3")));
+        when(eventSender.sendJson(anyString(), eq("CARD001"), aryEq(bytes("1"))))
+                .thenReturn(Mono.error(new IllegalStateException("Broker not available")));
+        when(eventSender.sendJson(anyString(), eq("CARD002"), aryEq(bytes("2")))).thenReturn(Mono.empty());
+        // When
+        StepVerifier.create(outboxRelay.drain()).verifyComplete();
+        // Then
+        verify(eventSender, never()).sendJson(anyString(), eq("CARD001"), aryEq(bytes("3")));
+        verify(outboxEventRepository).deleteAllById(List.of("E2"));
+        verify(outboxEventRepository).recordFailedSend("E1", 1, null);
+        assertThat(excludedKeys()).hasSize(2);
+        assertThat(excludedKeys().get(1)).containsExactly("CARD001");
+    }
+
+    @Test
+    @DisplayName("Keep draining the other keys when a failed key fills whole batches")
+    void drainPastFailedKey() {
+        sendSucceeds();
+        givenRecordedFailures();
+        when(eventSender.sendJson(anyString(), eq("CARD001"), any(byte[].class)))
+                .thenReturn(Mono.error(new IllegalStateException("Broker not available")));
+        givenBatches(Flux.just(event("E1", "CARD001", "1"), event("E2", "CARD001", "2"),
+                        event("E3", "CARD001", "3")),
+                Flux.just(event("E5", "CARD002", "5")));
+        // When
+        StepVerifier.create(outboxRelay.drain()).verifyComplete();
+        // Then
+        assertThat(sentPayloads).containsExactly("5");
+        verify(outboxEventRepository).deleteAllById(List.of("E5"));
+    }
+
+    @Test
+    @DisplayName("Read a failed key again once its backoff is over")
+    void retryKeyAfterBackoff() {
+        givenRecordedFailures();
+        when(eventSender.sendJson(anyString(), eq("CARD001"), aryEq(bytes("1"))))
+                .thenReturn(Mono.error(new IllegalStateException("Broker not available")))
+                .thenReturn(Mono.empty());
+        givenBatches(Flux.just(event("E1", "CARD001", "1")), Flux.just(event("E1", "CARD001", "1")));
+        // When
+        StepVerifier.create(outboxRelay.drain()).verifyComplete();
+        now.set(now.get().plusMillis(200));
+        StepVerifier.create(outboxRelay.drain()).verifyComplete();
+        // Then
+        assertThat(excludedKeys().get(0)).isEmpty();
+        assertThat(excludedKeys().get(1)).isEmpty();
+        verify(outboxEventRepository).deleteAllById(List.of("E1"));
+    }
+
+    @Test
+    @DisplayName("Keep retrying an event whose sends fail for a transient error, with a capped backoff")
+    void neverParkTransientFailure() {
+        givenRecordedFailures();
+        when(eventSender.sendJson(anyString(), any(), any(byte[].class))).thenReturn(Mono.error(
+                new KafkaException("Send failed", new TimeoutException("Expiring 1 record(s)"))));
+        OutboxEvent event = event("E1", "CARD001", "1");
+        event.setAttempts(40);
+        givenBatches(Flux.just(event));
+        // When
+        StepVerifier.create(outboxRelay.drain()).verifyComplete();
+        now.set(now.get().plusMillis(59999));
+        StepVerifier.create(outboxRelay.drain()).verifyComplete();
+        now.set(now.get().plusMillis(1));
+        StepVerifier.create(outboxRelay.drain()).verifyComplete();
+        // Then
+        verify(outboxEventRepository).recordFailedSend("E1", 41, null);
+        assertThat(excludedKeys().get(1)).containsExactly("CARD001");
+        assertThat(excludedKeys().get(2)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Park at once an event the broker can never take and let its key go on")
+    void parkPoisonEvent() {
+        givenRecordedFailures();
+        when(eventSender.sendJson(anyString(), any(), any(byte[].class))).thenReturn(Mono.error(
+                new KafkaException("Send failed", new RecordTooLargeException("Message too large"))));
+        givenBatches(Flux.just(event("E1", "CARD001", "1")));
+        // When
+        StepVerifier.create(outboxRelay.drain()).verifyComplete();
+        StepVerifier.create(outboxRelay.drain()).verifyComplete();
+        // Then
+        verify(outboxEventRepository).recordFailedSend("E1", 1, Instant.parse("2025-02-20T10:00:00Z"));
+        assertThat(excludedKeys().get(1)).isEmpty();
+    }
+}
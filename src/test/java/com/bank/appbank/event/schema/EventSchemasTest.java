@@ -0,0 +1,70 @@
+package com.bank.appbank.event.schema;
+
+import com.bank.appbank.model.MovementWallet;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+class EventSchemasTest {
+
+    private final EventSchemas eventSchemas = new EventSchemas(new ObjectMapper());
+
+    @Test
+    @DisplayName("Bind an association request to its class ignoring fields added by a newer producer")
+    void readAssociationRequest() {
+        String message = "{\"version\":1,\"idWallet\":\"WALLET001\",\"idDebitCard\":\"CARD001\",\"channel\":\"APP\"}";
+        // When
+        WalletAssociationRequested request = eventSchemas.read(WalletAssociationRequested.TOPIC, message);
+        // Then
+        assertThat(request.getIdWallet()).isEqualTo("WALLET001");
+        assertThat(request.getIdDebitCard()).isEqualTo("CARD001");
+    }
+
+    @Test
+    @DisplayName("Read a message written before the version field existed")
+    void readUnversionedMessage() {
+        // When
+        WalletAssociationRequested request = eventSchemas.read(WalletAssociationRequested.TOPIC,
+                "{\"idWallet\":\"WALLET001\",\"idDebitCard\":\"CARD001\"}");
+        // Then
+        assertThat(request.getIdDebitCard()).isEqualTo("CARD001");
+    }
+
+    @Test
+    @DisplayName("Reject a message with a newer version than the registered one")
+    void rejectNewerVersion() {
+        // When - Then
+        assertThatThrownBy(() -> eventSchemas.read(WalletAssociationRequested.TOPIC,
+                "{\"version\":2,\"idWallet\":\"WALLET001\"}"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Unsupported version 2");
+    }
+
+    @Test
+    @DisplayName("Bind the movements of a wallet payment to a typed list")
+    void readPaymentMovements() {
+        // When
+        List<MovementWallet> movements = eventSchemas.read(EventSchemas.PAYMENT_WITH_DEBIT_CARD,
+                "[{\"id\":\"OUT001\",\"amount\":10.0,\"idDebitCard\":\"CARD001\",\"type\":\"MAKE_PAYMENT\"}]");
+        // Then
+        assertThat(movements).extracting(MovementWallet::getId, MovementWallet::getType)
+                .containsExactly(tuple("OUT001", MovementWallet.TypeMovementWallet.MAKE_PAYMENT));
+    }
+
+    @Test
+    @DisplayName("Write the balance update with its schema version")
+    void writeBalanceUpdated() throws Exception {
+        BankAccountBalanceUpdated event = BankAccountBalanceUpdated.builder()
+                .idDebitCard("CARD001")
+                .newBalance(150.5)
+                .build();
+        // When
+        String json = new ObjectMapper().writeValueAsString(event);
+        // Then
+        assertThat(json).contains("\"version\":1").contains("\"newBalance\":150.5");
+    }
+}
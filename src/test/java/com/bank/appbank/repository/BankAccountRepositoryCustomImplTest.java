@@ -0,0 +1,181 @@
+package com.bank.appbank.repository;
+
+import com.bank.appbank.model.BankAccount;
+import com.mongodb.MongoSocketReadException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.result.UpdateResult;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@SuppressWarnings("unchecked")
+class BankAccountRepositoryCustomImplTest {
+
+    @Mock
+    private ReactiveMongoTemplate mongoTemplate;
+    @Mock
+    private MongoCollection<Document> collection;
+    @Mock
+    private MongoConverter converter;
+
+    private BankAccountRepositoryCustomImpl bankAccountRepository;
+    private final Map<String, Map<String, Double>> payments = new LinkedHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        bankAccountRepository = new BankAccountRepositoryCustomImpl(mongoTemplate);
+        payments.put("ORIGIN", new LinkedHashMap<>(Map.of("P1", -20.0)));
+        payments.put("DESTIN", new LinkedHashMap<>(Map.of("P1", 20.0)));
+        payments.get("ORIGIN").put("P2", -5.5);
+    }
+
+    private void givenCollection() {
+        when(mongoTemplate.getConverter()).thenReturn(converter);
+        when(converter.convertId(anyString(), eq(ObjectId.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(mongoTemplate.getCollectionName(BankAccount.class)).thenReturn("bank_accounts");
+        when(mongoTemplate.getCollection("bank_accounts")).thenReturn(Mono.just(collection));
+    }
+
+    private BulkWriteResult matched(int count) {
+        return BulkWriteResult.acknowledged(0, count, 0, count, Collections.emptyList(), Collections.emptyList());
+    }
+
+    private BankAccount bankAccount(String id, String... payments) {
+        BankAccount bankAccount = new BankAccount();
+        bankAccount.setId(id);
+        bankAccount.setAppliedPayments(Arrays.stream(payments)
+                .map(payment -> new BankAccount.AppliedPayment(payment, 1.0))
+                .collect(Collectors.toList()));
+        return bankAccount;
+    }
+
+    @Test
+    @DisplayName("Add the net of the payments of each account unless it recorded any of them, and record them")
+    void recordPaymentsOnEachAccount() {
+        givenCollection();
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenReturn(Mono.just(matched(2)));
+        // When
+        StepVerifier.create(bankAccountRepository.addToBalances(payments))
+                .assertNext(unchanged -> assertThat(unchanged).isEmpty())
+                .verifyComplete();
+        // Then
+        ArgumentCaptor<List<WriteModel<Document>>> captor = ArgumentCaptor.forClass(List.class);
+        verify(collection).bulkWrite(captor.capture(), any(BulkWriteOptions.class));
+        UpdateOneModel<Document> debit = (UpdateOneModel<Document>) captor.getValue().get(0);
+        String filter = debit.getFilter().toBsonDocument().toJson();
+        assertThat(filter).contains("\"appliedPayments.payment\": {\"$nin\": [\"P1\", \"P2\"]}")
+                .contains("\"balance\": {\"$gte\": 25.5}");
+        BsonDocument set = debit.getUpdatePipeline().get(0).toBsonDocument().getDocument("$set");
+        assertThat(set.toJson()).contains("\"$add\": [\"$balance\", -25.5]")
+                .contains("{\"payment\": \"P1\", \"amount\": -20.0}")
+                .contains("{\"payment\": \"P2\", \"amount\": -5.5}");
+        verify(mongoTemplate, never()).find(any(Query.class), eq(BankAccount.class));
+    }
+
+    @Test
+    @DisplayName("Return the accounts left without their payments when some update did not match")
+    void findAccountsWithoutPayments() {
+        givenCollection();
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenReturn(Mono.just(matched(1)));
+        // The origin recorded only one of its payments, a concurrent call applied it
+        when(mongoTemplate.find(any(Query.class), eq(BankAccount.class)))
+                .thenReturn(Flux.just(bankAccount("ORIGIN", "P2"), bankAccount("DESTIN", "P1")));
+        // When
+        StepVerifier.create(bankAccountRepository.addToBalances(payments))
+                .assertNext(unchanged -> assertThat(unchanged).isEqualTo(Set.of("ORIGIN")))
+                .verifyComplete();
+        // Then
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(query.capture(), eq(BankAccount.class));
+        assertThat(query.getValue().getFieldsObject()).containsOnlyKeys("appliedPayments");
+    }
+
+    @Test
+    @DisplayName("Look up which accounts a failed bulk write reached instead of failing the batch")
+    void findAccountsAfterFailedBulkWrite() {
+        givenCollection();
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class)))
+                .thenReturn(Mono.error(new MongoSocketReadException("Connection reset", new ServerAddress())));
+        when(mongoTemplate.find(any(Query.class), eq(BankAccount.class)))
+                .thenReturn(Flux.just(bankAccount("ORIGIN", "P1", "P2"), bankAccount("DESTIN")));
+        // When - Then
+        StepVerifier.create(bankAccountRepository.addToBalances(payments))
+                .assertNext(unchanged -> assertThat(unchanged).isEqualTo(Set.of("DESTIN")))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Propagate the error when it is unknown which accounts a failed bulk write reached")
+    void propagateUnknownOutcome() {
+        givenCollection();
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class)))
+                .thenReturn(Mono.error(new MongoSocketReadException("Connection reset", new ServerAddress())));
+        when(mongoTemplate.find(any(Query.class), eq(BankAccount.class)))
+                .thenReturn(Flux.error(new MongoSocketReadException("Connection reset", new ServerAddress())));
+        // When - Then
+        StepVerifier.create(bankAccountRepository.addToBalances(payments))
+                .expectError(MongoSocketReadException.class)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("Do not touch the collection for an empty batch")
+    void addNothing() {
+        // When - Then
+        StepVerifier.create(bankAccountRepository.addToBalances(Map.of()))
+                .assertNext(unchanged -> assertThat(unchanged).isEmpty())
+                .verifyComplete();
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    @DisplayName("Take back the recorded amount of a payment and forget it")
+    void revertPayment() {
+        givenCollection();
+        when(collection.updateOne(any(Bson.class), anyList()))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+        // When
+        StepVerifier.create(bankAccountRepository.revertPayment("DESTIN", "P1"))
+                .expectNext(true)
+                .verifyComplete();
+        // Then
+        ArgumentCaptor<Bson> filter = ArgumentCaptor.forClass(Bson.class);
+        ArgumentCaptor<List<Bson>> pipeline = ArgumentCaptor.forClass(List.class);
+        verify(collection).updateOne(filter.capture(), pipeline.capture());
+        assertThat(filter.getValue().toBsonDocument().toJson()).contains("\"appliedPayments.payment\": \"P1\"");
+        String set = pipeline.getValue().get(0).toBsonDocument().toJson();
+        assertThat(set).contains("\"$subtract\": [\"$balance\", \"$$applied.amount\"]")
+                .contains("\"$ne\": [\"$$this.payment\", \"P1\"]");
+    }
+}
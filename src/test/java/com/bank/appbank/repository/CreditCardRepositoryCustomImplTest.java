@@ -0,0 +1,46 @@
+package com.bank.appbank.repository;
+
+import com.bank.appbank.model.CreditCard;
+import org.bson.Document;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CreditCardRepositoryCustomImplTest {
+
+    @Mock
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Test
+    @DisplayName("Find the ids of the cards billing today, overdue or with pending marks and not billed today")
+    void findIdsDueForBilling() {
+        LocalDate today = LocalDate.of(2025, 2, 20);
+        when(mongoTemplate.find(any(Query.class), eq(CreditCard.class))).thenReturn(Flux.empty());
+        // When
+        StepVerifier.create(new CreditCardRepositoryCustomImpl(mongoTemplate).findIdsDueForBilling("20", today))
+                .verifyComplete();
+        // Then
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(captor.capture(), eq(CreditCard.class));
+        Document query = captor.getValue().getQueryObject();
+        assertThat(query.get("lastBilledDate", Document.class)).containsEntry("$ne", today);
+        assertThat(query.getList("$or", Document.class)).containsExactly(
+                new Document("numberBillingDate", "20"),
+                new Document("dueDate", new Document("$lt", today)).append("totalDebt", new Document("$gt", 0)),
+                new Document("pendingBilling", new Document("$ne", null)));
+        assertThat(captor.getValue().getFieldsObject()).containsOnlyKeys("_id");
+    }
+}
@@ -0,0 +1,144 @@
+package com.bank.appbank.repository;
+
+import com.bank.appbank.model.MonthlyBalance;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@SuppressWarnings("unchecked")
+class MonthlyBalanceRepositoryCustomImplTest {
+
+    @Mock
+    private ReactiveMongoTemplate mongoTemplate;
+    @Mock
+    private MongoCollection<Document> collection;
+    @Mock
+    private MongoConverter converter;
+
+    private MonthlyBalanceRepositoryCustomImpl monthlyBalanceRepository;
+
+    @BeforeEach
+    void setUp() {
+        monthlyBalanceRepository = new MonthlyBalanceRepositoryCustomImpl(mongoTemplate);
+    }
+
+    private void givenCollection() {
+        when(mongoTemplate.getConverter()).thenReturn(converter);
+        when(converter.convertToMongoType(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(mongoTemplate.getCollectionName(MonthlyBalance.class)).thenReturn("monthly_balances");
+        when(mongoTemplate.getCollection("monthly_balances")).thenReturn(Mono.just(collection));
+    }
+
+    private MonthlyBalance monthlyBalance(String idBankProduct, double sumBalance) {
+        return MonthlyBalance.builder()
+                .id(idBankProduct + ":2025-02")
+                .idBankProduct(idBankProduct)
+                .year(2025)
+                .month(2)
+                .sumBalance(sumBalance)
+                .countDays(3)
+                .lastDate(LocalDate.of(2025, 2, 20))
+                .build();
+    }
+
+    private MongoBulkWriteException bulkWriteException(int code, int index) {
+        return new MongoBulkWriteException(BulkWriteResult.unacknowledged(),
+                List.of(new BulkWriteError(code, "write error", new BsonDocument(), index)),
+                null, new ServerAddress());
+    }
+
+    private List<String> filteredIds(List<? extends WriteModel<Document>> models) {
+        return models.stream()
+                .map(model -> ((UpdateOneModel<Document>) model).getFilter().toBsonDocument()
+                        .getString("_id").getValue())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    @DisplayName("Upsert every accumulator by _id in one unordered bulk write")
+    void upsertAllInOneBulkWrite() {
+        givenCollection();
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class)))
+                .thenReturn(Mono.just(BulkWriteResult.unacknowledged()));
+        // When
+        StepVerifier.create(monthlyBalanceRepository.upsertAll(List.of(
+                        monthlyBalance("ACC001", 300.0), monthlyBalance("ACC002", 150.0))))
+                .verifyComplete();
+        // Then
+        ArgumentCaptor<List<WriteModel<Document>>> captor = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<BulkWriteOptions> options = ArgumentCaptor.forClass(BulkWriteOptions.class);
+        verify(collection, times(1)).bulkWrite(captor.capture(), options.capture());
+        assertThat(filteredIds(captor.getValue())).containsExactly("ACC001:2025-02", "ACC002:2025-02");
+        UpdateOneModel<Document> first = (UpdateOneModel<Document>) captor.getValue().get(0);
+        assertThat(first.getOptions().isUpsert()).isTrue();
+        BsonDocument set = first.getUpdate().toBsonDocument().getDocument("$set");
+        assertThat(set.getDouble("sumBalance").getValue()).isEqualTo(300.0);
+        assertThat(set.getInt32("countDays").getValue()).isEqualTo(3);
+        assertThat(options.getValue().isOrdered()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Write again only the upsert that lost a duplicate key race")
+    void retryDuplicateKeys() {
+        givenCollection();
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class)))
+                .thenReturn(Mono.error(bulkWriteException(11000, 1)))
+                .thenReturn(Mono.just(BulkWriteResult.unacknowledged()));
+        // When
+        StepVerifier.create(monthlyBalanceRepository.upsertAll(List.of(
+                        monthlyBalance("ACC001", 300.0), monthlyBalance("ACC002", 150.0))))
+                .verifyComplete();
+        // Then
+        ArgumentCaptor<List<WriteModel<Document>>> captor = ArgumentCaptor.forClass(List.class);
+        verify(collection, times(2)).bulkWrite(captor.capture(), any(BulkWriteOptions.class));
+        assertThat(filteredIds(captor.getAllValues().get(1))).containsExactly("ACC002:2025-02");
+    }
+
+    @Test
+    @DisplayName("Propagate a bulk error other than a duplicate key")
+    void propagateOtherErrors() {
+        givenCollection();
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class)))
+                .thenReturn(Mono.error(bulkWriteException(121, 0)));
+        // When - Then
+        StepVerifier.create(monthlyBalanceRepository.upsertAll(List.of(monthlyBalance("ACC001", 300.0))))
+                .expectError(MongoBulkWriteException.class)
+                .verify();
+        verify(collection, times(1)).bulkWrite(anyList(), any(BulkWriteOptions.class));
+    }
+
+    @Test
+    @DisplayName("Do not touch the collection for an empty list")
+    void upsertNothing() {
+        // When - Then
+        StepVerifier.create(monthlyBalanceRepository.upsertAll(Collections.emptyList())).verifyComplete();
+        verifyNoInteractions(mongoTemplate);
+    }
+}
@@ -0,0 +1,79 @@
+package com.bank.appbank.repository;
+
+import com.bank.appbank.model.BankAccount;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ProductIdCursorTest {
+
+    @Mock
+    private ReactiveMongoTemplate mongoTemplate;
+
+    private final MongoMappingContext mappingContext = new MongoMappingContext();
+    private QueryMapper queryMapper;
+
+    @BeforeEach
+    void setUp() {
+        mappingContext.setSimpleTypeHolder(new MongoCustomConversions(Collections.emptyList()).getSimpleTypeHolder());
+        queryMapper = new QueryMapper(new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext));
+    }
+
+    private Query findIdsAfter(String lastId) {
+        when(mongoTemplate.find(any(Query.class), eq(BankAccount.class))).thenReturn(Flux.empty());
+        StepVerifier.create(ProductIdCursor.findIdsAfter(mongoTemplate, BankAccount.class, lastId))
+                .verifyComplete();
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(captor.capture(), eq(BankAccount.class));
+        return captor.getValue();
+    }
+
+    private Document mapped(Document document) {
+        return queryMapper.getMappedObject(document, mappingContext.getPersistentEntity(BankAccount.class));
+    }
+
+    @Test
+    @DisplayName("Compare the cursor as an ObjectId so it matches the ObjectId ids stored in Mongo")
+    void findIdsAfterObjectId() {
+        String lastId = "65f1c0a2b3d4e5f6a7b8c9d0";
+        // When
+        Query query = findIdsAfter(lastId);
+        // Then
+        Document idFilter = mapped(query.getQueryObject()).get("_id", Document.class);
+        assertThat(idFilter.get("$gt")).isInstanceOf(ObjectId.class).isEqualTo(new ObjectId(lastId));
+        assertThat(mapped(query.getSortObject())).isEqualTo(new Document("_id", 1));
+        assertThat(query.getFieldsObject()).containsOnlyKeys("_id");
+    }
+
+    @Test
+    @DisplayName("Read the first page without a lower bound")
+    void findIdsFromFirst() {
+        // When
+        Query query = findIdsAfter(null);
+        // Then
+        assertThat(query.getQueryObject()).isEmpty();
+        assertThat(mapped(query.getSortObject())).isEqualTo(new Document("_id", 1));
+        assertThat(query.getFieldsObject()).containsOnlyKeys("_id");
+    }
+}
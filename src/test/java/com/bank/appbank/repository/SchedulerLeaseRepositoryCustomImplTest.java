@@ -0,0 +1,128 @@
+package com.bank.appbank.repository;
+
+import com.bank.appbank.model.SchedulerLease;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SchedulerLeaseRepositoryCustomImplTest {
+
+    @Mock
+    private ReactiveMongoTemplate mongoTemplate;
+
+    private SchedulerLeaseRepositoryCustomImpl leaseRepository;
+    private final LocalDate today = LocalDate.of(2025, 2, 20);
+    private final Instant now = Instant.parse("2025-02-20T23:00:00Z");
+
+    @BeforeEach
+    void setUp() {
+        leaseRepository = new SchedulerLeaseRepositoryCustomImpl(mongoTemplate);
+    }
+
+    private Query capturedAcquireQuery() {
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findAndModify(captor.capture(), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(SchedulerLease.class));
+        return captor.getValue();
+    }
+
+    @Test
+    @DisplayName("Acquire a free or expired lease that was not completed for the date")
+    void acquire() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(SchedulerLease.class)))
+                .thenReturn(Mono.just(SchedulerLease.builder().id("billing").owner("instance-1").build()));
+        // When
+        StepVerifier.create(leaseRepository.tryAcquire("billing", "instance-1", today, now, now.plusSeconds(120)))
+                .expectNext(true)
+                .verifyComplete();
+        // Then
+        Document query = capturedAcquireQuery().getQueryObject();
+        assertThat(query.get("id")).isEqualTo("billing");
+        assertThat(query.get("completedDate", Document.class).get("$ne")).isEqualTo(today);
+        assertThat(query.getList("$or", Document.class))
+                .containsExactly(new Document("expiresAt", new Document("$lt", now)),
+                        new Document("owner", "instance-1"));
+    }
+
+    @Test
+    @DisplayName("Report the lease as taken when it is held or the date was completed")
+    void leaseTaken() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(SchedulerLease.class)))
+                .thenReturn(Mono.error(new DuplicateKeyException("E11000 duplicate key")));
+        // When - Then
+        StepVerifier.create(leaseRepository.tryAcquire("billing", "instance-2", today, now, now.plusSeconds(120)))
+                .expectNext(false)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Ignore the completed date for a continuous job")
+    void acquireContinuousJob() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(SchedulerLease.class)))
+                .thenReturn(Mono.empty());
+        // When
+        StepVerifier.create(leaseRepository.tryAcquire("outbox-relay", "instance-1", null, now,
+                        now.plusSeconds(120)))
+                .expectNext(false)
+                .verifyComplete();
+        // Then
+        assertThat(capturedAcquireQuery().getQueryObject()).doesNotContainKey("completedDate");
+    }
+
+    @Test
+    @DisplayName("Renew only a lease still owned by the instance")
+    void renew() {
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(SchedulerLease.class)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(0, 0L, null)));
+        // When - Then
+        StepVerifier.create(leaseRepository.renew("billing", "instance-1", now.plusSeconds(120)))
+                .expectNext(true)
+                .verifyComplete();
+        StepVerifier.create(leaseRepository.renew("billing", "instance-1", now.plusSeconds(160)))
+                .expectNext(false)
+                .verifyComplete();
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(2)).updateFirst(captor.capture(), any(UpdateDefinition.class),
+                eq(SchedulerLease.class));
+        assertThat(captor.getValue().getQueryObject()).containsEntry("owner", "instance-1");
+    }
+
+    @Test
+    @DisplayName("Mark the date as completed when releasing after a run")
+    void releaseCompleted() {
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(SchedulerLease.class)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+        // When
+        StepVerifier.create(leaseRepository.release("billing", "instance-1", today, now)).verifyComplete();
+        // Then
+        ArgumentCaptor<UpdateDefinition> captor = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate).updateFirst(any(Query.class), captor.capture(), eq(SchedulerLease.class));
+        assertThat(captor.getValue().getUpdateObject().get("$set", Document.class))
+                .containsEntry("completedDate", today)
+                .containsEntry("expiresAt", now);
+    }
+}
@@ -0,0 +1,361 @@
+package com.bank.appbank.service.impl;
+
+import com.bank.appbank.config.MongoTransactions;
+import com.bank.appbank.exceptions.CompensationFailedException;
+import com.bank.appbank.exceptions.ResourceNotFoundException;
+import com.bank.appbank.exceptions.UnsupportedMovementException;
+import com.bank.appbank.model.BankAccount;
+import com.bank.appbank.repository.BankAccountRepository;
+import com.bank.appbank.utils.Numbers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BalanceMutationServiceTest {
+
+    @Mock
+    private BankAccountRepository bankAccountRepository;
+    @Mock
+    private ReactiveMongoDatabaseFactory databaseFactory;
+
+    private BalanceMutationService balanceMutationService;
+    private final Map<String, Double> balances = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Double>> appliedPayments = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        balanceMutationService = new BalanceMutationService(bankAccountRepository,
+                new MongoTransactions(databaseFactory, false, 3));
+    }
+
+    /**
+     * Emulates the conditional findAndModify of the repository with an atomic update of a map entry. The
+     * tests built on it check how the service combines those updates, not that Mongo applies them
+     * atomically.
+     */
+    private void emulateConditionalUpdates() {
+        when(bankAccountRepository.addToBalance(anyString(), anyDouble())).thenAnswer(invocation -> {
+            String id = invocation.getArgument(0);
+            double amount = invocation.getArgument(1);
+            return Mono.fromCallable(() -> {
+                Double[] updated = new Double[1];
+                balances.computeIfPresent(id, (key, balance) -> {
+                    if (amount < 0 && balance < -amount) {
+                        return balance;
+                    }
+                    updated[0] = Numbers.round(balance + amount);
+                    return updated[0];
+                });
+                if (updated[0] == null) {
+                    return null;
+                }
+                BankAccount bankAccount = new BankAccount();
+                bankAccount.setId(id);
+                bankAccount.setBalance(updated[0]);
+                return bankAccount;
+            }).subscribeOn(Schedulers.parallel());
+        });
+    }
+
+    @Test
+    @DisplayName("Keep the emulated balances exact under thousands of parallel payments from one hot account")
+    void parallelPaymentsOnHotAccount() {
+        emulateConditionalUpdates();
+        balances.put("HOT", 1000.0);
+        for (int i = 0; i < 10; i++) {
+            balances.put("DESTIN" + i, 0.0);
+        }
+        AtomicInteger rejected = new AtomicInteger();
+        int payments = 5000;
+        // When
+        long start = System.nanoTime();
+        Mono<Long> approved = Flux.range(0, payments)
+                .flatMap(i -> balanceMutationService.transfer("HOT", "DESTIN" + (i % 10), 0.5)
+                        .thenReturn(1)
+                        .onErrorResume(UnsupportedMovementException.class, error -> {
+                            rejected.incrementAndGet();
+                            return Mono.empty();
+                        }), 256)
+                .count();
+        // Then
+        StepVerifier.create(approved)
+                .expectNext(2000L)
+                .verifyComplete();
+        long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+        assertThat(rejected.get()).isEqualTo(3000);
+        assertThat(balances.get("HOT")).isEqualTo(0.0);
+        double credited = balances.entrySet().stream()
+                .filter(entry -> entry.getKey().startsWith("DESTIN"))
+                .mapToDouble(Map.Entry::getValue)
+                .sum();
+        assertThat(credited).isEqualTo(1000.0);
+        assertThat(balances.get("DESTIN0")).isEqualTo(100.0);
+        assertThat(elapsedMillis).isLessThan(Duration.ofSeconds(30).toMillis());
+    }
+
+    @Test
+    @DisplayName("Give the amount back to the origin when the destination does not exist")
+    void compensateFailedCredit() {
+        emulateConditionalUpdates();
+        balances.put("ORIGIN", 50.0);
+        // When
+        Mono<Void> transfer = balanceMutationService.transfer("ORIGIN", "MISSING", 20.0);
+        // Then
+        StepVerifier.create(transfer)
+                .expectError(ResourceNotFoundException.class)
+                .verify();
+        assertThat(balances.get("ORIGIN")).isEqualTo(50.0);
+        verify(bankAccountRepository, times(2)).addToBalance(eq("ORIGIN"), anyDouble());
+    }
+
+    @Test
+    @DisplayName("Fail with the compensation error when the amount can not be given back")
+    void surfaceFailedCompensation() {
+        when(bankAccountRepository.addToBalance("ORIGIN", -20.0)).thenReturn(Mono.just(new BankAccount()));
+        when(bankAccountRepository.addToBalance("MISSING", 20.0)).thenReturn(Mono.empty());
+        when(bankAccountRepository.addToBalance("ORIGIN", 20.0))
+                .thenReturn(Mono.error(new IllegalStateException("Connection reset")));
+        // When
+        Mono<Void> transfer = balanceMutationService.transfer("ORIGIN", "MISSING", 20.0);
+        // Then
+        StepVerifier.create(transfer)
+                .expectErrorSatisfies(error -> {
+                    assertThat(error).isInstanceOf(CompensationFailedException.class)
+                            .hasMessage("Could not give back 20.0 to ORIGIN")
+                            .hasCauseInstanceOf(IllegalStateException.class);
+                    assertThat(error.getSuppressed()).hasSize(1)
+                            .hasOnlyElementsOfType(ResourceNotFoundException.class);
+                })
+                .verify();
+    }
+
+    @Test
+    @DisplayName("Only debit the origin when the destination is outside the bank")
+    void debitWithoutDestination() {
+        when(bankAccountRepository.addToBalance("ORIGIN", -20.0)).thenReturn(Mono.just(new BankAccount()));
+        // When
+        Mono<Void> transfer = balanceMutationService.transfer("ORIGIN", null, 20.0);
+        // Then
+        StepVerifier.create(transfer).verifyComplete();
+        verify(bankAccountRepository, only()).addToBalance("ORIGIN", -20.0);
+    }
+
+    /**
+     * Emulates the per payment bulk write of the repository: an account takes the net of its payments only
+     * when it recorded none of them and its balance covers a net debit.
+     */
+    private void emulatePaymentUpdates() {
+        when(bankAccountRepository.addToBalances(anyMap())).thenAnswer(invocation -> {
+            Map<String, Map<String, Double>> paymentsByAccount = invocation.getArgument(0);
+            return Mono.fromCallable(() -> {
+                Set<String> unchanged = new HashSet<>();
+                paymentsByAccount.forEach((id, payments) -> {
+                    Map<String, Double> recorded = appliedPayments.computeIfAbsent(id, key -> new HashMap<>());
+                    double amount = Numbers.round(payments.values().stream().mapToDouble(Double::doubleValue).sum());
+                    if (!Collections.disjoint(recorded.keySet(), payments.keySet())
+                            || balances.get(id) + amount < 0) {
+                        unchanged.add(id);
+                    } else {
+                        balances.put(id, Numbers.round(balances.get(id) + amount));
+                        recorded.putAll(payments);
+                    }
+                });
+                return unchanged;
+            });
+        });
+        lenient().when(bankAccountRepository.revertPayment(anyString(), anyString())).thenAnswer(invocation -> {
+            String id = invocation.getArgument(0);
+            Double amount = appliedPayments.getOrDefault(id, new HashMap<>()).remove(invocation.getArgument(1));
+            if (amount != null) {
+                balances.put(id, Numbers.round(balances.get(id) - amount));
+            }
+            return Mono.just(amount != null);
+        });
+    }
+
+    private BankAccount bankAccount(String id, double balance, BankAccount.AppliedPayment... appliedPayments) {
+        BankAccount bankAccount = new BankAccount();
+        bankAccount.setId(id);
+        bankAccount.setBalance(balance);
+        bankAccount.setAppliedPayments(appliedPayments.length == 0 ? null : List.of(appliedPayments));
+        return bankAccount;
+    }
+
+    @Test
+    @DisplayName("Net the transfers of a batch per account and reject the ones the balance does not cover")
+    void transferAllNetted() {
+        when(bankAccountRepository.findByIdIn(List.of("ORIGIN", "DESTIN")))
+                .thenReturn(Flux.just(bankAccount("ORIGIN", 30.0), bankAccount("DESTIN", 0.0)));
+        when(bankAccountRepository.addToBalances(Map.of(
+                "ORIGIN", Map.of("P1", -20.0, "P3", -5.5),
+                "DESTIN", Map.of("P1", 20.0, "P3", 5.5))))
+                .thenReturn(Mono.just(Set.of()));
+        List<BalanceMutationService.Transfer> transfers = List.of(
+                new BalanceMutationService.Transfer("P1", "ORIGIN", "DESTIN", 20.0),
+                new BalanceMutationService.Transfer("P2", "ORIGIN", "DESTIN", 15.0),
+                new BalanceMutationService.Transfer("P3", "ORIGIN", "DESTIN", 5.5));
+        // When
+        Mono<List<BalanceMutationService.Transfer>> result = balanceMutationService.transferAll(transfers);
+        // Then
+        StepVerifier.create(result)
+                .assertNext(applied -> assertThat(applied)
+                        .extracting(transfer -> transfer.getError() == null)
+                        .containsExactly(true, false, true))
+                .verifyComplete();
+        assertThat(transfers.get(1).getError()).isInstanceOf(UnsupportedMovementException.class);
+        verify(bankAccountRepository, never()).addToBalance(anyString(), anyDouble());
+    }
+
+    @Test
+    @DisplayName("Apply one by one the transfers of an account the bulk write left unchanged")
+    void transferAllReappliesUnchanged() {
+        emulatePaymentUpdates();
+        // Another payment took most of the origin after it was read, so its net debit does not fit
+        balances.put("ORIGIN", 25.0);
+        balances.put("DESTIN", 0.0);
+        when(bankAccountRepository.findByIdIn(List.of("ORIGIN", "DESTIN")))
+                .thenReturn(Flux.just(bankAccount("ORIGIN", 50.0), bankAccount("DESTIN", 0.0)));
+        List<BalanceMutationService.Transfer> transfers = List.of(
+                new BalanceMutationService.Transfer("P1", "ORIGIN", "DESTIN", 20.0),
+                new BalanceMutationService.Transfer("P2", "ORIGIN", "DESTIN", 20.0));
+        // When
+        Mono<List<BalanceMutationService.Transfer>> result = balanceMutationService.transferAll(transfers);
+        // Then
+        StepVerifier.create(result)
+                .assertNext(applied -> assertThat(applied.get(1).getError())
+                        .isInstanceOf(UnsupportedMovementException.class))
+                .verifyComplete();
+        assertThat(transfers.get(0).getError()).isNull();
+        assertThat(balances).containsEntry("ORIGIN", 5.0).containsEntry("DESTIN", 20.0);
+        assertThat(appliedPayments.get("ORIGIN")).containsOnlyKeys("P1");
+        assertThat(appliedPayments.get("DESTIN")).containsOnlyKeys("P1");
+        verify(bankAccountRepository, never()).addToBalance(anyString(), anyDouble());
+    }
+
+    @Test
+    @DisplayName("Reject every transfer of a batch whose accounts can not be read")
+    void transferAllRejectsUnread() {
+        when(bankAccountRepository.findByIdIn(List.of("ORIGIN", "DESTIN")))
+                .thenReturn(Flux.error(new IllegalStateException("Connection reset")));
+        List<BalanceMutationService.Transfer> transfers = List.of(
+                new BalanceMutationService.Transfer("P1", "ORIGIN", "DESTIN", 20.0),
+                new BalanceMutationService.Transfer("P2", "ORIGIN", "DESTIN", 5.0));
+        // When
+        Mono<List<BalanceMutationService.Transfer>> result = balanceMutationService.transferAll(transfers);
+        // Then
+        StepVerifier.create(result)
+                .assertNext(rejected -> assertThat(rejected)
+                        .extracting(BalanceMutationService.Transfer::getError)
+                        .hasOnlyElementsOfType(IllegalStateException.class))
+                .verifyComplete();
+        verify(bankAccountRepository, never()).addToBalances(anyMap());
+    }
+
+    @Test
+    @DisplayName("Propagate the error when the outcome of the bulk write is unknown")
+    void transferAllPropagatesUnknownOutcome() {
+        when(bankAccountRepository.findByIdIn(List.of("ORIGIN", "DESTIN")))
+                .thenReturn(Flux.just(bankAccount("ORIGIN", 30.0), bankAccount("DESTIN", 0.0)));
+        when(bankAccountRepository.addToBalances(Map.of("ORIGIN", Map.of("P1", -20.0), "DESTIN", Map.of("P1", 20.0))))
+                .thenReturn(Mono.error(new IllegalStateException("Connection reset")));
+        List<BalanceMutationService.Transfer> transfers = List.of(
+                new BalanceMutationService.Transfer("P1", "ORIGIN", "DESTIN", 20.0));
+        // When
+        Mono<List<BalanceMutationService.Transfer>> result = balanceMutationService.transferAll(transfers);
+        // Then
+        StepVerifier.create(result).expectError(IllegalStateException.class).verify();
+        assertThat(transfers.get(0).getError()).isNull();
+        verify(bankAccountRepository, never()).addToBalance(anyString(), anyDouble());
+    }
+
+    @Test
+    @DisplayName("Apply only the sides a replayed batch did not reach")
+    void transferAllReplayed() {
+        // The origin already took the debits of the batch, the destination did not get the credits
+        when(bankAccountRepository.findByIdIn(List.of("ORIGIN", "DESTIN"))).thenReturn(Flux.just(
+                bankAccount("ORIGIN", 4.5, new BankAccount.AppliedPayment("OLDER", 10.0),
+                        new BankAccount.AppliedPayment("P1", -20.0), new BankAccount.AppliedPayment("P3", -5.5)),
+                bankAccount("DESTIN", 0.0)));
+        when(bankAccountRepository.addToBalances(Map.of("DESTIN", Map.of("P1", 20.0, "P3", 5.5))))
+                .thenReturn(Mono.just(Set.of()));
+        List<BalanceMutationService.Transfer> transfers = List.of(
+                new BalanceMutationService.Transfer("P1", "ORIGIN", "DESTIN", 20.0),
+                new BalanceMutationService.Transfer("P2", "ORIGIN", "DESTIN", 15.0),
+                new BalanceMutationService.Transfer("P3", "ORIGIN", "DESTIN", 5.5));
+        // When
+        Mono<List<BalanceMutationService.Transfer>> result = balanceMutationService.transferAll(transfers);
+        // Then
+        StepVerifier.create(result)
+                .assertNext(applied -> assertThat(applied)
+                        .extracting(transfer -> transfer.getError() == null)
+                        .containsExactly(true, false, true))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Skip the payments already applied when they come again with other ones")
+    void transferAllRedeliveredWithOthers() {
+        when(bankAccountRepository.findByIdIn(List.of("ORIGIN", "DESTIN"))).thenReturn(Flux.just(
+                bankAccount("ORIGIN", 30.0, new BankAccount.AppliedPayment("P1", -20.0)),
+                bankAccount("DESTIN", 20.0, new BankAccount.AppliedPayment("P1", 20.0))));
+        when(bankAccountRepository.addToBalances(Map.of("ORIGIN", Map.of("P4", -10.0), "DESTIN", Map.of("P4", 10.0))))
+                .thenReturn(Mono.just(Set.of()));
+        List<BalanceMutationService.Transfer> transfers = List.of(
+                new BalanceMutationService.Transfer("P1", "ORIGIN", "DESTIN", 20.0),
+                new BalanceMutationService.Transfer("P4", "ORIGIN", "DESTIN", 10.0),
+                new BalanceMutationService.Transfer("P4", "ORIGIN", "DESTIN", 10.0));
+        // When
+        Mono<List<BalanceMutationService.Transfer>> result = balanceMutationService.transferAll(transfers);
+        // Then
+        StepVerifier.create(result)
+                .assertNext(applied -> assertThat(applied)
+                        .extracting(BalanceMutationService.Transfer::getError)
+                        .containsOnlyNulls())
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Revert the side a rejected transfer got in an earlier call")
+    void transferAllRevertsRejected() {
+        emulatePaymentUpdates();
+        balances.put("ORIGIN", 5.0);
+        balances.put("DESTIN", 20.0);
+        appliedPayments.put("DESTIN", new HashMap<>(Map.of("P1", 20.0)));
+        when(bankAccountRepository.findByIdIn(List.of("ORIGIN", "DESTIN"))).thenReturn(Flux.just(
+                bankAccount("ORIGIN", 5.0),
+                bankAccount("DESTIN", 20.0, new BankAccount.AppliedPayment("P1", 20.0))));
+        List<BalanceMutationService.Transfer> transfers = List.of(
+                new BalanceMutationService.Transfer("P1", "ORIGIN", "DESTIN", 20.0));
+        // When
+        Mono<List<BalanceMutationService.Transfer>> result = balanceMutationService.transferAll(transfers);
+        // Then
+        StepVerifier.create(result)
+                .assertNext(applied -> assertThat(applied.get(0).getError())
+                        .isInstanceOf(UnsupportedMovementException.class))
+                .verifyComplete();
+        assertThat(balances).containsEntry("ORIGIN", 5.0).containsEntry("DESTIN", 0.0);
+        assertThat(appliedPayments.get("DESTIN")).isEmpty();
+    }
+}
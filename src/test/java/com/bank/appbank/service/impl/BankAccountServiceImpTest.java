@@ -1,6 +1,7 @@
 package com.bank.appbank.service.impl;
 
 import com.bank.appbank.client.MovementServiceClient;
+import com.bank.appbank.config.MongoTransactions;
 import com.bank.appbank.dto.PaymentDto;
 import com.bank.appbank.event.producer.BankAccountProducer;
 import com.bank.appbank.exceptions.ClientNotFoundException;
@@ -12,7 +13,7 @@ import com.bank.appbank.model.*;
 import com.bank.appbank.repository.BankAccountRepository;
 import com.bank.appbank.repository.CreditCardRepository;
 import com.bank.appbank.repository.DebitCardRepository;
-import com.bank.appbank.service.CreditService;
+import com.bank.appbank.service.ClientStandingService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -22,15 +23,14 @@ import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.time.Clock;
-import java.time.Instant;
 import java.time.LocalDate;
-import java.time.ZoneId;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -53,11 +53,13 @@ class BankAccountServiceImpTest {
     @Mock
     private ClientServiceImpl clientService;
     @Mock
-    private CreditService creditService;
+    private ClientStandingService clientStandingService;
     @Mock
     private MovementServiceClient movementService;
     @Mock
     private BankAccountProducer bankAccountProducer;
+    @Spy
+    private MongoTransactions mongoTransactions = new MongoTransactions(null, false, 3);
     @Mock
     private DebitCardRepository debitCardRepository;
     @Mock
@@ -173,8 +175,7 @@ class BankAccountServiceImpTest {
         String idBankAccount = "IDbank002";
         String idClient = "clientN002";
         // Given
-        when(creditService.allCreditsByIdClientWithAllPaymentsSortedByDatePayment(idClient)).thenReturn(Flux.empty());
-        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
+        when(clientStandingService.validateIfClientHasOverDueCredit(idClient)).thenReturn(Mono.just(true));
         when(clientService.findById(idClient)).thenReturn(Mono.just(businessClient));
         when(clientService.findAllClientsById(List.of("idholder001"))).thenReturn(Flux.just(holderAccount));
         when(bankAccountRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
@@ -194,8 +195,7 @@ class BankAccountServiceImpTest {
     void createBusinessClientHolderNotExistTest() {
         String idClient = "clientN002";
         // Given
-        when(creditService.allCreditsByIdClientWithAllPaymentsSortedByDatePayment(idClient)).thenReturn(Flux.empty());
-        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
+        when(clientStandingService.validateIfClientHasOverDueCredit(idClient)).thenReturn(Mono.just(true));
         when(clientService.findById(idClient)).thenReturn(Mono.just(businessClient));
         when(clientService.findAllClientsById(List.of("idholder001"))).thenReturn(Flux.empty());
         when(bankAccountRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
@@ -244,8 +244,7 @@ class BankAccountServiceImpTest {
         existingAccount.setId(idBankAccount);
 
         // Given
-        when(creditService.allCreditsByIdClientWithAllPaymentsSortedByDatePayment(idClient)).thenReturn(Flux.empty());
-        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
+        when(clientStandingService.validateIfClientHasOverDueCredit(idClient)).thenReturn(Mono.just(true));
         when(clientService.findById(idClient)).thenReturn(Mono.just(businessClient));
         when(clientService.findAllClientsById(List.of("idholder001"))).thenReturn(Flux.just(holderAccount));
         when(bankAccountRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(existingAccount));
@@ -266,8 +265,7 @@ class BankAccountServiceImpTest {
         String idClient = "clientN002";
         bankAccount2.setAccountHolders(Collections.emptyList());
         // Given
-        when(creditService.allCreditsByIdClientWithAllPaymentsSortedByDatePayment(idClient)).thenReturn(Flux.empty());
-        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
+        when(clientStandingService.validateIfClientHasOverDueCredit(idClient)).thenReturn(Mono.just(true));
         when(clientService.findById(idClient)).thenReturn(Mono.just(businessClient));
         when(bankAccountRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
         // When
@@ -285,8 +283,7 @@ class BankAccountServiceImpTest {
         String idClient = "clientN002";
         bankAccount1.setIdClient(idClient);
         // Given
-        when(creditService.allCreditsByIdClientWithAllPaymentsSortedByDatePayment(idClient)).thenReturn(Flux.empty());
-        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
+        when(clientStandingService.validateIfClientHasOverDueCredit(idClient)).thenReturn(Mono.just(true));
         when(clientService.findById(idClient)).thenReturn(Mono.just(businessClient));
         when(bankAccountRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
         // When
@@ -317,8 +314,7 @@ class BankAccountServiceImpTest {
         bankAccount3.setId("IDbank001");
 
         // Given
-        when(creditService.allCreditsByIdClientWithAllPaymentsSortedByDatePayment(idClient)).thenReturn(Flux.empty());
-        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
+        when(clientStandingService.validateIfClientHasOverDueCredit(idClient)).thenReturn(Mono.just(true));
         when(clientService.findById(idClient)).thenReturn(Mono.just(personalClient));
         when(bankAccountRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(bankAccount1));
         // When
@@ -358,8 +354,7 @@ class BankAccountServiceImpTest {
         bankAccount3.setId("IDbank001");
 
         // Given
-        when(creditService.allCreditsByIdClientWithAllPaymentsSortedByDatePayment(idClient)).thenReturn(Flux.empty());
-        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
+        when(clientStandingService.validateIfClientHasOverDueCredit(idClient)).thenReturn(Mono.just(true));
         when(clientService.findById(idClient)).thenReturn(Mono.just(personalClient));
         when(bankAccountRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
         when(clientService.findAllClientsById(List.of("clientN001"))).thenReturn(Flux.just(personalClient));
@@ -393,8 +388,7 @@ class BankAccountServiceImpTest {
 
         bankAccount2.setIdClient(idClient);
         // Given
-        when(creditService.allCreditsByIdClientWithAllPaymentsSortedByDatePayment(idClient)).thenReturn(Flux.empty());
-        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
+        when(clientStandingService.validateIfClientHasOverDueCredit(idClient)).thenReturn(Mono.just(true));
         when(clientService.findById(idClient)).thenReturn(Mono.just(personalClient));
         when(bankAccountRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(bankAccount2));
         // When
@@ -422,7 +416,7 @@ class BankAccountServiceImpTest {
         when(bankAccountRepository.save(any(BankAccount.class))).thenReturn(Mono.just(bankAccount1));
         when(debitCardRepository.findAllByIdPrincipalAccount(bankAccount1.getId()))
                 .thenReturn(Flux.just(debitCard));
-        doNothing().when(bankAccountProducer).publishBalanceUpdate(any(), anyDouble());
+        when(bankAccountProducer.publishBalanceUpdate(any(), anyDouble())).thenReturn(Mono.empty());
         // When
         Mono<BankAccount> bankAccountMono = bankAccountService.update(idBankAccount, bankAccount1);
         // Then
@@ -557,8 +551,7 @@ class BankAccountServiceImpTest {
         personalClient.setTypeClient(PERSONAL_VIP_CLIENT);
         bankAccount1.setIdClient(personalClient.getId());
         // Given
-        when(creditService.allCreditsByIdClientWithAllPaymentsSortedByDatePayment(idClient)).thenReturn(Flux.empty());
-        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
+        when(clientStandingService.validateIfClientHasOverDueCredit(idClient)).thenReturn(Mono.just(true));
         when(clientService.findById(personalClient.getId())).thenReturn(Mono.just(personalClient));
         when(creditCardRepository.findAllByIdClient(personalClient.getId())).thenReturn(Flux.just(creditCard1));
         when(bankAccountRepository.findAllByIdClient(personalClient.getId()))
@@ -588,8 +581,7 @@ class BankAccountServiceImpTest {
         personalClient.setTypeClient(PERSONAL_VIP_CLIENT);
         bankAccount1.setIdClient(personalClient.getId());
         // Given
-        when(creditService.allCreditsByIdClientWithAllPaymentsSortedByDatePayment(idClient)).thenReturn(Flux.empty());
-        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
+        when(clientStandingService.validateIfClientHasOverDueCredit(idClient)).thenReturn(Mono.just(true));
         when(clientService.findById(personalClient.getId())).thenReturn(Mono.just(personalClient));
         when(creditCardRepository.findAllByIdClient(personalClient.getId())).thenReturn(Flux.empty());
         when(bankAccountRepository.findAllByIdClient(personalClient.getId()))
@@ -603,75 +595,14 @@ class BankAccountServiceImpTest {
     }
 
     @Test
-    @DisplayName("Create bank account with due date in credit card")
+    @DisplayName("Create bank account with a client with overdue debt")
     void createBankAccountWithDueDateTest() {
         String idClient = "clientN001";
-        ZoneId zone = ZoneId.of("UTC");
-        Instant instant = Instant.parse("2025-02-20T23:55:00Z");
-        Clock fixedClock = Clock.fixed(instant, zone);
-        CreditCard creditCard1 = new CreditCard();
-        creditCard1.setId("CREDIT_CARD001");
-        creditCard1.setIdClient("clientN001");
-        creditCard1.setLimitCredit(1000.0);
-        creditCard1.setAvailableBalance(500.0);
-        personalClient.setTypeClient(PERSONAL_VIP_CLIENT);
-        bankAccount1.setIdClient(personalClient.getId());
-        creditCard1.setTotalDebt(1000.0);
-        creditCard1.setDueDate(LocalDate.of(2025, 1, 5));
-        // Given
-        when(clock.instant()).thenReturn(fixedClock.instant());
-        when(clock.getZone()).thenReturn(fixedClock.getZone());
-        when(creditService.allCreditsByIdClientWithAllPaymentsSortedByDatePayment(idClient)).thenReturn(Flux.empty());
-        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(creditCard1));
-        when(clientService.findById(personalClient.getId())).thenReturn(Mono.just(personalClient));
-        when(bankAccountRepository.findAllByIdClient(personalClient.getId()))
-                .thenReturn(Flux.empty());
-
-        Mono<BankAccount> bankAccountMono = bankAccountService.create(bankAccount1);
-        // Then
-        StepVerifier.create(bankAccountMono)
-                .expectError(IneligibleClientException.class)
-                .verify();
-    }
-
-    @Test
-    @DisplayName("Create bank account with due date in credit")
-    void createBankAccountWithDueDateCreditTest() {
-        String idClient = "clientN001";
-        ZoneId zone = ZoneId.of("UTC");
-        Instant instant = Instant.parse("2025-02-20T23:55:00Z");
-        Clock fixedClock = Clock.fixed(instant, zone);
-        CreditCard creditCard1 = new CreditCard();
-        creditCard1.setId("CREDIT_CARD001");
-        creditCard1.setIdClient("clientN001");
-        creditCard1.setLimitCredit(1000.0);
-        creditCard1.setAvailableBalance(500.0);
         personalClient.setTypeClient(PERSONAL_VIP_CLIENT);
         bankAccount1.setIdClient(personalClient.getId());
-        creditCard1.setTotalDebt(1000.0);
-        creditCard1.setDueDate(LocalDate.of(2025, 1, 5));
-        payment1 = new PaymentDto();
-        payment1.setMonthCorresponding(12);
-        payment1.setYearCorresponding(2024);
-        payment1.setTypeCreditProduct(PaymentDto.TypeCreditProduct.CREDIT);
-
-        Credit credit1 = new Credit(
-                "clientN001",
-                500.0,
-                200.0,
-                0.15,
-                LocalDate.of(2024, 11, 5),
-                LocalDate.of(2024, 12, 2),
-                12,
-                0.0
-        );
-        credit1.setId("CREDIT001");
         // Given
-        when(clock.instant()).thenReturn(fixedClock.instant());
-        when(clock.getZone()).thenReturn(fixedClock.getZone());
-        when(creditService.allCreditsByIdClientWithAllPaymentsSortedByDatePayment(idClient))
-                .thenReturn(Flux.just(credit1));
-        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(creditCard1));
+        when(clientStandingService.validateIfClientHasOverDueCredit(idClient))
+                .thenReturn(Mono.error(new IneligibleClientException("The client has an overdue debt")));
         when(clientService.findById(personalClient.getId())).thenReturn(Mono.just(personalClient));
         when(bankAccountRepository.findAllByIdClient(personalClient.getId()))
                 .thenReturn(Flux.empty());
@@ -681,6 +612,7 @@ class BankAccountServiceImpTest {
         StepVerifier.create(bankAccountMono)
                 .expectError(IneligibleClientException.class)
                 .verify();
+        verify(bankAccountRepository, never()).save(any(BankAccount.class));
     }
 
     @Test
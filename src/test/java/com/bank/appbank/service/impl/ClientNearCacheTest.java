@@ -0,0 +1,146 @@
+package com.bank.appbank.service.impl;
+
+import com.bank.appbank.model.Client;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ClientNearCacheTest {
+
+    @Mock
+    private ReactiveStringRedisTemplate redisTemplate;
+
+    private ClientNearCache clientNearCache;
+    private final AtomicReference<Instant> now = new AtomicReference<>(Instant.parse("2025-02-20T10:00:00Z"));
+    private Client client;
+
+    @BeforeEach
+    void setUp() {
+        Clock clock = new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return now.get();
+            }
+        };
+        clientNearCache = new ClientNearCache(redisTemplate, clock);
+        ReflectionTestUtils.setField(clientNearCache, "maxEntries", 2);
+        ReflectionTestUtils.setField(clientNearCache, "ttlSeconds", 30L);
+        ReflectionTestUtils.setField(clientNearCache, "staleSeconds", 30L);
+        ReflectionTestUtils.setField(clientNearCache, "earlyRefreshBeta", 1.0);
+        ReflectionTestUtils.setField(clientNearCache, "invalidationChannel", "client-invalidations");
+        client = new Client();
+        client.setId("clientN001");
+    }
+
+    @Test
+    @DisplayName("Serve a client until its ttl expires")
+    void expireAfterTtl() {
+        clientNearCache.put("clientN001", client);
+        // When
+        Client beforeTtl = clientNearCache.get("clientN001");
+        now.set(now.get().plusSeconds(31));
+        Client afterTtl = clientNearCache.get("clientN001");
+        // Then
+        assertThat(beforeTtl).isSameAs(client);
+        assertThat(afterTtl).isNull();
+    }
+
+    @Test
+    @DisplayName("Serve a stale client asking for a reload until the stale window ends")
+    void staleWhileRevalidate() {
+        clientNearCache.put("clientN001", client, Duration.ofMillis(5));
+        // When
+        ClientNearCache.Lookup fresh = clientNearCache.lookup("clientN001");
+        now.set(now.get().plusSeconds(40));
+        ClientNearCache.Lookup stale = clientNearCache.lookup("clientN001");
+        now.set(now.get().plusSeconds(30));
+        ClientNearCache.Lookup expired = clientNearCache.lookup("clientN001");
+        // Then
+        assertThat(fresh.isRefresh()).isFalse();
+        assertThat(stale.getClient()).isSameAs(client);
+        assertThat(stale.isRefresh()).isTrue();
+        assertThat(expired).isNull();
+    }
+
+    @Test
+    @DisplayName("Reload a client early when its last load took longer than the time left")
+    void refreshEarly() {
+        clientNearCache.put("clientN001", client, Duration.ofSeconds(60));
+        now.set(now.get().plusSeconds(29));
+        // When
+        long refreshes = IntStream.range(0, 100)
+                .filter(i -> clientNearCache.lookup("clientN001").isRefresh())
+                .count();
+        // Then
+        assertThat(refreshes).isGreaterThan(90);
+    }
+
+    @Test
+    @DisplayName("Keep the cache bounded")
+    void boundEntries() {
+        // When
+        clientNearCache.put("clientN001", client);
+        clientNearCache.put("clientN002", client);
+        clientNearCache.put("clientN003", client);
+        // Then
+        assertThat(clientNearCache.get("clientN003")).isSameAs(client);
+        assertThat(clientNearCache.get("clientN001") == null || clientNearCache.get("clientN002") == null).isTrue();
+    }
+
+    @Test
+    @DisplayName("Drop the client locally and publish the invalidation")
+    void invalidate() {
+        when(redisTemplate.convertAndSend("client-invalidations", "clientN001")).thenReturn(Mono.just(1L));
+        clientNearCache.put("clientN001", client);
+        // When
+        StepVerifier.create(clientNearCache.invalidate("clientN001")).verifyComplete();
+        // Then
+        assertThat(clientNearCache.get("clientN001")).isNull();
+        verify(redisTemplate).convertAndSend("client-invalidations", "clientN001");
+    }
+
+    @Test
+    @DisplayName("Discard a client loaded before it was invalidated")
+    void discardLoadOlderThanInvalidation() {
+        when(redisTemplate.convertAndSend("client-invalidations", "clientN001")).thenReturn(Mono.just(1L));
+        long version = clientNearCache.version("clientN001");
+        // When
+        StepVerifier.create(clientNearCache.invalidate("clientN001")).verifyComplete();
+        boolean cached = clientNearCache.putIfCurrent("clientN001", client, Duration.ZERO, version);
+        // Then
+        assertThat(cached).isFalse();
+        assertThat(clientNearCache.get("clientN001")).isNull();
+        assertThat(clientNearCache.putIfCurrent("clientN001", client, Duration.ZERO,
+                clientNearCache.version("clientN001"))).isTrue();
+        assertThat(clientNearCache.get("clientN001")).isSameAs(client);
+    }
+}
@@ -6,20 +6,25 @@ import com.bank.appbank.factory.RepositoryFactory;
 import com.bank.appbank.model.BankAccount;
 import com.bank.appbank.model.Client;
 import com.bank.appbank.repository.ClientRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static org.mockito.Mockito.*;
 import static com.bank.appbank.model.Client.TypeClient.*;
@@ -36,6 +41,10 @@ class ClientServiceImplTest {
     private RepositoryFactory repositoryFactory;
     @Mock
     private ClientRedisService redisService;
+    @Mock
+    private ClientNearCache clientNearCache;
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
 
     private Client personalClientTest, clientBusinessTest;
 
@@ -80,13 +89,17 @@ class ClientServiceImplTest {
         // Given
         when(clientRepository.findById(idClient)).thenReturn(Mono.just(personalClientTest));
         when(clientRepository.save(personalClientTest)).thenReturn(Mono.just(personalClientTest));
-        when(redisService.delete(anyString())).thenReturn(Mono.empty());
+        when(redisService.save("client:" + idClient, personalClientTest, Duration.ofHours(1)))
+                .thenReturn(Mono.empty());
+        when(clientNearCache.invalidate(idClient)).thenReturn(Mono.empty());
         // When
         Mono<Client> clientMono = clientService.updateClient(idClient, clientUpd);
         // Then
         StepVerifier.create(clientMono)
                 .expectNextMatches(client -> client.getId().equals(idClient) && client.getFullName().equals("Lucas"))
                 .verifyComplete();
+        verify(redisService, never()).delete(anyString());
+        verify(clientNearCache).invalidate(idClient);
     }
 
     @Test
@@ -95,7 +108,11 @@ class ClientServiceImplTest {
         when(repositoryFactory.getRepository(any())).thenReturn(clientRepository);
         List<String> ids = List.of("clientN001");
         // Given
+        when(redisService.multiGet(List.of("client:clientN001"))).thenReturn(Mono.just(Arrays.asList((Client) null)));
         when(clientRepository.findAllById(ids)).thenReturn(Flux.just(personalClientTest));
+        when(clientNearCache.putIfCurrent("clientN001", personalClientTest, Duration.ZERO, 0L)).thenReturn(true);
+        when(redisService.saveAllIfAbsent(Map.of("client:clientN001", personalClientTest), Duration.ofHours(1)))
+                .thenReturn(Mono.empty());
         // When
         Flux<Client> clientFlux = clientService.findAllClientsById(ids);
         // Then
@@ -103,6 +120,25 @@ class ClientServiceImplTest {
                 .expectNextMatches(client -> client.getId().equals(ids.get(0)))
                 .verifyComplete();
         verify(clientRepository).findAllById(ids);
+        assertThat(meterRegistry.timer("client.bulk.lookup", "source", "db").count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Find all clients By ids loading from mongo only the redis misses")
+    void findAllClientsByIdWithRedisHits() {
+        List<String> ids = List.of("clientN003", "clientN001", "clientN003");
+        // Given
+        when(clientNearCache.get("clientN003")).thenReturn(clientBusinessTest);
+        when(redisService.multiGet(List.of("client:clientN001"))).thenReturn(Mono.just(List.of(personalClientTest)));
+        // When
+        Flux<Client> clientFlux = clientService.findAllClientsById(ids);
+        // Then
+        StepVerifier.create(clientFlux)
+                .expectNext(clientBusinessTest, personalClientTest)
+                .verifyComplete();
+        verifyNoInteractions(clientRepository);
+        verify(clientNearCache).putIfCurrent("clientN001", personalClientTest, Duration.ZERO, 0L);
+        assertThat(meterRegistry.timer("client.bulk.lookup", "source", "cache").count()).isEqualTo(1);
     }
 
     @Test
@@ -237,4 +273,109 @@ class ClientServiceImplTest {
                 })
                 .verifyComplete();
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Find a client in the near cache without going to redis")
+    void findByIdNearCacheHitTest() {
+        // Given
+        when(clientNearCache.lookup("clientN001")).thenReturn(new ClientNearCache.Lookup(personalClientTest, false));
+        // When
+        Mono<Client> clientMono = clientService.findById("clientN001");
+        // Then
+        StepVerifier.create(clientMono)
+                .expectNext(personalClientTest)
+                .verifyComplete();
+        verifyNoInteractions(redisService, clientRepository);
+    }
+
+    @Test
+    @DisplayName("Find a client in redis without writing it back")
+    void findByIdRedisHitTest() {
+        // Given
+        when(redisService.get("client:clientN001")).thenReturn(Mono.just(personalClientTest));
+        // When
+        Mono<Client> clientMono = clientService.findById("clientN001");
+        // Then
+        StepVerifier.create(clientMono)
+                .expectNext(personalClientTest)
+                .verifyComplete();
+        verify(redisService, never()).saveIfAbsent(anyString(), any(Client.class), any(Duration.class));
+        verify(clientNearCache).putIfCurrent(eq("clientN001"), eq(personalClientTest), any(Duration.class), eq(0L));
+    }
+
+    @Test
+    @DisplayName("Load a client missing from the caches and store it in redis")
+    void findByIdCacheMissTest() {
+        when(repositoryFactory.getRepository(any())).thenReturn(clientRepository);
+        // Given
+        when(redisService.get("client:clientN001")).thenReturn(Mono.empty());
+        when(clientRepository.findById("clientN001")).thenReturn(Mono.just(personalClientTest));
+        when(clientNearCache.isCurrent("clientN001", 0L)).thenReturn(true);
+        when(redisService.saveIfAbsent("client:clientN001", personalClientTest, Duration.ofHours(1)))
+                .thenReturn(Mono.empty());
+        // When
+        Mono<Client> clientMono = clientService.findById("clientN001");
+        // Then
+        StepVerifier.create(clientMono)
+                .expectNext(personalClientTest)
+                .verifyComplete();
+        verify(clientNearCache).putIfCurrent(eq("clientN001"), eq(personalClientTest), any(Duration.class), eq(0L));
+    }
+
+    @Test
+    @DisplayName("Return a client updated while it loaded without caching the old copy")
+    void findByIdUpdatedWhileLoadingTest() {
+        when(repositoryFactory.getRepository(any())).thenReturn(clientRepository);
+        // Given
+        when(clientNearCache.version("clientN001")).thenReturn(7L);
+        when(redisService.get("client:clientN001")).thenReturn(Mono.empty());
+        when(clientRepository.findById("clientN001")).thenReturn(Mono.just(personalClientTest));
+        when(clientNearCache.isCurrent("clientN001", 7L)).thenReturn(false);
+        // When
+        Mono<Client> clientMono = clientService.findById("clientN001");
+        // Then
+        StepVerifier.create(clientMono)
+                .expectNext(personalClientTest)
+                .verifyComplete();
+        verify(redisService, never()).saveIfAbsent(anyString(), any(Client.class), any(Duration.class));
+        verify(clientNearCache).putIfCurrent(eq("clientN001"), eq(personalClientTest), any(Duration.class), eq(7L));
+    }
+
+    @Test
+    @DisplayName("Share one load between concurrent lookups of the same client")
+    void findByIdCollapseConcurrentLoadsTest() {
+        // Given
+        when(redisService.get("client:clientN001"))
+                .thenReturn(Mono.delay(Duration.ofMillis(50)).thenReturn(personalClientTest));
+        // When
+        Mono<List<Client>> clients = Flux.merge(clientService.findById("clientN001"),
+                        clientService.findById("clientN001"),
+                        clientService.findById("clientN001"))
+                .collectList();
+        // Then
+        StepVerifier.create(clients)
+                .assertNext(found -> assertThat(found).hasSize(3).containsOnly(personalClientTest))
+                .verifyComplete();
+        verify(redisService, times(1)).get("client:clientN001");
+        assertThat(meterRegistry.counter("client.cache.loads", "result", "collapsed").count()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Serve a stale client at once and reload it in the background")
+    void findByIdStaleWhileRevalidateTest() {
+        Client updatedClient = new Client();
+        updatedClient.setId("clientN001");
+        // Given
+        when(clientNearCache.lookup("clientN001")).thenReturn(new ClientNearCache.Lookup(personalClientTest, true));
+        when(redisService.get("client:clientN001")).thenReturn(Mono.just(updatedClient));
+        // When
+        Mono<Client> clientMono = clientService.findById("clientN001");
+        // Then
+        StepVerifier.create(clientMono)
+                .expectNext(personalClientTest)
+                .verifyComplete();
+        verify(clientNearCache).putIfCurrent(eq("clientN001"), eq(updatedClient), any(Duration.class), eq(0L));
+        assertThat(meterRegistry.counter("client.cache.loads", "result", "background_refresh").count())
+                .isEqualTo(1);
+    }
+}
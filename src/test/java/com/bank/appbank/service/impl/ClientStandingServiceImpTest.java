@@ -0,0 +1,235 @@
+package com.bank.appbank.service.impl;
+
+import com.bank.appbank.client.PaymentServiceClient;
+import com.bank.appbank.exceptions.IneligibleClientException;
+import com.bank.appbank.model.ClientStanding;
+import com.bank.appbank.model.Credit;
+import com.bank.appbank.model.CreditCard;
+import com.bank.appbank.repository.ClientStandingRepository;
+import com.bank.appbank.repository.CreditCardRepository;
+import com.bank.appbank.repository.CreditRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ClientStandingServiceImpTest {
+
+    @Mock
+    private ClientStandingRepository clientStandingRepository;
+    @Mock
+    private CreditCardRepository creditCardRepository;
+    @Mock
+    private CreditRepository creditRepository;
+    @Mock
+    private PaymentServiceClient paymentServiceClient;
+
+    private ClientStandingServiceImp clientStandingService;
+    private final String idClient = "clientN001";
+    private CreditCard creditCard1;
+    private Credit credit1;
+
+    @BeforeEach
+    void setUp() {
+        Clock clock = Clock.fixed(Instant.parse("2025-02-20T23:55:00Z"), ZoneId.of("UTC"));
+        clientStandingService = new ClientStandingServiceImp(clientStandingRepository, creditCardRepository,
+                creditRepository, paymentServiceClient, clock, 360);
+
+        creditCard1 = new CreditCard();
+        creditCard1.setId("CREDIT_CARD001");
+        creditCard1.setIdClient(idClient);
+        creditCard1.setTotalDebt(1000.0);
+        creditCard1.setDueDate(LocalDate.of(2025, 3, 5));
+
+        credit1 = new Credit(idClient, 500.0, 200.0, 0.15,
+                LocalDate.of(2024, 11, 5), LocalDate.of(2024, 12, 25), 12, 0.0);
+        credit1.setId("CREDIT001");
+    }
+
+    @Test
+    @DisplayName("Use the stored standing while it is current")
+    void useCurrentStanding() {
+        ClientStanding standing = ClientStanding.builder()
+                .id(idClient)
+                .hasOverdueCard(false)
+                .hasOverdueCredit(false)
+                .nextDueDate(LocalDate.of(2025, 2, 25))
+                .computedAt(LocalDate.of(2025, 2, 20))
+                .expiresAt(Instant.parse("2025-02-21T01:00:00Z"))
+                .build();
+        // Given
+        when(clientStandingRepository.findById(idClient)).thenReturn(Mono.just(standing));
+        // When
+        Mono<Boolean> result = clientStandingService.validateIfClientHasOverDueCredit(idClient);
+        // Then
+        StepVerifier.create(result).expectNext(true).verifyComplete();
+        verifyNoInteractions(creditCardRepository, creditRepository, paymentServiceClient);
+    }
+
+    @Test
+    @DisplayName("Recompute a standing whose next due date has passed and reject the overdue card")
+    void recomputeStaleStandingWithOverdueCard() {
+        ClientStanding standing = ClientStanding.builder()
+                .id(idClient)
+                .hasOverdueCard(false)
+                .hasOverdueCredit(false)
+                .nextDueDate(LocalDate.of(2025, 2, 5))
+                .computedAt(LocalDate.of(2025, 2, 1))
+                .build();
+        creditCard1.setDueDate(LocalDate.of(2025, 2, 5));
+        // Given
+        when(clientStandingRepository.findById(idClient)).thenReturn(Mono.just(standing));
+        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(creditCard1));
+        when(creditRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
+        when(clientStandingRepository.save(any(ClientStanding.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        // When
+        Mono<Boolean> result = clientStandingService.validateIfClientHasOverDueCredit(idClient);
+        // Then
+        StepVerifier.create(result)
+                .expectError(IneligibleClientException.class)
+                .verify();
+        verify(clientStandingRepository).save(argThat(saved -> saved.getHasOverdueCard()
+                && LocalDate.of(2025, 2, 20).equals(saved.getComputedAt())));
+    }
+
+    @Test
+    @DisplayName("Reject a client whose credit has no payment for a past due date of the month")
+    void rejectOverdueCredit() {
+        // Given
+        when(clientStandingRepository.findById(idClient)).thenReturn(Mono.empty());
+        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
+        when(creditRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(credit1));
+        when(paymentServiceClient.findCreditsPaidInMonth(List.of("CREDIT001"), 2, 2025))
+                .thenReturn(Mono.just(Set.of()));
+        when(clientStandingRepository.save(any(ClientStanding.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        credit1.setFirstDatePay(LocalDate.of(2024, 12, 5));
+        // When
+        Mono<Boolean> result = clientStandingService.validateIfClientHasOverDueCredit(idClient);
+        // Then
+        StepVerifier.create(result)
+                .expectError(IneligibleClientException.class)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("Store the nearest upcoming due date of a client without overdue debt")
+    void refreshWithNextDueDate() {
+        // Given
+        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(creditCard1));
+        when(creditRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(credit1));
+        when(paymentServiceClient.findCreditsPaidInMonth(List.of("CREDIT001"), 2, 2025))
+                .thenReturn(Mono.just(Set.of("CREDIT001")));
+        when(clientStandingRepository.save(any(ClientStanding.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        // When
+        Mono<ClientStanding> result = clientStandingService.refresh(idClient);
+        // Then
+        StepVerifier.create(result)
+                .assertNext(standing -> {
+                    assertThat(standing.hasOverdueDebt()).isFalse();
+                    assertThat(standing.getNextDueDate()).isEqualTo(LocalDate.of(2025, 3, 5));
+                    assertThat(standing.getComputedAt()).isEqualTo(LocalDate.of(2025, 2, 20));
+                    assertThat(standing.getExpiresAt()).isEqualTo(Instant.parse("2025-02-21T05:55:00Z"));
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Accept the client when its standing can not be computed")
+    void acceptWhenStandingFails() {
+        // Given
+        when(clientStandingRepository.findById(idClient)).thenReturn(Mono.error(new RuntimeException("down")));
+        // When
+        Mono<Boolean> result = clientStandingService.validateIfClientHasOverDueCredit(idClient);
+        // Then
+        StepVerifier.create(result).expectNext(true).verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Recompute a standing older than its ttl even before its next due date")
+    void recomputeExpiredStanding() {
+        ClientStanding standing = ClientStanding.builder()
+                .id(idClient)
+                .hasOverdueCard(false)
+                .hasOverdueCredit(false)
+                .nextDueDate(LocalDate.of(2025, 2, 25))
+                .computedAt(LocalDate.of(2025, 2, 20))
+                .expiresAt(Instant.parse("2025-02-20T23:00:00Z"))
+                .build();
+        creditCard1.setDueDate(LocalDate.of(2025, 2, 5));
+        // Given
+        when(clientStandingRepository.findById(idClient)).thenReturn(Mono.just(standing));
+        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(creditCard1));
+        when(creditRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
+        when(clientStandingRepository.save(any(ClientStanding.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        // When
+        Mono<Boolean> result = clientStandingService.validateIfClientHasOverDueCredit(idClient);
+        // Then
+        StepVerifier.create(result)
+                .expectError(IneligibleClientException.class)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("Move the due day of a credit to the end of a shorter month")
+    void clampDueDayToMonth() {
+        credit1.setFirstDatePay(LocalDate.of(2024, 12, 31));
+        // Given
+        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
+        when(creditRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(credit1));
+        when(paymentServiceClient.findCreditsPaidInMonth(List.of("CREDIT001"), 2, 2025))
+                .thenReturn(Mono.just(Set.of()));
+        when(clientStandingRepository.save(any(ClientStanding.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        // When
+        Mono<ClientStanding> result = clientStandingService.refresh(idClient);
+        // Then
+        StepVerifier.create(result)
+                .assertNext(standing -> {
+                    assertThat(standing.hasOverdueDebt()).isFalse();
+                    assertThat(standing.getNextDueDate()).isEqualTo(LocalDate.of(2025, 2, 28));
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Use the first payment as due date while it is after the month")
+    void dueOnFirstPaymentInLaterMonth() {
+        credit1.setFirstDatePay(LocalDate.of(2025, 4, 10));
+        // Given
+        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
+        when(creditRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(credit1));
+        when(paymentServiceClient.findCreditsPaidInMonth(List.of("CREDIT001"), 2, 2025))
+                .thenReturn(Mono.just(Set.of()));
+        when(clientStandingRepository.save(any(ClientStanding.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        // When
+        Mono<ClientStanding> result = clientStandingService.refresh(idClient);
+        // Then
+        StepVerifier.create(result)
+                .assertNext(standing -> {
+                    assertThat(standing.hasOverdueDebt()).isFalse();
+                    assertThat(standing.getNextDueDate()).isEqualTo(LocalDate.of(2025, 4, 10));
+                })
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,102 @@
+package com.bank.appbank.service.impl;
+
+import com.bank.appbank.client.MovementServiceClient;
+import com.bank.appbank.client.StubBackend;
+import com.bank.appbank.model.BankAccount;
+import com.bank.appbank.repository.BankAccountRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Clock;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.*;
+
+/**
+ * Streams five million movements as NDJSON from a local stub into the commission report. It runs with
+ * {@code -Pbenchmark}, whose heap of 128 MB is far smaller than the movements, so it only passes if the
+ * report folds them without holding them.
+ */
+@Tag("benchmark")
+class CommissionReportStreamingTest {
+    private static final int movements = 5_000_000;
+    private static final int accounts = 9;
+    private static final int linesPerChunk = 1000;
+    private static final long maxHeapBytes = 256L * 1024 * 1024;
+
+    private StubBackend stubBackend;
+    private ReportServiceImp reportService;
+
+    @BeforeEach
+    void setUp() {
+        stubBackend = StubBackend.start(routes -> routes.get("/movements/getAllByRangeDate", (request, response) ->
+                response.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_NDJSON_VALUE)
+                        .sendString(Flux.range(0, movements / linesPerChunk)
+                                .map(this::movementLines))));
+        BankAccountRepository bankAccountRepository = mock(BankAccountRepository.class);
+        when(bankAccountRepository.findAllById(anyIterable())).thenAnswer(invocation -> {
+            Iterable<String> ids = invocation.getArgument(0);
+            return Flux.fromIterable(StreamSupport.stream(ids.spliterator(), false)
+                    .map(this::bankAccount)
+                    .collect(Collectors.toList()));
+        });
+        reportService = new ReportServiceImp(bankAccountRepository, null, null, null, null, null,
+                new MovementServiceClient(stubBackend.webClientBuilder(), 50, 2), null, null, Clock.systemUTC());
+    }
+
+    @AfterEach
+    void tearDown() {
+        stubBackend.close();
+    }
+
+    private String movementLines(int chunk) {
+        StringBuilder lines = new StringBuilder();
+        for (int i = chunk * linesPerChunk; i < (chunk + 1) * linesPerChunk; i++) {
+            lines.append(movementLine(i));
+        }
+        return lines.toString();
+    }
+
+    private String movementLine(int i) {
+        String type = i % 10 == 0 ? "TRANSFER" : "WITHDRAWAL";
+        return "{\"id\":\"MOV" + i + "\",\"typeMovement\":\"" + type + "\",\"amount\":10.0,"
+                + "\"idBankAccount\":\"ACC" + (i % accounts) + "\",\"commissionAmount\":0.5}\n";
+    }
+
+    private BankAccount bankAccount(String id) {
+        BankAccount bankAccount = new BankAccount();
+        bankAccount.setId(id);
+        List<BankAccount.TypeBankAccount> types = List.of(BankAccount.TypeBankAccount.SAVING_ACCOUNT,
+                BankAccount.TypeBankAccount.CURRENT_ACCOUNT, BankAccount.TypeBankAccount.FIXED_TERM_ACCOUNT);
+        bankAccount.setTypeBankAccount(types.get(Integer.parseInt(id.substring(3)) % types.size()));
+        return bankAccount;
+    }
+
+    @Test
+    @DisplayName("Fold millions of streamed movements into the commission report without holding them")
+    void foldStreamedMovements() {
+        assumeTrue(Runtime.getRuntime().maxMemory() <= maxHeapBytes, "Needs the small heap of -Pbenchmark");
+        // Each account type gets three accounts and a third of the movements that are not transfers
+        double commissionByType = movements * 0.9 * 0.5 / 3;
+        // When - Then
+        StepVerifier.create(reportService.generateReportAllCommissionsByProductInRangeDate("2025-02-01",
+                        "2025-02-28"))
+                .assertNext(report -> {
+                    assertThat(report.values()).hasSize(3);
+                    assertThat(report.values()).allSatisfy(total ->
+                            assertThat((Double) total).isCloseTo(commissionByType, within(0.01)));
+                })
+                .verifyComplete();
+    }
+}
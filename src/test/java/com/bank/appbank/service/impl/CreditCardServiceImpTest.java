@@ -13,7 +13,7 @@ import com.bank.appbank.dto.PaymentDto;
 import com.bank.appbank.repository.ClientRepository;
 import com.bank.appbank.repository.CreditCardRepository;
 import com.bank.appbank.service.ClientService;
-import com.bank.appbank.service.CreditService;
+import com.bank.appbank.service.ClientStandingService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -26,7 +26,6 @@ import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.time.*;
-import java.util.Collections;
 import java.util.List;
 
 import static org.mockito.Mockito.*;
@@ -52,7 +51,7 @@ class CreditCardServiceImpTest {
     @Mock
     private Clock clock;
     @Mock
-    private CreditService creditService;
+    private ClientStandingService clientStandingService;
 
     private PaymentDto payment1, payment2;
     private Credit credit1;
@@ -135,10 +134,10 @@ class CreditCardServiceImpTest {
         String idClient = "clientN001";
         // Given
         when(repositoryFactory.getRepository(any())).thenReturn(creditCardRepository);
-        when(creditService.allCreditsByIdClientWithAllPaymentsSortedByDatePayment(idClient)).thenReturn(Flux.empty());
-        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
+        when(clientStandingService.validateIfClientHasOverDueCredit(idClient)).thenReturn(Mono.just(true));
         when(clientRepository.findById(idClient)).thenReturn(Mono.just(personalClient));
         when(creditCardRepository.save(creditCard1)).thenReturn(Mono.just(creditCard1));
+        when(clientStandingService.invalidate(idClient)).thenReturn(Mono.empty());
         // WHen
         Mono<CreditCard> creditCardMono = creditCardService.create(creditCard1);
         // Then
@@ -179,6 +178,7 @@ class CreditCardServiceImpTest {
         when(repositoryFactory.getRepository(any())).thenReturn(creditCardRepository);
         when(creditCardRepository.findById("CREDIT_CARD001")).thenReturn(Mono.just(creditCard1));
         when(creditCardRepository.save(any(CreditCard.class))).thenReturn(Mono.just(creditCardNew));
+        when(clientStandingService.invalidate(idClient)).thenReturn(Mono.empty());
         // WHen
         Mono<CreditCard> creditCardMono = creditCardService.update("CREDIT_CARD001", creditCardNew);
         // Then
@@ -251,50 +251,9 @@ class CreditCardServiceImpTest {
     }
 
     @Test
-    @DisplayName("Create a credit card with client with credit card due date")
+    @DisplayName("Create a credit card with a client with overdue debt")
     void createCreditCardWithDueDateInCreditCard() {
-
-        String idClient = "clientN001";
-        ZoneId zone = ZoneId.of("UTC");
-        Instant instant = Instant.parse("2025-02-20T23:55:00Z");
-        Clock fixedClock = Clock.fixed(instant, zone);
-        creditCard1.setTotalDebt(1000.0);
-        creditCard1.setDueDate(LocalDate.of(2025, 1, 5));
-        creditCard1.setIdClient(idClient);
-
-        CreditCard creditCard = new CreditCard();
-        creditCard.setId("CREDIT_CARD002");
-        creditCard.setIdClient(idClient);
-        creditCard.setLimitCredit(1000.0);
-        creditCard.setAvailableBalance(500.0);
-        creditCard.setNumberDueDate("5");
-        creditCard.setNumberBillingDate("20");
-        when(repositoryFactory.getRepository(any())).thenReturn(creditCardRepository);
-        when(clock.instant()).thenReturn(fixedClock.instant());
-        when(clock.getZone()).thenReturn(fixedClock.getZone());
-        when(clientRepository.findById(idClient)).thenReturn(Mono.just(personalClient));
-        when(creditService.allCreditsByIdClientWithAllPaymentsSortedByDatePayment(idClient)).thenReturn(Flux.empty());
-        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(creditCard1));
-
-        StepVerifier.create(creditCardService.create(creditCard))
-                .expectError(IneligibleClientException.class)
-                .verify();
-    }
-
-    @Test
-    @DisplayName("Create a credit card with client with credit due date")
-    void createCreditCardWithDueDateInOnlyCredit() {
-
         String idClient = "clientN001";
-        ZoneId zone = ZoneId.of("UTC");
-        Instant instant = Instant.parse("2025-02-20T23:55:00Z");
-        Clock fixedClock = Clock.fixed(instant, zone);
-
-        credit1.setDisbursementDate(LocalDate.of(2025, 1, 15));
-        credit1.setFirstDatePay(LocalDate.of(2025, 2, 5));
-        credit1.setIdClient(idClient);
-        credit1.setPayments(Collections.emptyList());
-
         CreditCard creditCard = new CreditCard();
         creditCard.setId("CREDIT_CARD002");
         creditCard.setIdClient(idClient);
@@ -302,16 +261,16 @@ class CreditCardServiceImpTest {
         creditCard.setAvailableBalance(500.0);
         creditCard.setNumberDueDate("5");
         creditCard.setNumberBillingDate("20");
-        when(repositoryFactory.getRepository(any())).thenReturn(creditCardRepository);
-        when(clock.instant()).thenReturn(fixedClock.instant());
-        when(clock.getZone()).thenReturn(fixedClock.getZone());
+        // Given
         when(clientRepository.findById(idClient)).thenReturn(Mono.just(personalClient));
-        when(creditService.allCreditsByIdClientWithAllPaymentsSortedByDatePayment(idClient))
-                .thenReturn(Flux.just(credit1));
-        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
-
-        StepVerifier.create(creditCardService.create(creditCard))
+        when(clientStandingService.validateIfClientHasOverDueCredit(idClient))
+                .thenReturn(Mono.error(new IneligibleClientException("The client has an overdue debt")));
+        // When
+        Mono<CreditCard> creditCardMono = creditCardService.create(creditCard);
+        // Then
+        StepVerifier.create(creditCardMono)
                 .expectError(IneligibleClientException.class)
                 .verify();
+        verify(creditCardRepository, never()).save(any(CreditCard.class));
     }
-}
\ No newline at end of file
+}
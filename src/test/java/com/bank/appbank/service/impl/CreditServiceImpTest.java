@@ -10,9 +10,9 @@ import com.bank.appbank.model.Client;
 import com.bank.appbank.model.Credit;
 import com.bank.appbank.dto.PaymentDto;
 import com.bank.appbank.model.CreditCard;
-import com.bank.appbank.repository.CreditCardRepository;
 import com.bank.appbank.repository.CreditRepository;
 import com.bank.appbank.service.ClientService;
+import com.bank.appbank.service.ClientStandingService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -42,7 +42,7 @@ class CreditServiceImpTest {
     @Mock
     private CreditRepository creditRepository;
     @Mock
-    private CreditCardRepository creditCardRepository;
+    private ClientStandingService clientStandingService;
     @Mock
     private PaymentServiceClient paymentServiceClient;
     @Mock
@@ -138,6 +138,7 @@ class CreditServiceImpTest {
         // Given
         when(creditRepository.findById(idCredit)).thenReturn(Mono.just(credit1));
         when(creditRepository.save(credit1)).thenReturn(Mono.just(credit1));
+        when(clientStandingService.invalidate(credit1.getIdClient())).thenReturn(Mono.empty());
         // WHen
         Mono<Credit> creditMono = creditService.update(idCredit, creditNew);
         // Then
@@ -222,7 +223,7 @@ class CreditServiceImpTest {
         // Given
         when(clientService.findById(idClient)).thenReturn(Mono.just(personalClient));
         when(creditRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(existCredit));
-        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
+        when(clientStandingService.validateIfClientHasOverDueCredit(idClient)).thenReturn(Mono.just(true));
         // When
         Mono<Credit> creditMono = creditService.create(credit1);
         // Then
@@ -230,7 +231,7 @@ class CreditServiceImpTest {
                 .expectError(CreditInvalid.class)
                 .verify();
         verify(clientService).findById(idClient);
-        verify(creditRepository, times(2)).findAllByIdClient(idClient);
+        verify(creditRepository).findAllByIdClient(idClient);
     }
 
     @Test
@@ -245,8 +246,9 @@ class CreditServiceImpTest {
         // Given
         when(clientService.findById(idClient)).thenReturn(Mono.just(personalClient));
         when(creditRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
-        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
+        when(clientStandingService.validateIfClientHasOverDueCredit(idClient)).thenReturn(Mono.just(true));
         when(creditRepository.save(credit1)).thenReturn(Mono.just(credit1));
+        when(clientStandingService.invalidate(idClient)).thenReturn(Mono.empty());
         // When
         Mono<Credit> creditMono = creditService.create(credit1);
         // Then
@@ -259,7 +261,7 @@ class CreditServiceImpTest {
                 })
                 .verifyComplete();
         verify(clientService).findById(idClient);
-        verify(creditRepository, times(2)).findAllByIdClient(idClient);
+        verify(creditRepository).findAllByIdClient(idClient);
         verify(creditRepository).save(credit1);
     }
 
@@ -286,7 +288,7 @@ class CreditServiceImpTest {
         // Given
         when(clientService.findById(idClient)).thenReturn(Mono.just(personalClient));
         when(creditRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
-        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
+        when(clientStandingService.validateIfClientHasOverDueCredit(idClient)).thenReturn(Mono.just(true));
         // When
         Mono<Credit> creditMono = creditService.create(credit1);
         // Then
@@ -318,7 +320,7 @@ class CreditServiceImpTest {
         // Given
         when(clientService.findById(idClient)).thenReturn(Mono.just(personalClient));
         when(creditRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
-        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
+        when(clientStandingService.validateIfClientHasOverDueCredit(idClient)).thenReturn(Mono.just(true));
         // When
         Mono<Credit> creditMono = creditService.create(credit1);
         // Then
@@ -328,26 +330,21 @@ class CreditServiceImpTest {
     }
 
     @Test
-    @DisplayName("Create a credit with due date credit card")
+    @DisplayName("Create a credit with a client with overdue debt")
     void createCreditCardDueDateTest() {
         String idClient = "clientN001";
-        ZoneId zone = ZoneId.of("UTC");
-        Instant instant = Instant.parse("2025-02-20T23:55:00Z");
-        Clock fixedClock = Clock.fixed(instant, zone);
-        when(clock.instant()).thenReturn(fixedClock.instant());
-        when(clock.getZone()).thenReturn(fixedClock.getZone());
-        creditCard1.setTotalDebt(1000.0);
-        creditCard1.setDueDate(LocalDate.of(2025, 1, 5));
         // Given
         when(clientService.findById(idClient)).thenReturn(Mono.just(personalClient));
         when(creditRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
-        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(creditCard1));
+        when(clientStandingService.validateIfClientHasOverDueCredit(idClient))
+                .thenReturn(Mono.error(new IneligibleClientException("The client has an overdue debt")));
         // When
         Mono<Credit> creditMono = creditService.create(credit1);
         // Then
         StepVerifier.create(creditMono)
                 .expectError(IneligibleClientException.class)
                 .verify();
+        verify(creditRepository, never()).save(any(Credit.class));
     }
 
     @Test
@@ -398,8 +395,9 @@ class CreditServiceImpTest {
         // Given
         when(clientService.findById(idClient)).thenReturn(Mono.just(businessClient));
         when(creditRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(credit1));
-        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
+        when(clientStandingService.validateIfClientHasOverDueCredit(idClient)).thenReturn(Mono.just(true));
         when(creditRepository.save(credit1)).thenReturn(Mono.just(credit1));
+        when(clientStandingService.invalidate(idClient)).thenReturn(Mono.empty());
         // When
         Mono<Credit> creditMono = creditService.create(credit1);
         // Then
@@ -411,7 +409,7 @@ class CreditServiceImpTest {
                 })
                 .verifyComplete();
         verify(clientService).findById(idClient);
-        verify(creditRepository, times(2)).findAllByIdClient(idClient);
+        verify(creditRepository).findAllByIdClient(idClient);
         verify(creditRepository).save(credit1);
     }
 
@@ -457,51 +455,4 @@ class CreditServiceImpTest {
                 .verify();
         verify(creditRepository).findById(credit1.getId());
     }
-
-    @Test
-    @DisplayName("Create a credit with due date credit")
-    void createCreditDueDateCreditTest() {
-        String idClient = "clientN001";
-        ZoneId zone = ZoneId.of("UTC");
-        Instant instant = Instant.parse("2025-02-20T23:55:00Z");
-        Clock fixedClock = Clock.fixed(instant, zone);
-        when(clock.instant()).thenReturn(fixedClock.instant());
-        when(clock.getZone()).thenReturn(fixedClock.getZone());
-
-        payment1 = new PaymentDto();
-        payment1.setDatePayment(LocalDateTime.now(clock));
-        payment1.setMonthCorresponding(12);
-        payment1.setYearCorresponding(2024);
-        payment1.setTypeCreditProduct(PaymentDto.TypeCreditProduct.CREDIT);
-        payment1.setAmount(credit1.getTotalAmount());
-        payment1.setIdProductCredit(credit1.getId());
-
-        credit1.setDisbursementDate(LocalDate.of(2024, 11, 5));
-        credit1.setFirstDatePay(LocalDate.of(2024, 12, 2));
-
-        Credit credit = new Credit(
-                "clientN001",
-                500.0,
-                500.0,
-                0.15,
-                LocalDate.of(2025, 2, 18),
-                LocalDate.of(2025, 3, 2),
-                12,
-                0.0
-        );
-        // Given
-        when(clientService.findById(idClient)).thenReturn(Mono.just(personalClient));
-        when(creditRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(credit1));
-        when(paymentServiceClient.findAllPaymentByIdProductCreditAndSortByDate("CREDIT001"))
-                .thenReturn(Flux.just(payment1));
-        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
-        // When
-        Mono<Credit> creditMono = creditService.create(credit);
-        // Then
-        StepVerifier.create(creditMono)
-                .expectError(IneligibleClientException.class)
-                .verify();
-    }
-
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,125 @@
+package com.bank.appbank.service.impl;
+
+import com.bank.appbank.model.BankAccount;
+import com.bank.appbank.model.BankProduct;
+import com.bank.appbank.model.Credit;
+import com.bank.appbank.model.CreditCard;
+import com.bank.appbank.model.DailyBalance;
+import com.bank.appbank.model.MonthlyBalance;
+import com.bank.appbank.repository.DailyBalanceRepository;
+import com.bank.appbank.repository.MonthlyBalanceRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@SuppressWarnings("unchecked")
+class DailyBalanceServiceImpTest {
+
+    @InjectMocks
+    private DailyBalanceServiceImp dailyBalanceService;
+    @Mock
+    private DailyBalanceRepository dailyBalanceRepository;
+    @Mock
+    private MonthlyBalanceRepository monthlyBalanceRepository;
+
+    private final LocalDate today = LocalDate.of(2025, 2, 20);
+
+    @Test
+    @DisplayName("Register the daily balances of a batch with one bulk upsert and recompute its accumulators")
+    void registerDailyBalances() {
+        BankAccount bankAccount = new BankAccount("clientN001",
+                1500.0,
+                BankAccount.TypeBankAccount.SAVING_ACCOUNT,
+                2,
+                0,
+                0.0,
+                20.0,
+                0.5,
+                5,
+                Collections.emptyList(),
+                Collections.emptyList());
+        bankAccount.setId("IDbank001");
+        CreditCard creditCard = new CreditCard("clientN001");
+        creditCard.setId("CREDIT_CARD001");
+        creditCard.setAvailableBalance(500.0);
+        Credit credit = new Credit("clientN001", 500.0, 200.0, 0.15, today, today, 12, 0.0);
+        credit.setId("CREDIT001");
+        List<BankProduct> bankProducts = List.of(bankAccount, creditCard, credit);
+        // Given
+        when(dailyBalanceRepository.upsertAll(anyList())).thenReturn(Mono.empty());
+        when(dailyBalanceRepository.sumBalancesByIdBankProductInAndDateBetween(anyCollection(), any(), any()))
+                .thenReturn(Flux.empty());
+        when(monthlyBalanceRepository.upsertAll(anyList())).thenReturn(Mono.empty());
+        // When
+        Mono<Void> result = dailyBalanceService.registerDailyBalances(bankProducts, today, false);
+        // Then
+        StepVerifier.create(result).verifyComplete();
+        ArgumentCaptor<List<DailyBalance>> captor = ArgumentCaptor.forClass(List.class);
+        verify(dailyBalanceRepository, times(1)).upsertAll(captor.capture());
+        verify(dailyBalanceRepository).sumBalancesByIdBankProductInAndDateBetween(
+                List.of("IDbank001", "CREDIT_CARD001", "CREDIT001"),
+                LocalDate.of(2025, 2, 1),
+                LocalDate.of(2025, 2, 28));
+        assertThat(captor.getValue())
+                .extracting(DailyBalance::getIdBankProduct, DailyBalance::getBalance, DailyBalance::getDate,
+                        DailyBalance::getCarriedForward)
+                .containsExactly(
+                        tuple("IDbank001", 1500.0, today, false),
+                        tuple("CREDIT_CARD001", 500.0, today, false),
+                        tuple("CREDIT001", 200.0, today, false));
+    }
+
+    @Test
+    @DisplayName("Recompute the accumulator with the days registered before it and the days written again")
+    void recomputeMonthlyBalances() {
+        CreditCard creditCard = new CreditCard("clientN001");
+        creditCard.setId("CREDIT_CARD001");
+        creditCard.setAvailableBalance(300.0);
+        MonthlyBalance grouped = MonthlyBalance.builder()
+                .idBankProduct("CREDIT_CARD001")
+                .sumBalance(1800.0)
+                .countDays(5)
+                .lastDate(LocalDate.of(2025, 2, 22))
+                .build();
+        // Given, the day caught up is older than the last one already registered
+        when(dailyBalanceRepository.upsertAll(anyList())).thenReturn(Mono.empty());
+        when(dailyBalanceRepository.sumBalancesByIdBankProductInAndDateBetween(anyCollection(), any(), any()))
+                .thenReturn(Flux.just(grouped));
+        when(monthlyBalanceRepository.upsertAll(anyList())).thenReturn(Mono.empty());
+        // When
+        Mono<Void> result = dailyBalanceService.registerDailyBalances(List.of(creditCard), today, true);
+        // Then
+        StepVerifier.create(result).verifyComplete();
+        ArgumentCaptor<List<MonthlyBalance>> captor = ArgumentCaptor.forClass(List.class);
+        verify(monthlyBalanceRepository).upsertAll(captor.capture());
+        assertThat(captor.getValue())
+                .extracting(MonthlyBalance::getId, MonthlyBalance::getYear, MonthlyBalance::getMonth,
+                        MonthlyBalance::getSumBalance, MonthlyBalance::getCountDays, MonthlyBalance::getLastDate)
+                .containsExactly(tuple("CREDIT_CARD001:2025-02", 2025, 2, 1800.0, 5, LocalDate.of(2025, 2, 22)));
+    }
+
+    @Test
+    @DisplayName("Register an empty batch without touching the database")
+    void registerDailyBalancesEmpty() {
+        // When
+        Mono<Void> result = dailyBalanceService.registerDailyBalances(Collections.emptyList(), today, false);
+        // Then
+        StepVerifier.create(result).verifyComplete();
+        verifyNoInteractions(dailyBalanceRepository, monthlyBalanceRepository);
+    }
+}
@@ -1,12 +1,15 @@
 package com.bank.appbank.service.impl;
 
 import com.bank.appbank.client.MovementServiceClient;
+import com.bank.appbank.config.MongoTransactions;
 import com.bank.appbank.dto.MovementDto;
 import com.bank.appbank.dto.ResponseAssociationWalletDto;
 import com.bank.appbank.event.producer.DebitCardProducer;
 import com.bank.appbank.exceptions.BadInformationException;
+import com.bank.appbank.exceptions.ClientAlreadyExist;
 import com.bank.appbank.exceptions.IneligibleClientException;
 import com.bank.appbank.exceptions.ResourceNotFoundException;
+import com.bank.appbank.exceptions.UnsupportedMovementException;
 import com.bank.appbank.factory.RepositoryFactory;
 import com.bank.appbank.model.*;
 import com.bank.appbank.repository.*;
@@ -16,6 +19,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -53,6 +57,10 @@ class DebitCardServiceImpTest {
     private ClientRepository clientRepository;
     @Mock
     private DebitCardProducer debitCardProducer;
+    @Mock
+    private BalanceMutationService balanceMutationService;
+    @Spy
+    private MongoTransactions mongoTransactions = new MongoTransactions(null, false, 3);
     private DebitCard debitCard1;
     private BankAccount bankAccount1;
     private BankAccountDebitCard bankAccountDebitCard;
@@ -291,6 +299,41 @@ class DebitCardServiceImpTest {
                     assertThat(response.getState()).isEqualTo(responseValid.getState());
                 })
                 .verifyComplete();
+        assertThat(debitCard1.getIdWallet()).isEqualTo(idWallet);
+    }
+
+    @Test
+    @DisplayName("Approve again the association of the wallet the debit card already has")
+    void validAssociationAgainTest() {
+        debitCard1.setHasWallet(true);
+        debitCard1.setIdWallet("WALLET_01");
+        // Given
+        when(debitCardRepository.findById(debitCard1.getId())).thenReturn(Mono.just(debitCard1));
+        when(bankAccountRepository.findById(debitCard1.getIdPrincipalAccount())).thenReturn(Mono.just(bankAccount1));
+        // When
+        Mono<ResponseAssociationWalletDto> responseAssociation =
+                debitCardService.validAssociationWalletToDebitCard("WALLET_01", debitCard1.getId());
+        // Then
+        StepVerifier.create(responseAssociation)
+                .assertNext(response -> assertThat(response.getState()).isEqualTo("APPROVE"))
+                .verifyComplete();
+        verify(debitCardRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("Reject the association of a debit card that has another wallet")
+    void validAssociationOtherWalletTest() {
+        debitCard1.setHasWallet(true);
+        debitCard1.setIdWallet("WALLET_02");
+        // Given
+        when(debitCardRepository.findById(debitCard1.getId())).thenReturn(Mono.just(debitCard1));
+        // When
+        Mono<ResponseAssociationWalletDto> responseAssociation =
+                debitCardService.validAssociationWalletToDebitCard("WALLET_01", debitCard1.getId());
+        // Then
+        StepVerifier.create(responseAssociation)
+                .expectError(ClientAlreadyExist.class)
+                .verify();
     }
 
     @Test
@@ -317,14 +360,13 @@ class DebitCardServiceImpTest {
 
         List<MovementWallet> movementsWallet = List.of(movementWallet1, movementWallet2);
         List<String> idsDebitCards = List.of(movementWallet1.getIdDebitCard(), movementWallet2.getIdDebitCard());
-        List<String> idsBankAccounts = List.of(debitCard1.getIdPrincipalAccount());
         // Given
         when(debitCardRepository.findAllByIdIn(idsDebitCards)).thenReturn(Flux.just(debitCard1));
         when(movementWalletRepository.save(movementWallet1)).thenReturn(Mono.just(movementWallet1));
         when(movementWalletRepository.save(movementWallet2)).thenReturn(Mono.just(movementWallet2));
-        when(bankAccountRepository.findByIdIn(idsBankAccounts)).thenReturn(Flux.just(bankAccount1));
-        when(bankAccountRepository.save(bankAccount1)).thenReturn(Mono.just(bankAccount1));
-        doNothing().when(debitCardProducer).publishConfirmationPaymentDebit(movementsWallet);
+        when(balanceMutationService.transfer(debitCard1.getIdPrincipalAccount(), null, 20.0))
+                .thenReturn(Mono.empty());
+        when(debitCardProducer.publishConfirmationPaymentDebit(movementsWallet)).thenReturn(Mono.empty());
         // When
         Mono<Void> doPayment = debitCardService.paymentWalletWithDebitCard(movementsWallet);
         // Then
@@ -356,19 +398,108 @@ class DebitCardServiceImpTest {
         bankAccount1.setBalance(19.0);
         List<MovementWallet> movementsWallet = List.of(movementWallet1, movementWallet2);
         List<String> idsDebitCards = List.of(movementWallet1.getIdDebitCard(), movementWallet2.getIdDebitCard());
-        List<String> idsPrincipalBankAccount = List.of(bankAccount1.getId());
         // Given
         when(debitCardRepository.findAllByIdIn(idsDebitCards)).thenReturn(Flux.just(debitCard1));
-        when(bankAccountRepository.findByIdIn(idsPrincipalBankAccount)).thenReturn(Flux.just(bankAccount1));
+        when(balanceMutationService.transfer(bankAccount1.getId(), null, 20.0))
+                .thenReturn(Mono.error(new UnsupportedMovementException("Balance is not supported")));
         when(movementWalletRepository.save(movementWallet1)).thenReturn(Mono.just(movementWallet1));
         when(movementWalletRepository.save(movementWallet2)).thenReturn(Mono.just(movementWallet2));
+        when(debitCardProducer.publishConfirmationPaymentDebit(movementsWallet)).thenReturn(Mono.empty());
 
         // When
         Mono<Void> doPayment = debitCardService.paymentWalletWithDebitCard(movementsWallet);
         // Then
         StepVerifier.create(doPayment)
                 .verifyComplete();
+        assertThat(movementWallet1.getStateMovement()).isEqualTo(MovementWallet.StateMovement.REJECTED);
+        assertThat(movementWallet1.getDescription()).isEqualTo("Balance is not supported");
+
+    }
+
+    @Test
+    @DisplayName("Apply a batch of wallet payments and confirm them together")
+    void paymentsWalletWithDebitCardTest() {
+        MovementWallet paid = MovementWallet.builder().id("WALLET_1").amount(20.0).idDebitCard(debitCard1.getId())
+                .stateMovement(MovementWallet.StateMovement.PENDING).build();
+        MovementWallet received = MovementWallet.builder().id("WALLET_2").amount(20.0).idDebitCard("")
+                .stateMovement(MovementWallet.StateMovement.PENDING).build();
+        MovementWallet notPaid = MovementWallet.builder().id("WALLET_3").amount(2000.0)
+                .idDebitCard(debitCard1.getId()).stateMovement(MovementWallet.StateMovement.PENDING).build();
+        MovementWallet notReceived = MovementWallet.builder().id("WALLET_4").amount(2000.0).idDebitCard("")
+                .stateMovement(MovementWallet.StateMovement.PENDING).build();
+        List<List<MovementWallet>> payments = List.of(List.of(paid, received), List.of(notPaid, notReceived));
+        // Given
+        when(debitCardRepository.findAllByIdIn(List.of(debitCard1.getId(), ""))).thenReturn(Flux.just(debitCard1));
+        when(balanceMutationService.transferAll(anyList())).thenAnswer(invocation -> {
+            List<BalanceMutationService.Transfer> transfers = invocation.getArgument(0);
+            assertThat(transfers).extracting(BalanceMutationService.Transfer::getIdOrigin)
+                    .containsOnly(bankAccount1.getId());
+            assertThat(transfers).extracting(BalanceMutationService.Transfer::getPayment)
+                    .containsExactly("WALLET_1", "WALLET_3");
+            transfers.get(1).reject(new UnsupportedMovementException("Balance is not supported"));
+            return Mono.just(transfers);
+        });
+        when(movementWalletRepository.saveAll(List.of(paid, received, notPaid, notReceived)))
+                .thenReturn(Flux.just(paid, received, notPaid, notReceived));
+        when(debitCardProducer.publishConfirmationsPaymentDebit(payments)).thenReturn(Mono.empty());
+        // When
+        Mono<Void> doPayments = debitCardService.paymentsWalletWithDebitCard(payments);
+        // Then
+        StepVerifier.create(doPayments).verifyComplete();
+        assertThat(received.getStateMovement()).isEqualTo(MovementWallet.StateMovement.APPROVE);
+        assertThat(notPaid.getStateMovement()).isEqualTo(MovementWallet.StateMovement.REJECTED);
+        assertThat(notReceived.getDescription()).isEqualTo("Balance is not supported");
+        verify(debitCardProducer).publishConfirmationsPaymentDebit(payments);
+    }
 
+    @Test
+    @DisplayName("Leave a batch pending and propagate the error when its balances are in an unknown state")
+    void paymentsWalletWithDebitCardUnknownTest() {
+        MovementWallet paid = MovementWallet.builder().id("WALLET_1").amount(20.0).idDebitCard(debitCard1.getId())
+                .stateMovement(MovementWallet.StateMovement.PENDING).build();
+        MovementWallet received = MovementWallet.builder().id("WALLET_2").amount(20.0).idDebitCard("")
+                .stateMovement(MovementWallet.StateMovement.PENDING).build();
+        List<List<MovementWallet>> payments = List.of(List.of(paid, received));
+        // Given
+        when(debitCardRepository.findAllByIdIn(List.of(debitCard1.getId(), ""))).thenReturn(Flux.just(debitCard1));
+        when(balanceMutationService.transferAll(anyList()))
+                .thenReturn(Mono.error(new IllegalStateException("Connection reset")));
+        // When
+        Mono<Void> doPayments = debitCardService.paymentsWalletWithDebitCard(payments);
+        // Then
+        StepVerifier.create(doPayments).expectError(IllegalStateException.class).verify();
+        assertThat(paid.getStateMovement()).isEqualTo(MovementWallet.StateMovement.PENDING);
+        verify(movementWalletRepository, never()).saveAll(anyIterable());
+        verify(debitCardProducer, never()).publishConfirmationsPaymentDebit(anyList());
+    }
+
+    @Test
+    @DisplayName("Reject the whole batch when its transaction can not commit")
+    void paymentsWalletWithDebitCardRollbackTest() {
+        MovementWallet paid = MovementWallet.builder().id("WALLET_1").amount(20.0).idDebitCard(debitCard1.getId())
+                .stateMovement(MovementWallet.StateMovement.PENDING).build();
+        MovementWallet received = MovementWallet.builder().id("WALLET_2").amount(20.0).idDebitCard("")
+                .stateMovement(MovementWallet.StateMovement.PENDING).build();
+        List<List<MovementWallet>> payments = List.of(List.of(paid, received));
+        // Given, the first transaction runs the whole batch and fails to commit, the second one saves the rejections
+        doReturn(true).when(mongoTransactions).isEnabled();
+        doAnswer(invocation -> ((Mono<?>) invocation.getArgument(0))
+                        .then(Mono.error(new IllegalStateException("Transaction aborted"))))
+                .doAnswer(invocation -> invocation.getArgument(0))
+                .when(mongoTransactions).execute(any());
+        when(debitCardRepository.findAllByIdIn(List.of(debitCard1.getId(), ""))).thenReturn(Flux.just(debitCard1));
+        when(balanceMutationService.transferAll(anyList()))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        when(movementWalletRepository.saveAll(List.of(paid, received))).thenReturn(Flux.just(paid, received));
+        when(debitCardProducer.publishConfirmationsPaymentDebit(payments)).thenReturn(Mono.empty());
+        // When
+        Mono<Void> doPayments = debitCardService.paymentsWalletWithDebitCard(payments);
+        // Then
+        StepVerifier.create(doPayments).verifyComplete();
+        assertThat(paid.getStateMovement()).isEqualTo(MovementWallet.StateMovement.REJECTED);
+        assertThat(received.getDescription()).isEqualTo("Transaction aborted");
+        verify(mongoTransactions, times(2)).execute(any());
+        verify(debitCardProducer, times(2)).publishConfirmationsPaymentDebit(payments);
     }
 
     @Test
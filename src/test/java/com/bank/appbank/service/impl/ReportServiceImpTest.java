@@ -8,6 +8,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
 import reactor.core.publisher.Flux;
@@ -16,7 +18,10 @@ import reactor.test.StepVerifier;
 
 import javax.management.ObjectName;
 import java.time.*;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -40,6 +45,8 @@ class ReportServiceImpTest {
     @Mock
     private DailyBalanceRepository dailyBalanceRepository;
     @Mock
+    private MonthlyBalanceRepository monthlyBalanceRepository;
+    @Mock
     private ClientRepository clientRepository;
     @Mock
     private MovementServiceClient movementServiceClient;
@@ -130,11 +137,8 @@ class ReportServiceImpTest {
         when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(creditCard1));
         when(creditRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(credit1));
         when(clientRepository.findById(idClient)).thenReturn(Mono.just(personalClient));
-        when(dailyBalanceRepository.findAllByIdBankProductAndDateBetween(eq(bankAccount1.getId()), any(), any()))
-                .thenReturn(Flux.empty());
-        when(dailyBalanceRepository.findAllByIdBankProductAndDateBetween(eq(creditCard1.getId()), any(), any()))
-                .thenReturn(Flux.empty());
-        when(dailyBalanceRepository.findAllByIdBankProductAndDateBetween(eq(credit1.getId()), any(), any()))
+        when(monthlyBalanceRepository.findAllById(anyIterable())).thenReturn(Flux.empty());
+        when(dailyBalanceRepository.sumBalancesByIdBankProductInAndDateBetween(anyCollection(), any(), any()))
                 .thenReturn(Flux.empty());
 
         // When
@@ -189,15 +193,12 @@ class ReportServiceImpTest {
         when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(creditCard1));
         when(creditRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(credit1));
         when(clientRepository.findById(idClient)).thenReturn(Mono.just(personalClient));
-        when(dailyBalanceRepository
-                .findAllByIdBankProductAndDateBetween(eq(bankAccount1.getId()), any(), any()))
-                .thenReturn(Flux.just(dailyBalance1, dailyBalance2));
-        when(dailyBalanceRepository
-                .findAllByIdBankProductAndDateBetween(eq(creditCard1.getId()), any(), any()))
-                .thenReturn(Flux.just(dailyBalance3));
-        when(dailyBalanceRepository
-                .findAllByIdBankProductAndDateBetween(eq(credit1.getId()), any(), any()))
-                .thenReturn(Flux.just(dailyBalance4, dailyBalance5));
+        when(monthlyBalanceRepository.findAllById(anyIterable())).thenReturn(Flux.empty());
+        when(dailyBalanceRepository.sumBalancesByIdBankProductInAndDateBetween(anyCollection(), any(), any()))
+                .thenReturn(Flux.just(
+                        groupedBalance(bankAccount1.getId(), dailyBalance1, dailyBalance2),
+                        groupedBalance(creditCard1.getId(), dailyBalance3),
+                        groupedBalance(credit1.getId(), dailyBalance4, dailyBalance5)));
 
         // When
         Mono<Map<String, Object>> mapMono = reportService.generateReportAverageBalanceDailyInPresentMonth(idClient);
@@ -263,16 +264,12 @@ class ReportServiceImpTest {
         when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(creditCard1));
         when(creditRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(credit1));
         when(clientRepository.findById(idClient)).thenReturn(Mono.just(personalClient));
-
-        when(dailyBalanceRepository
-                .findAllByIdBankProductAndDateBetween(eq(bankAccount1.getId()), any(), any()))
-                .thenReturn(Flux.just(dailyBalance1, dailyBalance2));
-        when(dailyBalanceRepository
-                .findAllByIdBankProductAndDateBetween(eq(creditCard1.getId()), any(), any()))
-                .thenReturn(Flux.just(dailyBalance3));
-        when(dailyBalanceRepository
-                .findAllByIdBankProductAndDateBetween(eq(credit1.getId()), any(), any()))
-                .thenReturn(Flux.just(dailyBalance4));
+        when(monthlyBalanceRepository.findAllById(anyIterable())).thenReturn(Flux.empty());
+        when(dailyBalanceRepository.sumBalancesByIdBankProductInAndDateBetween(anyCollection(), any(), any()))
+                .thenReturn(Flux.just(
+                        groupedBalance(bankAccount1.getId(), dailyBalance1, dailyBalance2),
+                        groupedBalance(creditCard1.getId(), dailyBalance3),
+                        groupedBalance(credit1.getId(), dailyBalance4)));
 
         // When
         Mono<Map<String, Object>> mapMono = reportService.generateReportAverageBalanceDailyInPresentMonth(idClient);
@@ -299,6 +296,97 @@ class ReportServiceImpTest {
                 .verifyComplete();
     }
 
+    @Test
+    @DisplayName("Generate a daily report from the monthly accumulators")
+    void generateReportAverageBalanceDailyInPresentMonthWithAccumulators() {
+        String idClient = "clientN001";
+        MonthlyBalance bankAccountMonth = MonthlyBalance.builder()
+                .id("IDbank001:2025-02")
+                .idBankProduct(bankAccount1.getId())
+                .sumBalance(820.0)
+                .countDays(2)
+                .lastDate(LocalDate.of(2025, 2, 20))
+                .build();
+        MonthlyBalance creditCardMonth = MonthlyBalance.builder()
+                .id("CREDIT_CARD001:2025-02")
+                .idBankProduct(creditCard1.getId())
+                .sumBalance(100.0)
+                .countDays(1)
+                .lastDate(LocalDate.of(2025, 2, 19))
+                .build();
+
+        // Given
+        when(bankAccountRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(bankAccount1));
+        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(creditCard1));
+        when(creditRepository.findAllByIdClient(idClient)).thenReturn(Flux.just(credit1));
+        when(clientRepository.findById(idClient)).thenReturn(Mono.just(personalClient));
+        when(monthlyBalanceRepository
+                .findAllById(List.of("IDbank001:2025-02", "CREDIT_CARD001:2025-02", "CREDIT001:2025-02")))
+                .thenReturn(Flux.just(bankAccountMonth, creditCardMonth));
+        when(dailyBalanceRepository.sumBalancesByIdBankProductInAndDateBetween(
+                List.of(credit1.getId()), LocalDate.of(2025, 2, 1), LocalDate.of(2025, 2, 20)))
+                .thenReturn(Flux.empty());
+
+        // When
+        Mono<Map<String, Object>> mapMono = reportService.generateReportAverageBalanceDailyInPresentMonth(idClient);
+        // Then
+        StepVerifier.create(mapMono)
+                .assertNext(response -> {
+                    List<Map<String, Object>> bankAccounts = (List<Map<String, Object>>) response.get("bankAccounts");
+                    List<Map<String, Object>> creditCards = (List<Map<String, Object>>) response.get("creditCards");
+                    List<Map<String, Object>> credits = (List<Map<String, Object>>) response.get("credits");
+                    assertEquals(410.0, bankAccounts.get(0).get("averageDailyBalance"));
+                    assertEquals(300.0, creditCards.get(0).get("averageDailyBalance"));
+                    assertEquals(200.0, credits.get(0).get("averageDailyBalance"));
+                })
+                .verifyComplete();
+    }
+
+    @ParameterizedTest(name = "{0} products")
+    @ValueSource(ints = {1, 10, 100})
+    @DisplayName("Generate a daily report with the same round trips for any number of products")
+    void generateReportAverageBalanceDailyInPresentMonthWithManyProducts(int numberProducts) {
+        String idClient = "clientN001";
+        List<BankAccount> bankAccounts = new ArrayList<>();
+        for (int i = 0; i < numberProducts; i++) {
+            BankAccount bankAccount = new BankAccount(idClient, 100.0 * i,
+                    BankAccount.TypeBankAccount.CURRENT_ACCOUNT, 0, 0, 0.0, 0.0, 0.0, 5,
+                    Collections.emptyList(), Collections.emptyList());
+            bankAccount.setId("IDbank" + i);
+            bankAccounts.add(bankAccount);
+        }
+        // Given
+        when(bankAccountRepository.findAllByIdClient(idClient)).thenReturn(Flux.fromIterable(bankAccounts));
+        when(creditCardRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
+        when(creditRepository.findAllByIdClient(idClient)).thenReturn(Flux.empty());
+        when(clientRepository.findById(idClient)).thenReturn(Mono.just(personalClient));
+        when(monthlyBalanceRepository.findAllById(anyIterable())).thenReturn(Flux.empty());
+        when(dailyBalanceRepository.sumBalancesByIdBankProductInAndDateBetween(anyCollection(), any(), any()))
+                .thenReturn(Flux.empty());
+        // When
+        Mono<Map<String, Object>> mapMono = reportService.generateReportAverageBalanceDailyInPresentMonth(idClient);
+        // Then
+        StepVerifier.create(mapMono)
+                .assertNext(response ->
+                        assertThat((List<Map<String, Object>>) response.get("bankAccounts")).hasSize(numberProducts))
+                .verifyComplete();
+        verify(monthlyBalanceRepository, times(1)).findAllById(anyIterable());
+        verify(dailyBalanceRepository, times(1))
+                .sumBalancesByIdBankProductInAndDateBetween(argThat(ids -> ids.size() == numberProducts), any(), any());
+    }
+
+    private MonthlyBalance groupedBalance(String idBankProduct, DailyBalance... dailyBalances) {
+        return MonthlyBalance.builder()
+                .idBankProduct(idBankProduct)
+                .sumBalance(Arrays.stream(dailyBalances).mapToDouble(DailyBalance::getBalance).sum())
+                .countDays(dailyBalances.length)
+                .lastDate(Arrays.stream(dailyBalances)
+                        .map(DailyBalance::getDate)
+                        .max(Comparator.naturalOrder())
+                        .orElse(null))
+                .build();
+    }
+
     @Test
     @DisplayName("Commission report by date range")
     void generateReportAllCommissionsByProductInRangeDate() {
@@ -354,6 +442,37 @@ class ReportServiceImpTest {
                 .verifyComplete();
     }
 
+    @Test
+    @DisplayName("Leave the commissions of an account without type out of the report")
+    void generateReportAllCommissionsWithoutType() {
+        MovementDto movement1 = new MovementDto();
+        movement1.setId("IDMOVEMENT01");
+        movement1.setIdBankAccount("IDbank001");
+        movement1.setCommissionAmount(5.0);
+        movement1.setTypeMovement(MovementDto.TypeMovement.DEPOSIT);
+        MovementDto movement2 = new MovementDto();
+        movement2.setId("IDMOVEMENT02");
+        movement2.setIdBankAccount("IDbank002");
+        movement2.setCommissionAmount(2.0);
+        movement2.setTypeMovement(MovementDto.TypeMovement.WITHDRAWAL);
+        bankAccount2.setTypeBankAccount(null);
+        // Given
+        when(movementServiceClient.getAllMovementsByRangeDate(any(), any()))
+                .thenReturn(Flux.just(movement1, movement2));
+        when(bankAccountRepository.findAllById(Set.of("IDbank001", "IDbank002")))
+                .thenReturn(Flux.just(bankAccount1, bankAccount2));
+        // When
+        Mono<Map<String, Object>> report = reportService
+                .generateReportAllCommissionsByProductInRangeDate("2025-02-10", "2025-02-20");
+        // Then
+        StepVerifier.create(report)
+                .assertNext(result -> {
+                    assertThat(result.get("savingAccount")).isEqualTo(5.0);
+                    assertThat(result.get("currentAccount")).isEqualTo(0.0);
+                })
+                .verifyComplete();
+    }
+
     @Test
     @DisplayName("Generate report general of all bank products in range date")
     public void generateReportCompleteAndGeneralByProductInRangeDateTest() {
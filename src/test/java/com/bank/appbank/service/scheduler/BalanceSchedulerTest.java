@@ -0,0 +1,250 @@
+package com.bank.appbank.service.scheduler;
+
+import com.bank.appbank.model.BankAccount;
+import com.bank.appbank.model.BankProduct;
+import com.bank.appbank.model.SnapshotCheckpoint;
+import com.bank.appbank.repository.BankAccountRepository;
+import com.bank.appbank.repository.CreditCardRepository;
+import com.bank.appbank.repository.CreditRepository;
+import com.bank.appbank.repository.SnapshotCheckpointRepository;
+import com.bank.appbank.service.DailyBalanceService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BalanceSchedulerTest {
+    private static final String KEY = "bank_accounts";
+
+    @Mock
+    private DailyBalanceService dailyBalanceService;
+    @Mock
+    private BankAccountRepository bankAccountRepository;
+    @Mock
+    private CreditCardRepository creditCardRepository;
+    @Mock
+    private CreditRepository creditRepository;
+    @Mock
+    private SnapshotCheckpointRepository checkpointRepository;
+    @Mock
+    private JobCoordinator jobCoordinator;
+
+    private BalanceScheduler balanceScheduler;
+    private SimpleMeterRegistry meterRegistry;
+    private final LocalDate today = LocalDate.of(2025, 2, 20);
+    private final Map<String, SnapshotCheckpoint> checkpoints = new ConcurrentHashMap<>();
+    private final List<SnapshotCheckpoint> savedCheckpoints = new CopyOnWriteArrayList<>();
+    private final List<String> registered = new CopyOnWriteArrayList<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        Clock clock = Clock.fixed(Instant.parse("2025-02-20T23:30:00Z"), ZoneId.of("UTC"));
+        balanceScheduler = new BalanceScheduler(dailyBalanceService, bankAccountRepository, creditCardRepository,
+                creditRepository, checkpointRepository, jobCoordinator, clock, meterRegistry);
+        ReflectionTestUtils.setField(balanceScheduler, "batchSize", 100);
+        ReflectionTestUtils.setField(balanceScheduler, "concurrency", 2);
+        ReflectionTestUtils.setField(balanceScheduler, "catchUpDays", 7);
+        when(jobCoordinator.partitions()).thenReturn(HashPartition.all(1));
+        when(jobCoordinator.runOnce(anyString(), any(), any()))
+                .thenAnswer(invocation -> invocation.getArgument(2));
+        when(checkpointRepository.findById(anyString()))
+                .thenAnswer(invocation -> Mono.justOrEmpty(checkpoints.get((String) invocation.getArgument(0)))
+                        .map(this::copy));
+        lenient().when(checkpointRepository.save(any(SnapshotCheckpoint.class))).thenAnswer(invocation -> {
+            SnapshotCheckpoint checkpoint = copy(invocation.getArgument(0));
+            checkpoints.put(checkpoint.getId(), checkpoint);
+            savedCheckpoints.add(checkpoint);
+            return Mono.just(checkpoint);
+        });
+        when(creditCardRepository.findIdsAfter(any())).thenReturn(Flux.empty());
+        when(creditRepository.findIdsAfter(any())).thenReturn(Flux.empty());
+    }
+
+    private SnapshotCheckpoint copy(SnapshotCheckpoint checkpoint) {
+        return SnapshotCheckpoint.builder()
+                .id(checkpoint.getId())
+                .date(checkpoint.getDate())
+                .lastId(checkpoint.getLastId())
+                .completed(checkpoint.getCompleted())
+                .build();
+    }
+
+    private static String id(int i) {
+        return String.format("ACC%04d", i);
+    }
+
+    private BankAccount bankAccount(String id) {
+        BankAccount bankAccount = new BankAccount();
+        bankAccount.setId(id);
+        bankAccount.setBalance(100.0);
+        return bankAccount;
+    }
+
+    private void givenBankAccounts(int count) {
+        List<String> ids = IntStream.range(0, count).mapToObj(BalanceSchedulerTest::id).collect(Collectors.toList());
+        when(bankAccountRepository.findIdsAfter(any())).thenAnswer(invocation -> {
+            String lastId = invocation.getArgument(0);
+            return Flux.fromIterable(ids).filter(id -> lastId == null || id.compareTo(lastId) > 0)
+                    .map(this::bankAccount);
+        });
+        when(bankAccountRepository.findAllById(anyIterable())).thenAnswer(invocation -> {
+            Iterable<String> batch = invocation.getArgument(0);
+            return Flux.fromIterable(batch).map(this::bankAccount);
+        });
+    }
+
+    private Mono<Void> register(List<? extends BankProduct> batch, LocalDate date, boolean fail) {
+        return Mono.defer(() -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return Mono.delay(Duration.ofMillis(20))
+                    .doOnTerminate(inFlight::decrementAndGet)
+                    .then(fail ? Mono.error(new IllegalStateException("Write failed")) : Mono.fromRunnable(() ->
+                            batch.forEach(product -> registered.add(product.getId() + "@" + date))));
+        });
+    }
+
+    @Test
+    @DisplayName("Record a collection in batches with bounded concurrency, checkpoints and metrics")
+    void recordInBatches() {
+        givenBankAccounts(450);
+        when(dailyBalanceService.registerDailyBalances(anyList(), any(), anyBoolean()))
+                .thenAnswer(invocation -> register(invocation.getArgument(0), invocation.getArgument(1), false));
+        // When
+        StepVerifier.create(balanceScheduler.recordPendingDays(today)).verifyComplete();
+        // Then
+        assertThat(registered).hasSize(450).doesNotHaveDuplicates();
+        assertThat(maxInFlight.get()).isEqualTo(2);
+        assertThat(savedCheckpoints).filteredOn(checkpoint -> KEY.equals(checkpoint.getId()))
+                .extracting(SnapshotCheckpoint::getLastId, SnapshotCheckpoint::getCompleted)
+                .containsExactly(tuple(id(99), false), tuple(id(199), false), tuple(id(299), false),
+                        tuple(id(399), false), tuple(id(449), false), tuple(id(449), true));
+        assertThat(meterRegistry.counter("balance.snapshot.records", "result", "recorded").count())
+                .isEqualTo(450.0);
+        assertThat(meterRegistry.counter("balance.snapshot.records", "result", "failed").count()).isZero();
+        assertThat(meterRegistry.summary("balance.snapshot.batch.size").count()).isEqualTo(5);
+        assertThat(meterRegistry.summary("balance.snapshot.batch.size").max()).isEqualTo(100.0);
+        assertThat(meterRegistry.timer("balance.snapshot.batch.duration").count()).isEqualTo(5);
+        assertThat(meterRegistry.timer("balance.snapshot.run.duration").count()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Stop a collection at the last stored batch when a batch fails")
+    void stopAtFailedBatch() {
+        givenBankAccounts(300);
+        AtomicInteger calls = new AtomicInteger();
+        when(dailyBalanceService.registerDailyBalances(anyList(), any(), anyBoolean())).thenAnswer(invocation ->
+                register(invocation.getArgument(0), invocation.getArgument(1), calls.incrementAndGet() == 2));
+        // When
+        StepVerifier.create(balanceScheduler.recordPendingDays(today)).verifyComplete();
+        // Then
+        assertThat(checkpoints.get(KEY).getLastId()).isEqualTo(id(99));
+        assertThat(checkpoints.get(KEY).getCompleted()).isFalse();
+        assertThat(meterRegistry.counter("balance.snapshot.records", "result", "failed").count())
+                .isEqualTo(100.0);
+    }
+
+    @Test
+    @DisplayName("Resume an interrupted day after the last checkpointed id")
+    void resumeFromCheckpoint() {
+        givenBankAccounts(300);
+        checkpoints.put(KEY, SnapshotCheckpoint.builder().id(KEY).date(today).lastId(id(199)).completed(false).build());
+        when(dailyBalanceService.registerDailyBalances(anyList(), any(), anyBoolean()))
+                .thenAnswer(invocation -> register(invocation.getArgument(0), invocation.getArgument(1), false));
+        // When
+        StepVerifier.create(balanceScheduler.recordPendingDays(today)).verifyComplete();
+        // Then
+        verify(bankAccountRepository).findIdsAfter(id(199));
+        assertThat(registered).hasSize(100).first().isEqualTo(id(200) + "@" + today);
+        assertThat(checkpoints.get(KEY).getCompleted()).isTrue();
+        assertThat(checkpoints.get(KEY).getLastId()).isEqualTo(id(299));
+    }
+
+    @Test
+    @DisplayName("Catch up at most catch-up-days days after a long downtime")
+    void catchUpIsCapped() {
+        givenBankAccounts(10);
+        checkpoints.put(KEY, SnapshotCheckpoint.builder().id(KEY).date(today.minusDays(20)).lastId(id(9))
+                .completed(true).build());
+        when(dailyBalanceService.registerDailyBalances(anyList(), any(), anyBoolean()))
+                .thenAnswer(invocation -> register(invocation.getArgument(0), invocation.getArgument(1), false));
+        // When
+        StepVerifier.create(balanceScheduler.recordPendingDays(today)).verifyComplete();
+        // Then
+        List<LocalDate> recordedDates = registered.stream()
+                .map(entry -> LocalDate.parse(entry.substring(entry.indexOf('@') + 1)))
+                .distinct()
+                .collect(Collectors.toList());
+        assertThat(recordedDates).containsExactlyElementsOf(
+                today.minusDays(6).datesUntil(today.plusDays(1)).collect(Collectors.toList()));
+        assertThat(registered).hasSize(70);
+        assertThat(checkpoints.get(KEY).getDate()).isEqualTo(today);
+        verify(dailyBalanceService, times(6)).registerDailyBalances(anyList(), any(), eq(true));
+        verify(dailyBalanceService).registerDailyBalances(anyList(), eq(today), eq(false));
+    }
+
+    @Test
+    @DisplayName("Wait for the next execution time from the end of the catch-up, not from the startup")
+    void scheduleAfterCatchUp() {
+        AtomicReference<Instant> now = new AtomicReference<>(Instant.parse("2025-02-20T10:00:00Z"));
+        Clock clock = mock(Clock.class);
+        when(clock.getZone()).thenReturn(ZoneId.of("UTC"));
+        when(clock.instant()).thenAnswer(invocation -> now.get());
+        BalanceScheduler scheduler = new BalanceScheduler(dailyBalanceService, bankAccountRepository,
+                creditCardRepository, creditRepository, checkpointRepository, jobCoordinator, clock, meterRegistry);
+        ReflectionTestUtils.setField(scheduler, "catchUp", true);
+        ReflectionTestUtils.setField(scheduler, "catchUpDays", 7);
+        when(bankAccountRepository.findIdsAfter(any())).thenReturn(Flux.empty());
+        // Given, a catch-up of yesterday that takes three hours
+        when(jobCoordinator.runOnce(anyString(), eq(today.minusDays(1)), any())).thenAnswer(invocation -> {
+            now.set(Instant.parse("2025-02-20T13:00:00Z"));
+            return invocation.getArgument(2);
+        });
+        // When - Then
+        StepVerifier.withVirtualTime(scheduler::recordDailyBalance)
+                .expectSubscription()
+                .thenAwait(Duration.ofHours(10).plusMinutes(29))
+                .then(() -> verify(jobCoordinator, never()).runOnce(anyString(), eq(today), any()))
+                .thenAwait(Duration.ofMinutes(1))
+                .then(() -> verify(jobCoordinator, times(3)).runOnce(anyString(), eq(today), any()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    @DisplayName("Do nothing for a day already completed")
+    void skipCompletedDay() {
+        checkpoints.put(KEY, SnapshotCheckpoint.builder().id(KEY).date(today).lastId(id(9)).completed(true).build());
+        // When
+        StepVerifier.create(balanceScheduler.recordPendingDays(today)).verifyComplete();
+        // Then
+        verifyNoInteractions(dailyBalanceService);
+    }
+}
@@ -0,0 +1,265 @@
+package com.bank.appbank.service.scheduler;
+
+import com.bank.appbank.client.ConsumptionServiceClient;
+import com.bank.appbank.dto.BillConsumptionsDto;
+import com.bank.appbank.dto.ConsumptionDto;
+import com.bank.appbank.model.CreditCard;
+import com.bank.appbank.repository.CreditCardRepository;
+import com.bank.appbank.service.ClientStandingService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CreditCardBillingSchedulerTest {
+
+    @Mock
+    private CreditCardRepository creditCardRepository;
+    @Mock
+    private ConsumptionServiceClient consumptionServiceClient;
+    @Mock
+    private JobCoordinator jobCoordinator;
+    @Mock
+    private ClientStandingService clientStandingService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final LocalDate today = LocalDate.of(2025, 2, 20);
+    private final Map<String, CreditCard> cards = new LinkedHashMap<>();
+
+    private CreditCardBillingScheduler scheduler(int callsPerSecond, int batchSize) {
+        Clock clock = Clock.fixed(Instant.parse("2025-02-20T23:00:00Z"), ZoneId.of("UTC"));
+        CreditCardBillingScheduler scheduler = new CreditCardBillingScheduler(creditCardRepository,
+                consumptionServiceClient, jobCoordinator, clientStandingService, clock, meterRegistry, callsPerSecond);
+        ReflectionTestUtils.setField(scheduler, "batchSize", batchSize);
+        ReflectionTestUtils.setField(scheduler, "parallelism", 4);
+        ReflectionTestUtils.setField(scheduler, "progressInterval", 500);
+        ReflectionTestUtils.setField(scheduler, "markBilledRetries", 1);
+        when(jobCoordinator.partitions()).thenReturn(HashPartition.all(1));
+        when(jobCoordinator.runOnce(anyString(), any(), any()))
+                .thenAnswer(invocation -> invocation.getArgument(2));
+        when(creditCardRepository.findIdsDueForBilling("20", today)).thenAnswer(invocation ->
+                Flux.fromIterable(new ArrayList<>(cards.keySet())).map(id -> {
+                    CreditCard idOnly = new CreditCard();
+                    idOnly.setId(id);
+                    return idOnly;
+                }));
+        when(creditCardRepository.findAllById(anyIterable())).thenAnswer(invocation -> {
+            Iterable<String> ids = invocation.getArgument(0);
+            return Flux.fromStream(StreamSupport.stream(ids.spliterator(), false).map(cards::get));
+        });
+        lenient().when(creditCardRepository.saveAll(anyIterable()))
+                .thenAnswer(invocation -> Flux.fromIterable(invocation.<Iterable<CreditCard>>getArgument(0)));
+        lenient().when(creditCardRepository.save(any(CreditCard.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        lenient().when(clientStandingService.refresh(anyString())).thenReturn(Mono.empty());
+        return scheduler;
+    }
+
+    private CreditCard card(String id, String numberBillingDate, double totalDebt, LocalDate dueDate) {
+        CreditCard creditCard = new CreditCard("client-" + id);
+        creditCard.setId(id);
+        creditCard.setLimitCredit(1000.0);
+        creditCard.setTotalDebt(totalDebt);
+        creditCard.setAvailableBalance(1000.0 - totalDebt);
+        creditCard.setNumberBillingDate(numberBillingDate);
+        creditCard.setNumberDueDate("5");
+        creditCard.setDueDate(dueDate);
+        cards.put(id, creditCard);
+        return creditCard;
+    }
+
+    private double count(String result) {
+        return meterRegistry.counter("billing.cards", "result", result).count();
+    }
+
+    @Test
+    @DisplayName("Bill the cards of the day, penalize the overdue ones and leave the rest")
+    void selectCards() {
+        CreditCardBillingScheduler scheduler = scheduler(50, 200);
+        CreditCard billing = card("c1", "20", 100.0, LocalDate.of(2025, 3, 5));
+        CreditCard overdue = card("c2", "13", 300.0, LocalDate.of(2025, 2, 5));
+        CreditCard billedToday = card("c3", "20", 50.0, LocalDate.of(2025, 3, 5));
+        billedToday.setLastBilledDate(today);
+        CreditCard notDue = card("c4", "13", 80.0, LocalDate.of(2025, 3, 5));
+        when(consumptionServiceClient.findUnbilledByIdCreditCards(List.of("c1"))).thenReturn(Flux.just(
+                ConsumptionDto.builder().id("m1").idCreditCard("c1").amount(50.0).build(),
+                ConsumptionDto.builder().id("m2").idCreditCard("c1").amount(25.0).build()));
+        when(consumptionServiceClient.markBilled(any(BillConsumptionsDto.class))).thenReturn(Mono.empty());
+        // When
+        StepVerifier.create(scheduler.runBilling(today)).verifyComplete();
+        // Then
+        assertThat(billing.getTotalDebt()).isEqualTo(175.0);
+        assertThat(billing.getDueDate()).isEqualTo(LocalDate.of(2025, 3, 5));
+        assertThat(billing.getLastBilledDate()).isEqualTo(today);
+        assertThat(overdue.getTotalDebt()).isEqualTo(301.5);
+        assertThat(overdue.getAvailableBalance()).isEqualTo(698.5);
+        assertThat(overdue.getLastBilledDate()).isEqualTo(today);
+        assertThat(billedToday.getTotalDebt()).isEqualTo(50.0);
+        assertThat(notDue.getTotalDebt()).isEqualTo(80.0);
+        assertThat(notDue.getLastBilledDate()).isNull();
+        ArgumentCaptor<BillConsumptionsDto> captor = ArgumentCaptor.forClass(BillConsumptionsDto.class);
+        InOrder inOrder = inOrder(creditCardRepository, consumptionServiceClient);
+        inOrder.verify(creditCardRepository).saveAll(anyIterable());
+        inOrder.verify(consumptionServiceClient).markBilled(captor.capture());
+        assertThat(captor.getValue().getIdConsumptions()).containsExactly("m1", "m2");
+        assertThat(billing.getPendingBilling()).isNull();
+        verify(creditCardRepository).save(overdue);
+        verify(creditCardRepository, never()).save(notDue);
+        assertThat(count("billed")).isEqualTo(1.0);
+        assertThat(count("penalized")).isEqualTo(1.0);
+        assertThat(count("failed")).isZero();
+    }
+
+    @Test
+    @DisplayName("Count a failed chunk and keep billing the other chunks")
+    void countFailedChunk() {
+        CreditCardBillingScheduler scheduler = scheduler(50, 1);
+        CreditCard failing = card("c1", "20", 100.0, LocalDate.of(2025, 3, 5));
+        CreditCard billing = card("c2", "20", 100.0, LocalDate.of(2025, 3, 5));
+        when(consumptionServiceClient.findUnbilledByIdCreditCards(List.of("c1")))
+                .thenReturn(Flux.error(new IllegalStateException("Service unavailable")));
+        when(consumptionServiceClient.findUnbilledByIdCreditCards(List.of("c2"))).thenReturn(Flux.empty());
+        // When
+        StepVerifier.create(scheduler.runBilling(today)).verifyComplete();
+        // Then
+        assertThat(failing.getLastBilledDate()).isNull();
+        assertThat(billing.getLastBilledDate()).isEqualTo(today);
+        assertThat(count("billed")).isEqualTo(1.0);
+        assertThat(count("failed")).isEqualTo(1.0);
+        verify(consumptionServiceClient, never()).markBilled(any());
+    }
+
+    @Test
+    @DisplayName("Retry marking the consumptions of cards already saved as billed")
+    void retryMarkBilled() {
+        CreditCardBillingScheduler scheduler = scheduler(50, 200);
+        CreditCard billing = card("c1", "20", 100.0, LocalDate.of(2025, 3, 5));
+        AtomicInteger attempts = new AtomicInteger();
+        when(consumptionServiceClient.findUnbilledByIdCreditCards(List.of("c1"))).thenReturn(Flux.just(
+                ConsumptionDto.builder().id("m1").idCreditCard("c1").amount(50.0).build()));
+        when(consumptionServiceClient.markBilled(any(BillConsumptionsDto.class))).thenAnswer(invocation ->
+                attempts.incrementAndGet() == 1 ? Mono.error(new IllegalStateException("Timeout")) : Mono.empty());
+        // When
+        StepVerifier.create(scheduler.runBilling(today)).expectComplete().verify(Duration.ofSeconds(5));
+        // Then
+        assertThat(attempts).hasValue(2);
+        assertThat(billing.getTotalDebt()).isEqualTo(150.0);
+        assertThat(count("billed")).isEqualTo(1.0);
+        assertThat(count("failed")).isZero();
+    }
+
+    @Test
+    @DisplayName("Keep the saved billing when the consumptions cannot be marked")
+    void keepBillingWhenMarkFails() {
+        CreditCardBillingScheduler scheduler = scheduler(50, 200);
+        ReflectionTestUtils.setField(scheduler, "markBilledRetries", 0);
+        CreditCard billing = card("c1", "20", 100.0, LocalDate.of(2025, 3, 5));
+        when(consumptionServiceClient.findUnbilledByIdCreditCards(List.of("c1"))).thenReturn(Flux.just(
+                ConsumptionDto.builder().id("m1").idCreditCard("c1").amount(50.0).build()));
+        when(consumptionServiceClient.markBilled(any(BillConsumptionsDto.class)))
+                .thenReturn(Mono.error(new IllegalStateException("Service unavailable")));
+        // When
+        StepVerifier.create(scheduler.runBilling(today)).verifyComplete();
+        // Then
+        verify(creditCardRepository).saveAll(anyIterable());
+        assertThat(billing.getLastBilledDate()).isEqualTo(today);
+        assertThat(billing.getPendingBilling().getIdConsumptions()).containsExactly("m1");
+        assertThat(count("failed")).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("Mark the consumptions an earlier statement left pending and clear them from the card")
+    void markPendingBilling() {
+        CreditCardBillingScheduler scheduler = scheduler(50, 200);
+        CreditCard pending = card("c1", "13", 150.0, LocalDate.of(2025, 3, 28));
+        pending.setPendingBilling(new CreditCard.PendingBilling(List.of("m1"), 2, 2025));
+        when(consumptionServiceClient.markBilled(any(BillConsumptionsDto.class))).thenReturn(Mono.empty());
+        // When
+        StepVerifier.create(scheduler.runBilling(today)).verifyComplete();
+        // Then
+        ArgumentCaptor<BillConsumptionsDto> captor = ArgumentCaptor.forClass(BillConsumptionsDto.class);
+        verify(consumptionServiceClient).markBilled(captor.capture());
+        assertThat(captor.getValue().getIdConsumptions()).containsExactly("m1");
+        assertThat(captor.getValue().getBillingMonth()).isEqualTo(2);
+        assertThat(pending.getPendingBilling()).isNull();
+        verify(creditCardRepository).saveAll(List.of(pending));
+        assertThat(pending.getTotalDebt()).isEqualTo(150.0);
+        assertThat(count("failed")).isZero();
+    }
+
+    @Test
+    @DisplayName("Do not bill a card again while its earlier consumptions cannot be marked")
+    void skipBillingWhilePending() {
+        CreditCardBillingScheduler scheduler = scheduler(50, 200);
+        ReflectionTestUtils.setField(scheduler, "markBilledRetries", 0);
+        CreditCard pending = card("c1", "20", 150.0, LocalDate.of(2025, 3, 5));
+        pending.setPendingBilling(new CreditCard.PendingBilling(List.of("m1"), 1, 2025));
+        when(consumptionServiceClient.markBilled(any(BillConsumptionsDto.class)))
+                .thenReturn(Mono.error(new IllegalStateException("Service unavailable")));
+        // When
+        StepVerifier.create(scheduler.runBilling(today)).verifyComplete();
+        // Then
+        verify(consumptionServiceClient, never()).findUnbilledByIdCreditCards(anyList());
+        verify(creditCardRepository, never()).saveAll(anyIterable());
+        assertThat(pending.getPendingBilling().getIdConsumptions()).containsExactly("m1");
+        assertThat(pending.getTotalDebt()).isEqualTo(150.0);
+        assertThat(pending.getLastBilledDate()).isNull();
+        assertThat(count("failed")).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("Throttle the calls to the movements service")
+    void throttleConsumptionCalls() throws InterruptedException {
+        CreditCardBillingScheduler scheduler = scheduler(2, 1);
+        List.of("c1", "c2", "c3", "c4").forEach(id -> card(id, "20", 0.0, LocalDate.of(2025, 3, 5)));
+        AtomicInteger calls = new AtomicInteger();
+        when(consumptionServiceClient.findUnbilledByIdCreditCards(anyList()))
+                .thenReturn(Flux.<ConsumptionDto>empty().doOnSubscribe(subscription -> calls.incrementAndGet()));
+        // When
+        Mono<Void> run = scheduler.runBilling(today).cache();
+        run.subscribe();
+        Thread.sleep(300);
+        // Then
+        assertThat(calls).hasValue(2);
+        StepVerifier.create(run).expectComplete().verify(Duration.ofSeconds(3));
+        assertThat(calls).hasValue(4);
+        assertThat(cards.values().stream().map(CreditCard::getLastBilledDate).collect(Collectors.toSet()))
+                .containsExactly(today);
+    }
+
+    @Test
+    @DisplayName("Report progress when a chunk crosses an interval or the run ends")
+    void reportProgress() {
+        assertThat(CreditCardBillingScheduler.isProgressReported(200, 200, 1000, 500)).isFalse();
+        assertThat(CreditCardBillingScheduler.isProgressReported(600, 200, 1000, 500)).isTrue();
+        assertThat(CreditCardBillingScheduler.isProgressReported(500, 200, 1000, 500)).isTrue();
+        assertThat(CreditCardBillingScheduler.isProgressReported(800, 200, 1000, 500)).isFalse();
+        assertThat(CreditCardBillingScheduler.isProgressReported(1000, 200, 1000, 500)).isTrue();
+        assertThat(CreditCardBillingScheduler.isProgressReported(30, 30, 30, 500)).isTrue();
+    }
+}
@@ -0,0 +1,126 @@
+package com.bank.appbank.service.scheduler;
+
+import com.bank.appbank.repository.SchedulerLeaseRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JobCoordinatorTest {
+
+    @Mock
+    private SchedulerLeaseRepository leaseRepository;
+
+    private JobCoordinator jobCoordinator;
+    private final LocalDate today = LocalDate.of(2025, 2, 20);
+    private final AtomicBoolean taskRan = new AtomicBoolean();
+
+    @BeforeEach
+    void setUp() {
+        Clock clock = Clock.fixed(Instant.parse("2025-02-20T23:00:00Z"), ZoneId.of("UTC"));
+        jobCoordinator = new JobCoordinator(leaseRepository, clock, "instance-1", 1, 1);
+    }
+
+    private Mono<Void> task(Duration duration) {
+        return Mono.delay(duration).doOnNext(tick -> taskRan.set(true)).then();
+    }
+
+    @Test
+    @DisplayName("Run the task with the lease and mark the date as completed")
+    void runWithLease() {
+        when(leaseRepository.tryAcquire(eq("billing"), eq("instance-1"), eq(today), any(), any()))
+                .thenReturn(Mono.just(true));
+        when(leaseRepository.release(eq("billing"), eq("instance-1"), eq(today), any())).thenReturn(Mono.empty());
+        // When
+        StepVerifier.create(jobCoordinator.runOnce("billing", today, task(Duration.ofMillis(10))))
+                .verifyComplete();
+        // Then
+        assertThat(taskRan).isTrue();
+        verify(leaseRepository).release(eq("billing"), eq("instance-1"), eq(today), any());
+    }
+
+    @Test
+    @DisplayName("Skip the task when the lease is held or the date is completed")
+    void skipWithoutLease() {
+        when(leaseRepository.tryAcquire(eq("billing"), eq("instance-1"), eq(today), any(), any()))
+                .thenReturn(Mono.just(false));
+        // When
+        StepVerifier.create(jobCoordinator.runOnce("billing", today, task(Duration.ofMillis(10))))
+                .verifyComplete();
+        // Then
+        assertThat(taskRan).isFalse();
+        verify(leaseRepository, never()).release(any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Renew the lease while a long task runs")
+    void renewWhileRunning() {
+        when(leaseRepository.tryAcquire(eq("billing"), eq("instance-1"), eq(today), any(), any()))
+                .thenReturn(Mono.just(true));
+        when(leaseRepository.renew(eq("billing"), eq("instance-1"), any())).thenReturn(Mono.just(true));
+        when(leaseRepository.release(eq("billing"), eq("instance-1"), eq(today), any())).thenReturn(Mono.empty());
+        // When
+        StepVerifier.create(jobCoordinator.runOnce("billing", today, task(Duration.ofMillis(800))))
+                .verifyComplete();
+        // Then
+        assertThat(taskRan).isTrue();
+        verify(leaseRepository, atLeast(2)).renew(eq("billing"), eq("instance-1"), any());
+    }
+
+    @Test
+    @DisplayName("Cancel the task without completing the date when the lease is lost")
+    void cancelWhenLeaseIsLost() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        when(leaseRepository.tryAcquire(eq("billing"), eq("instance-1"), eq(today), any(), any()))
+                .thenReturn(Mono.just(true));
+        when(leaseRepository.renew(eq("billing"), eq("instance-1"), any())).thenReturn(Mono.just(false));
+        when(leaseRepository.release(eq("billing"), eq("instance-1"), isNull(), any())).thenReturn(Mono.empty());
+        // When
+        StepVerifier.create(jobCoordinator.runOnce("billing", today,
+                        Mono.<Void>never().doOnCancel(() -> cancelled.set(true))))
+                .expectErrorMessage("Lease of billing was lost")
+                .verify(Duration.ofSeconds(5));
+        // Then
+        assertThat(cancelled).isTrue();
+        verify(leaseRepository, never()).release(any(), any(), eq(today), any());
+    }
+
+    @Test
+    @DisplayName("Run a continuous job only while this instance holds its lease, checked once per renew interval")
+    void runWhileLeader() {
+        Clock clock = mock(Clock.class);
+        Instant start = Instant.parse("2025-02-20T23:00:00Z");
+        when(clock.instant()).thenReturn(start, start.plusMillis(300), start.plusMillis(400));
+        jobCoordinator = new JobCoordinator(leaseRepository, clock, "instance-1", 1, 1);
+        when(leaseRepository.tryAcquire(eq("outbox-relay"), eq("instance-1"), isNull(), any(), any()))
+                .thenReturn(Mono.just(true))
+                .thenReturn(Mono.just(false));
+        // When, the second tick comes within a third of the ttl and the third one after it
+        StepVerifier.create(jobCoordinator.runWhileLeader("outbox-relay", task(Duration.ofMillis(10))))
+                .verifyComplete();
+        assertThat(taskRan.getAndSet(false)).isTrue();
+        StepVerifier.create(jobCoordinator.runWhileLeader("outbox-relay", task(Duration.ofMillis(10))))
+                .verifyComplete();
+        assertThat(taskRan.getAndSet(false)).isTrue();
+        StepVerifier.create(jobCoordinator.runWhileLeader("outbox-relay", task(Duration.ofMillis(10))))
+                .verifyComplete();
+        // Then
+        assertThat(taskRan).isFalse();
+        verify(leaseRepository, times(2)).tryAcquire(eq("outbox-relay"), eq("instance-1"), isNull(), any(), any());
+    }
+}